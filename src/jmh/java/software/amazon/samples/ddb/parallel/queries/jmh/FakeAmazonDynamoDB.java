@@ -0,0 +1,141 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jmh;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.Select;
+
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.sdk1.OrderCodec;
+
+/**
+ * In-process SDK v1 DynamoDB stand-in: Query and Scan of the {@link FakeOrdersTable}, 
+ * the calling thread waits for the page latency (like the blocking client does)
+ * 
+ * @author zorani
+ *
+ */
+class FakeAmazonDynamoDB extends AbstractAmazonDynamoDB {
+
+	private final FakeOrdersTable table;
+	
+	FakeAmazonDynamoDB(@NonNull final FakeOrdersTable table) {
+		
+		this.table = table;
+	}
+	
+	@Override
+	public QueryResult query(final QueryRequest request) {
+		
+		FakeOrdersTable.Page page = table.query(request.getIndexName(), request.getKeyConditionExpression(), 
+				request.getExpressionAttributeNames(), values(request.getExpressionAttributeValues()), 
+				exclusiveStartId(request.getExclusiveStartKey()));
+		
+		table.pause();
+		
+		List<String> projection = FakeOrdersTable.projectionAttributes(request.getProjectionExpression(), request.getExpressionAttributeNames());
+		
+		return new QueryResult()
+				.withItems(Select.COUNT.toString().equals(request.getSelect()) ? null : items(page, projection))
+				.withCount(page.items.size())
+				.withScannedCount(page.scannedCount)
+				.withLastEvaluatedKey(lastEvaluatedKey(page, request.getIndexName()))
+				.withConsumedCapacity(new ConsumedCapacity().withTableName(request.getTableName()).withCapacityUnits(page.capacityUnits));
+	}
+
+	@Override
+	public ScanResult scan(final ScanRequest request) {
+		
+		FakeOrdersTable.Page page = table.scan(request.getSegment() == null ? 0 : request.getSegment(), 
+				request.getTotalSegments() == null ? 1 : request.getTotalSegments(), request.getFilterExpression(), 
+				request.getExpressionAttributeNames(), values(request.getExpressionAttributeValues()), 
+				exclusiveStartId(request.getExclusiveStartKey()));
+		
+		table.pause();
+		
+		List<String> projection = FakeOrdersTable.projectionAttributes(request.getProjectionExpression(), request.getExpressionAttributeNames());
+		
+		return new ScanResult()
+				.withItems(Select.COUNT.toString().equals(request.getSelect()) ? null : items(page, projection))
+				.withCount(page.items.size())
+				.withScannedCount(page.scannedCount)
+				.withLastEvaluatedKey(lastEvaluatedKey(page, null))
+				.withConsumedCapacity(new ConsumedCapacity().withTableName(request.getTableName()).withCapacityUnits(page.capacityUnits));
+	}
+	
+	private static List<Map<String, AttributeValue>> items(final FakeOrdersTable.Page page, final List<String> projection) {
+		
+		List<Map<String, AttributeValue>> items = new ArrayList<>(page.items.size());
+		
+		for (FakeOrdersTable.Item item : page.items) {
+			
+			if (projection == null) {
+				
+				items.add(new HashMap<>(item.itemV1));
+				continue;
+			}
+			
+			Map<String, AttributeValue> projected = new HashMap<>();
+			
+			for (String attributeName : projection) {
+				
+				AttributeValue value = item.itemV1.get(attributeName);
+				if (value != null) projected.put(attributeName, value);
+			}
+			
+			items.add(projected);
+		}
+		
+		return items;
+	}
+	
+	private static Map<String, AttributeValue> lastEvaluatedKey(final FakeOrdersTable.Page page, final String indexName) {
+		
+		if (page.lastEvaluated == null) return null;
+		
+		Map<String, AttributeValue> key = new HashMap<>();
+		for (String attributeName : FakeOrdersTable.keyAttributes(indexName)) key.put(attributeName, page.lastEvaluated.itemV1.get(attributeName));
+		
+		return key;
+	}
+	
+	private static String exclusiveStartId(final Map<String, AttributeValue> exclusiveStartKey) {
+		
+		return exclusiveStartKey == null || exclusiveStartKey.isEmpty() ? null : exclusiveStartKey.get(OrderCodec.ID).getS();
+	}
+	
+	private static Map<String, String> values(final Map<String, AttributeValue> values) {
+		
+		Map<String, String> result = new HashMap<>();
+		
+		if (values != null) values.forEach((k, v) -> result.put(k, v.getS() != null ? v.getS() : v.getN()));
+		
+		return result;
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jmh;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import lombok.NonNull;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.Select;
+import software.amazon.awssdk.services.dynamodb.paginators.QueryPublisher;
+import software.amazon.awssdk.services.dynamodb.paginators.ScanPublisher;
+import software.amazon.samples.ddb.parallel.queries.sdk1.OrderCodec;
+
+/**
+ * In-process SDK v2 DynamoDB stand-in: Query and Scan of the {@link FakeOrdersTable}; 
+ * the response futures complete on the stand-in's own threads after the page latency, 
+ * so no caller thread waits (like the non-blocking client)
+ * 
+ * @author zorani
+ *
+ */
+class FakeDynamoDbAsyncClient implements DynamoDbAsyncClient {
+
+	private final FakeOrdersTable table;
+	private final ScheduledExecutorService completions;
+	
+	FakeDynamoDbAsyncClient(@NonNull final FakeOrdersTable table, final int completionThreads) {
+		
+		this.table = table;
+		this.completions = Executors.newScheduledThreadPool(completionThreads, r -> {
+			
+			Thread thread = new Thread(r, "fake-ddb-completion");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	@Override
+	public String serviceName() {
+		
+		return SERVICE_NAME;
+	}
+
+	@Override
+	public void close() {
+		
+		completions.shutdownNow();
+	}
+	
+	@Override
+	public CompletableFuture<QueryResponse> query(final QueryRequest request) {
+		
+		return complete(() -> {
+			
+			FakeOrdersTable.Page page = table.query(request.indexName(), request.keyConditionExpression(), 
+					request.expressionAttributeNames(), values(request.expressionAttributeValues()), 
+					exclusiveStartId(request.exclusiveStartKey()));
+			
+			List<String> projection = FakeOrdersTable.projectionAttributes(request.projectionExpression(), request.expressionAttributeNames());
+			
+			QueryResponse.Builder response = QueryResponse.builder()
+					.count(page.items.size())
+					.scannedCount(page.scannedCount)
+					.consumedCapacity(ConsumedCapacity.builder().tableName(request.tableName()).capacityUnits(page.capacityUnits).build());
+			
+			if (request.select() != Select.COUNT) response.items(items(page, projection));
+			if (page.lastEvaluated != null) response.lastEvaluatedKey(lastEvaluatedKey(page, request.indexName()));
+			
+			return response.build();
+		});
+	}
+
+	@Override
+	public CompletableFuture<ScanResponse> scan(final ScanRequest request) {
+		
+		return complete(() -> {
+			
+			FakeOrdersTable.Page page = table.scan(request.segment() == null ? 0 : request.segment(), 
+					request.totalSegments() == null ? 1 : request.totalSegments(), request.filterExpression(), 
+					request.expressionAttributeNames(), values(request.expressionAttributeValues()), 
+					exclusiveStartId(request.exclusiveStartKey()));
+			
+			List<String> projection = FakeOrdersTable.projectionAttributes(request.projectionExpression(), request.expressionAttributeNames());
+			
+			ScanResponse.Builder response = ScanResponse.builder()
+					.count(page.items.size())
+					.scannedCount(page.scannedCount)
+					.consumedCapacity(ConsumedCapacity.builder().tableName(request.tableName()).capacityUnits(page.capacityUnits).build());
+			
+			if (request.select() != Select.COUNT) response.items(items(page, projection));
+			if (page.lastEvaluated != null) response.lastEvaluatedKey(lastEvaluatedKey(page, null));
+			
+			return response.build();
+		});
+	}
+	
+	@Override
+	public QueryPublisher queryPaginator(final QueryRequest request) {
+		
+		return new QueryPublisher(this, request);
+	}
+	
+	@Override
+	public ScanPublisher scanPaginator(final ScanRequest request) {
+		
+		return new ScanPublisher(this, request);
+	}
+	
+	/**
+	 * Complete the response future on the completion threads, after the page latency
+	 * 
+	 * @param <R>
+	 * @param response
+	 * @return
+	 */
+	private <R> CompletableFuture<R> complete(final Supplier<R> response) {
+		
+		CompletableFuture<R> future = new CompletableFuture<>();
+		
+		try {
+			
+			R result = response.get();
+			
+			if (table.getPageLatencyMicros() == 0) completions.execute(() -> future.complete(result));
+			else completions.schedule(() -> future.complete(result), table.getPageLatencyMicros(), TimeUnit.MICROSECONDS);
+			
+		} catch (RuntimeException e) {
+			
+			future.completeExceptionally(e);
+		}
+		
+		return future;
+	}
+	
+	private static List<Map<String, AttributeValue>> items(final FakeOrdersTable.Page page, final List<String> projection) {
+		
+		List<Map<String, AttributeValue>> items = new ArrayList<>(page.items.size());
+		
+		for (FakeOrdersTable.Item item : page.items) {
+			
+			if (projection == null) {
+				
+				items.add(item.itemV2);
+				continue;
+			}
+			
+			Map<String, AttributeValue> projected = new HashMap<>();
+			
+			for (String attributeName : projection) {
+				
+				AttributeValue value = item.itemV2.get(attributeName);
+				if (value != null) projected.put(attributeName, value);
+			}
+			
+			items.add(projected);
+		}
+		
+		return items;
+	}
+	
+	private static Map<String, AttributeValue> lastEvaluatedKey(final FakeOrdersTable.Page page, final String indexName) {
+		
+		Map<String, AttributeValue> key = new HashMap<>();
+		for (String attributeName : FakeOrdersTable.keyAttributes(indexName)) key.put(attributeName, page.lastEvaluated.itemV2.get(attributeName));
+		
+		return key;
+	}
+	
+	private static String exclusiveStartId(final Map<String, AttributeValue> exclusiveStartKey) {
+		
+		return exclusiveStartKey == null || exclusiveStartKey.isEmpty() ? null : exclusiveStartKey.get(OrderCodec.ID).s();
+	}
+	
+	private static Map<String, String> values(final Map<String, AttributeValue> values) {
+		
+		Map<String, String> result = new HashMap<>();
+		
+		if (values != null) values.forEach((k, v) -> result.put(k, v.s() != null ? v.s() : v.n()));
+		
+		return result;
+	}
+}
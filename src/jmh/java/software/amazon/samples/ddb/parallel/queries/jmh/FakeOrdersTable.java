@@ -0,0 +1,445 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jmh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.QueryUtils;
+import software.amazon.samples.ddb.parallel.queries.sdk1.Order;
+import software.amazon.samples.ddb.parallel.queries.sdk1.OrderCodec;
+
+/**
+ * In-memory Orders table with the category-order-date-index and the category-query-slot-mod64/128-index, 
+ * shared by the in-process DynamoDB stand-ins of SDK v1 ({@link FakeAmazonDynamoDB}) and SDK v2 ({@link FakeDynamoDbAsyncClient}).
+ * 
+ * Supports the key conditions used by the queries of this project (#cat = :cat, optionally AND begins_with(#od, :od), 
+ * AND #od BETWEEN :from AND :to, AND #qs = :qs), paging with at most pageItems items per page, parallel scan segments 
+ * with the optional #cat = :cat filter, and eventually consistent read capacity (0.5 RCU per started 4KB of the page).
+ * 
+ * @author zorani
+ *
+ */
+final class FakeOrdersTable {
+
+	static final String CATEGORY_ORDER_DATE_INDEX = "category-order-date-index";
+	
+	private static final Pattern BETWEEN = Pattern.compile("(#?[\\w-]+) BETWEEN (:[\\w-]+) AND (:[\\w-]+)");
+	private static final Pattern BEGINS_WITH = Pattern.compile("begins_with\\((#?[\\w-]+), (:[\\w-]+)\\)");
+	private static final Pattern EQUALS = Pattern.compile("(#?[\\w-]+) = (:[\\w-]+)");
+	
+	private static final String MAX_ORDER_DATE = "\uffff";
+	
+	private static final Comparator<Item> ORDER_DATE_DESCENDING = Comparator.comparing((Item x) -> x.orderDate)
+																	.thenComparing(x -> x.id).reversed();
+	private static final Comparator<Item> ID_DESCENDING = Comparator.comparing((Item x) -> x.id).reversed();
+
+	/**
+	 * Stored Order: the key attributes, the item in both SDK representations and the item size
+	 */
+	static final class Item {
+		
+		final String id;
+		final String category;
+		final String orderDate;
+		final int querySlotMod64;
+		final int querySlotMod128;
+		final int size;
+		
+		final Map<String, com.amazonaws.services.dynamodbv2.model.AttributeValue> itemV1;
+		final Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> itemV2;
+		
+		private Item(final Order order) {
+			
+			this.id = order.getId();
+			this.category = order.getCategory();
+			this.orderDate = order.getOrderDate();
+			this.querySlotMod64 = order.getQuerySlotMod64();
+			this.querySlotMod128 = order.getQuerySlotMod128();
+			
+			this.itemV1 = Collections.unmodifiableMap(OrderCodec.toItem(order));
+			
+			Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> item = new HashMap<>();
+			int bytes = 0;
+			
+			for (Map.Entry<String, com.amazonaws.services.dynamodbv2.model.AttributeValue> e : itemV1.entrySet()) {
+				
+				String value = e.getValue().getS() != null ? e.getValue().getS() : e.getValue().getN();
+				
+				item.put(e.getKey(), e.getValue().getS() != null 
+						? software.amazon.awssdk.services.dynamodb.model.AttributeValue.builder().s(value).build()
+						: software.amazon.awssdk.services.dynamodb.model.AttributeValue.builder().n(value).build());
+				
+				bytes += e.getKey().length() + value.length();
+			}
+			
+			this.itemV2 = Collections.unmodifiableMap(item);
+			this.size = bytes;
+		}
+		
+		/**
+		 * Value of the attribute as string (key attributes only)
+		 * 
+		 * @param attributeName
+		 * @return
+		 */
+		String getKeyValue(final String attributeName) {
+			
+			switch (attributeName) {
+			case OrderCodec.ID: return id;
+			case OrderCodec.CATEGORY: return category;
+			case OrderCodec.ORDER_DATE: return orderDate;
+			case OrderCodec.QUERY_SLOT_MOD64: return Integer.toString(querySlotMod64);
+			case OrderCodec.QUERY_SLOT_MOD128: return Integer.toString(querySlotMod128);
+			default: throw new IllegalArgumentException("Not a key attribute: " + attributeName);
+			}
+		}
+	}
+	
+	/**
+	 * Single page of the query or scan
+	 */
+	static final class Page {
+		
+		final List<Item> items;
+		final int scannedCount;
+		final Item lastEvaluated;
+		final double capacityUnits;
+		
+		private Page(final List<Item> items, final int scannedCount, final Item lastEvaluated, final int scannedBytes) {
+			
+			this.items = items;
+			this.scannedCount = scannedCount;
+			this.lastEvaluated = lastEvaluated;
+			this.capacityUnits = 0.5 * ((scannedBytes + 4095) / 4096);
+		}
+	}
+	
+	private final int pageItems;
+	private final long pageLatencyMicros;
+	
+	private final List<Item> items;
+	private final Map<String, Integer> scanPositions = new HashMap<>();
+	
+	private final Map<String, List<Item>> orderDateIndex = new HashMap<>();
+	private final Map<String, Integer> orderDatePositions = new HashMap<>();
+	
+	private final Map<String, Map<String, List<Item>>> querySlotIndexes = new HashMap<>();
+	private final Map<String, Map<String, Integer>> querySlotPositions = new HashMap<>();
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param orderCount number of Orders (data volume)
+	 * @param seed random seed of the Orders, the same seed gives the same table
+	 * @param pageItems max items per page (the real 1MB page holds about 4,000 test Orders)
+	 * @param pageLatencyMicros latency of every page request
+	 */
+	FakeOrdersTable(final int orderCount, final long seed, final int pageItems, final long pageLatencyMicros) {
+		
+		if (pageItems <= 0) throw new IllegalArgumentException("pageItems must be positive");
+		if (pageLatencyMicros < 0) throw new IllegalArgumentException("pageLatencyMicros must not be negative");
+		
+		this.pageItems = pageItems;
+		this.pageLatencyMicros = pageLatencyMicros;
+		
+		List<Item> all = new ArrayList<>(orderCount);
+		for (Order order : OrderCodecBenchmark.createOrders(orderCount, new Random(seed))) all.add(new Item(order));
+		
+		all.sort(Comparator.comparing(x -> x.id));
+		this.items = Collections.unmodifiableList(all);
+		
+		for (int i = 0; i < items.size(); ++i) scanPositions.put(items.get(i).id, i);
+		
+		for (Item item : items) {
+			
+			orderDateIndex.computeIfAbsent(item.category, x -> new ArrayList<>()).add(item);
+			
+			for (int querySlots : Arrays.asList(64, 128)) {
+				
+				String attributeName = QueryUtils.querySlotAttribute(querySlots);
+				
+				querySlotIndexes.computeIfAbsent(attributeName, x -> new HashMap<>())
+						.computeIfAbsent(item.category + "#" + item.getKeyValue(attributeName), x -> new ArrayList<>()).add(item);
+			}
+		}
+		
+		for (List<Item> partition : orderDateIndex.values()) {
+			
+			partition.sort(ORDER_DATE_DESCENDING);
+			for (int i = 0; i < partition.size(); ++i) orderDatePositions.put(partition.get(i).id, i);
+		}
+		
+		for (Map.Entry<String, Map<String, List<Item>>> index : querySlotIndexes.entrySet()) {
+			
+			Map<String, Integer> positions = new HashMap<>();
+			
+			for (List<Item> partition : index.getValue().values()) {
+				
+				partition.sort(ID_DESCENDING);
+				for (int i = 0; i < partition.size(); ++i) positions.put(partition.get(i).id, i);
+			}
+			
+			querySlotPositions.put(index.getKey(), positions);
+		}
+	}
+	
+	int size() {
+		
+		return items.size();
+	}
+	
+	/**
+	 * Query page, in descending sort key order
+	 * 
+	 * @param indexName
+	 * @param keyConditionExpression
+	 * @param names
+	 * @param values
+	 * @param exclusiveStartId id of the last evaluated item, null for the first page
+	 * @return
+	 */
+	Page query(final String indexName, @NonNull final String keyConditionExpression, 
+			final Map<String, String> names, @NonNull final Map<String, String> values, final String exclusiveStartId) {
+		
+		String condition = keyConditionExpression;
+		String category = null;
+		String from = "";
+		String to = MAX_ORDER_DATE;
+		String querySlot = null;
+		
+		Matcher m = BETWEEN.matcher(condition);
+		if (m.find()) {
+			
+			checkAttribute(m.group(1), names, OrderCodec.ORDER_DATE);
+			from = value(m.group(2), values);
+			to = value(m.group(3), values);
+			condition = m.replaceFirst("");
+		}
+		
+		m = BEGINS_WITH.matcher(condition);
+		if (m.find()) {
+			
+			checkAttribute(m.group(1), names, OrderCodec.ORDER_DATE);
+			from = value(m.group(2), values);
+			to = from + MAX_ORDER_DATE;
+			condition = m.replaceFirst("");
+		}
+		
+		m = EQUALS.matcher(condition);
+		while (m.find()) {
+			
+			String attributeName = attribute(m.group(1), names);
+			
+			if (OrderCodec.CATEGORY.equals(attributeName)) category = value(m.group(2), values);
+			else if (attributeName.equals(querySlotAttribute(indexName))) querySlot = value(m.group(2), values);
+			else throw new IllegalArgumentException("Unsupported key condition: " + keyConditionExpression);
+		}
+		
+		if (category == null) throw new IllegalArgumentException("Missing partition key condition: " + keyConditionExpression);
+		
+		if (CATEGORY_ORDER_DATE_INDEX.equals(indexName)) {
+			
+			List<Item> partition = orderDateIndex.getOrDefault(category, Collections.emptyList());
+			int start = exclusiveStartId == null ? firstNotAfter(partition, to) : orderDatePositions.get(exclusiveStartId) + 1;
+			
+			int end = start;
+			while (end < partition.size() && partition.get(end).orderDate.compareTo(from) >= 0) ++end;
+			
+			return page(partition, start, end, null, null);
+		}
+		
+		String attributeName = querySlotAttribute(indexName);
+		if (querySlot == null) throw new IllegalArgumentException("Missing sort key condition: " + keyConditionExpression);
+		
+		List<Item> partition = querySlotIndexes.get(attributeName).getOrDefault(category + "#" + querySlot, Collections.emptyList());
+		int start = exclusiveStartId == null ? 0 : querySlotPositions.get(attributeName).get(exclusiveStartId) + 1;
+		
+		return page(partition, start, partition.size(), null, null);
+	}
+	
+	/**
+	 * Page of the parallel scan segment
+	 * 
+	 * @param segment
+	 * @param totalSegments
+	 * @param filterExpression optional, #cat = :cat only
+	 * @param names
+	 * @param values
+	 * @param exclusiveStartId id of the last evaluated item, null for the first page
+	 * @return
+	 */
+	Page scan(final int segment, final int totalSegments, final String filterExpression, 
+			final Map<String, String> names, final Map<String, String> values, final String exclusiveStartId) {
+		
+		if (totalSegments <= 0 || segment < 0 || segment >= totalSegments) throw new IllegalArgumentException("Invalid segment " + segment + " of " + totalSegments);
+		
+		String category = null;
+		
+		if (filterExpression != null) {
+			
+			Matcher m = EQUALS.matcher(filterExpression);
+			
+			if (!m.matches() || !OrderCodec.CATEGORY.equals(attribute(m.group(1), names))) {
+				throw new IllegalArgumentException("Unsupported filter expression: " + filterExpression);
+			}
+			
+			category = value(m.group(2), values);
+		}
+		
+		int start = exclusiveStartId == null ? (int) ((long) segment * items.size() / totalSegments) : scanPositions.get(exclusiveStartId) + 1;
+		int end = (int) ((long) (segment + 1) * items.size() / totalSegments);
+		
+		return page(items, start, end, OrderCodec.CATEGORY, category);
+	}
+	
+	/**
+	 * Wait for the page latency (pause of the calling thread)
+	 */
+	void pause() {
+		
+		long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(pageLatencyMicros);
+		
+		for (long remaining = pageLatencyMicros * 1_000; remaining > 0; remaining = deadline - System.nanoTime()) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+	
+	long getPageLatencyMicros() {
+		
+		return pageLatencyMicros;
+	}
+	
+	/**
+	 * Key attributes of the index (the last evaluated key)
+	 * 
+	 * @param indexName null for the table
+	 * @return
+	 */
+	static List<String> keyAttributes(final String indexName) {
+		
+		if (indexName == null) return Collections.singletonList(OrderCodec.ID);
+		
+		if (CATEGORY_ORDER_DATE_INDEX.equals(indexName)) return Arrays.asList(OrderCodec.ID, OrderCodec.CATEGORY, OrderCodec.ORDER_DATE);
+		
+		return Arrays.asList(OrderCodec.ID, OrderCodec.CATEGORY, querySlotAttribute(indexName));
+	}
+	
+	/**
+	 * Attribute names of the projection expression, null for whole items
+	 * 
+	 * @param projectionExpression
+	 * @param names
+	 * @return
+	 */
+	static List<String> projectionAttributes(final String projectionExpression, final Map<String, String> names) {
+		
+		if (projectionExpression == null || projectionExpression.isEmpty()) return null;
+		
+		List<String> attributeNames = new ArrayList<>();
+		for (String x : projectionExpression.split(",")) attributeNames.add(attribute(x.trim(), names));
+		
+		return attributeNames;
+	}
+	
+	private Page page(final List<Item> source, final int start, final int end, final String filterAttribute, final String filterValue) {
+		
+		int last = Math.min(end, start + pageItems);
+		int bytes = 0;
+		
+		List<Item> result = new ArrayList<>(last - start);
+		
+		for (int i = start; i < last; ++i) {
+			
+			Item item = source.get(i);
+			bytes += item.size;
+			
+			if (filterValue == null || filterValue.equals(item.getKeyValue(filterAttribute))) result.add(item);
+		}
+		
+		return new Page(result, last - start, last < end ? source.get(last - 1) : null, bytes);
+	}
+	
+	/**
+	 * First position of the order-date descending partition with order-date not after the given one
+	 * 
+	 * @param partition
+	 * @param orderDate
+	 * @return
+	 */
+	private static int firstNotAfter(final List<Item> partition, final String orderDate) {
+		
+		int low = 0;
+		int high = partition.size();
+		
+		while (low < high) {
+			
+			int mid = (low + high) >>> 1;
+			
+			if (partition.get(mid).orderDate.compareTo(orderDate) > 0) low = mid + 1;
+			else high = mid;
+		}
+		
+		return low;
+	}
+	
+	private static String querySlotAttribute(final String indexName) {
+		
+		for (int querySlots : Arrays.asList(64, 128)) {
+			
+			String attributeName = QueryUtils.querySlotAttribute(querySlots);
+			if (("category-" + attributeName + "-index").equals(indexName)) return attributeName;
+		}
+		
+		throw new IllegalArgumentException("Unknown index: " + indexName);
+	}
+	
+	private static void checkAttribute(final String token, final Map<String, String> names, final String expected) {
+		
+		if (!expected.equals(attribute(token, names))) throw new IllegalArgumentException("Unsupported key attribute: " + token);
+	}
+	
+	private static String attribute(final String token, final Map<String, String> names) {
+		
+		if (!token.startsWith("#")) return token;
+		
+		String attributeName = names == null ? null : names.get(token);
+		if (attributeName == null) throw new IllegalArgumentException("Missing attribute name: " + token);
+		
+		return attributeName;
+	}
+	
+	private static String value(final String token, final Map<String, String> values) {
+		
+		String value = values == null ? null : values.get(token);
+		if (value == null) throw new IllegalArgumentException("Missing attribute value: " + token);
+		
+		return value;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import software.amazon.samples.ddb.parallel.queries.sdk1.Order;
+import software.amazon.samples.ddb.parallel.queries.sdk1.OrderCodec;
+
+/**
+ * DynamoDBMapper vs OrderCodec: conversion of a page of items to Orders (queries), 
+ * and of Orders to items (writes); no DynamoDB calls are made (the mapper's client is never used)
+ * 
+ * Run: mvn -Pjmh package && java -cp target/parallel-ddb-queries-0.0.1-SNAPSHOT-shaded.jar org.openjdk.jmh.Main OrderCodecBenchmark
+ * 
+ * @author zorani
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderCodecBenchmark {
+
+	/**
+	 * Items per page (1MB query page holds about 4,000 test Orders)
+	 */
+	@Param({"100", "1000"})
+	private int pageSize;
+	
+	private DynamoDBMapper dbMapper = null;
+	private DynamoDBMapperTableModel<Order> tableModel = null;
+	
+	private List<Order> orders = null;
+	private List<Map<String, AttributeValue>> items = null;
+	
+	@Setup
+	public void setup() {
+		
+		dbMapper = new DynamoDBMapper(new AbstractAmazonDynamoDB() {});
+		tableModel = dbMapper.getTableModel(Order.class);
+		
+		orders = createOrders(pageSize, new Random(42));
+		items = new ArrayList<>(pageSize);
+		
+		for (Order order : orders) items.add(OrderCodec.toItem(order));
+	}
+	
+	@Benchmark
+	public List<Order> itemsToOrdersDynamoDBMapper() {
+		
+		return dbMapper.marshallIntoObjects(Order.class, items);
+	}
+
+	@Benchmark
+	public List<Order> itemsToOrdersOrderCodec() {
+		
+		return OrderCodec.fromItems(items);
+	}
+
+	@Benchmark
+	public List<Map<String, AttributeValue>> ordersToItemsDynamoDBMapper() {
+		
+		List<Map<String, AttributeValue>> result = new ArrayList<>(orders.size());
+		
+		for (Order order : orders) result.add(tableModel.convert(order));
+		
+		return result;
+	}
+
+	@Benchmark
+	public List<Map<String, AttributeValue>> ordersToItemsOrderCodec() {
+		
+		List<Map<String, AttributeValue>> result = new ArrayList<>(orders.size());
+		
+		for (Order order : orders) result.add(OrderCodec.toItem(order));
+		
+		return result;
+	}
+	
+	/**
+	 * Orders like the ones generated by LoadTestData
+	 * 
+	 * @param count
+	 * @param r
+	 * @return
+	 */
+	static List<Order> createOrders(final int count, final Random r) {
+		
+		String[] states = {"WA", "TX", "CA", "NY", "MA", "FL", "PA", "NH", "NM"};
+		String[] payments = {"CREDIT", "DEBIT", "CASH"};
+		String[] categories = {"ELECTRONICS", "HOME", "SPORT", "GARDEN"};
+		
+		List<Order> orders = new ArrayList<>(count);
+		
+		for (int i = 0; i < count; ++i) {
+			
+			String state = states[r.nextInt(states.length)];
+			
+			orders.add(Order.builder()
+					.id(new UUID(r.nextLong(), r.nextLong()).toString())
+					.sku(String.format("A-%03d", 1 + r.nextInt(99)))
+					.orderDate(String.format("2020-%02d-%02d", 1 + r.nextInt(12), 1 + r.nextInt(28)))
+					.paymentType(payments[r.nextInt(payments.length)])
+					.qty(1 + r.nextInt(10))
+					.pricePerUnit((1 + r.nextInt(16)) + (1 + r.nextInt(99)) / 100.0)
+					.category(categories[r.nextInt(categories.length)])
+					.country("USA")
+					.ckCountryState("USA#" + state)
+					.state(state)
+					.querySlotMod64(i % 64)
+					.querySlotMod128(i % 128)
+					.comment("Some comment here ...")
+					.build());
+		}
+		
+		return orders;
+	}
+}
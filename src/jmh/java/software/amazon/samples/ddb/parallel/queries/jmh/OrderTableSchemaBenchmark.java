@@ -0,0 +1,121 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.samples.ddb.parallel.queries.sdk2.Order;
+import software.amazon.samples.ddb.parallel.queries.sdk2.OrderTableSchema;
+
+/**
+ * Per item conversion of the SDK v2 Order table schemas (bean vs static), for a page of items: 
+ * items to Orders (queries) and Orders to items (writes)
+ * 
+ * Run: java -cp target/parallel-ddb-queries-0.0.1-SNAPSHOT-shaded.jar org.openjdk.jmh.Main OrderTableSchemaBenchmark
+ * 
+ * @author zorani
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderTableSchemaBenchmark {
+
+	@Param({"bean", "static"})
+	private String schema;
+	
+	@Param({"1000"})
+	private int pageSize;
+	
+	private TableSchema<Order> tableSchema = null;
+	private List<Order> orders = null;
+	private List<Map<String, AttributeValue>> items = null;
+	
+	@Setup
+	public void setup() {
+		
+		tableSchema = OrderTableSchema.create("static".equals(schema));
+		
+		Random r = new Random(42);
+		orders = new ArrayList<>(pageSize);
+		items = new ArrayList<>(pageSize);
+		
+		for (int i = 0; i < pageSize; ++i) {
+			
+			Order order = new Order();
+			
+			order.setId(new UUID(r.nextLong(), r.nextLong()).toString());
+			order.setCategory("SPORT");
+			order.setCountry("USA");
+			order.setState("WA");
+			order.setCkCountryState("USA#WA");
+			order.setSku(String.format("A-%03d", 1 + r.nextInt(99)));
+			order.setOrderDate(String.format("2020-%02d-%02d", 1 + r.nextInt(12), 1 + r.nextInt(28)));
+			order.setQuerySlotMod64(i % 64);
+			order.setQty(1 + r.nextInt(10));
+			order.setPricePerUnit((1 + r.nextInt(16)) + (1 + r.nextInt(99)) / 100.0);
+			order.setPaymentType("CREDIT");
+			order.setComment("Some comment here ...");
+			
+			orders.add(order);
+			items.add(tableSchema.itemToMap(order, true));
+		}
+	}
+	
+	@Benchmark
+	public List<Order> itemsToOrders() {
+		
+		List<Order> result = new ArrayList<>(items.size());
+		
+		for (Map<String, AttributeValue> item : items) result.add(tableSchema.mapToItem(item));
+		
+		return result;
+	}
+
+	@Benchmark
+	public List<Map<String, AttributeValue>> ordersToItems() {
+		
+		List<Map<String, AttributeValue>> result = new ArrayList<>(orders.size());
+		
+		for (Order order : orders) result.add(tableSchema.itemToMap(order, true));
+		
+		return result;
+	}
+}
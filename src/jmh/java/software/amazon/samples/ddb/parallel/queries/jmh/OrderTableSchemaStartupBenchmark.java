@@ -0,0 +1,82 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jmh;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.samples.ddb.parallel.queries.sdk2.Order;
+import software.amazon.samples.ddb.parallel.queries.sdk2.OrderTableSchema;
+
+/**
+ * Startup cost of the SDK v2 Order table schemas: single shot in a fresh JVM (class loading, bean 
+ * introspection / accessor generation included), creating the schema and converting the first item, 
+ * which is what the first query pays
+ * 
+ * Run: java -cp target/parallel-ddb-queries-0.0.1-SNAPSHOT-shaded.jar org.openjdk.jmh.Main OrderTableSchemaStartupBenchmark
+ * 
+ * @author zorani
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class OrderTableSchemaStartupBenchmark {
+
+	@Benchmark
+	public Order beanTableSchema() {
+		
+		return createAndMapFirstItem(false);
+	}
+
+	@Benchmark
+	public Order staticTableSchema() {
+		
+		return createAndMapFirstItem(true);
+	}
+	
+	private static Order createAndMapFirstItem(final boolean staticSchema) {
+		
+		TableSchema<Order> tableSchema = OrderTableSchema.create(staticSchema);
+		
+		Map<String, AttributeValue> item = new HashMap<>();
+		
+		item.put("id", AttributeValue.builder().s("a3c6f2d0-0000-4000-8000-000000000001").build());
+		item.put("category", AttributeValue.builder().s("SPORT").build());
+		item.put("order-date", AttributeValue.builder().s("2020-06-15").build());
+		item.put("query-slot-mod64", AttributeValue.builder().n("17").build());
+		item.put("qty", AttributeValue.builder().n("3").build());
+		item.put("unit-price", AttributeValue.builder().n("9.99").build());
+		item.put("state", AttributeValue.builder().s("WA").build());
+		
+		return tableSchema.mapToItem(item);
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+
+import software.amazon.samples.ddb.parallel.queries.BoundedQueryExecutor;
+import software.amazon.samples.ddb.parallel.queries.Config;
+import software.amazon.samples.ddb.parallel.queries.QueryUtils;
+import software.amazon.samples.ddb.parallel.queries.sdk1.CompletableFuturesQuery;
+import software.amazon.samples.ddb.parallel.queries.sdk1.Order;
+import software.amazon.samples.ddb.parallel.queries.sdk1.OrdersDbUtils;
+import software.amazon.samples.ddb.parallel.queries.sdk1.ParallelStreamQuery;
+import software.amazon.samples.ddb.parallel.queries.sdk2.ParallelStreamQueryV2;
+
+/**
+ * All query strategies against the in-process DynamoDB stand-ins (no network, no AWS account): 
+ * compares the engine overhead (pageLatencyMicros = 0) and the concurrency scaling (pageLatencyMicros > 0) 
+ * reproducibly, for the given data volume, page size and max concurrency.
+ * 
+ * Run: mvn -Pjmh package && java -cp target/parallel-ddb-queries-0.0.1-SNAPSHOT-shaded.jar org.openjdk.jmh.Main QueryStrategiesBenchmark 
+ *      -p orders=100000 -p pageItems=1000 -p pageLatencyMicros=5000 -p maxQueryConcurrency=64
+ * 
+ * @author zorani
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryStrategiesBenchmark {
+
+	private static final String CATEGORY = "SPORT";
+	private static final int SCAN_SEGMENTS = 16;
+	private static final int COMPLETION_THREADS = 4;
+	private static final long SEED = 42;
+	
+	/**
+	 * Orders in the table (about 1/4 of them in the queried category)
+	 */
+	@Param({"100000"})
+	private int orders;
+	
+	/**
+	 * Max items per page (the real 1MB page holds about 4,000 test Orders)
+	 */
+	@Param({"100", "1000"})
+	private int pageItems;
+	
+	/**
+	 * Latency of every page request
+	 */
+	@Param({"0", "5000"})
+	private long pageLatencyMicros;
+	
+	/**
+	 * Max concurrent sub-queries of the fan-outs
+	 */
+	@Param({"16", "64"})
+	private int maxQueryConcurrency;
+	
+	private BoundedQueryExecutor executor = null;
+	private FakeDynamoDbAsyncClient asyncClient = null;
+	
+	private OrdersDbUtils ordersDbUtils = null;
+	private ParallelStreamQuery parallelStreamQuery = null;
+	private CompletableFuturesQuery completableFuturesQuery = null;
+	private ParallelStreamQueryV2 parallelStreamQueryV2 = null;
+	
+	@Setup
+	public void setup() {
+		
+		FakeOrdersTable table = new FakeOrdersTable(orders, SEED, pageItems, pageLatencyMicros);
+		FakeAmazonDynamoDB dynamoDB = new FakeAmazonDynamoDB(table);
+		
+		executor = BoundedQueryExecutor.withThreadPool(maxQueryConcurrency);
+		asyncClient = new FakeDynamoDbAsyncClient(table, COMPLETION_THREADS);
+		
+		ordersDbUtils = new OrdersDbUtils(new DynamoDBMapper(dynamoDB), dynamoDB).withQueryExecutor(executor);
+		parallelStreamQuery = new ParallelStreamQuery(ordersDbUtils, executor, maxQueryConcurrency);
+		completableFuturesQuery = new CompletableFuturesQuery(ordersDbUtils, executor, maxQueryConcurrency);
+		parallelStreamQueryV2 = new ParallelStreamQueryV2(asyncClient, Config.STATIC_TABLE_SCHEMA);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		
+		executor.close();
+		parallelStreamQueryV2.close();
+	}
+	
+	@Benchmark
+	public List<Order> sequentialQuery() {
+		
+		return ordersDbUtils.listOrdersByCategoryAndOrderDate(CATEGORY, null);
+	}
+	
+	@Benchmark
+	public List<Order> parallelStreamDates12() {
+		
+		return parallelStreamQuery.getOrdersByCategoryAndDates12UsingParallelStream(CATEGORY);
+	}
+	
+	@Benchmark
+	public List<Order> parallelStreamDates48() {
+		
+		return parallelStreamQuery.getOrdersByCategoryAndDates48UsingParallelStream(CATEGORY);
+	}
+	
+	@Benchmark
+	public List<Order> parallelStreamDates365() {
+		
+		return parallelStreamQuery.getOrdersByCategoryAndDates365UsingParallelStream(CATEGORY);
+	}
+	
+	@Benchmark
+	public List<Order> parallelStreamQuerySlots64() {
+		
+		return parallelStreamQuery.getOrdersByCategoryAndQuerySlot64UsingParallelStream(CATEGORY);
+	}
+	
+	@Benchmark
+	public List<Order> parallelStreamQuerySlots128() {
+		
+		return parallelStreamQuery.getOrdersByCategoryAndQuerySlot128UsingParallelStream(CATEGORY);
+	}
+	
+	@Benchmark
+	public List<Order> completableFutureDates12() {
+		
+		return completableFuturesQuery.getOrdersUsingCategoryAndDates12QueryWithCompletableFuture(CATEGORY);
+	}
+	
+	@Benchmark
+	public List<Order> completableFutureDates48() {
+		
+		return completableFuturesQuery.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture(CATEGORY);
+	}
+	
+	@Benchmark
+	public List<Order> completableFutureDates365() {
+		
+		return completableFuturesQuery.getOrdersUsingCategoryAndDates365QueryWithCompletableFuture(CATEGORY);
+	}
+	
+	@Benchmark
+	public List<Order> completableFutureQuerySlots64() {
+		
+		return completableFuturesQuery.getOrdersUsingCategoryAndQuerySlots64WithCompletableFuture(CATEGORY);
+	}
+	
+	@Benchmark
+	public List<Order> completableFutureQuerySlots128() {
+		
+		return completableFuturesQuery.getOrdersUsingCategoryAndQuerySlots128WithCompletableFuture(CATEGORY);
+	}
+	
+	@Benchmark
+	public List<Order> parallelScan() {
+		
+		return ordersDbUtils.listAllOrdersUsingParallelScan(CATEGORY, SCAN_SEGMENTS);
+	}
+	
+	@Benchmark
+	public List<software.amazon.samples.ddb.parallel.queries.sdk2.Order> reactiveDates48V2() {
+		
+		return ParallelStreamQueryV2.toFuture(parallelStreamQueryV2.queryOrdersByCategoryAndDates(CATEGORY, 
+				QueryUtils.generate48YearMonthDatePrefixes(Config.YEAR), maxQueryConcurrency)).join();
+	}
+	
+	@Benchmark
+	public List<software.amazon.samples.ddb.parallel.queries.sdk2.Order> reactiveDates365V2() {
+		
+		return ParallelStreamQueryV2.toFuture(parallelStreamQueryV2.queryOrdersByCategoryAndDates(CATEGORY, 
+				QueryUtils.generateDailyOrdersDatePrefixes(Config.YEAR), maxQueryConcurrency)).join();
+	}
+	
+	@Benchmark
+	public List<software.amazon.samples.ddb.parallel.queries.sdk2.Order> reactiveQuerySlots64V2() {
+		
+		return ParallelStreamQueryV2.toFuture(parallelStreamQueryV2.queryOrdersByCategoryAndQuerySlots(CATEGORY, 
+				QueryUtils.create64QuerySlotsList(), 64, maxQueryConcurrency)).join();
+	}
+	
+	@Benchmark
+	public List<software.amazon.samples.ddb.parallel.queries.sdk2.Order> reactiveQuerySlots128V2() {
+		
+		return ParallelStreamQueryV2.toFuture(parallelStreamQueryV2.queryOrdersByCategoryAndQuerySlots(CATEGORY, 
+				QueryUtils.create128QuerySlotsList(), 128, maxQueryConcurrency)).join();
+	}
+	
+	@Benchmark
+	public List<software.amazon.samples.ddb.parallel.queries.sdk2.Order> reactiveParallelScanV2() {
+		
+		return parallelStreamQueryV2.listAllOrdersUsingParallelScan(CATEGORY, SCAN_SEGMENTS);
+	}
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.NonNull;
+
+/**
+ * AIMD (additive increase, multiplicative decrease) limiter for the in-flight page requests.
+ * 
+ * While the requests succeed within the latency threshold, the limit grows by about one for every 
+ * "limit" successful requests (i.e. +1 per round trip of the whole window). Throttling responses 
+ * (ProvisionedThroughputExceededException and similar) or too slow responses cut the limit by the 
+ * backoff ratio, at most once per cooldown period. Throttled requests are retried after a short 
+ * jittered delay, up to the max attempts.
+ * 
+ * Works both for blocking (SDK v1) and non-blocking (SDK v2) callers: waiting callers are queued 
+ * and resumed as the in-flight requests complete.
+ * 
+ * The limiter owns the retries of the throttled requests: the clients should not retry them 
+ * (see QueryUtils.init(true) and ParallelStreamQueryV2.createClient(true)), otherwise the SDK retries 
+ * absorb most of the throttling before the limiter sees it, and the max attempts multiply.
+ * 
+ * @author zorani
+ *
+ */
+public class AimdConcurrencyLimiter {
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final double backoffRatio;
+	private final long latencyThresholdNanos;
+	private final long cooldownNanos;
+	private final int maxAttempts;
+	
+	private double limit;
+	private int inFlight = 0;
+	private long lastDecreaseNanos = 0;
+	private long throttledCount = 0;
+	
+	private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+	
+	private static final Logger LOG = LoggerFactory.getLogger(AimdConcurrencyLimiter.class);
+
+	/**
+	 * C-tor
+	 * 
+	 * @param initialLimit
+	 * @param minLimit
+	 * @param maxLimit
+	 * @param backoffRatio limit multiplier on throttling, (0, 1)
+	 * @param latencyThresholdMillis responses slower than this are treated as congestion
+	 * @param maxAttempts attempts per request when throttled
+	 */
+	public AimdConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit, 
+							final double backoffRatio, final long latencyThresholdMillis, final int maxAttempts) {
+		
+		if (minLimit <= 0 || maxLimit < minLimit) throw new IllegalArgumentException("invalid min/max limit");
+		if (backoffRatio <= 0 || backoffRatio >= 1) throw new IllegalArgumentException("backoffRatio must be in (0, 1)");
+		
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.backoffRatio = backoffRatio;
+		this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+		this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(100);
+		this.maxAttempts = Math.max(1, maxAttempts);
+	}
+	
+	/**
+	 * C-tor, using the defaults from {@link Config}
+	 */
+	public AimdConcurrencyLimiter() {
+		
+		this(Config.AIMD_INITIAL_LIMIT, Config.AIMD_MIN_LIMIT, Config.AIMD_MAX_LIMIT, 
+				Config.AIMD_BACKOFF_RATIO, Config.AIMD_LATENCY_THRESHOLD_MS, Config.AIMD_MAX_ATTEMPTS);
+	}
+
+	/**
+	 * Execute blocking request within the limit; throttled requests are retried
+	 * 
+	 * @param <R>
+	 * @param request
+	 * @param isThrottling
+	 * @return
+	 */
+	public <R> R execute(@NonNull final Supplier<R> request, @NonNull final Predicate<Throwable> isThrottling) {
+		
+		for (int attempt = 1; ; ++attempt) {
+			
+			acquire();
+			
+			long start = System.nanoTime();
+			
+			try {
+				R result = request.get();
+				release(System.nanoTime() - start, false);
+				
+				return result;
+				
+			} catch (RuntimeException e) {
+				
+				boolean throttled = isThrottling.test(e);
+				release(System.nanoTime() - start, throttled);
+				
+				if (!throttled || attempt >= maxAttempts) throw e;
+			}
+			
+			try {
+				Thread.sleep(retryDelayMillis(attempt));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+		}
+	}
+
+	/**
+	 * Execute non-blocking request within the limit; throttled requests are retried
+	 * 
+	 * @param <R>
+	 * @param request
+	 * @param isThrottling
+	 * @return
+	 */
+	public <R> CompletableFuture<R> executeAsync(@NonNull final Supplier<CompletableFuture<R>> request, @NonNull final Predicate<Throwable> isThrottling) {
+		
+		CompletableFuture<R> result = new CompletableFuture<>();
+		executeAsync(request, isThrottling, 1, result);
+		
+		return result;
+	}
+	
+	/**
+	 * Single attempt of the non-blocking request
+	 * 
+	 * @param <R>
+	 * @param request
+	 * @param isThrottling
+	 * @param attempt
+	 * @param result
+	 */
+	private <R> void executeAsync(final Supplier<CompletableFuture<R>> request, final Predicate<Throwable> isThrottling, 
+								final int attempt, final CompletableFuture<R> result) {
+		
+		acquireAsync().thenRun(() -> {
+			
+			final long start = System.nanoTime();
+			CompletableFuture<R> future = null;
+			
+			try {
+				future = request.get();
+			} catch (RuntimeException e) {
+				future = CompletableFuture.failedFuture(e);
+			}
+			
+			future.whenComplete((r, t) -> {
+				
+				Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+				boolean throttled = cause != null && isThrottling.test(cause);
+				
+				release(System.nanoTime() - start, throttled);
+				
+				if (cause == null) {
+					
+					result.complete(r);
+				}
+				else if (throttled && attempt < maxAttempts) {
+					
+					CompletableFuture.delayedExecutor(retryDelayMillis(attempt), TimeUnit.MILLISECONDS)
+						.execute(() -> executeAsync(request, isThrottling, attempt + 1, result));
+				}
+				else {
+					
+					result.completeExceptionally(cause);
+				}
+			});
+		});
+	}
+	
+	/**
+	 * Wait for the free slot (blocking)
+	 */
+	public void acquire() {
+		
+		CompletableFuture<Void> slot = acquireAsync();
+		
+		try {
+			slot.get();
+		} catch (InterruptedException e) {
+			
+			// if the slot was granted meanwhile, give it back
+			if (!slot.cancel(false)) release();
+			
+			Thread.currentThread().interrupt();
+			throw new CompletionException(e);
+			
+		} catch (ExecutionException e) {
+			throw new CompletionException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Free slot, completed immediately if the limit allows, or when one of the in-flight requests completes
+	 * 
+	 * @return
+	 */
+	public CompletableFuture<Void> acquireAsync() {
+
+		synchronized (this) {
+			
+			if (waiters.isEmpty() && inFlight < (int)limit) {
+				
+				++inFlight;
+				return CompletableFuture.completedFuture(null);
+			}
+			
+			CompletableFuture<Void> waiter = new CompletableFuture<>();
+			waiters.add(waiter);
+			
+			return waiter;
+		}
+	}
+	
+	/**
+	 * Request completed: adjust the limit and release the slot
+	 * 
+	 * @param latencyNanos
+	 * @param throttled
+	 */
+	public void release(final long latencyNanos, final boolean throttled) {
+		
+		synchronized (this) {
+			
+			if (throttled || latencyNanos > latencyThresholdNanos) {
+				
+				if (throttled) ++throttledCount;
+				
+				long now = System.nanoTime();
+				
+				// several in-flight requests usually fail together: back off once per cooldown period
+				if (now - lastDecreaseNanos > cooldownNanos) {
+					
+					limit = Math.max(minLimit, limit * backoffRatio);
+					lastDecreaseNanos = now;
+					
+					LOG.debug("Concurrency limit decreased to {} ({})", (int)limit, throttled ? "throttled" : "slow response");
+				}
+			}
+			else {
+				
+				limit = Math.min(maxLimit, limit + 1.0 / limit);
+			}
+		}
+		
+		release();
+	}
+
+	/**
+	 * Release the slot without adjusting the limit, and resume the waiting callers that fit into the limit
+	 */
+	private void release() {
+
+		List<CompletableFuture<Void>> ready = new ArrayList<>();
+
+		synchronized (this) {
+			
+			--inFlight;
+			
+			while (!waiters.isEmpty() && inFlight < (int)limit) {
+				
+				CompletableFuture<Void> waiter = waiters.poll();
+				
+				if (!waiter.isDone()) {
+					
+					++inFlight;
+					ready.add(waiter);
+				}
+			}
+		}
+		
+		for (CompletableFuture<Void> waiter : ready) {
+			
+			// cancelled in the meantime
+			if (!waiter.complete(null)) release();
+		}
+	}
+	
+	/**
+	 * Jittered exponential delay before retrying a throttled request
+	 * 
+	 * @param attempt
+	 * @return
+	 */
+	private static long retryDelayMillis(final int attempt) {
+		
+		long max = Math.min(2_000, 25L << Math.min(attempt, 6));
+		
+		return ThreadLocalRandom.current().nextLong(max / 2, max + 1);
+	}
+
+	/**
+	 * @return current concurrency limit
+	 */
+	public synchronized int getLimit() {
+		
+		return (int)limit;
+	}
+
+	/**
+	 * @return number of requests in flight
+	 */
+	public synchronized int getInFlight() {
+		
+		return inFlight;
+	}
+	
+	/**
+	 * @return number of throttled requests so far
+	 */
+	public synchronized long getThrottledCount() {
+		
+		return throttledCount;
+	}
+}
@@ -0,0 +1,600 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.Reference;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.NonNull;
+
+/**
+ * Benchmark harness: runs the selected strategies (named queries) one after another, each one first 
+ * with the discarded warmup calls, then with the measured calls of all the concurrent callers at the same time. 
+ * Call latencies are recorded in the HdrHistogram (microsecond precision), so the results report 
+ * p50/p90/p99/max instead of the average, together with the throughput, the consumed capacity per call 
+ * and the peak number of live threads. The strategies registered with the result size also report the heap 
+ * retained by the result (one extra call after the measured ones, used heap after GC with and without the result).
+ * 
+ * The results can be printed as the table, or written as JSON or CSV (with the environment: cores, JVM, OS) 
+ * to track regressions between releases and to compare instance types.
+ * 
+ * With the query metrics set, the measured calls record their sub-queries (see {@link QueryMetrics}), 
+ * the consumed capacity is the sum of the capacity of their own sub-queries, and the summary of the slowest 
+ * call of every strategy is logged. Without them, the consumed capacity is drained from the shared budget, 
+ * which counts the capacity of everything using it while the strategy runs.
+ * 
+ * @author zorani
+ *
+ */
+public class BenchmarkHarness {
+
+	/**
+	 * Output format of the results
+	 */
+	public enum Format { TABLE, JSON, CSV }
+	
+	private final Map<String, IntSupplier> strategies = new LinkedHashMap<>();
+	private final Map<String, Supplier<?>> retainedHeapQueries = new HashMap<>();
+	
+	private int warmupIterations = Config.BENCHMARK_WARMUP_ITERATIONS;
+	private int iterations = Config.BENCHMARK_ITERATIONS;
+	private int callers = Config.BENCHMARK_CALLERS;
+	private ReadCapacityBudget capacityBudget = null;
+	private QueryMetrics queryMetrics = null;
+	
+	private static final Logger LOG = LoggerFactory.getLogger(BenchmarkHarness.class);
+
+	/**
+	 * Register the strategy
+	 * 
+	 * @param name unique name, used to select the strategy from the command line
+	 * @param query runs the query once, returns the number of the Orders
+	 * @return
+	 */
+	public BenchmarkHarness withStrategy(@NonNull final String name, @NonNull final IntSupplier query) {
+		
+		if (strategies.putIfAbsent(name, query) != null) throw new IllegalArgumentException("Duplicate strategy: " + name);
+		return this;
+	}
+	
+	/**
+	 * Register the strategy, and measure the heap retained by its result
+	 * 
+	 * @param <T>
+	 * @param name unique name, used to select the strategy from the command line
+	 * @param query runs the query once
+	 * @param size number of the Orders (or groups) of the result
+	 * @return
+	 */
+	public <T> BenchmarkHarness withStrategy(@NonNull final String name, @NonNull final Supplier<T> query, @NonNull final ToIntFunction<T> size) {
+		
+		withStrategy(name, () -> size.applyAsInt(query.get()));
+		retainedHeapQueries.put(name, query);
+		
+		return this;
+	}
+	
+	/**
+	 * Discarded calls per caller before the measured ones (JIT, connection pool, caches)
+	 * 
+	 * @param warmupIterations
+	 * @return
+	 */
+	public BenchmarkHarness withWarmupIterations(final int warmupIterations) {
+		
+		if (warmupIterations < 0) throw new IllegalArgumentException("warmupIterations must not be negative");
+		
+		this.warmupIterations = warmupIterations;
+		return this;
+	}
+	
+	/**
+	 * Measured calls per caller
+	 * 
+	 * @param iterations
+	 * @return
+	 */
+	public BenchmarkHarness withIterations(final int iterations) {
+		
+		if (iterations <= 0) throw new IllegalArgumentException("iterations must be positive");
+		
+		this.iterations = iterations;
+		return this;
+	}
+	
+	/**
+	 * Concurrent callers, each one running the warmup and the measured calls of the strategy
+	 * 
+	 * @param callers
+	 * @return
+	 */
+	public BenchmarkHarness withCallers(final int callers) {
+		
+		if (callers <= 0) throw new IllegalArgumentException("callers must be positive");
+		
+		this.callers = callers;
+		return this;
+	}
+	
+	/**
+	 * Report the consumed capacity per call, counted by the budget the strategies share 
+	 * (unless the query metrics are set, see {@link #withQueryMetrics(QueryMetrics)})
+	 * 
+	 * @param capacityBudget
+	 * @return
+	 */
+	public BenchmarkHarness withReadCapacityBudget(final ReadCapacityBudget capacityBudget) {
+		
+		this.capacityBudget = capacityBudget;
+		return this;
+	}
+	
+	/**
+	 * Record the sub-queries of the measured calls (tagged with the strategy name), and log the summary 
+	 * of the slowest call of every strategy
+	 * 
+	 * @param queryMetrics
+	 * @return
+	 */
+	public BenchmarkHarness withQueryMetrics(final QueryMetrics queryMetrics) {
+		
+		this.queryMetrics = queryMetrics;
+		return this;
+	}
+	
+	/**
+	 * Names of the registered strategies, in registration order
+	 * 
+	 * @return
+	 */
+	public Set<String> getStrategyNames() {
+		
+		return Collections.unmodifiableSet(strategies.keySet());
+	}
+	
+	/**
+	 * Run all registered strategies
+	 * 
+	 * @return
+	 */
+	public List<Result> run() {
+		
+		return run(strategies.keySet());
+	}
+	
+	/**
+	 * Run the selected strategies, in the given order
+	 * 
+	 * @param names
+	 * @return
+	 */
+	public List<Result> run(@NonNull final Collection<String> names) {
+		
+		for (String name : names) {
+			if (!strategies.containsKey(name)) throw new IllegalArgumentException("Unknown strategy: " + name + ", available: " + strategies.keySet());
+		}
+		
+		List<Result> results = new ArrayList<>(names.size());
+		
+		for (String name : names) {
+			
+			LOG.info("Run strategy {}: {} warmup and {} measured calls, {} callers", name, warmupIterations, iterations, callers);
+			results.add(runStrategy(name, strategies.get(name)));
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Run single strategy: warmup, then the measured calls of all callers
+	 * 
+	 * @param name
+	 * @param query
+	 * @return
+	 */
+	private Result runStrategy(final String name, final IntSupplier query) {
+		
+		System.gc();
+		
+		Histogram latencies = new ConcurrentHistogram(3);
+		AtomicLong orders = new AtomicLong();
+		AtomicLong errors = new AtomicLong();
+		AtomicReference<QuerySummary> slowest = new AtomicReference<>();
+		DoubleAdder measuredCapacity = new DoubleAdder();
+		IntSupplier measuredQuery = queryMetrics == null ? query : () -> measure(name, query, slowest, measuredCapacity);
+		
+		ExecutorService callersPool = Executors.newFixedThreadPool(callers);
+		CountDownLatch warmedUp = new CountDownLatch(callers);
+		CountDownLatch measure = new CountDownLatch(1);
+		
+		List<Future<?>> results = new ArrayList<>(callers);
+		
+		for (int c = 0; c < callers; ++c) {
+			
+			results.add(callersPool.submit(() -> {
+				
+				for (int i = 0; i < warmupIterations; ++i) call(query, null, null, errors);
+				
+				warmedUp.countDown();
+				measure.await();
+				
+				for (int i = 0; i < iterations; ++i) call(measuredQuery, latencies, orders, errors);
+				
+				return null;
+			}));
+		}
+		
+		long start = 0, duration = 0;
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		
+		try {
+			
+			warmedUp.await();
+			
+			if (capacityBudget != null) capacityBudget.drainConsumedCapacity();
+			errors.set(0);
+			threadBean.resetPeakThreadCount();
+			
+			start = System.nanoTime();
+			measure.countDown();
+			
+			for (Future<?> f : results) f.get();
+			
+			duration = System.nanoTime() - start;
+			
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			LOG.error("Benchmark interrupted", e);
+			
+		} catch (ExecutionException e) {
+			
+			LOG.error("Benchmark strategy " + name + " failed", e);
+			
+		} finally {
+			callersPool.shutdownNow();
+		}
+		
+		if (slowest.get() != null) LOG.info("Slowest call of {}: {}, slowest sub-queries: {}", name, slowest.get(), slowest.get().getSlowestSubQueries(3));
+		
+		long calls = latencies.getTotalCount();
+		int peakThreads = threadBean.getPeakThreadCount();
+		double drained = capacityBudget == null ? 0 : capacityBudget.drainConsumedCapacity();
+		double capacity = queryMetrics == null ? drained : measuredCapacity.sum();
+		long retainedHeap = retainedHeapQueries.containsKey(name) ? retainedHeap(name, retainedHeapQueries.get(name)) : -1;
+		
+		return new Result(name, callers, calls, errors.get(), calls == 0 ? 0 : orders.get() / calls, latencies, 
+				duration == 0 ? 0 : calls * 1_000_000_000.0 / duration, calls == 0 ? 0 : capacity / calls, peakThreads, retainedHeap);
+	}
+	
+	/**
+	 * Heap retained by the result of one more call: used heap after GC with and without the result
+	 * 
+	 * @param name
+	 * @param query
+	 * @return bytes, -1 if the call failed
+	 */
+	private static long retainedHeap(final String name, final Supplier<?> query) {
+		
+		Runtime runtime = Runtime.getRuntime();
+		Object result;
+		
+		System.gc();
+		
+		try {
+			result = query.get();
+		} catch (RuntimeException e) {
+			
+			LOG.warn("Benchmark strategy " + name + " failed, retained heap not measured", e);
+			return -1;
+		}
+		
+		System.gc();
+		long withResult = runtime.totalMemory() - runtime.freeMemory();
+		
+		Reference.reachabilityFence(result);
+		result = null;
+		
+		System.gc();
+		long withoutResult = runtime.totalMemory() - runtime.freeMemory();
+		
+		return Math.max(0, withResult - withoutResult);
+	}
+	
+	/**
+	 * Measured call, adding up the capacity of its sub-queries and keeping the summary of the slowest one
+	 * 
+	 * @param name
+	 * @param query
+	 * @param slowest
+	 * @param capacity
+	 * @return
+	 */
+	private int measure(final String name, final IntSupplier query, final AtomicReference<QuerySummary> slowest, final DoubleAdder capacity) {
+		
+		QueryMetrics.Measured<Integer> measured = queryMetrics.measure(name, query::getAsInt);
+		QuerySummary summary = measured.getSummary();
+		
+		capacity.add(summary.getCapacityUnits());
+		slowest.accumulateAndGet(summary, (a, b) -> a == null || b.getDurationNanos() > a.getDurationNanos() ? b : a);
+		
+		return measured.getResult();
+	}
+	
+	/**
+	 * Single call, recorded in the histogram (not recorded when null or when the call fails)
+	 * 
+	 * @param query
+	 * @param latencies
+	 * @param orders
+	 * @param errors
+	 */
+	private static void call(final IntSupplier query, final Histogram latencies, final AtomicLong orders, final AtomicLong errors) {
+		
+		long start = System.nanoTime();
+		
+		try {
+			
+			int count = query.getAsInt();
+			
+			if (latencies != null) {
+				
+				latencies.recordValue((System.nanoTime() - start) / 1_000);
+				orders.addAndGet(count);
+			}
+			
+		} catch (RuntimeException e) {
+			
+			errors.incrementAndGet();
+			LOG.warn("Benchmark call failed", e);
+		}
+	}
+	
+	/**
+	 * Write the results in the format
+	 * 
+	 * @param results
+	 * @param format
+	 * @param out
+	 */
+	public void write(@NonNull final List<Result> results, @NonNull final Format format, @NonNull final PrintStream out) {
+		
+		switch (format) {
+		case JSON: writeJson(results, out); break;
+		case CSV: writeCsv(results, out); break;
+		default: writeTable(results, out);
+		}
+		
+		out.flush();
+	}
+	
+	private void writeTable(final List<Result> results, final PrintStream out) {
+		
+		out.printf(Locale.ROOT, "%nCores: %d, JVM: %s, warmup: %d, iterations: %d, callers: %d%n%n", 
+				Runtime.getRuntime().availableProcessors(), System.getProperty("java.version"), warmupIterations, iterations, callers);
+		
+		out.printf(Locale.ROOT, "  Strategy                        Calls  Errors   Orders    p50 (ms)   p90 (ms)   p99 (ms)   Max (ms)   Calls/s    RCU/call   Threads  Heap (KB) %n");
+		out.printf(Locale.ROOT, "+-------------------------------+------+-------+---------+----------+----------+----------+----------+----------+----------+---------+----------+%n");
+		
+		for (Result r : results) {
+			
+			out.printf(Locale.ROOT, "| %-30s| %4d | %5d | %7d | %8.1f | %8.1f | %8.1f | %8.1f | %8.2f | %8.1f | %7d | %8s |%n", 
+					r.getName(), r.getCalls(), r.getErrors(), r.getOrders(), 
+					r.getP50Millis(), r.getP90Millis(), r.getP99Millis(), r.getMaxMillis(), r.getThroughput(), r.getCapacityUnitsPerCall(), 
+					r.getPeakThreads(), r.getRetainedHeapBytes() < 0 ? "n/a" : String.valueOf(r.getRetainedHeapBytes() / 1024));
+		}
+		
+		out.printf(Locale.ROOT, "+-------------------------------+------+-------+---------+----------+----------+----------+----------+----------+----------+---------+----------+%n");
+	}
+	
+	private void writeJson(final List<Result> results, final PrintStream out) {
+		
+		out.println("{");
+		out.printf(Locale.ROOT, "  \"timestamp\": \"%s\",%n", Instant.now());
+		out.printf(Locale.ROOT, "  \"environment\": {\"cores\": %d, \"maxMemoryBytes\": %d, \"javaVersion\": \"%s\", \"javaVm\": \"%s\", \"os\": \"%s\", \"arch\": \"%s\"},%n", 
+				Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory(), 
+				escape(System.getProperty("java.version")), escape(System.getProperty("java.vm.name")), 
+				escape(System.getProperty("os.name")), escape(System.getProperty("os.arch")));
+		out.printf(Locale.ROOT, "  \"settings\": {\"warmupIterations\": %d, \"iterations\": %d, \"callers\": %d},%n", warmupIterations, iterations, callers);
+		out.println("  \"results\": [");
+		
+		for (int i = 0; i < results.size(); ++i) {
+			
+			Result r = results.get(i);
+			
+			out.printf(Locale.ROOT, "    {\"strategy\": \"%s\", \"callers\": %d, \"calls\": %d, \"errors\": %d, \"orders\": %d, "
+					+ "\"meanMs\": %.3f, \"p50Ms\": %.3f, \"p90Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f, "
+					+ "\"callsPerSecond\": %.3f, \"rcuPerCall\": %.3f, \"peakThreads\": %d, \"retainedHeapBytes\": %d}%s%n", 
+					escape(r.getName()), r.getCallers(), r.getCalls(), r.getErrors(), r.getOrders(), 
+					r.getMeanMillis(), r.getP50Millis(), r.getP90Millis(), r.getP99Millis(), r.getMaxMillis(), 
+					r.getThroughput(), r.getCapacityUnitsPerCall(), r.getPeakThreads(), r.getRetainedHeapBytes(), i < results.size() - 1 ? "," : "");
+		}
+		
+		out.println("  ]");
+		out.println("}");
+	}
+	
+	private void writeCsv(final List<Result> results, final PrintStream out) {
+		
+		out.println("strategy,callers,calls,errors,orders,mean_ms,p50_ms,p90_ms,p99_ms,max_ms,calls_per_second,rcu_per_call,peak_threads,retained_heap_bytes,cores,java_version");
+		
+		for (Result r : results) {
+			
+			out.printf(Locale.ROOT, "%s,%d,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%d,%d,%s%n", 
+					r.getName(), r.getCallers(), r.getCalls(), r.getErrors(), r.getOrders(), 
+					r.getMeanMillis(), r.getP50Millis(), r.getP90Millis(), r.getP99Millis(), r.getMaxMillis(), 
+					r.getThroughput(), r.getCapacityUnitsPerCall(), r.getPeakThreads(), r.getRetainedHeapBytes(), 
+					Runtime.getRuntime().availableProcessors(), System.getProperty("java.version"));
+		}
+	}
+	
+	private static String escape(final String value) {
+		
+		return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+	
+	/**
+	 * Result of the single strategy
+	 */
+	public static class Result {
+		
+		private final String name;
+		private final int callers;
+		private final long calls;
+		private final long errors;
+		private final long orders;
+		private final double meanMillis;
+		private final double p50Millis;
+		private final double p90Millis;
+		private final double p99Millis;
+		private final double maxMillis;
+		private final double throughput;
+		private final double capacityUnitsPerCall;
+		private final int peakThreads;
+		private final long retainedHeapBytes;
+		
+		private Result(final String name, final int callers, final long calls, final long errors, final long orders, 
+				final Histogram latencies, final double throughput, final double capacityUnitsPerCall, 
+				final int peakThreads, final long retainedHeapBytes) {
+			
+			this.name = name;
+			this.callers = callers;
+			this.calls = calls;
+			this.errors = errors;
+			this.orders = orders;
+			this.meanMillis = latencies.getMean() / 1_000.0;
+			this.p50Millis = latencies.getValueAtPercentile(50) / 1_000.0;
+			this.p90Millis = latencies.getValueAtPercentile(90) / 1_000.0;
+			this.p99Millis = latencies.getValueAtPercentile(99) / 1_000.0;
+			this.maxMillis = latencies.getMaxValue() / 1_000.0;
+			this.throughput = throughput;
+			this.capacityUnitsPerCall = capacityUnitsPerCall;
+			this.peakThreads = peakThreads;
+			this.retainedHeapBytes = retainedHeapBytes;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getCallers() {
+			return callers;
+		}
+
+		/**
+		 * Measured calls that completed (all callers)
+		 * 
+		 * @return
+		 */
+		public long getCalls() {
+			return calls;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * Orders per call (average)
+		 * 
+		 * @return
+		 */
+		public long getOrders() {
+			return orders;
+		}
+
+		public double getMeanMillis() {
+			return meanMillis;
+		}
+
+		public double getP50Millis() {
+			return p50Millis;
+		}
+
+		public double getP90Millis() {
+			return p90Millis;
+		}
+
+		public double getP99Millis() {
+			return p99Millis;
+		}
+
+		public double getMaxMillis() {
+			return maxMillis;
+		}
+
+		/**
+		 * Completed calls per second (all callers)
+		 * 
+		 * @return
+		 */
+		public double getThroughput() {
+			return throughput;
+		}
+
+		public double getCapacityUnitsPerCall() {
+			return capacityUnitsPerCall;
+		}
+
+		/**
+		 * Peak number of live threads (platform threads) during the measured calls
+		 * 
+		 * @return
+		 */
+		public int getPeakThreads() {
+			return peakThreads;
+		}
+
+		/**
+		 * Heap retained by the result of a call
+		 * 
+		 * @return bytes, -1 if not measured
+		 */
+		public long getRetainedHeapBytes() {
+			return retainedHeapBytes;
+		}
+	}
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.NonNull;
+
+/**
+ * {@link QueryExecutor} on top of an {@link ExecutorService}. 
+ * 
+ * The global concurrency cap is enforced with a semaphore (so it holds for any underlying executor), 
+ * the per-query limit by starting the next sub-query only when one of the running sub-queries of the 
+ * same call completes - no thread is blocked waiting for its turn.
+ * 
+ * @author zorani
+ *
+ */
+public class BoundedQueryExecutor implements QueryExecutor {
+
+	private ExecutorService executorService = null;
+	private Semaphore permits = null;
+	private int maxConcurrency;
+	
+	private static volatile BoundedQueryExecutor sharedExecutor = null;
+	private static volatile BoundedQueryExecutor streamingExecutor = null;
+	
+	private static final Logger LOG = LoggerFactory.getLogger(BoundedQueryExecutor.class);
+
+	/**
+	 * C-tor
+	 * 
+	 * @param executorService executor used to run the tasks, it is shut down on close()
+	 * @param maxConcurrency global concurrency cap
+	 */
+	public BoundedQueryExecutor(@NonNull final ExecutorService executorService, final int maxConcurrency) {
+		
+		if (maxConcurrency <= 0) throw new IllegalArgumentException("maxConcurrency must be positive");
+		
+		this.executorService = executorService;
+		this.maxConcurrency = maxConcurrency;
+		this.permits = new Semaphore(maxConcurrency);
+	}
+
+	/**
+	 * Create executor backed by a thread pool of (at most) maxConcurrency daemon threads. 
+	 * Idle threads are released after a minute.
+	 * 
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public static BoundedQueryExecutor withThreadPool(final int maxConcurrency) {
+
+		return withThreadPool(maxConcurrency, "ddb-query");
+	}
+	
+	/**
+	 * Create executor backed by a thread pool of (at most) maxConcurrency daemon threads, named with the prefix. 
+	 * Idle threads are released after a minute.
+	 * 
+	 * @param maxConcurrency
+	 * @param threadNamePrefix
+	 * @return
+	 */
+	public static BoundedQueryExecutor withThreadPool(final int maxConcurrency, @NonNull final String threadNamePrefix) {
+
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemonThreadFactory(threadNamePrefix));
+		pool.allowCoreThreadTimeOut(true);
+		
+		return new BoundedQueryExecutor(pool, maxConcurrency);
+	}
+	
+	/**
+	 * Create executor that runs every sub-query on its own virtual thread (Java 21+ runtime required, 
+	 * see {@link VirtualThreads}); the global cap still limits how many of them run at the same time. 
+	 * Blocking DynamoDB calls park the virtual thread and release its carrier thread. 
+	 * 
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public static BoundedQueryExecutor withVirtualThreads(final int maxConcurrency) {
+
+		return new BoundedQueryExecutor(VirtualThreads.newVirtualThreadPerTaskExecutor("ddb-vquery"), maxConcurrency);
+	}
+	
+	/**
+	 * Shared executor used by the fan-out queries when no executor is provided. 
+	 * It is created on the first use and closed on JVM shutdown.
+	 * 
+	 * @return
+	 */
+	public static BoundedQueryExecutor shared() {
+		
+		if (sharedExecutor == null) {
+			
+			synchronized (BoundedQueryExecutor.class) {
+				
+				if (sharedExecutor == null) {
+					
+					BoundedQueryExecutor executor = withThreadPool(Config.QUERY_EXECUTOR_MAX_CONCURRENCY);
+					Runtime.getRuntime().addShutdownHook(new Thread(executor::close, "ddb-query-shutdown"));
+					
+					sharedExecutor = executor;
+				}
+			}
+		}
+		
+		return sharedExecutor;
+	}
+	
+	/**
+	 * Executor of the streaming query producers (see {@link BoundedResultStream}), separate from the shared one: 
+	 * the producers wait while the consumer is slow, and must not hold the threads of the other fan-out queries. 
+	 * It is created on the first use and closed on JVM shutdown.
+	 * 
+	 * @return
+	 */
+	public static BoundedQueryExecutor streaming() {
+		
+		if (streamingExecutor == null) {
+			
+			synchronized (BoundedQueryExecutor.class) {
+				
+				if (streamingExecutor == null) {
+					
+					BoundedQueryExecutor executor = withThreadPool(Config.STREAM_EXECUTOR_MAX_CONCURRENCY, "ddb-stream");
+					Runtime.getRuntime().addShutdownHook(new Thread(executor::close, "ddb-stream-shutdown"));
+					
+					streamingExecutor = executor;
+				}
+			}
+		}
+		
+		return streamingExecutor;
+	}
+	
+	@Override
+	public <R> CompletableFuture<R> submit(@NonNull final Supplier<R> task) {
+
+		// the measured query (if any) follows the task to the worker thread
+		Supplier<R> measuredTask = QueryMetrics.propagate(task);
+		
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				
+				try {
+					permits.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new CompletionException(e);
+				}
+				
+				try {
+					return measuredTask.get();
+				}
+				finally {
+					permits.release();
+				}
+			}, executorService);
+			
+		} catch (RejectedExecutionException e) {
+			
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	@Override
+	public <T, R> List<CompletableFuture<R>> submitAll(@NonNull final List<T> inputs, 
+									@NonNull final Function<? super T, ? extends R> task, final int maxConcurrency) {
+
+		List<CompletableFuture<R>> results = new ArrayList<>(inputs.size());
+		for (int i = 0; i < inputs.size(); ++i) results.add(new CompletableFuture<>());
+
+		AtomicInteger next = new AtomicInteger();
+		int window = Math.max(1, Math.min(maxConcurrency, inputs.size()));
+		
+		// the next inputs are submitted from the worker threads, so the queue wait is counted from here
+		Function<? super T, ? extends R> measuredTask = QueryMetrics.propagate(task::apply);
+		
+		for (int i = 0; i < window; ++i) {
+			
+			submitNext(inputs, measuredTask, results, next);
+		}
+		
+		return results;
+	}
+
+	/**
+	 * Submit the next input (if any); once it completes, submit the one after
+	 * 
+	 * @param <T>
+	 * @param <R>
+	 * @param inputs
+	 * @param task
+	 * @param results
+	 * @param next
+	 */
+	private <T, R> void submitNext(final List<T> inputs, final Function<? super T, ? extends R> task, 
+									final List<CompletableFuture<R>> results, final AtomicInteger next) {
+		
+		final int i = next.getAndIncrement();
+		if (i >= inputs.size()) return;
+		
+		final T input = inputs.get(i);
+
+		submit(() -> task.apply(input)).whenComplete((r, t) -> {
+			
+			if (t != null) results.get(i).completeExceptionally(t);
+			else results.get(i).complete(r);
+			
+			submitNext(inputs, task, results, next);
+		});
+	}
+	
+	@Override
+	public Executor window(final int maxConcurrency) {
+		
+		if (maxConcurrency <= 0) throw new IllegalArgumentException("maxConcurrency must be positive");
+		
+		return new Window(maxConcurrency);
+	}
+	
+	/**
+	 * Per-query window: tasks are queued, and submitted while fewer than maxConcurrency of them are running
+	 */
+	private class Window implements Executor {
+		
+		private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger running = new AtomicInteger();
+		private final int maxConcurrency;
+		
+		Window(final int maxConcurrency) {
+			
+			this.maxConcurrency = maxConcurrency;
+		}
+		
+		@Override
+		public void execute(@NonNull final Runnable task) {
+			
+			queue.add(task);
+			submitQueued();
+		}
+		
+		/**
+		 * Submit the queued tasks while the window has room; once a task completes, submit the next one
+		 */
+		private void submitQueued() {
+			
+			while (!queue.isEmpty()) {
+				
+				int r = running.get();
+				if (r >= maxConcurrency) return;
+				if (!running.compareAndSet(r, r + 1)) continue;
+				
+				Runnable task = queue.poll();
+				
+				if (task == null) {
+					
+					running.decrementAndGet();
+					continue;
+				}
+				
+				submit(() -> { task.run(); return null; }).whenComplete((x, t) -> {
+					
+					running.decrementAndGet();
+					submitQueued();
+				});
+			}
+		}
+	}
+	
+	@Override
+	public int getMaxConcurrency() {
+		
+		return maxConcurrency;
+	}
+
+	/**
+	 * @return number of tasks running at the moment
+	 */
+	public int getActiveCount() {
+		
+		return maxConcurrency - permits.availablePermits();
+	}
+	
+	@Override
+	public void close() {
+
+		executorService.shutdown();
+		
+		try {
+			if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
+				
+				LOG.warn("Query executor did not terminate in 30 seconds, interrupting running queries");
+				executorService.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executorService.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Thread factory for named daemon threads
+	 * 
+	 * @param prefix
+	 * @return
+	 */
+	public static ThreadFactory daemonThreadFactory(final String prefix) {
+		
+		final AtomicInteger counter = new AtomicInteger();
+		
+		return r -> {
+			Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+}
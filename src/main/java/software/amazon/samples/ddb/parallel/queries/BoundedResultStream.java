@@ -0,0 +1,332 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.NonNull;
+
+/**
+ * Bounded buffer between the sub-query producers and a single consumer, exposed as a closeable {@link Stream}. 
+ * 
+ * Producers hand over items as pages arrive, and block when the buffer is full (backpressure), so the 
+ * memory use is limited by the buffer size and the in-flight pages, not by the number of matching items. 
+ * Closing the stream (use try-with-resources) stops all producers, even if the stream was not fully consumed.
+ * 
+ * A stream that is not closed doesn't hold its producers forever: they give up when nothing was consumed 
+ * for the abandon timeout (the consumer then gets the TimeoutException), or when the stream becomes unreachable.
+ * 
+ * @author zorani
+ *
+ * @param <T>
+ */
+public class BoundedResultStream<T> implements AutoCloseable {
+
+	// end of the stream marker
+	private static final Object END = new Object();
+	
+	// closes the streams dropped by the consumers without closing them
+	private static final Cleaner CLEANER = Cleaner.create();
+	
+	private final BlockingQueue<Object> buffer;
+	private final AtomicInteger runningProducers;
+	private final List<CompletableFuture<?>> producerFutures = new ArrayList<>();
+	private final long abandonTimeoutNanos;
+	
+	private volatile boolean closed = false;
+	private volatile long lastTakeNanos = System.nanoTime();
+	private volatile Throwable abandonedError = null;
+	
+	private static final Logger LOG = LoggerFactory.getLogger(BoundedResultStream.class);
+
+	/**
+	 * Error raised by one of the producers, passed through the buffer to the consumer
+	 */
+	private static final class ProducerError {
+		
+		private final Throwable cause;
+		
+		ProducerError(final Throwable cause) {
+			this.cause = cause;
+		}
+	}
+	
+	/**
+	 * C-tor, with the default abandon timeout
+	 * 
+	 * @param capacity buffer size, in items
+	 * @param producers number of producers; the stream ends when all of them are done
+	 */
+	public BoundedResultStream(final int capacity, final int producers) {
+		
+		this(capacity, producers, Config.STREAM_ABANDON_TIMEOUT_MS);
+	}
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param capacity buffer size, in items
+	 * @param producers number of producers; the stream ends when all of them are done
+	 * @param abandonTimeoutMillis producers waiting for the space give up (and fail the stream) when the consumer 
+	 * 			didn't take any item for this long
+	 */
+	public BoundedResultStream(final int capacity, final int producers, final long abandonTimeoutMillis) {
+		
+		if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+		if (abandonTimeoutMillis <= 0) throw new IllegalArgumentException("abandonTimeoutMillis must be positive");
+		
+		this.buffer = new ArrayBlockingQueue<>(capacity);
+		this.runningProducers = new AtomicInteger(producers);
+		this.abandonTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(abandonTimeoutMillis);
+		
+		if (producers == 0) buffer.add(END);
+	}
+
+	/**
+	 * Start one producer per input on the query executor. Each producer gets the input and the page 
+	 * handler, that puts the page items into the buffer (and returns false once the stream is closed).
+	 * 
+	 * @param <T>
+	 * @param <I>
+	 * @param executor
+	 * @param inputs
+	 * @param producer
+	 * @param maxConcurrency
+	 * @param capacity
+	 * @return
+	 */
+	public static <T, I> BoundedResultStream<T> start(@NonNull final QueryExecutor executor, @NonNull final List<I> inputs, 
+				@NonNull final BiConsumer<I, Predicate<List<T>>> producer, final int maxConcurrency, final int capacity) {
+		
+		final BoundedResultStream<T> result = new BoundedResultStream<>(capacity, inputs.size());
+
+		List<CompletableFuture<Void>> futures = executor.submitAll(inputs, x -> {
+			
+			if (!result.isClosed()) producer.accept(x, result::offerAll);
+			return null;
+		}, maxConcurrency);
+		
+		for (CompletableFuture<Void> f : futures) {
+			
+			f.whenComplete((r, t) -> {
+				if (t != null) result.producerFailed(t);
+				else result.producerDone();
+			});
+		}
+		
+		synchronized (result.producerFutures) {
+			result.producerFutures.addAll(futures);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Put items into the buffer, waiting for the space if needed
+	 * 
+	 * @param items
+	 * @return false if the stream is closed and the producer should stop
+	 */
+	public boolean offerAll(final List<T> items) {
+		
+		for (T item : items) {
+			
+			if (!put(item)) return false;
+		}
+		
+		return !closed;
+	}
+	
+	/**
+	 * Producer completed
+	 */
+	public void producerDone() {
+		
+		if (runningProducers.decrementAndGet() == 0) put(END);
+	}
+
+	/**
+	 * Producer failed; the consumer gets the error on the next read
+	 * 
+	 * @param t
+	 */
+	public void producerFailed(final Throwable t) {
+		
+		put(new ProducerError(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t));
+	}
+	
+	/**
+	 * @return true if the consumer has closed the stream
+	 */
+	public boolean isClosed() {
+		
+		return closed;
+	}
+	
+	/**
+	 * Blocking put that gives up once the stream is closed, or abandoned by the consumer
+	 * 
+	 * @param o
+	 * @return
+	 */
+	private boolean put(final Object o) {
+		
+		try {
+			while (!closed) {
+				
+				if (buffer.offer(o, 100, TimeUnit.MILLISECONDS)) return true;
+				
+				if (System.nanoTime() - lastTakeNanos > abandonTimeoutNanos) {
+					
+					abandon();
+					return false;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Nothing consumed for the abandon timeout: stop the producers, and leave the error for the consumer 
+	 * (if it ever comes back)
+	 */
+	private synchronized void abandon() {
+		
+		if (closed) return;
+		
+		long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(abandonTimeoutNanos);
+		LOG.warn("Result stream abandoned: no item consumed for {} ms, stopping the producers", timeoutMillis);
+		
+		abandonedError = new TimeoutException("No item consumed for " + timeoutMillis + " ms, the stream was abandoned");
+		close();
+	}
+	
+	/**
+	 * Consumer side: stream of items; it has to be closed when not fully consumed
+	 * 
+	 * @return
+	 */
+	public Stream<T> stream() {
+		
+		Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.NONNULL) {
+			
+			private boolean ended = false;
+			
+			@Override
+			@SuppressWarnings("unchecked")
+			public boolean tryAdvance(Consumer<? super T> action) {
+				
+				if (ended) return false;
+				
+				Object o = take();
+				
+				if (o == END) {
+					
+					ended = true;
+					return false;
+				}
+				
+				if (o instanceof ProducerError) {
+					
+					ended = true;
+					close();
+					
+					Throwable cause = ((ProducerError)o).cause;
+					if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+					throw new CompletionException(cause);
+				}
+				
+				action.accept((T)o);
+				return true;
+			}
+		};
+		
+		Stream<T> stream = StreamSupport.stream(spliterator, false).onClose(this::close);
+		
+		// the producers reference this object, not the stream: the stream dropped without closing stops them
+		CLEANER.register(stream, this::close);
+		
+		return stream;
+	}
+	
+	/**
+	 * Blocking take from the buffer; once the stream is closed (and drained), the end or the abandon error
+	 * 
+	 * @return
+	 */
+	private Object take() {
+		
+		try {
+			while (true) {
+				
+				Object o = buffer.poll(100, TimeUnit.MILLISECONDS);
+				
+				if (o != null) {
+					
+					lastTakeNanos = System.nanoTime();
+					return o;
+				}
+				
+				if (closed) return abandonedError != null ? new ProducerError(abandonedError) : END;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new NoSuchElementException("Interrupted while waiting for the results");
+		}
+	}
+	
+	/**
+	 * Stop producers and release the buffered items
+	 */
+	@Override
+	public void close() {
+		
+		closed = true;
+		buffer.clear();
+		
+		synchronized (producerFutures) {
+			
+			// producers which didn't start yet will not run the query at all
+			producerFutures.forEach(f -> f.cancel(false));
+		}
+	}
+}
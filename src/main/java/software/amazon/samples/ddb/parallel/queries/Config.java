@@ -25,4 +25,80 @@ public class Config {
 
 	public final static int YEAR = 2020;
 	public final static String DDB_TABLE_NAME = "test-orders-table";
+
+	// partition planner: desired number of items per sub-query, and the upper limit of sub-queries
+	public final static long PLANNER_TARGET_ITEMS_PER_QUERY = 2_000;
+	public final static int PLANNER_MAX_SUB_QUERIES = 366;
+
+	// shared query executor: max sub-queries running at the same time (all callers), and per single fan-out query
+	public final static int QUERY_EXECUTOR_MAX_CONCURRENCY = 256;
+	public final static int QUERY_MAX_CONCURRENCY = 64;
+	
+	// streaming queries: max number of items buffered between the sub-queries and the consumer
+	public final static int STREAM_BUFFER_SIZE = 1_000;
+	// streaming queries: own executor of the producers (they wait for the consumer), and the time without any item 
+	// consumed after which the producers give up and the stream fails (abandoned stream)
+	public final static int STREAM_EXECUTOR_MAX_CONCURRENCY = 128;
+	public final static long STREAM_ABANDON_TIMEOUT_MS = 60_000;
+
+	// AIMD concurrency limiter for in-flight page requests
+	public final static int AIMD_INITIAL_LIMIT = 16;
+	public final static int AIMD_MIN_LIMIT = 2;
+	public final static int AIMD_MAX_LIMIT = 512;
+	public final static double AIMD_BACKOFF_RATIO = 0.5;
+	public final static long AIMD_LATENCY_THRESHOLD_MS = 2_000;
+	public final static int AIMD_MAX_ATTEMPTS = 5;
+	
+	// client side read capacity ceiling (RCU/s) of a job, zero: no limit, only count consumed capacity
+	public final static double READ_CAPACITY_BUDGET_RCU_PER_SECOND = 0;
+	
+	// work splitting (opt-in): sub-query still paginating after this many pages (zero: never) splits its remaining range into N sub-queries
+	public final static int SPLIT_AFTER_PAGES = 0;
+	public final static int SPLIT_WAYS = 4;
+	
+	// request hedging: duplicate page request after the percentile of recent page latencies, max hedges per request (budget), 
+	// max duplicates of blocking requests in flight
+	public final static double HEDGE_LATENCY_PERCENTILE = 0.95;
+	public final static long HEDGE_MIN_DELAY_MS = 20;
+	public final static long HEDGE_INITIAL_DELAY_MS = 500;
+	public final static double HEDGE_BUDGET_RATIO = 0.05;
+	public final static int HEDGE_MAX_IN_FLIGHT = 16;
+	
+	// result cache of closed (past) periods: max entries, max weight (cached items) and TTL
+	public final static int CACHE_MAX_ENTRIES = 1_000;
+	public final static long CACHE_MAX_WEIGHT = 1_000_000;
+	public final static long CACHE_CLOSED_PERIOD_TTL_MINUTES = 24 * 60;
+	
+	// SDK v2 Orders table schema: static (no bean introspection at startup), false: TableSchema.fromBean
+	public final static boolean STATIC_TABLE_SCHEMA = true;
+	
+	// benchmark harness: discarded warmup calls and measured calls per strategy (per caller), concurrent callers
+	public final static int BENCHMARK_WARMUP_ITERATIONS = 3;
+	public final static int BENCHMARK_ITERATIONS = 10;
+	public final static int BENCHMARK_CALLERS = 1;
+	
+	// DynamoDB endpoint override (system property), e.g. -Dddb.endpoint=http://localhost:8000 for the local stand-in
+	public final static String DDB_ENDPOINT_PROPERTY = "ddb.endpoint";
+	
+	// local DynamoDB stand-in: port, partitions per table or index, RCU/s and WCU/s per partition, seconds of unused capacity kept for bursts
+	public final static int LOCAL_DDB_PORT = 8000;
+	public final static int LOCAL_DDB_PARTITIONS = 8;
+	public final static double LOCAL_DDB_PARTITION_RCU = 3_000;
+	public final static double LOCAL_DDB_PARTITION_WCU = 1_000;
+	public final static double LOCAL_DDB_BURST_SECONDS = 5;
+	
+	// bulk loader: concurrent BatchWriteItem writers, max attempts of a batch (unprocessed items, throttling), backoff base and cap, progress report interval
+	public final static int BULK_LOAD_WRITERS = 16;
+	public final static int BULK_LOAD_MAX_ATTEMPTS = 10;
+	public final static long BULK_LOAD_BACKOFF_BASE_MS = 50;
+	public final static long BULK_LOAD_BACKOFF_MAX_MS = 5_000;
+	public final static long BULK_LOAD_REPORT_INTERVAL_SEC = 10;
+	
+	// streaming data generator: Orders between checkpoints (sink flushed, resume offset saved), progress report interval
+	public final static long GENERATOR_CHECKPOINT_ORDERS = 100_000;
+	public final static long GENERATOR_REPORT_INTERVAL_SEC = 10;
+	
+	// synthetic workload: seed of the generated Orders (the same seed, the same dataset), Zipf exponent of the SKU popularity (0: uniform)
+	public final static long GENERATOR_SEED = 20_200_101L;
+	public final static double GENERATOR_SKU_ZIPF_EXPONENT = 0;
 }
\ No newline at end of file
@@ -0,0 +1,332 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import lombok.NonNull;
+
+/**
+ * Revenue (qty * unit-price), quantity and number of Orders per group (state, payment type or day), 
+ * computed while reading the query pages, without materializing the Orders. Groups are kept in 
+ * a small open addressing map (String keys, primitive arrays for the sums), so memory is O(groups).
+ * 
+ * Every sub-query (shard) folds its items into its own aggregate, which is not thread safe; 
+ * aggregates of the shards are merged at the end.
+ * 
+ * @author zorani
+ *
+ */
+public final class OrderAggregate {
+
+	/**
+	 * Group by attribute; DAY groups by the first 10 characters of the order-date (YYYY-MM-DD)
+	 */
+	public enum GroupBy {
+		
+		STATE("state", 0), PAYMENT_TYPE("payment-type", 0), DAY("order-date", 10);
+		
+		private final String attributeName;
+		private final int keyLength;
+		private final Projection projection;
+		
+		GroupBy(final String attributeName, final int keyLength) {
+			
+			this.attributeName = attributeName;
+			this.keyLength = keyLength;
+			this.projection = Projection.of(attributeName, "qty", "unit-price");
+		}
+		
+		public String getAttributeName() {
+			
+			return attributeName;
+		}
+		
+		/**
+		 * @return attributes needed by the aggregation (group by attribute, qty and unit-price)
+		 */
+		public Projection getProjection() {
+			
+			return projection;
+		}
+		
+		/**
+		 * @param value attribute value
+		 * @return group key, the empty string for a missing value
+		 */
+		public String toKey(final String value) {
+			
+			if (value == null) return "";
+			
+			return keyLength > 0 && value.length() > keyLength ? value.substring(0, keyLength) : value;
+		}
+	}
+	
+	private final GroupBy groupBy;
+	
+	private int size = 0;
+	private String[] keys = new String[16];
+	private double[] revenue = new double[16];
+	private long[] quantity = new long[16];
+	private long[] orders = new long[16];
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param groupBy
+	 */
+	public OrderAggregate(@NonNull final GroupBy groupBy) {
+		
+		this.groupBy = groupBy;
+	}
+	
+	/**
+	 * Merge aggregates of the shards into a new aggregate
+	 * 
+	 * @param groupBy
+	 * @param aggregates
+	 * @return
+	 */
+	public static OrderAggregate merge(@NonNull final GroupBy groupBy, @NonNull final List<OrderAggregate> aggregates) {
+		
+		OrderAggregate merged = new OrderAggregate(groupBy);
+		
+		aggregates.forEach(merged::merge);
+		
+		return merged;
+	}
+	
+	public GroupBy getGroupBy() {
+		
+		return groupBy;
+	}
+	
+	/**
+	 * Add single Order
+	 * 
+	 * @param value group by attribute value
+	 * @param qty
+	 * @param unitPrice
+	 * @return
+	 */
+	public OrderAggregate add(final String value, final long qty, final double unitPrice) {
+		
+		int slot = slot(groupBy.toKey(value));
+		
+		revenue[slot] += qty * unitPrice;
+		quantity[slot] += qty;
+		orders[slot] += 1;
+		
+		return this;
+	}
+	
+	/**
+	 * Add DynamoDB item (SDK v1 attribute map)
+	 * 
+	 * @param item
+	 * @return
+	 */
+	public OrderAggregate addItem(@NonNull final Map<String, com.amazonaws.services.dynamodbv2.model.AttributeValue> item) {
+		
+		com.amazonaws.services.dynamodbv2.model.AttributeValue value = item.get(groupBy.getAttributeName());
+		com.amazonaws.services.dynamodbv2.model.AttributeValue qty = item.get("qty");
+		com.amazonaws.services.dynamodbv2.model.AttributeValue unitPrice = item.get("unit-price");
+		
+		return add(value == null ? null : value.getS(), 
+				qty == null || qty.getN() == null ? 0 : Long.parseLong(qty.getN()), 
+				unitPrice == null || unitPrice.getN() == null ? 0 : Double.parseDouble(unitPrice.getN()));
+	}
+
+	/**
+	 * Add DynamoDB item (SDK v2 attribute map)
+	 * 
+	 * @param item
+	 * @return
+	 */
+	public OrderAggregate addItemV2(@NonNull final Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> item) {
+		
+		software.amazon.awssdk.services.dynamodb.model.AttributeValue value = item.get(groupBy.getAttributeName());
+		software.amazon.awssdk.services.dynamodb.model.AttributeValue qty = item.get("qty");
+		software.amazon.awssdk.services.dynamodb.model.AttributeValue unitPrice = item.get("unit-price");
+		
+		return add(value == null ? null : value.s(), 
+				qty == null || qty.n() == null ? 0 : Long.parseLong(qty.n()), 
+				unitPrice == null || unitPrice.n() == null ? 0 : Double.parseDouble(unitPrice.n()));
+	}
+	
+	/**
+	 * Add all groups of the other aggregate (of the same group by) to this one
+	 * 
+	 * @param other
+	 * @return this aggregate
+	 */
+	public OrderAggregate merge(@NonNull final OrderAggregate other) {
+		
+		if (other.groupBy != groupBy) throw new IllegalArgumentException("Cannot merge " + other.groupBy + " aggregate into " + groupBy);
+		
+		for (int i = 0; i < other.keys.length; ++i) {
+			
+			if (other.keys[i] == null) continue;
+			
+			int slot = slot(other.keys[i]);
+			
+			revenue[slot] += other.revenue[i];
+			quantity[slot] += other.quantity[i];
+			orders[slot] += other.orders[i];
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * @return number of groups
+	 */
+	public int size() {
+		
+		return size;
+	}
+	
+	public double getRevenue(final String key) {
+		
+		int slot = find(key);
+		return slot < 0 ? 0 : revenue[slot];
+	}
+
+	public long getQuantity(final String key) {
+		
+		int slot = find(key);
+		return slot < 0 ? 0 : quantity[slot];
+	}
+
+	public long getOrderCount(final String key) {
+		
+		int slot = find(key);
+		return slot < 0 ? 0 : orders[slot];
+	}
+	
+	public double getTotalRevenue() {
+		
+		return Arrays.stream(revenue).sum();
+	}
+
+	public long getTotalQuantity() {
+		
+		return Arrays.stream(quantity).sum();
+	}
+
+	public long getTotalOrderCount() {
+		
+		return Arrays.stream(orders).sum();
+	}
+	
+	/**
+	 * @return revenue per group, sorted by the group key
+	 */
+	public Map<String, Double> toRevenueMap() {
+		
+		Map<String, Double> map = new TreeMap<>();
+		
+		for (int i = 0; i < keys.length; ++i) {
+			if (keys[i] != null) map.put(keys[i], revenue[i]);
+		}
+		
+		return Collections.unmodifiableMap(map);
+	}
+	
+	@Override
+	public String toString() {
+		
+		return "OrderAggregate [groupBy=" + groupBy + ", groups=" + size + ", orders=" + getTotalOrderCount() 
+				+ ", revenue=" + String.format("%.2f", getTotalRevenue()) + "]";
+	}
+	
+	/**
+	 * Slot of the key, -1 if not found (linear probing)
+	 * 
+	 * @param key
+	 * @return
+	 */
+	private int find(final String key) {
+		
+		if (key == null) return -1;
+		
+		int mask = keys.length - 1;
+		
+		for (int i = key.hashCode() & mask; keys[i] != null; i = (i + 1) & mask) {
+			if (keys[i].equals(key)) return i;
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Slot of the key, added if not found; the table is doubled when it's half full
+	 * 
+	 * @param key
+	 * @return
+	 */
+	private int slot(final String key) {
+		
+		int mask = keys.length - 1;
+		int i = key.hashCode() & mask;
+		
+		for (; keys[i] != null; i = (i + 1) & mask) {
+			if (keys[i].equals(key)) return i;
+		}
+		
+		if (2 * (size + 1) > keys.length) {
+			
+			resize(2 * keys.length);
+			return slot(key);
+		}
+		
+		keys[i] = key;
+		size++;
+		
+		return i;
+	}
+	
+	private void resize(final int capacity) {
+		
+		String[] oldKeys = keys;
+		double[] oldRevenue = revenue;
+		long[] oldQuantity = quantity;
+		long[] oldOrders = orders;
+		
+		keys = new String[capacity];
+		revenue = new double[capacity];
+		quantity = new long[capacity];
+		orders = new long[capacity];
+		size = 0;
+		
+		for (int i = 0; i < oldKeys.length; ++i) {
+			
+			if (oldKeys[i] == null) continue;
+			
+			int slot = slot(oldKeys[i]);
+			
+			revenue[slot] = oldRevenue[i];
+			quantity[slot] = oldQuantity[i];
+			orders[slot] = oldOrders[i];
+		}
+	}
+}
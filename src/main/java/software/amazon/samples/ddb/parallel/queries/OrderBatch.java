@@ -0,0 +1,538 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.sdk1.Order;
+
+/**
+ * Columnar batch of Orders: low-cardinality string attributes are kept as dictionary codes (int per row, 
+ * each distinct value stored once per batch), numeric attributes as primitive arrays, only the id is kept 
+ * as String per row. Compared to the list of Order objects, it saves most of the heap (and GC work), 
+ * because the same category, country, state, sku, ... strings are not repeated in every Order.
+ * 
+ * Batches are built directly from DynamoDB attribute maps (SDK v1 and v2), or from Orders; 
+ * row views convert single rows back to SDK v1 / v2 Orders for compatibility.
+ * 
+ * @author zorani
+ *
+ */
+public final class OrderBatch {
+
+	/**
+	 * Dictionary encoded columns, with their attribute names
+	 */
+	public enum Column {
+		
+		CATEGORY("category"),
+		COUNTRY("country"),
+		CK_COUNTRY_STATE("ck-country-state"),
+		STATE("state"),
+		PAYMENT_TYPE("payment-type"),
+		SKU("sku"),
+		ORDER_DATE("order-date"),
+		COMMENT("comment");
+		
+		private final String attributeName;
+		
+		Column(final String attributeName) {
+			
+			this.attributeName = attributeName;
+		}
+		
+		public String getAttributeName() {
+			
+			return attributeName;
+		}
+	}
+	
+	private static final Column[] COLUMNS = Column.values();
+	
+	private final int size;
+	private final String[] ids;
+	private final int[][] codes;
+	private final String[][] dictionaries;
+	private final int[] qty;
+	private final int[] querySlotMod64;
+	private final int[] querySlotMod128;
+	private final double[] unitPrice;
+	
+	/**
+	 * C-tor, used by the builder
+	 */
+	private OrderBatch(final int size, final String[] ids, final int[][] codes, final String[][] dictionaries, 
+						final int[] qty, final int[] querySlotMod64, final int[] querySlotMod128, final double[] unitPrice) {
+		
+		this.size = size;
+		this.ids = ids;
+		this.codes = codes;
+		this.dictionaries = dictionaries;
+		this.qty = qty;
+		this.querySlotMod64 = querySlotMod64;
+		this.querySlotMod128 = querySlotMod128;
+		this.unitPrice = unitPrice;
+	}
+
+	/**
+	 * @return new builder
+	 */
+	public static Builder builder() {
+		
+		return new Builder();
+	}
+	
+	/**
+	 * Concatenate batches (dictionary codes are re-mapped into the common dictionaries)
+	 * 
+	 * @param batches
+	 * @return
+	 */
+	public static OrderBatch concat(@NonNull final List<OrderBatch> batches) {
+		
+		Builder builder = builder();
+		
+		for (OrderBatch batch : batches) builder.addAll(batch);
+		
+		return builder.build();
+	}
+	
+	/**
+	 * @return number of rows
+	 */
+	public int size() {
+		
+		return size;
+	}
+	
+	public String getId(final int row) {
+		
+		return ids[checkRow(row)];
+	}
+
+	/**
+	 * @param column
+	 * @param row
+	 * @return dictionary code of the value, -1 for null
+	 */
+	public int getCode(@NonNull final Column column, final int row) {
+		
+		return codes[column.ordinal()][checkRow(row)];
+	}
+	
+	/**
+	 * @param column
+	 * @param row
+	 * @return decoded value
+	 */
+	public String getString(@NonNull final Column column, final int row) {
+		
+		int code = getCode(column, row);
+		
+		return code < 0 ? null : dictionaries[column.ordinal()][code];
+	}
+
+	/**
+	 * @param column
+	 * @return distinct values of the column; the code is the index in the array
+	 */
+	public String[] getDictionary(@NonNull final Column column) {
+		
+		return dictionaries[column.ordinal()].clone();
+	}
+	
+	public int getQty(final int row) {
+		
+		return qty[checkRow(row)];
+	}
+	
+	public int getQuerySlotMod64(final int row) {
+		
+		return querySlotMod64[checkRow(row)];
+	}
+	
+	public int getQuerySlotMod128(final int row) {
+		
+		return querySlotMod128[checkRow(row)];
+	}
+	
+	public double getUnitPrice(final int row) {
+		
+		return unitPrice[checkRow(row)];
+	}
+	
+	/**
+	 * Row view as SDK v1 Order (created on each call)
+	 * 
+	 * @param row
+	 * @return
+	 */
+	public Order toOrder(final int row) {
+		
+		return Order.builder()
+				.id(getId(row))
+				.category(getString(Column.CATEGORY, row))
+				.country(getString(Column.COUNTRY, row))
+				.ckCountryState(getString(Column.CK_COUNTRY_STATE, row))
+				.state(getString(Column.STATE, row))
+				.paymentType(getString(Column.PAYMENT_TYPE, row))
+				.sku(getString(Column.SKU, row))
+				.orderDate(getString(Column.ORDER_DATE, row))
+				.comment(getString(Column.COMMENT, row))
+				.querySlotMod64(querySlotMod64[row])
+				.querySlotMod128(querySlotMod128[row])
+				.qty(qty[row])
+				.pricePerUnit(unitPrice[row])
+				.build();
+	}
+
+	/**
+	 * Row view as SDK v2 Order (created on each call)
+	 * 
+	 * @param row
+	 * @return
+	 */
+	public software.amazon.samples.ddb.parallel.queries.sdk2.Order toOrderV2(final int row) {
+		
+		software.amazon.samples.ddb.parallel.queries.sdk2.Order order = new software.amazon.samples.ddb.parallel.queries.sdk2.Order();
+		
+		order.setId(getId(row));
+		order.setCategory(getString(Column.CATEGORY, row));
+		order.setCountry(getString(Column.COUNTRY, row));
+		order.setCkCountryState(getString(Column.CK_COUNTRY_STATE, row));
+		order.setState(getString(Column.STATE, row));
+		order.setPaymentType(getString(Column.PAYMENT_TYPE, row));
+		order.setSku(getString(Column.SKU, row));
+		order.setOrderDate(getString(Column.ORDER_DATE, row));
+		order.setComment(getString(Column.COMMENT, row));
+		order.setQuerySlotMod64(querySlotMod64[row]);
+		order.setQty(qty[row]);
+		order.setPricePerUnit(unitPrice[row]);
+		
+		return order;
+	}
+	
+	/**
+	 * @return list view of SDK v1 Orders, the Orders are created on access
+	 */
+	public List<Order> asOrders() {
+		
+		return new AbstractList<Order>() {
+
+			@Override
+			public Order get(int index) {
+				return toOrder(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @return list view of SDK v2 Orders, the Orders are created on access
+	 */
+	public List<software.amazon.samples.ddb.parallel.queries.sdk2.Order> asOrdersV2() {
+		
+		return new AbstractList<software.amazon.samples.ddb.parallel.queries.sdk2.Order>() {
+
+			@Override
+			public software.amazon.samples.ddb.parallel.queries.sdk2.Order get(int index) {
+				return toOrderV2(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+	
+	/**
+	 * @return approximate heap size of the batch in bytes (arrays, dictionaries and id strings; 
+	 * 			assumes compressed oops and Latin-1 strings)
+	 */
+	public long estimateHeapBytes() {
+		
+		long bytes = 16 + 16 + 4L * size; // ids array
+		
+		for (int r = 0; r < size; ++r) bytes += ids[r] == null ? 0 : 40 + ids[r].length();
+		
+		for (int c = 0; c < COLUMNS.length; ++c) {
+			
+			bytes += 16 + 4L * size;
+			
+			for (String value : dictionaries[c]) bytes += 40 + value.length();
+		}
+		
+		bytes += 3 * (16 + 4L * size) + (16 + 8L * size);
+		
+		return bytes;
+	}
+	
+	private int checkRow(final int row) {
+		
+		if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+		
+		return row;
+	}
+
+	/**
+	 * Growing batch builder (not thread safe: use one builder per sub-query, and concatenate the batches)
+	 */
+	public static final class Builder {
+		
+		private int size = 0;
+		private String[] ids = new String[64];
+		private int[][] codes = new int[COLUMNS.length][64];
+		private int[] qty = new int[64];
+		private int[] querySlotMod64 = new int[64];
+		private int[] querySlotMod128 = new int[64];
+		private double[] unitPrice = new double[64];
+		
+		@SuppressWarnings("unchecked")
+		private final Map<String, Integer>[] dictionaryCodes = new Map[COLUMNS.length];
+		@SuppressWarnings("unchecked")
+		private final List<String>[] dictionaries = new List[COLUMNS.length];
+		
+		private Builder() {
+			
+			for (int c = 0; c < COLUMNS.length; ++c) {
+				
+				dictionaryCodes[c] = new HashMap<>();
+				dictionaries[c] = new ArrayList<>();
+			}
+		}
+		
+		/**
+		 * Add DynamoDB item (SDK v1 attribute map)
+		 * 
+		 * @param item
+		 * @return
+		 */
+		public Builder addItem(@NonNull final Map<String, com.amazonaws.services.dynamodbv2.model.AttributeValue> item) {
+			
+			int row = nextRow();
+			
+			ids[row] = stringV1(item.get("id"));
+			
+			for (int c = 0; c < COLUMNS.length; ++c) {
+				codes[c][row] = encode(c, stringV1(item.get(COLUMNS[c].getAttributeName())));
+			}
+			
+			qty[row] = (int)numberV1(item.get("qty"));
+			querySlotMod64[row] = (int)numberV1(item.get("query-slot-mod64"));
+			querySlotMod128[row] = (int)numberV1(item.get("query-slot-mod128"));
+			unitPrice[row] = numberV1(item.get("unit-price"));
+			
+			return this;
+		}
+
+		/**
+		 * Add DynamoDB item (SDK v2 attribute map)
+		 * 
+		 * @param item
+		 * @return
+		 */
+		public Builder addItemV2(@NonNull final Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> item) {
+			
+			int row = nextRow();
+			
+			ids[row] = stringV2(item.get("id"));
+			
+			for (int c = 0; c < COLUMNS.length; ++c) {
+				codes[c][row] = encode(c, stringV2(item.get(COLUMNS[c].getAttributeName())));
+			}
+			
+			qty[row] = (int)numberV2(item.get("qty"));
+			querySlotMod64[row] = (int)numberV2(item.get("query-slot-mod64"));
+			querySlotMod128[row] = (int)numberV2(item.get("query-slot-mod128"));
+			unitPrice[row] = numberV2(item.get("unit-price"));
+			
+			return this;
+		}
+		
+		/**
+		 * Add SDK v1 Order
+		 * 
+		 * @param order
+		 * @return
+		 */
+		public Builder add(@NonNull final Order order) {
+			
+			int row = nextRow();
+			
+			ids[row] = order.getId();
+			codes[Column.CATEGORY.ordinal()][row] = encode(Column.CATEGORY.ordinal(), order.getCategory());
+			codes[Column.COUNTRY.ordinal()][row] = encode(Column.COUNTRY.ordinal(), order.getCountry());
+			codes[Column.CK_COUNTRY_STATE.ordinal()][row] = encode(Column.CK_COUNTRY_STATE.ordinal(), order.getCkCountryState());
+			codes[Column.STATE.ordinal()][row] = encode(Column.STATE.ordinal(), order.getState());
+			codes[Column.PAYMENT_TYPE.ordinal()][row] = encode(Column.PAYMENT_TYPE.ordinal(), order.getPaymentType());
+			codes[Column.SKU.ordinal()][row] = encode(Column.SKU.ordinal(), order.getSku());
+			codes[Column.ORDER_DATE.ordinal()][row] = encode(Column.ORDER_DATE.ordinal(), order.getOrderDate());
+			codes[Column.COMMENT.ordinal()][row] = encode(Column.COMMENT.ordinal(), order.getComment());
+			
+			qty[row] = order.getQty();
+			querySlotMod64[row] = order.getQuerySlotMod64();
+			querySlotMod128[row] = order.getQuerySlotMod128();
+			unitPrice[row] = order.getPricePerUnit();
+			
+			return this;
+		}
+		
+		/**
+		 * Add all rows of the batch, re-mapping its dictionary codes
+		 * 
+		 * @param batch
+		 * @return
+		 */
+		public Builder addAll(@NonNull final OrderBatch batch) {
+			
+			int[][] remap = new int[COLUMNS.length][];
+			
+			for (int c = 0; c < COLUMNS.length; ++c) {
+				
+				remap[c] = new int[batch.dictionaries[c].length];
+				
+				for (int code = 0; code < remap[c].length; ++code) remap[c][code] = encode(c, batch.dictionaries[c][code]);
+			}
+			
+			for (int r = 0; r < batch.size; ++r) {
+				
+				int row = nextRow();
+				
+				ids[row] = batch.ids[r];
+				
+				for (int c = 0; c < COLUMNS.length; ++c) {
+					
+					int code = batch.codes[c][r];
+					codes[c][row] = code < 0 ? -1 : remap[c][code];
+				}
+				
+				qty[row] = batch.qty[r];
+				querySlotMod64[row] = batch.querySlotMod64[r];
+				querySlotMod128[row] = batch.querySlotMod128[r];
+				unitPrice[row] = batch.unitPrice[r];
+			}
+			
+			return this;
+		}
+		
+		/**
+		 * @return number of rows added so far
+		 */
+		public int size() {
+			
+			return size;
+		}
+		
+		/**
+		 * Build the batch (arrays are trimmed to size); the builder should not be used afterwards
+		 * 
+		 * @return
+		 */
+		public OrderBatch build() {
+			
+			int[][] trimmedCodes = new int[COLUMNS.length][];
+			String[][] dictionaryArrays = new String[COLUMNS.length][];
+			
+			for (int c = 0; c < COLUMNS.length; ++c) {
+				
+				trimmedCodes[c] = Arrays.copyOf(codes[c], size);
+				dictionaryArrays[c] = dictionaries[c].toArray(new String[0]);
+			}
+			
+			return new OrderBatch(size, Arrays.copyOf(ids, size), trimmedCodes, dictionaryArrays, 
+					Arrays.copyOf(qty, size), Arrays.copyOf(querySlotMod64, size), Arrays.copyOf(querySlotMod128, size), 
+					Arrays.copyOf(unitPrice, size));
+		}
+		
+		/**
+		 * Reserve the next row, growing the arrays if needed
+		 * 
+		 * @return
+		 */
+		private int nextRow() {
+			
+			if (size == ids.length) {
+				
+				int capacity = ids.length * 2;
+				
+				ids = Arrays.copyOf(ids, capacity);
+				for (int c = 0; c < COLUMNS.length; ++c) codes[c] = Arrays.copyOf(codes[c], capacity);
+				qty = Arrays.copyOf(qty, capacity);
+				querySlotMod64 = Arrays.copyOf(querySlotMod64, capacity);
+				querySlotMod128 = Arrays.copyOf(querySlotMod128, capacity);
+				unitPrice = Arrays.copyOf(unitPrice, capacity);
+			}
+			
+			return size++;
+		}
+		
+		/**
+		 * Dictionary code of the value in the column, -1 for null
+		 * 
+		 * @param column
+		 * @param value
+		 * @return
+		 */
+		private int encode(final int column, final String value) {
+			
+			if (value == null) return -1;
+			
+			Integer code = dictionaryCodes[column].get(value);
+			
+			if (code == null) {
+				
+				code = dictionaries[column].size();
+				dictionaries[column].add(value);
+				dictionaryCodes[column].put(value, code);
+			}
+			
+			return code;
+		}
+		
+		private static String stringV1(final com.amazonaws.services.dynamodbv2.model.AttributeValue value) {
+			
+			return value == null ? null : value.getS();
+		}
+		
+		private static double numberV1(final com.amazonaws.services.dynamodbv2.model.AttributeValue value) {
+			
+			return value == null || value.getN() == null ? 0 : Double.parseDouble(value.getN());
+		}
+
+		private static String stringV2(final software.amazon.awssdk.services.dynamodb.model.AttributeValue value) {
+			
+			return value == null ? null : value.s();
+		}
+		
+		private static double numberV2(final software.amazon.awssdk.services.dynamodb.model.AttributeValue value) {
+			
+			return value == null || value.n() == null ? 0 : Double.parseDouble(value.n());
+		}
+	}
+}
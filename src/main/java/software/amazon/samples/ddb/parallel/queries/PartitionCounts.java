@@ -0,0 +1,118 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.NonNull;
+
+/**
+ * Item counts of a COUNT-only fan-out, per partition (sub-query): order-date prefix, query slot 
+ * or scan segment, in the sub-query order. Besides the total, the breakdown shows how the items 
+ * are spread across the sub-queries, which can be used for planning (see {@link PartitionPlanner}).
+ * 
+ * @author zorani
+ *
+ */
+public class PartitionCounts {
+
+	private final Map<String, Long> counts;
+	private final long total;
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param counts count per partition, in the sub-query order
+	 */
+	public PartitionCounts(@NonNull final Map<String, Long> counts) {
+		
+		this.counts = Collections.unmodifiableMap(new LinkedHashMap<>(counts));
+		this.total = counts.values().stream().mapToLong(Long::longValue).sum();
+	}
+	
+	/**
+	 * Pair the sub-query inputs with their counts
+	 * 
+	 * @param <T>
+	 * @param partitions sub-query inputs (prefixes, query slots, segments)
+	 * @param counts count per sub-query, in the same order
+	 * @return
+	 */
+	public static <T> PartitionCounts of(@NonNull final List<T> partitions, @NonNull final List<Long> counts) {
+		
+		if (partitions.size() != counts.size()) throw new IllegalArgumentException("Expected " + partitions.size() + " counts, got " + counts.size());
+		
+		Map<String, Long> map = new LinkedHashMap<>();
+		
+		for (int i = 0; i < partitions.size(); ++i) map.put(String.valueOf(partitions.get(i)), counts.get(i));
+		
+		return new PartitionCounts(map);
+	}
+	
+	/**
+	 * @return count per partition, in the sub-query order
+	 */
+	public Map<String, Long> getCounts() {
+		return counts;
+	}
+	
+	/**
+	 * @param partition
+	 * @return count of the partition, 0 if unknown
+	 */
+	public long getCount(final String partition) {
+		return counts.getOrDefault(partition, 0L);
+	}
+	
+	/**
+	 * @return total number of items
+	 */
+	public long getTotal() {
+		return total;
+	}
+	
+	/**
+	 * @return number of partitions (sub-queries)
+	 */
+	public int size() {
+		return counts.size();
+	}
+	
+	/**
+	 * @return largest partition count
+	 */
+	public long getMax() {
+		return counts.values().stream().mapToLong(Long::longValue).max().orElse(0);
+	}
+	
+	/**
+	 * @return largest partition count relative to the average (1.0 means evenly spread items); 
+	 * the fan-out takes about as long as its largest sub-query 
+	 */
+	public double getSkew() {
+		return total == 0 ? 0 : getMax() * (double)counts.size() / total;
+	}
+	
+	@Override
+	public String toString() {
+		return "PartitionCounts [total=" + total + ", partitions=" + counts.size() + ", max=" + getMax() + ", counts=" + counts + "]";
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.QueryPlan.PlannedRange;
+import software.amazon.samples.ddb.parallel.queries.jfr.QueryPlanEvent;
+
+/**
+ * Statistics driven planner for order-date sub-queries. 
+ * 
+ * Instead of using fixed 12/48/365 order-date prefixes, the planner samples the key distribution 
+ * by running COUNT-only queries for each month of the year, and then produces balanced order-date 
+ * ranges sized to a target item count per sub-query: busy months are split into several day ranges, 
+ * quiet consecutive months are merged into one range. The produced ranges always cover the entire year, 
+ * and there are never more of them than maxSubQueries (the smallest adjacent ranges are merged).
+ * 
+ * @author zorani
+ *
+ */
+public class PartitionPlanner {
+
+	/**
+	 * Counts items for the given partition value and the inclusive sort-key range
+	 */
+	@FunctionalInterface
+	public interface RangeCounter {
+		
+		long count(String partitionValue, SortKeyRange range);
+	}
+	
+	private RangeCounter rangeCounter = null;
+	
+	private long targetItemsPerQuery;
+	private int maxSubQueries;
+
+	private static final Logger LOG = LoggerFactory.getLogger(PartitionPlanner.class);
+
+	/**
+	 * C-tor
+	 * 
+	 * @param rangeCounter
+	 * @param targetItemsPerQuery
+	 * @param maxSubQueries
+	 */
+	public PartitionPlanner(@NonNull final RangeCounter rangeCounter, final long targetItemsPerQuery, final int maxSubQueries) {
+		
+		if (targetItemsPerQuery <= 0) throw new IllegalArgumentException("targetItemsPerQuery must be positive");
+		if (maxSubQueries <= 0) throw new IllegalArgumentException("maxSubQueries must be positive");
+		
+		this.rangeCounter = rangeCounter;
+		this.targetItemsPerQuery = targetItemsPerQuery;
+		this.maxSubQueries = maxSubQueries;
+	}
+
+	/**
+	 * C-tor, using default planner settings from {@link Config}
+	 * 
+	 * @param rangeCounter
+	 */
+	public PartitionPlanner(@NonNull final RangeCounter rangeCounter) {
+		
+		this(rangeCounter, Config.PLANNER_TARGET_ITEMS_PER_QUERY, Config.PLANNER_MAX_SUB_QUERIES);
+	}
+	
+	/**
+	 * Create the order-date plan for the given partition value (category) and year
+	 * 
+	 * @param partitionValue
+	 * @param year
+	 * @return
+	 */
+	public QueryPlan plan(final String partitionValue, final int year) {
+
+		if (StringUtils.isEmpty(partitionValue)) return null;
+		
+		QueryPlanEvent event = QueryPlanEvent.begin(partitionValue, year);
+		
+		// sample: one COUNT query per month, executed in parallel
+		List<SortKeyRange> months = IntStream.rangeClosed(1, 12)
+				.mapToObj(m -> monthRange(year, m))
+				.collect(Collectors.toList());
+		
+		Function<SortKeyRange, Long> monthCount = QueryMetrics.propagate(x -> rangeCounter.count(partitionValue, x));
+		
+		long[] monthCounts = months.parallelStream()
+				.mapToLong(monthCount::apply)
+				.toArray();
+		
+		long total = 0;
+		for (long c : monthCounts) total += c;
+
+		// raise the target, so that the plan is about maxSubQueries ranges at most (rounding can still exceed it)
+		long target = Math.max(targetItemsPerQuery, (total + maxSubQueries - 1) / maxSubQueries);
+
+		List<PlannedRange> ranges = new ArrayList<>();
+		
+		String mergedFrom = null;
+		String mergedTo = null;
+		long mergedCount = 0;
+
+		for (int i = 0; i < 12; ++i) {
+
+			SortKeyRange month = months.get(i);
+			long count = monthCounts[i];
+
+			// merge quiet consecutive months into a single range
+			if (count <= target) {
+				
+				if (mergedFrom != null && mergedCount + count > target) {
+					
+					ranges.add(new PlannedRange(SortKeyRange.of(mergedFrom, mergedTo), mergedCount));
+					mergedFrom = null;
+					mergedCount = 0;
+				}
+
+				if (mergedFrom == null) mergedFrom = month.getFrom();
+				mergedTo = month.getTo();
+				mergedCount += count;
+				
+				continue;
+			}
+
+			if (mergedFrom != null) {
+				
+				ranges.add(new PlannedRange(SortKeyRange.of(mergedFrom, mergedTo), mergedCount));
+				mergedFrom = null;
+				mergedCount = 0;
+			}
+
+			// busy month: split into (nearly) even day ranges, assuming uniform distribution within the month
+			ranges.addAll(splitMonth(year, i + 1, count, target));
+		}
+
+		if (mergedFrom != null) {
+			
+			ranges.add(new PlannedRange(SortKeyRange.of(mergedFrom, mergedTo), mergedCount));
+		}
+		
+		mergeSmallestAdjacent(ranges, maxSubQueries);
+
+		LOG.debug("Plan for [{}], year {}: {} sub-queries, {} estimated items (target {} per sub-query)", 
+				partitionValue, year, ranges.size(), total, target);
+		
+		event.created(ranges.size(), total, target);
+
+		return new QueryPlan(partitionValue, ranges);
+	}
+	
+	/**
+	 * Merge the adjacent ranges with the smallest combined estimate, until there are at most maxRanges ranges 
+	 * (the ranges are consecutive, so the merged ranges still cover the same sort keys)
+	 * 
+	 * @param ranges
+	 * @param maxRanges
+	 */
+	private static void mergeSmallestAdjacent(final List<PlannedRange> ranges, final int maxRanges) {
+		
+		while (ranges.size() > maxRanges) {
+			
+			int smallest = 0;
+			
+			for (int i = 1; i < ranges.size() - 1; ++i) {
+				
+				if (combinedEstimate(ranges, i) < combinedEstimate(ranges, smallest)) smallest = i;
+			}
+			
+			PlannedRange left = ranges.get(smallest);
+			PlannedRange right = ranges.remove(smallest + 1);
+			
+			ranges.set(smallest, new PlannedRange(SortKeyRange.of(left.getRange().getFrom(), right.getRange().getTo()), 
+					left.getEstimatedItems() + right.getEstimatedItems()));
+		}
+	}
+	
+	/**
+	 * @param ranges
+	 * @param i
+	 * @return estimated items of the ranges i and i + 1
+	 */
+	private static long combinedEstimate(final List<PlannedRange> ranges, final int i) {
+		
+		return ranges.get(i).getEstimatedItems() + ranges.get(i + 1).getEstimatedItems();
+	}
+
+	/**
+	 * Split a single month into day ranges of about target items each
+	 * 
+	 * @param year
+	 * @param month
+	 * @param count
+	 * @param target
+	 * @return
+	 */
+	private static List<PlannedRange> splitMonth(final int year, final int month, final long count, final long target) {
+		
+		LocalDate first = LocalDate.of(year, month, 1);
+		int days = first.lengthOfMonth();
+		int splits = (int)Math.min(days, (count + target - 1) / target);
+		
+		List<PlannedRange> ranges = new ArrayList<>(splits);
+		
+		for (int s = 0; s < splits; ++s) {
+			
+			int fromDay = 1 + (s * days) / splits;
+			int toDay = ((s + 1) * days) / splits;
+			
+			long estimated = (count * (toDay - fromDay + 1)) / days;
+			
+			ranges.add(new PlannedRange(
+					SortKeyRange.of(first.withDayOfMonth(fromDay).toString(), first.withDayOfMonth(toDay).toString()), 
+					estimated));
+		}
+		
+		return ranges;
+	}
+	
+	/**
+	 * Inclusive order-date range for the entire month
+	 * 
+	 * @param year
+	 * @param month
+	 * @return
+	 */
+	private static SortKeyRange monthRange(final int year, final int month) {
+		
+		LocalDate first = LocalDate.of(year, month, 1);
+		
+		return SortKeyRange.of(first.toString(), first.withDayOfMonth(first.lengthOfMonth()).toString());
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import lombok.NonNull;
+
+/**
+ * Set of attributes to fetch, converted into ProjectionExpression. Attribute names are always replaced 
+ * by #placeholders (names like order-date or unit-price can't be used in expressions directly).
+ * 
+ * Note: the read capacity is computed from the full item size, so the projection saves network bytes 
+ * and unmarshalling time, but not RCUs.
+ * 
+ * @author zorani
+ *
+ */
+public final class Projection {
+
+	/**
+	 * Attributes needed for sales summaries (no sku, country, query slots, nor comment)
+	 */
+	public static final Projection SUMMARY = of("id", "category", "order-date", "state", "payment-type", "qty", "unit-price");
+	
+	private final Set<String> attributes;
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param attributes
+	 */
+	private Projection(final Set<String> attributes) {
+		
+		this.attributes = Collections.unmodifiableSet(attributes);
+	}
+	
+	/**
+	 * Create projection of the given attribute names
+	 * 
+	 * @param attributes
+	 * @return
+	 */
+	public static Projection of(@NonNull final String... attributes) {
+		
+		return of(Arrays.asList(attributes));
+	}
+
+	/**
+	 * Create projection of the given attribute names
+	 * 
+	 * @param attributes
+	 * @return
+	 */
+	public static Projection of(@NonNull final Iterable<String> attributes) {
+		
+		Set<String> set = new LinkedHashSet<>();
+		
+		for (String attribute : attributes) {
+			
+			if (attribute == null || attribute.trim().isEmpty()) throw new IllegalArgumentException("empty attribute name");
+			set.add(attribute.trim());
+		}
+		
+		if (set.isEmpty()) throw new IllegalArgumentException("projection needs at least one attribute");
+		
+		return new Projection(set);
+	}
+	
+	/**
+	 * Create ProjectionExpression, adding the placeholders (#p0, #p1, ...) to the expression attribute names
+	 * 
+	 * @param expressionAttributeNames names of the request (modified)
+	 * @return
+	 */
+	public String toExpression(@NonNull final Map<String,String> expressionAttributeNames) {
+		
+		StringJoiner expression = new StringJoiner(", ");
+		int i = 0;
+		
+		for (String attribute : attributes) {
+			
+			String placeholder = "#p" + i++;
+			
+			expressionAttributeNames.put(placeholder, attribute);
+			expression.add(placeholder);
+		}
+		
+		return expression.toString();
+	}
+	
+	/**
+	 * @return attribute names
+	 */
+	public Set<String> getAttributes() {
+		
+		return attributes;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		
+		if (this == o) return true;
+		if (!(o instanceof Projection)) return false;
+		
+		return attributes.equals(((Projection)o).attributes);
+	}
+
+	@Override
+	public int hashCode() {
+		
+		return attributes.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		
+		return attributes.toString();
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Executes sub-queries of a fan-out query. Implementations are shared by all fan-out methods, 
+ * enforce a global concurrency cap, and allow each fan-out query to limit its own concurrency.
+ * 
+ * @author zorani
+ *
+ */
+public interface QueryExecutor extends AutoCloseable {
+
+	/**
+	 * Submit a single task
+	 * 
+	 * @param <R>
+	 * @param task
+	 * @return
+	 */
+	<R> CompletableFuture<R> submit(Supplier<R> task);
+
+	/**
+	 * Submit one task per input, with at most maxConcurrency tasks of this call running at the same time 
+	 * (the rest are started as the running ones complete). Futures are returned in the input order.
+	 * 
+	 * @param <T>
+	 * @param <R>
+	 * @param inputs
+	 * @param task
+	 * @param maxConcurrency
+	 * @return
+	 */
+	<T, R> List<CompletableFuture<R>> submitAll(List<T> inputs, Function<? super T, ? extends R> task, int maxConcurrency);
+
+	/**
+	 * Executor of a single fan-out query whose sub-queries are not known up-front (e.g. split on the fly): 
+	 * at most maxConcurrency of its tasks run at the same time, the rest wait in the order of submission 
+	 * and are started as the running ones complete
+	 * 
+	 * @param maxConcurrency
+	 * @return
+	 */
+	Executor window(int maxConcurrency);
+
+	/**
+	 * Run one task per input (see {@link #submitAll(List, Function, int)}), wait for all of them 
+	 * and flatten the results into a single list
+	 * 
+	 * @param <T>
+	 * @param <R>
+	 * @param inputs
+	 * @param task
+	 * @param maxConcurrency
+	 * @return
+	 */
+	default <T, R> List<R> invokeAllAndFlatten(List<T> inputs, Function<? super T, ? extends Collection<R>> task, int maxConcurrency) {
+		
+		List<CompletableFuture<Collection<R>>> futures = submitAll(inputs, task, maxConcurrency);
+		
+		return futures.stream()
+				.map(CompletableFuture::join)
+				.flatMap(Collection::stream)
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * @return maximum number of tasks running at the same time, across all callers
+	 */
+	int getMaxConcurrency();
+	
+	/**
+	 * Stop accepting new tasks, and wait for the running tasks to complete
+	 */
+	@Override
+	void close();
+}
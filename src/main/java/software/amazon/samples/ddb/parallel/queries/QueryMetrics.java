@@ -0,0 +1,357 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.jfr.SubQueryTraceEvent;
+
+/**
+ * Per sub-query instrumentation of the fan-out queries, published to the Micrometer registry and 
+ * summarized per query (see {@link QuerySummary}).
+ * 
+ * The query to measure runs within {@link #measure(String, Supplier)} (or {@link #measureAsync(String, Supplier)}); 
+ * the query executors, parallel streams and reactive merges carry the measured query over to the threads 
+ * running its sub-queries ({@link #propagate(Function)}), and every paginated query or scan segment started 
+ * there (SDK v1 OrdersDbUtils, SDK v2 OrdersAsyncDbUtils) records its metrics. Outside of a measured query 
+ * nothing is recorded, unless a JFR recording has the sub-query events enabled: then the sub-queries are 
+ * traced (and their queue wait counted) without the meters.
+ * 
+ * Meters (tags: query, index):
+ * - ddb.query.duration: duration of the measured query
+ * - ddb.subquery.duration, ddb.subquery.queue.wait, ddb.subquery.first.page: sub-query timers
+ * - ddb.subquery.pages, ddb.subquery.bytes, ddb.subquery.capacity, ddb.subquery.page.items: distribution summaries
+ * - ddb.subquery.retries: SDK retries of the page requests
+ * - ddb.subquery.unmarshal: conversion of the responses into attribute maps and Orders
+ * 
+ * @author zorani
+ *
+ */
+public class QueryMetrics {
+
+	public static final String QUERY_DURATION = "ddb.query.duration";
+	public static final String SUBQUERY_DURATION = "ddb.subquery.duration";
+	public static final String SUBQUERY_QUEUE_WAIT = "ddb.subquery.queue.wait";
+	public static final String SUBQUERY_FIRST_PAGE = "ddb.subquery.first.page";
+	public static final String SUBQUERY_PAGES = "ddb.subquery.pages";
+	public static final String SUBQUERY_PAGE_ITEMS = "ddb.subquery.page.items";
+	public static final String SUBQUERY_BYTES = "ddb.subquery.bytes";
+	public static final String SUBQUERY_CAPACITY = "ddb.subquery.capacity";
+	public static final String SUBQUERY_RETRIES = "ddb.subquery.retries";
+	public static final String SUBQUERY_UNMARSHAL = "ddb.subquery.unmarshal";
+	
+	/**
+	 * Measured query of the thread (null summary: only traced), with the time its sub-queries were submitted
+	 */
+	private static final class Binding {
+		
+		final QuerySummary summary;
+		final long submittedNanos;
+		
+		Binding(final QuerySummary summary, final long submittedNanos) {
+			
+			this.summary = summary;
+			this.submittedNanos = submittedNanos;
+		}
+	}
+	
+	private static final ThreadLocal<Binding> CURRENT = new ThreadLocal<>();
+	
+	private final MeterRegistry registry;
+
+	/**
+	 * C-tor
+	 * 
+	 * @param registry
+	 */
+	public QueryMetrics(@NonNull final MeterRegistry registry) {
+		
+		this.registry = registry;
+	}
+
+	/**
+	 * C-tor, with the in-memory registry
+	 */
+	public QueryMetrics() {
+		
+		this(new SimpleMeterRegistry());
+	}
+	
+	public MeterRegistry getRegistry() {
+		return registry;
+	}
+	
+	/**
+	 * Run the query, measuring its sub-queries
+	 * 
+	 * @param <T>
+	 * @param queryName name of the query (meters tag)
+	 * @param query runs the query and waits for its result
+	 * @return result of the query, with its summary
+	 */
+	public <T> Measured<T> measure(@NonNull final String queryName, @NonNull final Supplier<T> query) {
+		
+		QuerySummary summary = new QuerySummary(this, queryName);
+		Binding previous = CURRENT.get();
+		
+		CURRENT.set(new Binding(summary, System.nanoTime()));
+		
+		try {
+			return new Measured<>(query.get(), summary);
+		} finally {
+			
+			CURRENT.set(previous);
+			summary.close();
+		}
+	}
+	
+	/**
+	 * Run the non-blocking query, measuring its sub-queries until the returned future completes
+	 * 
+	 * @param <T>
+	 * @param queryName name of the query (meters tag)
+	 * @param query starts the query
+	 * @return result of the query, with its summary
+	 */
+	public <T> CompletableFuture<Measured<T>> measureAsync(@NonNull final String queryName, @NonNull final Supplier<CompletableFuture<T>> query) {
+		
+		QuerySummary summary = new QuerySummary(this, queryName);
+		Binding previous = CURRENT.get();
+		CompletableFuture<T> future;
+		
+		CURRENT.set(new Binding(summary, System.nanoTime()));
+		
+		try {
+			future = query.get();
+		} catch (RuntimeException e) {
+			
+			summary.close();
+			throw e;
+			
+		} finally {
+			CURRENT.set(previous);
+		}
+		
+		return future.whenComplete((r, t) -> summary.close())
+				.thenApply(r -> new Measured<>(r, summary));
+	}
+	
+	/**
+	 * Carry the measured query of the calling thread (if any) over to the thread running the task; 
+	 * the queue wait of the sub-queries started by the task is counted from now
+	 * 
+	 * @param <T>
+	 * @param <R>
+	 * @param task
+	 * @return
+	 */
+	public static <T, R> Function<T, R> propagate(@NonNull final Function<T, R> task) {
+		
+		Binding binding = submitted();
+		if (binding == null) return task;
+		
+		return input -> {
+			
+			Binding previous = CURRENT.get();
+			CURRENT.set(binding);
+			
+			try {
+				return task.apply(input);
+			} finally {
+				CURRENT.set(previous);
+			}
+		};
+	}
+	
+	/**
+	 * See {@link #propagate(Function)}
+	 * 
+	 * @param <R>
+	 * @param task
+	 * @return
+	 */
+	public static <R> Supplier<R> propagate(@NonNull final Supplier<R> task) {
+		
+		if (!isRecording()) return task;
+		
+		Function<Void, R> function = propagate(x -> task.get());
+		return () -> function.apply(null);
+	}
+	
+	/**
+	 * See {@link #propagate(Function)}
+	 * 
+	 * @param task
+	 * @return
+	 */
+	public static Runnable propagate(@NonNull final Runnable task) {
+		
+		if (!isRecording()) return task;
+		
+		Function<Void, Void> function = propagate(x -> { task.run(); return null; });
+		return () -> function.apply(null);
+	}
+	
+	/**
+	 * @return true if a query is measured on the calling thread
+	 */
+	public static boolean isMeasuring() {
+		
+		Binding binding = CURRENT.get();
+		return binding != null && binding.summary != null;
+	}
+	
+	/**
+	 * @return true if a query is measured on the calling thread, or the JFR sub-query events are enabled
+	 */
+	public static boolean isRecording() {
+		
+		return CURRENT.get() != null || SubQueryTraceEvent.isAnyEnabled();
+	}
+	
+	/**
+	 * Start the synchronous sub-query on the calling thread (bound to it until {@link SubQueryMetrics#finish()})
+	 * 
+	 * @param indexName index (or table) name
+	 * @param partitionValue
+	 * @param sortKeyRange sort key condition, e.g. the order-date prefix or range, query slot or scan segment
+	 * @return {@link SubQueryMetrics#NONE} if no query is measured on this thread and the sub-query is not traced
+	 */
+	public static SubQueryMetrics startSubQuery(final String indexName, final String partitionValue, final String sortKeyRange) {
+		
+		return start(CURRENT.get(), indexName, partitionValue, sortKeyRange).bind();
+	}
+	
+	/**
+	 * Sub-query of the measured query of the calling thread, started later on any thread (e.g. on subscription)
+	 * 
+	 * @param indexName index (or table) name
+	 * @param partitionValue
+	 * @param sortKeyRange sort key condition, e.g. the order-date prefix or range, query slot or scan segment
+	 * @return starts the sub-query; returns {@link SubQueryMetrics#NONE} if no query is measured on this thread 
+	 * 		and the sub-query is not traced
+	 */
+	public static Supplier<SubQueryMetrics> subQuery(final String indexName, final String partitionValue, final String sortKeyRange) {
+		
+		Binding binding = CURRENT.get();
+		
+		return () -> start(binding, indexName, partitionValue, sortKeyRange);
+	}
+	
+	/**
+	 * Start the sub-query of the measured query (if any), traced if the JFR sub-query events are enabled
+	 * 
+	 * @param binding measured query, null if none
+	 * @param indexName
+	 * @param partitionValue
+	 * @param sortKeyRange
+	 * @return
+	 */
+	private static SubQueryMetrics start(final Binding binding, final String indexName, final String partitionValue, final String sortKeyRange) {
+		
+		boolean traced = SubQueryTraceEvent.isAnyEnabled();
+		
+		if (binding == null) {
+			
+			return traced ? new SubQueryMetrics(null, indexName, partitionValue, sortKeyRange, 0, true) : SubQueryMetrics.NONE;
+		}
+		
+		return new SubQueryMetrics(binding.summary, indexName, partitionValue, sortKeyRange, System.nanoTime() - binding.submittedNanos, traced);
+	}
+	
+	/**
+	 * @return measured (or traced) query of the calling thread, submitted now; null if none
+	 */
+	private static Binding submitted() {
+		
+		Binding binding = CURRENT.get();
+		
+		if (binding != null) return new Binding(binding.summary, System.nanoTime());
+		
+		return SubQueryTraceEvent.isAnyEnabled() ? new Binding(null, System.nanoTime()) : null;
+	}
+	
+	void recordPage(final String queryName, final SubQueryMetrics subQuery, final int pageItems) {
+		
+		DistributionSummary.builder(SUBQUERY_PAGE_ITEMS).tags(tags(queryName, subQuery)).register(registry).record(pageItems);
+	}
+	
+	void recordSubQuery(final String queryName, final SubQueryMetrics subQuery) {
+		
+		Tags tags = tags(queryName, subQuery);
+		
+		Timer.builder(SUBQUERY_DURATION).tags(tags).register(registry).record(subQuery.getDurationNanos(), TimeUnit.NANOSECONDS);
+		Timer.builder(SUBQUERY_QUEUE_WAIT).tags(tags).register(registry).record(subQuery.getQueueWaitNanos(), TimeUnit.NANOSECONDS);
+		
+		if (subQuery.getTimeToFirstPageNanos() >= 0) {
+			Timer.builder(SUBQUERY_FIRST_PAGE).tags(tags).register(registry).record(subQuery.getTimeToFirstPageNanos(), TimeUnit.NANOSECONDS);
+		}
+		
+		Timer.builder(SUBQUERY_UNMARSHAL).tags(tags).register(registry).record(subQuery.getUnmarshalNanos(), TimeUnit.NANOSECONDS);
+		
+		DistributionSummary.builder(SUBQUERY_PAGES).tags(tags).register(registry).record(subQuery.getPages());
+		DistributionSummary.builder(SUBQUERY_BYTES).baseUnit("bytes").tags(tags).register(registry).record(subQuery.getBytes());
+		DistributionSummary.builder(SUBQUERY_CAPACITY).baseUnit("rcu").tags(tags).register(registry).record(subQuery.getCapacityUnits());
+		
+		registry.counter(SUBQUERY_RETRIES, tags).increment(subQuery.getRetries());
+	}
+	
+	void recordQuery(final String queryName, final long durationNanos) {
+		
+		registry.timer(QUERY_DURATION, "query", queryName).record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+	
+	private static Tags tags(final String queryName, final SubQueryMetrics subQuery) {
+		
+		return Tags.of("query", queryName, "index", subQuery.getIndexName() == null ? "none" : subQuery.getIndexName());
+	}
+	
+	/**
+	 * Result of the measured query, with its summary
+	 * 
+	 * @param <T>
+	 */
+	public static final class Measured<T> {
+		
+		private final T result;
+		private final QuerySummary summary;
+		
+		Measured(final T result, final QuerySummary summary) {
+			
+			this.result = result;
+			this.summary = summary;
+		}
+		
+		public T getResult() {
+			return result;
+		}
+		
+		public QuerySummary getSummary() {
+			return summary;
+		}
+	}
+}
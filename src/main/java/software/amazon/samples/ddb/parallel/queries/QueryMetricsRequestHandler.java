@@ -0,0 +1,87 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.http.HttpResponse;
+
+/**
+ * SDK v1 request handler adding the response bytes, retries and unmarshal time of the page requests 
+ * to the sub-query running on the calling thread (see {@link SubQueryMetrics#current()}); 
+ * requests outside of a measured sub-query are not touched.
+ * 
+ * Registered on the clients created by QueryUtils.init and Utils.init.
+ * 
+ * @author zorani
+ *
+ */
+public class QueryMetricsRequestHandler extends RequestHandler2 {
+
+	private static final HandlerContextKey<Integer> ATTEMPTS = new HandlerContextKey<>("QueryMetricsAttempts");
+	private static final HandlerContextKey<Long> UNMARSHAL_START = new HandlerContextKey<>("QueryMetricsUnmarshalStart");
+	
+	@Override
+	public void beforeAttempt(final HandlerBeforeAttemptContext context) {
+		
+		SubQueryMetrics subQuery = SubQueryMetrics.current();
+		if (!subQuery.isRecording()) return;
+		
+		Request<?> request = context.getRequest();
+		Integer attempts = request.getHandlerContext(ATTEMPTS);
+		
+		request.addHandlerContext(ATTEMPTS, attempts == null ? 1 : attempts + 1);
+		if (attempts != null) subQuery.retries(1);
+	}
+	
+	@Override
+	public HttpResponse beforeUnmarshalling(final Request<?> request, final HttpResponse httpResponse) {
+		
+		SubQueryMetrics subQuery = SubQueryMetrics.current();
+		if (!subQuery.isRecording()) return httpResponse;
+		
+		String contentLength = httpResponse.getHeaders().get("Content-Length");
+		
+		if (contentLength != null) {
+			
+			try {
+				subQuery.bytes(Long.parseLong(contentLength.trim()));
+			} catch (NumberFormatException e) {
+				// not counted
+			}
+		}
+		
+		request.addHandlerContext(UNMARSHAL_START, System.nanoTime());
+		return httpResponse;
+	}
+	
+	@Override
+	public void afterResponse(final Request<?> request, final Response<?> response) {
+		
+		SubQueryMetrics subQuery = SubQueryMetrics.current();
+		Long unmarshalStart = request.getHandlerContext(UNMARSHAL_START);
+		
+		if (!subQuery.isRecording() || unmarshalStart == null) return;
+		
+		subQuery.unmarshal(System.nanoTime() - unmarshalStart);
+		subQuery.responseReceived();
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Query plan, produced by the {@link PartitionPlanner}: list of balanced order-date ranges 
+ * together with the estimated number of items in each of them
+ * 
+ * @author zorani
+ *
+ */
+public class QueryPlan {
+
+	/**
+	 * Single planned sub-query range
+	 */
+	public static class PlannedRange {
+		
+		private final SortKeyRange range;
+		private final long estimatedItems;
+		
+		public PlannedRange(final SortKeyRange range, final long estimatedItems) {
+			
+			this.range = range;
+			this.estimatedItems = estimatedItems;
+		}
+
+		public SortKeyRange getRange() {
+			return range;
+		}
+
+		public long getEstimatedItems() {
+			return estimatedItems;
+		}
+		
+		@Override
+		public String toString() {
+			return range + " (~" + estimatedItems + ")";
+		}
+	}
+	
+	private final String partitionValue;
+	private final List<PlannedRange> plannedRanges;
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param partitionValue
+	 * @param plannedRanges
+	 */
+	public QueryPlan(final String partitionValue, final List<PlannedRange> plannedRanges) {
+		
+		this.partitionValue = partitionValue;
+		this.plannedRanges = Collections.unmodifiableList(plannedRanges);
+	}
+	
+	/**
+	 * @return the partition value (category) this plan was created for
+	 */
+	public String getPartitionValue() {
+		return partitionValue;
+	}
+
+	/**
+	 * @return planned ranges, with the item estimates
+	 */
+	public List<PlannedRange> getPlannedRanges() {
+		return plannedRanges;
+	}
+
+	/**
+	 * Sort-key ranges to run as sub-queries
+	 * 
+	 * @return
+	 */
+	public List<SortKeyRange> getRanges() {
+		
+		return plannedRanges.stream().map(PlannedRange::getRange).collect(Collectors.toList());
+	}
+	
+	/**
+	 * Total number of items the plan expects to read
+	 * 
+	 * @return
+	 */
+	public long getEstimatedItems() {
+		
+		return plannedRanges.stream().mapToLong(PlannedRange::getEstimatedItems).sum();
+	}
+	
+	/**
+	 * Number of sub-queries in the plan
+	 * 
+	 * @return
+	 */
+	public int size() {
+		
+		return plannedRanges.size();
+	}
+	
+	@Override
+	public String toString() {
+		
+		return "QueryPlan [" + partitionValue + "]: " + plannedRanges;
+	}
+}
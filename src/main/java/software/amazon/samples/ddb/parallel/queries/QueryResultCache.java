@@ -0,0 +1,293 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import lombok.NonNull;
+
+/**
+ * Bounded cache of query results, keyed by index, partition value and sort-key range. 
+ * 
+ * Least recently used entries are evicted when the cache holds more than max entries, or more than 
+ * max weight (total number of cached items). 
+ * 
+ * Closed period policy: only the ranges which end before the current period (month) are cached, 
+ * because their data doesn't change any more; they are kept for the TTL. The ranges touching the 
+ * current period are never cached, so they are always queried.
+ * 
+ * @author zorani
+ *
+ * @param <T>
+ */
+public class QueryResultCache<T> {
+
+	/**
+	 * Cache key: index, partition value and the inclusive sort-key range
+	 */
+	public static final class Key {
+		
+		private final String indexName;
+		private final String partitionValue;
+		private final SortKeyRange range;
+		
+		/**
+		 * C-tor
+		 * 
+		 * @param indexName
+		 * @param partitionValue
+		 * @param range
+		 */
+		public Key(@NonNull final String indexName, @NonNull final String partitionValue, @NonNull final SortKeyRange range) {
+			
+			this.indexName = indexName;
+			this.partitionValue = partitionValue;
+			this.range = range;
+		}
+		
+		public String getIndexName() {
+			return indexName;
+		}
+
+		public String getPartitionValue() {
+			return partitionValue;
+		}
+
+		public SortKeyRange getRange() {
+			return range;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			
+			Key other = (Key)o;
+			return indexName.equals(other.indexName) && partitionValue.equals(other.partitionValue) && range.equals(other.range);
+		}
+
+		@Override
+		public int hashCode() {
+			
+			return Objects.hash(indexName, partitionValue, range);
+		}
+
+		@Override
+		public String toString() {
+			
+			return indexName + "/" + partitionValue + "/" + range;
+		}
+	}
+	
+	/**
+	 * Cached items and the expiration time
+	 */
+	private static final class Entry<T> {
+		
+		private final List<T> items;
+		private final long expiresAtMillis;
+		
+		Entry(final List<T> items, final long expiresAtMillis) {
+			
+			this.items = items;
+			this.expiresAtMillis = expiresAtMillis;
+		}
+	}
+	
+	private final int maxEntries;
+	private final long maxWeight;
+	private final Duration closedPeriodTtl;
+	private final Clock clock;
+	
+	// access order: the first entry is the least recently used one
+	private final LinkedHashMap<Key, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight = 0;
+	
+	private long hitCount = 0;
+	private long missCount = 0;
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param maxEntries
+	 * @param maxWeight max total number of cached items
+	 * @param closedPeriodTtl how long the closed period ranges are kept
+	 * @param clock used for TTL and to find out the current period
+	 */
+	public QueryResultCache(final int maxEntries, final long maxWeight, @NonNull final Duration closedPeriodTtl, @NonNull final Clock clock) {
+		
+		if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive");
+		if (maxWeight <= 0) throw new IllegalArgumentException("maxWeight must be positive");
+		
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.closedPeriodTtl = closedPeriodTtl;
+		this.clock = clock;
+	}
+	
+	/**
+	 * C-tor, using the defaults from {@link Config}
+	 */
+	public QueryResultCache() {
+		
+		this(Config.CACHE_MAX_ENTRIES, Config.CACHE_MAX_WEIGHT, Duration.ofMinutes(Config.CACHE_CLOSED_PERIOD_TTL_MINUTES), Clock.systemUTC());
+	}
+	
+	/**
+	 * Closed period policy: the range can be cached if it ends before the current month
+	 * 
+	 * @param range
+	 * @return
+	 */
+	public boolean isCacheable(final SortKeyRange range) {
+		
+		if (range == null) return false;
+		
+		String currentPeriodStart = LocalDate.now(clock).withDayOfMonth(1).toString();
+		
+		return range.getTo().compareTo(currentPeriodStart) < 0;
+	}
+	
+	/**
+	 * Get the cached items
+	 * 
+	 * @param key
+	 * @return unmodifiable list of the items, or null if not cached (or expired)
+	 */
+	public synchronized List<T> get(@NonNull final Key key) {
+		
+		Entry<T> entry = entries.get(key);
+		
+		if (entry != null && entry.expiresAtMillis <= clock.millis()) {
+			
+			remove(key);
+			entry = null;
+		}
+		
+		if (entry == null) {
+			
+			++missCount;
+			return null;
+		}
+		
+		++hitCount;
+		return entry.items;
+	}
+	
+	/**
+	 * Cache the items, if the range is cacheable (closed period) and the items fit into the max weight; 
+	 * evicts the least recently used entries if needed
+	 * 
+	 * @param key
+	 * @param items
+	 */
+	public void put(@NonNull final Key key, @NonNull final List<T> items) {
+		
+		if (!isCacheable(key.getRange()) || items.size() > maxWeight) return;
+		
+		List<T> copy = Collections.unmodifiableList(new ArrayList<>(items));
+		long expiresAtMillis = clock.millis() + closedPeriodTtl.toMillis();
+		
+		synchronized (this) {
+			
+			remove(key);
+			
+			entries.put(key, new Entry<>(copy, expiresAtMillis));
+			weight += copy.size();
+			
+			Iterator<Map.Entry<Key, Entry<T>>> eldest = entries.entrySet().iterator();
+			
+			while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+				
+				weight -= eldest.next().getValue().items.size();
+				eldest.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Remove the entry (caller holds the lock)
+	 * 
+	 * @param key
+	 */
+	private void remove(final Key key) {
+		
+		Entry<T> removed = entries.remove(key);
+		
+		if (removed != null) weight -= removed.items.size();
+	}
+	
+	/**
+	 * Remove all entries
+	 */
+	public synchronized void invalidateAll() {
+		
+		entries.clear();
+		weight = 0;
+	}
+	
+	/**
+	 * @return max total number of cached items
+	 */
+	public long getMaxWeight() {
+		
+		return maxWeight;
+	}
+	
+	/**
+	 * @return number of cached entries
+	 */
+	public synchronized int size() {
+		
+		return entries.size();
+	}
+	
+	/**
+	 * @return total number of cached items
+	 */
+	public synchronized long getWeight() {
+		
+		return weight;
+	}
+	
+	/**
+	 * @return number of cache hits
+	 */
+	public synchronized long getHitCount() {
+		
+		return hitCount;
+	}
+	
+	/**
+	 * @return number of cache misses
+	 */
+	public synchronized long getMissCount() {
+		
+		return missCount;
+	}
+}
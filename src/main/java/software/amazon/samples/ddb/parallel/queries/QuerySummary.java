@@ -0,0 +1,181 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Summary of a single measured query (see {@link QueryMetrics#measure(String, java.util.function.Supplier)}): 
+ * its duration and the metrics of all its sub-queries, with the totals and maximums across them, so a slow 
+ * fan-out shows whether the time went to queueing, a hot partition, retries or unmarshalling.
+ * 
+ * Sub-queries are added as they finish, from any thread.
+ * 
+ * @author zorani
+ *
+ */
+public class QuerySummary {
+
+	private final QueryMetrics metrics;
+	private final String queryName;
+	private final long startNanos = System.nanoTime();
+	private volatile long durationNanos = -1;
+	
+	private final Queue<SubQueryMetrics> subQueries = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * C-tor
+	 * 
+	 * @param metrics
+	 * @param queryName
+	 */
+	QuerySummary(final QueryMetrics metrics, final String queryName) {
+		
+		this.metrics = metrics;
+		this.queryName = queryName;
+	}
+	
+	void page(final SubQueryMetrics subQuery, final int pageItems) {
+		
+		metrics.recordPage(queryName, subQuery, pageItems);
+	}
+	
+	void finished(final SubQueryMetrics subQuery) {
+		
+		subQueries.add(subQuery);
+		metrics.recordSubQuery(queryName, subQuery);
+	}
+	
+	void close() {
+		
+		durationNanos = System.nanoTime() - startNanos;
+		metrics.recordQuery(queryName, durationNanos);
+	}
+	
+	public String getQueryName() {
+		return queryName;
+	}
+	
+	/**
+	 * @return duration of the query, -1 if still running
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+	
+	/**
+	 * @return finished sub-queries, in the order they finished
+	 */
+	public List<SubQueryMetrics> getSubQueries() {
+		return new ArrayList<>(subQueries);
+	}
+	
+	public int getSubQueryCount() {
+		return subQueries.size();
+	}
+	
+	public long getPages() {
+		return sum(SubQueryMetrics::getPages);
+	}
+	
+	public long getItems() {
+		return sum(SubQueryMetrics::getItems);
+	}
+	
+	public long getBytes() {
+		return sum(SubQueryMetrics::getBytes);
+	}
+	
+	public long getRetries() {
+		return sum(SubQueryMetrics::getRetries);
+	}
+	
+	public long getUnmarshalNanos() {
+		return sum(SubQueryMetrics::getUnmarshalNanos);
+	}
+	
+	public double getCapacityUnits() {
+		return subQueries.stream().mapToDouble(SubQueryMetrics::getCapacityUnits).sum();
+	}
+	
+	public long getMaxQueueWaitNanos() {
+		return max(SubQueryMetrics::getQueueWaitNanos);
+	}
+	
+	public long getMaxTimeToFirstPageNanos() {
+		return max(SubQueryMetrics::getTimeToFirstPageNanos);
+	}
+	
+	public long getMaxSubQueryNanos() {
+		return max(SubQueryMetrics::getDurationNanos);
+	}
+	
+	/**
+	 * @return average items per page
+	 */
+	public double getItemsPerPage() {
+		
+		long pages = getPages();
+		return pages == 0 ? 0 : getItems() / (double)pages;
+	}
+	
+	/**
+	 * @param n
+	 * @return the n longest running sub-queries, the longest first
+	 */
+	public List<SubQueryMetrics> getSlowestSubQueries(final int n) {
+		
+		return subQueries.stream()
+				.sorted(Comparator.comparingLong(SubQueryMetrics::getDurationNanos).reversed())
+				.limit(n)
+				.collect(Collectors.toList());
+	}
+	
+	private long sum(final ToLongFunction<SubQueryMetrics> metric) {
+		
+		return subQueries.stream().mapToLong(metric).sum();
+	}
+	
+	private long max(final ToLongFunction<SubQueryMetrics> metric) {
+		
+		return subQueries.stream().mapToLong(metric).max().orElse(0);
+	}
+
+	@Override
+	public String toString() {
+		
+		return String.format(Locale.ROOT, "%s: %.1f ms, %d sub-queries (slowest %.1f ms, max queue wait %.1f ms, max first page %.1f ms), "
+				+ "%d pages (%.1f items/page), %d items, %d bytes, %.1f RCU, %d retries, unmarshal %.1f ms", 
+				queryName, millis(durationNanos), getSubQueryCount(), millis(getMaxSubQueryNanos()), millis(getMaxQueueWaitNanos()), 
+				millis(getMaxTimeToFirstPageNanos()), getPages(), getItemsPerPage(), getItems(), getBytes(), getCapacityUnits(), 
+				getRetries(), millis(getUnmarshalNanos()));
+	}
+	
+	private static double millis(final long nanos) {
+		
+		return nanos < 0 ? -1 : nanos / (double)TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -25,7 +25,15 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.auth.profile.ProfileCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
@@ -44,6 +52,22 @@ public class QueryUtils {
 	 */
 	public static AmazonDynamoDB init() {
 		
+		return init(false);
+	}
+	
+	/**
+	 * Initialize DynamoDB client
+	 * 
+	 * @param concurrencyLimited true: client of the queries with the {@link AimdConcurrencyLimiter}, which 
+	 * 			retries the throttled requests itself (see {@link #concurrencyLimitedClientConfiguration()})
+	 * @return
+	 */
+	public static AmazonDynamoDB init(final boolean concurrencyLimited) {
+		
+		// endpoint override, e.g. the local stand-in
+		AmazonDynamoDB endpointOverride = initEndpointOverride(concurrencyLimited);
+		if (endpointOverride != null) return endpointOverride;
+		
         ProfileCredentialsProvider credentialsProvider = new ProfileCredentialsProvider();
         
         try {
@@ -59,14 +83,67 @@ public class QueryUtils {
         }
         
         // instantiate DynamoDB client
-        AmazonDynamoDB dynamoDB = AmazonDynamoDBClientBuilder.standard()
+        AmazonDynamoDBClientBuilder builder = AmazonDynamoDBClientBuilder.standard()
             .withCredentials(credentialsProvider)
             .withRegion("us-east-1")
-            .build();
+            .withRequestHandlers(new QueryMetricsRequestHandler());
+        
+        if (concurrencyLimited) builder.withClientConfiguration(concurrencyLimitedClientConfiguration());
 
-        return dynamoDB;
+        return builder.build();
     }
 		
+	/**
+	 * Initialize DynamoDB client of the endpoint override (system property ddb.endpoint), e.g. the local stand-in: 
+	 * any credentials are accepted
+	 * 
+	 * @return null without the endpoint override
+	 */
+	public static AmazonDynamoDB initEndpointOverride() {
+		
+		return initEndpointOverride(false);
+	}
+	
+	/**
+	 * Initialize DynamoDB client of the endpoint override (system property ddb.endpoint), e.g. the local stand-in: 
+	 * any credentials are accepted
+	 * 
+	 * @param concurrencyLimited true: the SDK does not retry throttled requests (see {@link #init(boolean)})
+	 * @return null without the endpoint override
+	 */
+	public static AmazonDynamoDB initEndpointOverride(final boolean concurrencyLimited) {
+		
+		String endpoint = System.getProperty(Config.DDB_ENDPOINT_PROPERTY);
+		
+		if (endpoint == null || endpoint.isEmpty()) return null;
+			
+		AmazonDynamoDBClientBuilder builder = AmazonDynamoDBClientBuilder.standard()
+				.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, "us-east-1"))
+				.withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("local", "local")))
+				.withRequestHandlers(new QueryMetricsRequestHandler());
+		
+		if (concurrencyLimited) builder.withClientConfiguration(concurrencyLimitedClientConfiguration());
+		
+		return builder.build();
+	}
+	
+	/**
+	 * Client configuration for the {@link AimdConcurrencyLimiter}: the limiter owns the retries of the throttled 
+	 * requests, so it sees every throttling response (and backs off), and its max attempts are the only ones. 
+	 * The other retryable errors (5xx, I/O) are still retried by the SDK, as with the DynamoDB default policy.
+	 * 
+	 * @return
+	 */
+	public static ClientConfiguration concurrencyLimitedClientConfiguration() {
+		
+		RetryPolicy.RetryCondition notThrottled = (request, exception, retriesAttempted) -> 
+				!(exception instanceof AmazonServiceException && RetryUtils.isThrottlingException((AmazonServiceException)exception))
+				&& PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(request, exception, retriesAttempted);
+		
+		return new ClientConfiguration().withRetryPolicy(new RetryPolicy(notThrottled, 
+				PredefinedRetryPolicies.DYNAMODB_DEFAULT_BACKOFF_STRATEGY, PredefinedRetryPolicies.DYNAMODB_DEFAULT_MAX_ERROR_RETRY, false));
+	}
+		
 	/**
 	 * Get the mapper config
 	 * 
@@ -144,6 +221,50 @@ public class QueryUtils {
 				.collect(Collectors.toList());
 	}	
 	
+	/**
+	 * Convert the order-date prefix (such as 2020, 2020-03, 2020-03-1, 2020-03-15) into the inclusive range of dates
+	 * 
+	 * @param orderDatePrefix
+	 * @return range of dates, or null if no valid date has the prefix (such as 2020-02-3, 2020-02-30 or 2020-13), 
+	 * 			or the prefix is not one of the above forms
+	 */
+	public static SortKeyRange orderDatePrefixToRange(final String orderDatePrefix) {
+		
+		String prefix = orderDatePrefix.trim();
+		
+		if (prefix.length() != 4 && prefix.length() != 7 && prefix.length() != 9 && prefix.length() != 10) return null;
+		
+		int year = Integer.parseInt(prefix.substring(0, 4));
+
+		if (prefix.length() == 4) return SortKeyRange.of(LocalDate.of(year, 1, 1).toString(), LocalDate.of(year, 12, 31).toString());
+		
+		int monthOfYear = Integer.parseInt(prefix.substring(5, 7));
+		if (monthOfYear < 1 || monthOfYear > 12) return null;
+		
+		LocalDate month = LocalDate.of(year, monthOfYear, 1);
+		int fromDay = 1;
+		int toDay = month.lengthOfMonth();
+
+		if (prefix.length() == 9) {
+
+			// tens of the day, such as 2020-03-1 (days 10-19)
+			int tens = Character.digit(prefix.charAt(8), 10);
+			fromDay = Math.max(1, tens * 10);
+			toDay = Math.min(toDay, tens * 10 + 9);
+		}
+		else if (prefix.length() == 10) {
+			
+			int day = Integer.parseInt(prefix.substring(8, 10));
+			if (day < 1 || day > toDay) return null;
+			
+			fromDay = toDay = day;
+		}
+		
+		if (fromDay > toDay) return null;
+		
+		return SortKeyRange.of(month.withDayOfMonth(fromDay).toString(), month.withDayOfMonth(toDay).toString());
+	}
+	
 	/**
 	 * Generate list of 64 values, from 0 to 63 (inclusive)
 	 * 
@@ -171,4 +292,18 @@ public class QueryUtils {
 
 		return querySlotValuesList;
 	}	
+	
+	/**
+	 * Query-slot attribute for the number of query slots (its GSI is "category-" + attribute + "-index")
+	 * 
+	 * @param querySlots 64 or 128
+	 * @return
+	 */
+	public static String querySlotAttribute(final int querySlots) {
+		
+		if (querySlots == 64) return "query-slot-mod64";
+		if (querySlots == 128) return "query-slot-mod128";
+		
+		throw new IllegalArgumentException("Unsupported number of query slots: " + querySlots + " (64 or 128)");
+	}
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Client-side read capacity budget: token bucket of RCUs, refilled at the configured rate (RCU/s), 
+ * with the burst of one second worth of capacity.
+ * 
+ * The cost of a page is known only from the ConsumedCapacity of its response, so every page request 
+ * first reserves the estimated cost (average of the recent pages) and waits until the bucket can cover 
+ * it; when the response arrives, the reservation is settled with the actual consumed capacity. This 
+ * paces the new page requests so the job holds the RCU/s ceiling, even with many concurrent sub-queries.
+ * 
+ * The budget also counts the consumed capacity; with the rate of zero it only counts, without pacing. 
+ * The count is one for all the queries using the budget: to attribute the capacity to a single query 
+ * running next to others, measure it (see {@link QuerySummary#getCapacityUnits()}).
+ * 
+ * @author zorani
+ *
+ */
+public class ReadCapacityBudget {
+
+	private final double ratePerSecond;
+	private final double burst;
+	
+	private double tokens;
+	private long lastRefillNanos;
+	private double estimatedPageCost = 1.0;
+	
+	private final DoubleAdder totalConsumed = new DoubleAdder();
+	private final DoubleAdder consumedSinceDrain = new DoubleAdder();
+
+	/**
+	 * C-tor
+	 * 
+	 * @param ratePerSecond RCU/s ceiling; zero or negative value means no limit (only counting)
+	 */
+	public ReadCapacityBudget(final double ratePerSecond) {
+		
+		this.ratePerSecond = ratePerSecond;
+		this.burst = Math.max(ratePerSecond, 1.0);
+		this.tokens = burst;
+		this.lastRefillNanos = System.nanoTime();
+	}
+
+	/**
+	 * C-tor, using the default budget from {@link Config}
+	 */
+	public ReadCapacityBudget() {
+		
+		this(Config.READ_CAPACITY_BUDGET_RCU_PER_SECOND);
+	}
+	
+	/**
+	 * Reserve the estimated cost of the next page, waiting (blocking) until the budget allows it
+	 * 
+	 * @return reserved capacity, to be passed to {@link #settle(double, double)}
+	 */
+	public double reserve() {
+		
+		double[] reservation = reserveNow();
+		
+		if (reservation[1] > 0) {
+			
+			try {
+				TimeUnit.NANOSECONDS.sleep((long)reservation[1]);
+			} catch (InterruptedException e) {
+				
+				settle(reservation[0], 0);
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+		}
+		
+		return reservation[0];
+	}
+	
+	/**
+	 * Reserve the estimated cost of the next page, the future completes when the budget allows it (non-blocking)
+	 * 
+	 * @return reserved capacity, to be passed to {@link #settle(double, double)}
+	 */
+	public CompletableFuture<Double> reserveAsync() {
+		
+		double[] reservation = reserveNow();
+
+		if (reservation[1] <= 0) return CompletableFuture.completedFuture(reservation[0]);
+		
+		return CompletableFuture.supplyAsync(() -> reservation[0], 
+				CompletableFuture.delayedExecutor((long)reservation[1], TimeUnit.NANOSECONDS));
+	}
+	
+	/**
+	 * Take the estimate out of the bucket, and compute how long the caller has to wait
+	 * 
+	 * @return reserved capacity and the wait time (nanoseconds)
+	 */
+	private synchronized double[] reserveNow() {
+		
+		if (ratePerSecond <= 0) return new double[] { 0, 0 };
+		
+		refill();
+		
+		double reserved = estimatedPageCost;
+		tokens -= reserved;
+		
+		// wait until the bucket gets back to zero
+		double waitNanos = tokens >= 0 ? 0 : (-tokens / ratePerSecond) * 1e9;
+		
+		return new double[] { reserved, waitNanos };
+	}
+	
+	/**
+	 * Settle the reservation with the actual capacity consumed by the page (zero if the request failed)
+	 * 
+	 * @param reserved
+	 * @param consumed
+	 */
+	public void settle(final double reserved, final double consumed) {
+		
+		totalConsumed.add(consumed);
+		consumedSinceDrain.add(consumed);
+		
+		if (ratePerSecond <= 0) return;
+		
+		synchronized (this) {
+			
+			tokens += reserved - consumed;
+			
+			if (consumed > 0) estimatedPageCost = 0.8 * estimatedPageCost + 0.2 * consumed;
+		}
+	}
+	
+	/**
+	 * Refill the bucket for the elapsed time
+	 */
+	private void refill() {
+		
+		long now = System.nanoTime();
+		
+		tokens = Math.min(burst, tokens + ratePerSecond * (now - lastRefillNanos) / 1e9);
+		lastRefillNanos = now;
+	}
+
+	/**
+	 * @return RCU/s ceiling (zero or negative if not limited)
+	 */
+	public double getRatePerSecond() {
+		
+		return ratePerSecond;
+	}
+	
+	/**
+	 * @return total capacity consumed so far
+	 */
+	public double getTotalConsumedCapacity() {
+		
+		return totalConsumed.sum();
+	}
+	
+	/**
+	 * Capacity consumed by all the queries using the budget since the previous call; it equals the capacity 
+	 * of a single fan-out query only if no other query uses the budget at the same time
+	 * 
+	 * @return
+	 */
+	public double drainConsumedCapacity() {
+		
+		return consumedSinceDrain.sumThenReset();
+	}
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import lombok.NonNull;
+
+/**
+ * Hedged page requests: if the page request has not answered within the delay (percentile of the recent 
+ * page latencies), a duplicate request is sent and the first successful response wins. 
+ * 
+ * The duplicates are limited by the global hedge budget: every request earns the budget ratio of a hedge 
+ * (for example, 0.05), so the hedges never add more than that share of requests, and the read capacity 
+ * consumed by them. 
+ * 
+ * Blocking requests: the first attempt runs on the calling thread, only the duplicate runs on the bounded pool 
+ * of hedge threads (if the pool is busy, the request is not hedged). If the first attempt wins, the duplicate is 
+ * cancelled (not started, or interrupted); if the duplicate wins, the calling thread is interrupted, so the client 
+ * gives up the first attempt at its next interruption point (e.g. the retry backoff of a throttled request). 
+ * A losing response that was already sent is still received (and charged), but ignored.
+ * 
+ * @author zorani
+ *
+ */
+public class RequestHedger {
+
+	private static final int SAMPLES = 512;
+	private static final int RECOMPUTE_EVERY = 32;
+	private static final int MIN_SAMPLES = 32;
+	private static final double MAX_BUDGET_TOKENS = 10;
+	
+	private final double percentile;
+	private final long minDelayNanos;
+	private final double budgetRatio;
+
+	// ring buffer of recent latencies, the delay is recomputed every few samples
+	private final long[] latencies = new long[SAMPLES];
+	private int samples = 0;
+	private volatile long delayNanos;
+	
+	private double budgetTokens = MAX_BUDGET_TOKENS;
+	
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong hedgedCount = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+
+	// duplicates of the blocking requests run here (at most maxHedgesInFlight at once, no queue)
+	private final ThreadPoolExecutor hedgeExecutor;
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param percentile of the recent page latencies used as the hedge delay, (0, 1)
+	 * @param initialDelayMillis delay used until enough latencies are collected
+	 * @param minDelayMillis
+	 * @param budgetRatio max hedged requests per request
+	 * @param maxHedgesInFlight max duplicates of blocking requests running at the same time
+	 */
+	public RequestHedger(final double percentile, final long initialDelayMillis, final long minDelayMillis, final double budgetRatio, 
+							final int maxHedgesInFlight) {
+		
+		if (percentile <= 0 || percentile >= 1) throw new IllegalArgumentException("percentile must be in (0, 1)");
+		if (budgetRatio < 0) throw new IllegalArgumentException("budgetRatio must not be negative");
+		if (maxHedgesInFlight <= 0) throw new IllegalArgumentException("maxHedgesInFlight must be positive");
+		
+		this.percentile = percentile;
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+		this.budgetRatio = budgetRatio;
+		this.delayNanos = Math.max(minDelayNanos, TimeUnit.MILLISECONDS.toNanos(initialDelayMillis));
+		
+		this.hedgeExecutor = new ThreadPoolExecutor(0, maxHedgesInFlight, 60, TimeUnit.SECONDS, 
+				new SynchronousQueue<>(), BoundedQueryExecutor.daemonThreadFactory("ddb-hedge"));
+	}
+
+	/**
+	 * C-tor, using the defaults from {@link Config}
+	 */
+	public RequestHedger() {
+		
+		this(Config.HEDGE_LATENCY_PERCENTILE, Config.HEDGE_INITIAL_DELAY_MS, Config.HEDGE_MIN_DELAY_MS, Config.HEDGE_BUDGET_RATIO, 
+				Config.HEDGE_MAX_IN_FLIGHT);
+	}
+	
+	/**
+	 * Execute blocking request with hedging: the first attempt on the calling thread, the duplicate (if any) 
+	 * on a hedge thread; the request can be called twice, concurrently
+	 * 
+	 * @param <R>
+	 * @param request
+	 * @return
+	 */
+	public <R> R execute(@NonNull final Supplier<R> request) {
+		
+		earnBudget();
+		
+		BlockingHedge<R> hedge = new BlockingHedge<>(request, Thread.currentThread());
+		CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(hedge::start);
+		
+		final long start = System.nanoTime();
+		R response = null;
+		RuntimeException error = null;
+		
+		try {
+			response = request.get();
+		} catch (RuntimeException e) {
+			error = e;
+		}
+		
+		if (hedge.firstAttemptDone(error == null)) {
+			
+			// the duplicate won (this thread was interrupted to give up the first attempt)
+			hedgeWins.incrementAndGet();
+			return hedge.result.join();
+		}
+		
+		if (error == null) {
+			
+			record(System.nanoTime() - start);
+			return response;
+		}
+		
+		if (!hedge.started) throw error;
+		
+		// the first attempt failed: the response of the running duplicate, if it succeeds
+		try {
+			R hedged = hedge.result.join();
+			
+			hedgeWins.incrementAndGet();
+			return hedged;
+			
+		} catch (CompletionException | CancellationException e) {
+			throw error;
+		}
+	}
+	
+	/**
+	 * Duplicate of a blocking request, started after the hedge delay (if the first attempt is still running)
+	 * 
+	 * @param <R>
+	 */
+	private class BlockingHedge<R> {
+		
+		private final Supplier<R> request;
+		private final Thread caller;
+		private final CompletableFuture<R> result = new CompletableFuture<>();
+		
+		// guarded by this
+		private boolean firstAttemptRunning = true;
+		private boolean firstAttemptSucceeded = false;
+		private boolean callerInterrupted = false;
+		private Future<?> task = null;
+		
+		private volatile boolean started = false;
+		
+		BlockingHedge(final Supplier<R> request, final Thread caller) {
+			
+			this.request = request;
+			this.caller = caller;
+		}
+		
+		/**
+		 * Start the duplicate on a hedge thread, if the first attempt is still running and the budget allows
+		 */
+		void start() {
+			
+			synchronized (this) {
+				
+				if (!firstAttemptRunning || !tryHedge()) return;
+				started = true;
+			}
+			
+			try {
+				Future<?> f = hedgeExecutor.submit(this::run);
+				
+				synchronized (this) {
+					
+					task = f;
+					if (firstAttemptSucceeded) f.cancel(true);
+				}
+				
+			} catch (RejectedExecutionException e) {
+				
+				// all hedge threads are busy: not hedged
+				refundHedge();
+				result.cancel(false);
+			}
+		}
+		
+		/**
+		 * Run the duplicate; if it wins while the first attempt is running, interrupt the caller
+		 */
+		private void run() {
+			
+			synchronized (this) {
+				
+				if (firstAttemptSucceeded) {
+					
+					result.cancel(false);
+					return;
+				}
+			}
+			
+			final long start = System.nanoTime();
+			
+			try {
+				R response = request.get();
+				record(System.nanoTime() - start);
+				
+				synchronized (this) {
+					
+					if (result.complete(response) && firstAttemptRunning) {
+						
+						callerInterrupted = true;
+						caller.interrupt();
+					}
+				}
+				
+			} catch (Throwable t) {
+				result.completeExceptionally(t);
+			}
+		}
+		
+		/**
+		 * The first attempt has returned (or failed): cancel the duplicate if the first attempt succeeded, and 
+		 * clear the interrupt of the caller if the duplicate won
+		 * 
+		 * @param succeeded
+		 * @return true if the duplicate won while the first attempt was running
+		 */
+		boolean firstAttemptDone(final boolean succeeded) {
+			
+			boolean duplicateWon;
+			
+			synchronized (this) {
+				
+				firstAttemptRunning = false;
+				firstAttemptSucceeded = succeeded;
+				duplicateWon = callerInterrupted;
+				
+				if (succeeded && !duplicateWon && task != null) task.cancel(true);
+			}
+			
+			if (duplicateWon) Thread.interrupted();
+			
+			return duplicateWon;
+		}
+	}
+	
+	/**
+	 * Execute async request with hedging; the request can be called twice
+	 * 
+	 * @param <R>
+	 * @param request
+	 * @return the first successful response, or the error if all attempts failed
+	 */
+	public <R> CompletableFuture<R> executeAsync(@NonNull final Supplier<CompletableFuture<R>> request) {
+		
+		CompletableFuture<R> result = new CompletableFuture<>();
+		AtomicInteger pending = new AtomicInteger(1);
+		
+		earnBudget();
+		attempt(request, result, pending, false);
+		
+		CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+
+			if (result.isDone() || !tryHedge()) return;
+			
+			pending.incrementAndGet();
+			attempt(request, result, pending, true);
+		});
+		
+		return result;
+	}
+
+	/**
+	 * Single attempt: the first success completes the result; a failure only if no other attempt is pending
+	 * 
+	 * @param <R>
+	 * @param request
+	 * @param result
+	 * @param pending
+	 * @param hedge
+	 */
+	private <R> void attempt(final Supplier<CompletableFuture<R>> request, final CompletableFuture<R> result, 
+							final AtomicInteger pending, final boolean hedge) {
+		
+		final long start = System.nanoTime();
+		CompletableFuture<R> response;
+		
+		try {
+			response = request.get();
+		} catch (Throwable t) {
+			response = CompletableFuture.failedFuture(t);
+		}
+		
+		response.whenComplete((r, t) -> {
+			
+			boolean last = pending.decrementAndGet() == 0;
+			
+			if (t == null) {
+				
+				record(System.nanoTime() - start);
+				if (result.complete(r) && hedge) hedgeWins.incrementAndGet();
+			}
+			else if (last) {
+				
+				result.completeExceptionally(t);
+			}
+		});
+	}
+	
+	/**
+	 * Every request earns its share of a hedge
+	 */
+	private synchronized void earnBudget() {
+		
+		requestCount.incrementAndGet();
+		budgetTokens = Math.min(MAX_BUDGET_TOKENS, budgetTokens + budgetRatio);
+	}
+	
+	/**
+	 * @return true if the budget allows another hedge
+	 */
+	private synchronized boolean tryHedge() {
+		
+		if (budgetTokens < 1) return false;
+		
+		budgetTokens -= 1;
+		hedgedCount.incrementAndGet();
+		
+		return true;
+	}
+	
+	/**
+	 * Give back the hedge that was not sent
+	 */
+	private synchronized void refundHedge() {
+		
+		budgetTokens = Math.min(MAX_BUDGET_TOKENS, budgetTokens + 1);
+		hedgedCount.decrementAndGet();
+	}
+	
+	/**
+	 * Record the latency of a successful attempt, and recompute the delay every few samples
+	 * 
+	 * @param latencyNanos
+	 */
+	private void record(final long latencyNanos) {
+		
+		long[] snapshot = null;
+		
+		synchronized (latencies) {
+			
+			latencies[samples % SAMPLES] = latencyNanos;
+			++samples;
+			
+			if (samples >= MIN_SAMPLES && samples % RECOMPUTE_EVERY == 0) {
+				snapshot = Arrays.copyOf(latencies, Math.min(samples, SAMPLES));
+			}
+		}
+		
+		if (snapshot != null) {
+			
+			Arrays.sort(snapshot);
+			delayNanos = Math.max(minDelayNanos, snapshot[(int)Math.min(snapshot.length - 1, (long)(percentile * snapshot.length))]);
+		}
+	}
+
+	/**
+	 * @return current hedge delay in milliseconds
+	 */
+	public long getDelayMillis() {
+		
+		return TimeUnit.NANOSECONDS.toMillis(delayNanos);
+	}
+	
+	/**
+	 * @return total number of requests
+	 */
+	public long getRequestCount() {
+		
+		return requestCount.get();
+	}
+	
+	/**
+	 * @return number of hedged (duplicated) requests
+	 */
+	public long getHedgedCount() {
+		
+		return hedgedCount.get();
+	}
+	
+	/**
+	 * @return number of requests answered first by the hedge
+	 */
+	public long getHedgeWins() {
+		
+		return hedgeWins.get();
+	}
+}
@@ -17,22 +17,42 @@
  */
 package software.amazon.samples.ddb.parallel.queries;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 
 import lombok.NonNull;
 import software.amazon.samples.ddb.parallel.queries.sdk1.CompletableFuturesQuery;
 import software.amazon.samples.ddb.parallel.queries.sdk1.Order;
 import software.amazon.samples.ddb.parallel.queries.sdk1.OrdersDbUtils;
 import software.amazon.samples.ddb.parallel.queries.sdk1.ParallelStreamQuery;
+import software.amazon.samples.ddb.parallel.queries.sdk1.StreamingQuery;
 import software.amazon.samples.ddb.parallel.queries.sdk1.Utils;
+import software.amazon.samples.ddb.parallel.queries.sdk2.ParallelStreamQueryV2;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 
 /**
  * Run benchmarks class
@@ -42,10 +62,21 @@ import software.amazon.samples.ddb.parallel.queries.sdk1.Utils;
  */
 public class RunBenchmarks {
 
+	private DynamoDBMapper dbMapper = null;
+	private DynamoDBMapper limitedDbMapper = null;
 	private OrdersDbUtils ordersDbUtils = null;
+	private ReadCapacityBudget capacityBudget = null;
 	
 	private ParallelStreamQuery ps = null;
 	private CompletableFuturesQuery cf = null;
+	private StreamingQuery streaming = null;
+	
+	// SDK v2 strategies, registered only with the client
+	private DynamoDbAsyncClient dynamoDBV2 = null;
+	
+	// settings of the comparison benchmarks
+	private int warmupIterations = Config.BENCHMARK_WARMUP_ITERATIONS;
+	private QueryMetrics queryMetrics = null;
 
 	private static final Logger LOG = LoggerFactory.getLogger(RunBenchmarks.class);
 
@@ -55,208 +86,555 @@ public class RunBenchmarks {
 	 * @param dynamoDB
 	 * @param dbMapper
 	 */
-	public RunBenchmarks(@NonNull final DynamoDBMapper dbMapper) {
+	public RunBenchmarks(@NonNull final AmazonDynamoDB dynamoDB, @NonNull final DynamoDBMapper dbMapper) {
 			
-		this.ordersDbUtils = new OrdersDbUtils(dbMapper);
+		this.dbMapper = dbMapper;
+		this.limitedDbMapper = dbMapper;
+		
+		// all approaches share the budget, which paces them (if limited) and counts consumed capacity per query
+		this.capacityBudget = new ReadCapacityBudget();
+		this.ordersDbUtils = new OrdersDbUtils(dbMapper, dynamoDB).withReadCapacityBudget(capacityBudget);
+		
+		this.ps = new ParallelStreamQuery(ordersDbUtils);
+		this.cf = new CompletableFuturesQuery(ordersDbUtils, BoundedQueryExecutor.shared(), Config.QUERY_MAX_CONCURRENCY);
+		this.streaming = new StreamingQuery(ordersDbUtils, BoundedQueryExecutor.streaming(), Config.STREAM_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Discarded calls per caller before the measured ones of the comparison benchmarks
+	 * 
+	 * @param warmupIterations
+	 * @return
+	 */
+	public RunBenchmarks withWarmupIterations(final int warmupIterations) {
+		
+		this.warmupIterations = warmupIterations;
+		return this;
+	}
+	
+	/**
+	 * Record the sub-queries of the measured calls of the comparison benchmarks
+	 * 
+	 * @param queryMetrics
+	 * @return
+	 */
+	public RunBenchmarks withQueryMetrics(final QueryMetrics queryMetrics) {
+		
+		this.queryMetrics = queryMetrics;
+		return this;
+	}
+	
+	/**
+	 * Client of the AIMD limiter strategy, which should not retry the throttled requests (see {@link Utils#init(boolean)}); 
+	 * without it, the strategy uses the default client
+	 * 
+	 * @param limitedDynamoDB
+	 * @return
+	 */
+	public RunBenchmarks withConcurrencyLimitedClient(@NonNull final AmazonDynamoDB limitedDynamoDB) {
+		
+		this.limitedDbMapper = new DynamoDBMapper(limitedDynamoDB);
+		return this;
+	}
+	
+	/**
+	 * Also register the SDK v2 strategies, querying with the given client
+	 * 
+	 * @param dynamoDBV2
+	 * @return
+	 */
+	public RunBenchmarks withSdkV2Client(final DynamoDbAsyncClient dynamoDBV2) {
 		
-		this.ps = new ParallelStreamQuery(dbMapper);
-		this.cf = new CompletableFuturesQuery(dbMapper);
+		this.dynamoDBV2 = dynamoDBV2;
+		return this;
 	}
 	
+	/**
+	 * Benchmark harness with all the strategies registered; the Orders count of the 
+	 * partition planner strategy is the number of the planned ranges
+	 * 
+	 * @return
+	 */
+	public BenchmarkHarness createHarness() {
+		
+		// 365 sub-queries at once, in-flight page requests adapted by the AIMD limiter
+		CompletableFuturesQuery cfLimited = new CompletableFuturesQuery(
+				new OrdersDbUtils(limitedDbMapper).withConcurrencyLimiter(new AimdConcurrencyLimiter()).withReadCapacityBudget(capacityBudget), 
+				BoundedQueryExecutor.shared(), 365);
+		
+		// oversized order-date sub-queries split after 2 pages (opt-in, the other rows never split)
+		ParallelStreamQuery psSplit = ps.withWorkSplitting(2);
+
+		BenchmarkHarness harness = new BenchmarkHarness()
+				.withReadCapacityBudget(capacityBudget)
+				.withStrategy("scan-parallel-16", () -> ordersDbUtils.listAllOrdersUsingParallelScan(16).size())
+				.withStrategy("scan-parallel-16-sport", () -> ordersDbUtils.listAllOrdersUsingParallelScan("SPORT", 16).size())
+				.withStrategy("planner-count", () -> ps.createQueryPlan("SPORT").size())
+				.withStrategy("ps-planned-dates", () -> ps.getOrdersByCategoryAndPlannedDatesUsingParallelStream("SPORT").size())
+				.withStrategy("cf-planned-dates", () -> cf.getOrdersUsingCategoryAndPlannedDatesQueryWithCompletableFuture("SPORT").size())
+				.withStrategy("cf-dates-365-aimd", () -> cfLimited.getOrdersUsingCategoryAndDates365QueryWithCompletableFuture("SPORT").size())
+				.withStrategy("streaming-dates-48", () -> {
+					
+					// Orders are counted as they arrive, never materialized as a list
+					try (Stream<Order> stream = streaming.streamOrdersByCategoryAndDates48("SPORT")) {
+						return (int) stream.count();
+					}
+				})
+				.withStrategy("sequential", () -> ordersDbUtils.listOrdersByCategoryAndOrderDate("SPORT", "2020").size())
+				.withStrategy("ps-dates-12", () -> ps.getOrdersByCategoryAndDates12UsingParallelStream("SPORT").size())
+				.withStrategy("ps-dates-48", () -> ps.getOrdersByCategoryAndDates48UsingParallelStream("SPORT").size())
+				.withStrategy("ps-dates-48-split", () -> psSplit.getOrdersByCategoryAndDates48UsingParallelStream("SPORT").size())
+				.withStrategy("ps-dates-365", () -> ps.getOrdersByCategoryAndDates365UsingParallelStream("SPORT").size())
+				.withStrategy("ps-slots-64", () -> ps.getOrdersByCategoryAndQuerySlot64UsingParallelStream("SPORT").size())
+				.withStrategy("ps-slots-128", () -> ps.getOrdersByCategoryAndQuerySlot128UsingParallelStream("SPORT").size())
+				.withStrategy("cf-dates-12", () -> cf.getOrdersUsingCategoryAndDates12QueryWithCompletableFuture("SPORT").size())
+				.withStrategy("cf-dates-48", () -> cf.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT").size())
+				.withStrategy("cf-dates-365", () -> cf.getOrdersUsingCategoryAndDates365QueryWithCompletableFuture("SPORT").size())
+				.withStrategy("cf-slots-64", () -> cf.getOrdersUsingCategoryAndQuerySlots64WithCompletableFuture("SPORT").size())
+				.withStrategy("cf-slots-128", () -> cf.getOrdersUsingCategoryAndQuerySlots128WithCompletableFuture("SPORT").size());
+		
+		return dynamoDBV2 == null ? harness : withSdkV2Strategies(harness, dynamoDBV2, capacityBudget);
+	}
+	
+	/**
+	 * Register the SDK v2 strategies (names prefixed with "v2-") on the harness; the queries go through 
+	 * the capacity budget, except the enhanced client ones ("v2-dates-12-ps")
+	 * 
+	 * @param harness
+	 * @param dynamoDB
+	 * @param capacityBudget null: not paced
+	 * @return the harness
+	 */
+	public static BenchmarkHarness withSdkV2Strategies(@NonNull final BenchmarkHarness harness, @NonNull final DynamoDbAsyncClient dynamoDB, 
+													final ReadCapacityBudget capacityBudget) {
+		
+		ParallelStreamQueryV2 v2 = new ParallelStreamQueryV2(dynamoDB, Config.STATIC_TABLE_SCHEMA)
+				.withReadCapacityBudget(capacityBudget);
+		
+		// the projection is a setting of the query object, not of the call: own instance for the summary rows
+		ParallelStreamQueryV2 v2Summary = new ParallelStreamQueryV2(dynamoDB, Config.STATIC_TABLE_SCHEMA)
+				.withReadCapacityBudget(capacityBudget)
+				.withProjection(Projection.SUMMARY);
+		
+		return harness
+				.withStrategy("v2-dates-12-ps", () -> v2.getOrdersByCategoryAndDateUsingParallelStream("SPORT").size())
+				.withStrategy("v2-dates-48-sequential", () -> v2.getOrdersByCategoryAndDateUsingReactiveStream("SPORT").size())
+				.withStrategy("v2-dates-48-sequential-summary", () -> v2Summary.getOrdersByCategoryAndDateUsingReactiveStream("SPORT").size())
+				.withStrategy("v2-dates-48-merge", () -> v2.getOrdersByCategoryAndDates48UsingReactiveMerge("SPORT").join().size())
+				.withStrategy("v2-dates-48-batch", () -> v2.getOrderBatchByCategoryAndDates48UsingReactiveMerge("SPORT").join().size())
+				.withStrategy("v2-dates-48-by-state", 
+						() -> (int) v2.aggregateByCategoryAndDates48UsingReactiveMerge("SPORT", OrderAggregate.GroupBy.STATE).join().getTotalOrderCount())
+				.withStrategy("v2-dates-48-count", () -> (int) v2.countByCategoryAndDates("SPORT", 
+						QueryUtils.generate48YearMonthDatePrefixes(Config.YEAR), Config.QUERY_MAX_CONCURRENCY).join().getTotal())
+				.withStrategy("v2-scan-parallel-16-sport", () -> v2.listAllOrdersUsingParallelScan("SPORT", 16).size());
+	}
+	
+	/**
+	 * Run all strategies with the default harness settings and print the results table
+	 */
 	public void run() {
 		
 		LOG.info("Run benchmark tests ...");
 		
-		int cores = Runtime.getRuntime().availableProcessors();
-		System.out.println("Number of cores: " + cores);
 		System.out.println("Number of threads in common ForkJoinPool: " + ForkJoinPool.commonPool().getParallelism());
+		System.out.println("Read capacity budget (RCU/s, 0: no limit): " + capacityBudget.getRatePerSecond());
 
-		System.out.printf("%n%n");
-		System.out.printf("  Approach                                        Orders     Time (ms) %n");
-		System.out.printf("+-----------------------------------------------+----------+----------+%n");
-
-		System.gc();
-
-		long start = System.currentTimeMillis();
-		List<Order> orders = ordersDbUtils.listAllOrdersUsingParallelScan(16);
-		System.out.printf("| Scan (parallel) entire table - 16 segments    | %8d | %8d |%n", 
-				orders.size(), System.currentTimeMillis() - start);
-
-		orders = null;
-		System.gc();
-
-		start = System.currentTimeMillis();
-		orders = ordersDbUtils.listAllOrdersUsingParallelScan("SPORT", 16);
-		System.out.printf("| Scan (parallel) entire table; SPORT category  | %8d | %8d |%n", 
-				orders.size(), System.currentTimeMillis() - start);
-
-		orders = null;
-		System.gc();
-
-		long[] test1 = new long[10]; long[] test2 = new long[10]; long[] test3 = new long[10];
-		long[] test4 = new long[10]; long[] test5 = new long[10]; long[] test6 = new long[10];
-		long[] test7 = new long[10]; long[] test8 = new long[10]; long[] test9 = new long[10];
+		BenchmarkHarness harness = createHarness();
+		harness.write(harness.run(), BenchmarkHarness.Format.TABLE, System.out);
+	}
+	
+	/**
+	 * Harness of a comparison benchmark: the shared budget and the settings of the main harness 
+	 * (warmup, query metrics), with the given callers and calls
+	 * 
+	 * @param callers
+	 * @param callsPerCaller
+	 * @return
+	 */
+	private BenchmarkHarness comparisonHarness(final int callers, final int callsPerCaller) {
 		
-		long[] totalTime = new long[10];
+		return new BenchmarkHarness()
+				.withReadCapacityBudget(capacityBudget)
+				.withQueryMetrics(queryMetrics)
+				.withWarmupIterations(warmupIterations)
+				.withIterations(callsPerCaller)
+				.withCallers(callers);
+	}
+	
+	/**
+	 * Run all strategies of the comparison harness and print the results table
+	 * 
+	 * @param title
+	 * @param harness
+	 */
+	private static void runComparison(final String title, final BenchmarkHarness harness) {
 		
-		for(int i = 0; i < 10; ++i) {
-
-			System.gc();
-
-			System.out.printf("%n Test: [%2d]%n", i + 1);
-			System.out.printf("  Approach                                        Orders     Time (ms)  Avg (ms)  %n");
-			System.out.printf("+-----------------------------------------------+----------+----------+----------+%n");
-
-			//System.out.printf("%n%n");
-			start = System.currentTimeMillis();
-			orders = ordersDbUtils.listOrdersByCategoryAndOrderDate("SPORT", "2020");
-			test1[i] = System.currentTimeMillis() - start;
-			totalTime[1] += test1[i];
-			System.out.printf("| Traditional query (single thread) approach    | %8d | %8d | %8d |%n", 
-					orders.size(), test1[i], totalTime[1] / (i+1));
-
-			orders = null;
-			System.gc();
-
-			start = System.currentTimeMillis();
-			List<Order> orders2 = ps.getOrdersByCategoryAndDates12UsingParallelStream("SPORT");
-			test2[i] = System.currentTimeMillis() - start;
-			totalTime[2] += test2[i];
-			System.out.printf("| Category/Dates  12 parallel streams           | %8d | %8d | %8d |%n", 
-					orders2.size(), test2[i], totalTime[2] / (i+1));
-
-			orders2 = null;
-			System.gc();
-
-			start = System.currentTimeMillis();
-			List<Order> orders3 = ps.getOrdersByCategoryAndDates48UsingParallelStream("SPORT");
-			test3[i] = System.currentTimeMillis() - start;
-			totalTime[3] += test3[i];
-			System.out.printf("| Category/Dates  48 parallel streams           | %8d | %8d | %8d |%n", 
-					orders3.size(), test3[i], totalTime[3] / (i+1));
+		System.out.printf("%n%n %s%n", title);
+		harness.write(harness.run(), BenchmarkHarness.Format.TABLE, System.out);
+	}
+	
+	/**
+	 * Concurrent callers benchmark: many callers run the same fan-out query at the same time; 
+	 * reports the latency percentiles per call, and the peak number of live JVM threads
+	 * 
+	 * @param callers
+	 * @param callsPerCaller
+	 */
+	public void runConcurrentCallers(final int callers, final int callsPerCaller) {
 
-			orders3 = null;
-			System.gc();
+		LOG.info("Run concurrent callers benchmark ...");
+		
+		ParallelStreamQuery psShared = new ParallelStreamQuery(dbMapper, BoundedQueryExecutor.shared());
+
+		runComparison(String.format("Concurrent callers: %d, calls per caller: %d, shared executor max concurrency: %d", 
+				callers, callsPerCaller, BoundedQueryExecutor.shared().getMaxConcurrency()), 
+				comparisonHarness(callers, callsPerCaller)
+					.withStrategy("ps-dates-48-common-pool", () -> ps.getOrdersByCategoryAndDates48UsingParallelStream("SPORT").size())
+					.withStrategy("ps-dates-48-shared-executor", () -> psShared.getOrdersByCategoryAndDates48UsingParallelStream("SPORT").size())
+					.withStrategy("cf-dates-48", () -> cf.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT").size())
+					.withStrategy("cf-dates-365", () -> cf.getOrdersUsingCategoryAndDates365QueryWithCompletableFuture("SPORT").size()));
+	}
+	
+	/**
+	 * Virtual threads vs ForkJoinPool: latency of a single call, and the peak number of platform threads 
+	 * (virtual threads are not counted, only their carrier threads are)
+	 * 
+	 * @param callsPerApproach
+	 */
+	public void runVirtualThreadsComparison(final int callsPerApproach) {
 
-			start = System.currentTimeMillis();
-			List<Order> orders4 = ps.getOrdersByCategoryAndDates365UsingParallelStream("SPORT");
-			test4[i] = System.currentTimeMillis() - start;
-			totalTime[4] += test4[i];
-			System.out.printf("| Category/Dates 365 parallel streams           | %8d | %8d | %8d |%n", 
-					orders4.size(), test4[i], totalTime[4] / (i+1));
+		if (!VirtualThreads.isSupported()) {
+			
+			System.out.printf("%n Virtual threads are not supported (Java 21+ runtime and JAR built with profile java21 are required)%n");
+			return;
+		}
+		
+		LOG.info("Run virtual threads benchmark ...");
 
-			orders4 = null;
-			System.gc();
+		try (BoundedQueryExecutor virtualExecutor = BoundedQueryExecutor.withVirtualThreads(Config.QUERY_EXECUTOR_MAX_CONCURRENCY)) {
+			
+			// one virtual thread per sub-query, including all 365 daily sub-queries
+			CompletableFuturesQuery vt = new CompletableFuturesQuery(dbMapper, virtualExecutor, Config.QUERY_EXECUTOR_MAX_CONCURRENCY);
+	
+			runComparison("Virtual threads vs ForkJoinPool", comparisonHarness(1, callsPerApproach)
+					.withStrategy("ps-dates-12", () -> ps.getOrdersByCategoryAndDates12UsingParallelStream("SPORT").size())
+					.withStrategy("vt-dates-12", () -> vt.getOrdersUsingCategoryAndDates12QueryWithCompletableFuture("SPORT").size())
+					.withStrategy("ps-dates-48", () -> ps.getOrdersByCategoryAndDates48UsingParallelStream("SPORT").size())
+					.withStrategy("vt-dates-48", () -> vt.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT").size())
+					.withStrategy("ps-dates-365", () -> ps.getOrdersByCategoryAndDates365UsingParallelStream("SPORT").size())
+					.withStrategy("vt-dates-365", () -> vt.getOrdersUsingCategoryAndDates365QueryWithCompletableFuture("SPORT").size())
+					.withStrategy("ps-slots-64", () -> ps.getOrdersByCategoryAndQuerySlot64UsingParallelStream("SPORT").size())
+					.withStrategy("vt-slots-64", () -> vt.getOrdersUsingCategoryAndQuerySlots64WithCompletableFuture("SPORT").size())
+					.withStrategy("ps-slots-128", () -> ps.getOrdersByCategoryAndQuerySlot128UsingParallelStream("SPORT").size())
+					.withStrategy("vt-slots-128", () -> vt.getOrdersUsingCategoryAndQuerySlots128WithCompletableFuture("SPORT").size()));
+		}
+	}
+	
+	/**
+	 * Hedged vs not hedged page requests: p50/p99 latency of the 48-way fan-out, and the extra read capacity 
+	 * 
+	 * @param calls
+	 */
+	public void runHedgingComparison(final int calls) {
 
-			start = System.currentTimeMillis();
-			List<Order> orders5 = ps.getOrdersByCategoryAndQuerySlot64UsingParallelStream("SPORT");
-			test5[i] = System.currentTimeMillis() - start;
-			totalTime[5] += test5[i];
-			System.out.printf("| Query slost Mod 64 parallel streams           | %8d | %8d | %8d |%n", 
-					orders5.size(), test5[i], totalTime[5] / (i+1));
+		LOG.info("Run request hedging benchmark ...");
+		
+		RequestHedger hedger = new RequestHedger();
+		CompletableFuturesQuery cfHedged = new CompletableFuturesQuery(
+				new OrdersDbUtils(dbMapper).withRequestHedger(hedger).withReadCapacityBudget(capacityBudget), 
+				BoundedQueryExecutor.shared(), Config.QUERY_MAX_CONCURRENCY);
 
-			orders5 = null;
-			System.gc();
+		runComparison("Request hedging", comparisonHarness(1, calls)
+				.withStrategy("cf-dates-48", () -> cf.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT").size())
+				.withStrategy("cf-dates-48-hedged", () -> cfHedged.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT").size()));
 
-			start = System.currentTimeMillis();
-			List<Order> orders6 = cf.getOrdersUsingCategoryAndDates12QueryWithCompletableFuture("SPORT");
-			test6[i] = System.currentTimeMillis() - start;
-			totalTime[6] += test6[i];
-			System.out.printf("| Category/Dates  12 Compleatable Futures       | %8d | %8d | %8d |%n", 
-					orders6.size(), test6[i], totalTime[6] / (i+1));
+		System.out.printf(" Hedged requests: %d of %d, won by hedge: %d, hedge delay: %d ms%n", 
+				hedger.getHedgedCount(), hedger.getRequestCount(), hedger.getHedgeWins(), hedger.getDelayMillis());
+	}
+	
+	/**
+	 * Result cache of closed periods: the first (warmup) call queries DynamoDB, the measured calls are served 
+	 * from the cache 
+	 * 
+	 * @param calls
+	 */
+	public void runResultCacheComparison(final int calls) {
 
-			orders6 = null;
-			System.gc();
+		LOG.info("Run result cache benchmark ...");
+		
+		QueryResultCache<Order> cache = new QueryResultCache<>();
+		OrdersDbUtils cachedDbUtils = new OrdersDbUtils(dbMapper).withResultCache(cache).withReadCapacityBudget(capacityBudget);
+		
+		ParallelStreamQuery psCached = new ParallelStreamQuery(cachedDbUtils);
+		CompletableFuturesQuery cfCached = new CompletableFuturesQuery(cachedDbUtils, BoundedQueryExecutor.shared(), Config.QUERY_MAX_CONCURRENCY);
 
-			start = System.currentTimeMillis();
-			List<Order> orders7 = cf.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT");
-			test7[i] = System.currentTimeMillis() - start;
-			totalTime[7] += test7[i];
-			System.out.printf("| Category/Dates  48 Compleatable Futures       | %8d | %8d | %8d |%n", 
-					orders7.size(), test7[i], totalTime[7] / (i+1));
+		runComparison("Result cache (closed periods)", comparisonHarness(1, calls)
+				.withStrategy("ps-dates-12-cached", () -> psCached.getOrdersByCategoryAndDates12UsingParallelStream("SPORT").size())
+				.withStrategy("cf-dates-48-cached", () -> cfCached.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT").size()));
 
-			orders7 = null;
-			System.gc();
+		System.out.printf(" Cache entries: %d, cached items: %d, hits: %d, misses: %d%n", 
+				cache.size(), cache.getWeight(), cache.getHitCount(), cache.getMissCount());
+	}
+	
+	/**
+	 * List of Orders vs columnar OrderBatch: time of the 48-way fan-out, and heap retained by the result 
+	 * 
+	 * @param calls
+	 */
+	public void runOrderBatchComparison(final int calls) {
 
-			start = System.currentTimeMillis();
-			List<Order> orders8 = cf.getOrdersUsingCategoryAndDates365QueryWithCompletableFuture("SPORT");
-			test8[i] = System.currentTimeMillis() - start;
-			totalTime[8] += test8[i];
-			System.out.printf("| Category/Dates 365 Compleatable Futures       | %8d | %8d | %8d |%n", 
-					orders8.size(), test8[i], totalTime[8] / (i+1));
+		LOG.info("Run OrderBatch benchmark ...");
+		
+		runComparison("List of Orders vs OrderBatch", comparisonHarness(1, calls)
+				.withStrategy("cf-dates-48-list", () -> cf.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT"), List::size)
+				.withStrategy("cf-dates-48-batch", () -> cf.getOrderBatchUsingCategoryAndDates48QueryWithCompletableFuture("SPORT"), OrderBatch::size));
+	}
+	
+	/**
+	 * Whole items vs projected (summary) items: time and heap of the 48-way fan-out, and the item bytes 
+	 * returned by DynamoDB for the 12 monthly ranges (consumed capacity is the same, it is computed on whole items)
+	 * 
+	 * @param calls
+	 */
+	public void runProjectionComparison(final int calls) {
 
-			orders8 = null;
-			System.gc();
+		LOG.info("Run projection benchmark ...");
+		
+		CompletableFuturesQuery cfProjected = cf.withProjection(Projection.SUMMARY);
+		
+		runComparison("Whole vs projected items " + Projection.SUMMARY, comparisonHarness(1, calls)
+				.withStrategy("cf-dates-48-whole", () -> cf.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT"), List::size)
+				.withStrategy("cf-dates-48-projected", () -> cfProjected.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT"), List::size));
+		
+		long wholeBytes = sumItemBytes(ordersDbUtils, "SPORT");
+		long projectedBytes = sumItemBytes(ordersDbUtils.copy().withProjection(Projection.SUMMARY), "SPORT");
+		
+		System.out.printf(" Item bytes returned, whole: %d KB, projected: %d KB (%d%% saved)%n", wholeBytes / 1024, projectedBytes / 1024, 
+				wholeBytes == 0 ? 0 : 100 - projectedBytes * 100 / wholeBytes);
+	}
+	
+	/**
+	 * Revenue per state computed from the list of Orders vs aggregated while reading the pages 
+	 * (per sub-query aggregates, merged at the end): time and heap retained by the result; 
+	 * the Orders column is the number of groups
+	 * 
+	 * @param calls
+	 */
+	public void runAggregationComparison(final int calls) {
 
-			start = System.currentTimeMillis();
-			List<Order> orders9 = cf.getOrdersUsingCategoryAndQuerySlots64WithCompletableFuture("SPORT");
-			test9[i] = System.currentTimeMillis() - start;
-			totalTime[9] += test9[i];
-			System.out.printf("| Query Slots Mod 64 Compleatable Futures       | %8d | %8d | %8d |%n", 
-					orders9.size(), test9[i], totalTime[9] / (i+1));
+		LOG.info("Run aggregation benchmark ...");
+		
+		runComparison("Revenue per group (Orders: groups)", comparisonHarness(1, calls)
+				.withStrategy("cf-dates-48-list-by-state", () -> cf.getOrdersUsingCategoryAndDates48QueryWithCompletableFuture("SPORT").stream()
+						.collect(Collectors.groupingBy(x -> Objects.toString(x.getState(), ""), Collectors.summingDouble(x -> x.getQty() * x.getPricePerUnit()))), 
+						Map::size)
+				.withStrategy("cf-dates-48-agg-by-state", 
+						() -> cf.aggregateUsingCategoryAndDates48QueryWithCompletableFuture("SPORT", OrderAggregate.GroupBy.STATE), OrderAggregate::size)
+				.withStrategy("cf-slots-64-agg-by-state", 
+						() -> cf.aggregateUsingCategoryAndQuerySlots64WithCompletableFuture("SPORT", OrderAggregate.GroupBy.STATE), OrderAggregate::size)
+				.withStrategy("cf-slots-128-agg-by-state", 
+						() -> cf.aggregateUsingCategoryAndQuerySlots128WithCompletableFuture("SPORT", OrderAggregate.GroupBy.STATE), OrderAggregate::size)
+				.withStrategy("cf-dates-48-agg-by-day", 
+						() -> cf.aggregateUsingCategoryAndDates48QueryWithCompletableFuture("SPORT", OrderAggregate.GroupBy.DAY), OrderAggregate::size));
+	}
+	
+	/**
+	 * COUNT-only variants of the fan-outs: totals, time, consumed capacity (the same as reading the items, 
+	 * but no items are returned) and skew of the per-partition counts
+	 * 
+	 * @param calls
+	 */
+	public void runCountComparison(final int calls) {
 
-			System.out.printf("+-----------------------------------------------+----------+----------+----------+%n");
+		LOG.info("Run COUNT only benchmark ...");
+		
+		// counts of the last call of every strategy, for the skew
+		Map<String, PartitionCounts> lastCounts = new ConcurrentHashMap<>();
+		Map<String, Supplier<PartitionCounts>> queries = new LinkedHashMap<>();
+		
+		queries.put("cf-dates-12-count", () -> cf.countUsingCategoryAndDates12QueryWithCompletableFuture("SPORT"));
+		queries.put("cf-dates-48-count", () -> cf.countUsingCategoryAndDates48QueryWithCompletableFuture("SPORT"));
+		queries.put("cf-dates-365-count", () -> cf.countUsingCategoryAndDates365QueryWithCompletableFuture("SPORT"));
+		queries.put("cf-slots-64-count", () -> cf.countUsingCategoryAndQuerySlots64WithCompletableFuture("SPORT"));
+		queries.put("cf-slots-128-count", () -> cf.countUsingCategoryAndQuerySlots128WithCompletableFuture("SPORT"));
+		queries.put("scan-parallel-16-count", () -> ordersDbUtils.countAllOrdersUsingParallelScan("SPORT", 16));
+		
+		BenchmarkHarness harness = comparisonHarness(1, calls);
+		
+		queries.forEach((name, query) -> harness.withStrategy(name, () -> {
 			
-			System.gc();
+			PartitionCounts counts = query.get();
+			lastCounts.put(name, counts);
 			
-			try {
-				Thread.sleep(5000);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
+			return (int) counts.getTotal();
+		}));
 		
-		// averages
+		runComparison("COUNT only queries", harness);
 		
-		long max1 = Arrays.stream(test1).max().getAsLong();
-		long avg1 = (totalTime[1] - max1) / 9;
-
-		long max2 = Arrays.stream(test2).max().getAsLong();
-		long avg2 = (totalTime[2] - max2) / 9;
-
-		long max3 = Arrays.stream(test3).max().getAsLong();
-		long avg3 = (totalTime[3] - max3) / 9;
-
-		long max4 = Arrays.stream(test4).max().getAsLong();
-		long avg4 = (totalTime[4] - max4) / 9;
-
-		long max5 = Arrays.stream(test5).max().getAsLong();
-		long avg5 = (totalTime[5] - max5) / 9;
-
-		long max6 = Arrays.stream(test6).max().getAsLong();
-		long avg6 = (totalTime[6] - max6) / 9;
-
-		long max7 = Arrays.stream(test7).max().getAsLong();
-		long avg7 = (totalTime[7] - max7) / 9;
+		for (String name : queries.keySet()) {
+			
+			PartitionCounts counts = lastCounts.get(name);
+			if (counts != null) System.out.printf(Locale.ROOT, " Skew (max / mean partition count) of %s: %.2f%n", name, counts.getSkew());
+		}
+	}
+	
+	/**
+	 * DynamoDBMapper (reflection) vs OrderCodec (low-level client, hand-written conversion) on the 365-way fan-out, 
+	 * where the conversion of items is a large share of the CPU time (see also OrderCodecBenchmark in src/jmh/java)
+	 * 
+	 * @param calls
+	 */
+	public void runOrderCodecComparison(final int calls) {
 
-		long max8 = Arrays.stream(test8).max().getAsLong();
-		long avg8 = (totalTime[8] - max8) / 9;
+		LOG.info("Run Order codec benchmark ...");
+		
+		CompletableFuturesQuery cfCodec = new CompletableFuturesQuery(ordersDbUtils.copy().withOrderCodec(true), 
+				BoundedQueryExecutor.shared(), Config.QUERY_MAX_CONCURRENCY);
 
-		long max9 = Arrays.stream(test9).max().getAsLong();
-		long avg9 = (totalTime[9] - max9) / 9;
-		
-		for(int i = 0; i < 10; ++i) System.out.printf("%6d |", test1[i]); System.out.printf(" .. avg: %5d%n", avg1);
-		for(int i = 0; i < 10; ++i) System.out.printf("%6d |", test2[i]); System.out.printf(" .. avg: %5d%n", avg2);
-		for(int i = 0; i < 10; ++i) System.out.printf("%6d |", test3[i]); System.out.printf(" .. avg: %5d%n", avg3);
-		for(int i = 0; i < 10; ++i) System.out.printf("%6d |", test4[i]); System.out.printf(" .. avg: %5d%n", avg4);
-		for(int i = 0; i < 10; ++i) System.out.printf("%6d |", test5[i]); System.out.printf(" .. avg: %5d%n", avg5);
-		for(int i = 0; i < 10; ++i) System.out.printf("%6d |", test6[i]); System.out.printf(" .. avg: %5d%n", avg6);
-		for(int i = 0; i < 10; ++i) System.out.printf("%6d |", test7[i]); System.out.printf(" .. avg: %5d%n", avg7);
-		for(int i = 0; i < 10; ++i) System.out.printf("%6d |", test8[i]); System.out.printf(" .. avg: %5d%n", avg8);
-		for(int i = 0; i < 10; ++i) System.out.printf("%6d |", test9[i]); System.out.printf(" .. avg: %5d%n", avg9);		
+		runComparison("DynamoDBMapper vs OrderCodec", comparisonHarness(1, calls)
+				.withStrategy("cf-dates-365-mapper", () -> cf.getOrdersUsingCategoryAndDates365QueryWithCompletableFuture("SPORT").size())
+				.withStrategy("cf-dates-365-codec", () -> cfCodec.getOrdersUsingCategoryAndDates365QueryWithCompletableFuture("SPORT").size()));
+	}
+	
+	/**
+	 * Sum approximate sizes of the items returned for the 12 monthly ranges
+	 * 
+	 * @param utils
+	 * @param category
+	 * @return
+	 */
+	private long sumItemBytes(final OrdersDbUtils utils, final String category) {
+		
+		AtomicLong bytes = new AtomicLong();
+		
+		for (String prefix : QueryUtils.generate12YearMonthDatePrefixes(Config.YEAR)) {
+			
+			utils.queryItemsByCategoryAndOrderDateRange(category, QueryUtils.orderDatePrefixToRange(prefix), page -> {
+				
+				page.forEach(item -> item.forEach((name, value) -> bytes.addAndGet(name.length() + attributeValueBytes(value))));
+				return true;
+			});
+		}
+		
+		return bytes.get();
+	}
+	
+	/**
+	 * Approximate size of a scalar attribute value, as DynamoDB counts it (lengths of strings, digits of numbers)
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private static int attributeValueBytes(final AttributeValue value) {
+		
+		if (value.getS() != null) return value.getS().getBytes(StandardCharsets.UTF_8).length;
+		if (value.getN() != null) return value.getN().length();
+		if (value.getB() != null) return value.getB().remaining();
+		
+		return 1;
 	}
 	
 	/**
 	 * Main method
 	 * 
+	 * Options (all optional): --strategies=sequential,cf-dates-48,... (default: all, see --list), --warmup=N, 
+	 * --iterations=N, --callers=N, --format=table|json|csv, --output=file (default: stdout), 
+	 * --query-metrics (record the sub-queries, log the slowest call of every strategy), 
+	 * --comparisons (also run the comparison benchmarks)
+	 * 
 	 * @param args
 	 */
 	public static void main(String[] args) {
 
+		Map<String,String> options = parseOptions(args);
+		
 		AmazonDynamoDB dynamoDB = Utils.init();  
 		DynamoDBMapper dbMapper = new DynamoDBMapper(dynamoDB);
 		
-		RunBenchmarks benchmarks = new RunBenchmarks(dbMapper);
-		benchmarks.run();
+		int warmupIterations = Integer.parseInt(options.getOrDefault("warmup", String.valueOf(Config.BENCHMARK_WARMUP_ITERATIONS)));
+		QueryMetrics queryMetrics = options.containsKey("query-metrics") ? new QueryMetrics() : null;
+		
+		try (DynamoDbAsyncClient dynamoDBV2 = ParallelStreamQueryV2.createClient()) {
+			
+			RunBenchmarks benchmarks = new RunBenchmarks(dynamoDB, dbMapper)
+					.withWarmupIterations(warmupIterations)
+					.withQueryMetrics(queryMetrics)
+					.withConcurrencyLimitedClient(Utils.init(true))
+					.withSdkV2Client(dynamoDBV2);
+			
+			runSelected(benchmarks, options);
+		}
+	}
+	
+	/**
+	 * Run the selected strategies, then the comparison benchmarks if requested
+	 * 
+	 * @param benchmarks
+	 * @param options
+	 */
+	private static void runSelected(final RunBenchmarks benchmarks, final Map<String,String> options) {
+		
+		BenchmarkHarness harness = benchmarks.createHarness()
+				.withWarmupIterations(benchmarks.warmupIterations)
+				.withIterations(Integer.parseInt(options.getOrDefault("iterations", String.valueOf(Config.BENCHMARK_ITERATIONS))))
+				.withCallers(Integer.parseInt(options.getOrDefault("callers", String.valueOf(Config.BENCHMARK_CALLERS))))
+				.withQueryMetrics(benchmarks.queryMetrics);
+		
+		if (options.containsKey("list")) {
+			
+			harness.getStrategyNames().forEach(System.out::println);
+			return;
+		}
+		
+		List<String> strategies = options.containsKey("strategies") 
+				? Arrays.asList(options.get("strategies").split(",")) : new ArrayList<>(harness.getStrategyNames());
+		BenchmarkHarness.Format format = BenchmarkHarness.Format.valueOf(options.getOrDefault("format", "table").toUpperCase());
+		
+		List<BenchmarkHarness.Result> results = harness.run(strategies);
+		
+		if (options.containsKey("output")) {
+			
+			try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(options.get("output"))), false, StandardCharsets.UTF_8.name())) {
+				harness.write(results, format, out);
+			} catch (IOException e) {
+				LOG.error("Cannot write benchmark results to " + options.get("output"), e);
+			}
+		}
+		else harness.write(results, format, System.out);
+		
+		if (!options.containsKey("comparisons")) return;
+		
+		benchmarks.runConcurrentCallers(32, 3);
+		benchmarks.runVirtualThreadsComparison(5);
+		benchmarks.runHedgingComparison(100);
+		benchmarks.runResultCacheComparison(20);
+		benchmarks.runOrderBatchComparison(5);
+		benchmarks.runProjectionComparison(5);
+		benchmarks.runAggregationComparison(5);
+		benchmarks.runCountComparison(5);
+		benchmarks.runOrderCodecComparison(5);
+	}
+	
+	/**
+	 * Parse --name=value and --flag command line options
+	 * 
+	 * @param args
+	 * @return
+	 */
+	private static Map<String,String> parseOptions(final String[] args) {
+		
+		Map<String,String> options = new HashMap<>();
+		
+		for (String arg : args) {
+			
+			if (!arg.startsWith("--")) throw new IllegalArgumentException("Unknown argument: " + arg);
+			
+			int eq = arg.indexOf('=');
+			
+			if (eq < 0) options.put(arg.substring(2), "");
+			else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+		}
+		
+		return options;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.Objects;
+
+import lombok.NonNull;
+
+/**
+ * Inclusive sort-key range, used to build "BETWEEN :from AND :to" key conditions
+ * 
+ * @author zorani
+ *
+ */
+public final class SortKeyRange {
+
+	private final String from;
+	private final String to;
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param from
+	 * @param to
+	 */
+	public SortKeyRange(@NonNull final String from, @NonNull final String to) {
+		
+		this.from = from;
+		this.to = to;
+	}
+	
+	/**
+	 * Create range [from, to] (inclusive)
+	 * 
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public static SortKeyRange of(final String from, final String to) {
+		
+		return new SortKeyRange(from, to);
+	}
+	
+	/**
+	 * @return the lower bound (inclusive)
+	 */
+	public String getFrom() {
+		return from;
+	}
+
+	/**
+	 * @return the upper bound (inclusive)
+	 */
+	public String getTo() {
+		return to;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		
+		if (this == o) return true;
+		if (!(o instanceof SortKeyRange)) return false;
+		
+		SortKeyRange other = (SortKeyRange)o;
+		return from.equals(other.from) && to.equals(other.to);
+	}
+
+	@Override
+	public int hashCode() {
+		
+		return Objects.hash(from, to);
+	}
+
+	@Override
+	public String toString() {
+		
+		return from + ".." + to;
+	}
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Supplier;
+
+import software.amazon.samples.ddb.parallel.queries.jfr.PageFetchedEvent;
+import software.amazon.samples.ddb.parallel.queries.jfr.SubQueryEvent;
+import software.amazon.samples.ddb.parallel.queries.jfr.SubQueryStartedEvent;
+import software.amazon.samples.ddb.parallel.queries.jfr.ThrottledEvent;
+
+/**
+ * Metrics of a single sub-query (one paginated query or scan segment) of a measured query 
+ * (see {@link QueryMetrics#measure(String, Supplier)}): queue wait (from the fan-out submission to the start), 
+ * time to the first page, duration, pages, items, response bytes, consumed capacity, SDK retries 
+ * and unmarshal time.
+ * 
+ * While a JFR recording has the sub-query events enabled (see the jfr package), every sub-query is traced, 
+ * measured or not: started, page fetched, throttled or retried, and finished events are committed as it runs. 
+ * Sub-queries outside of a measured query, with no recording, get {@link #NONE}, which doesn't record anything.
+ * 
+ * The synchronous (SDK v1) sub-query is bound to its thread while it runs, so the SDK request handler 
+ * (see {@link QueryMetricsRequestHandler}) can add the bytes, retries and unmarshal time of its requests.
+ * 
+ * @author zorani
+ *
+ */
+public class SubQueryMetrics {
+
+	/**
+	 * Sub-query that is not measured
+	 */
+	public static final SubQueryMetrics NONE = new SubQueryMetrics(null, null, null, null, 0, false);
+	
+	private static final ThreadLocal<SubQueryMetrics> CURRENT = new ThreadLocal<>();
+	
+	private final QuerySummary summary;
+	private final String indexName;
+	private final String partitionValue;
+	private final String sortKeyRange;
+	
+	// JFR events; null if not traced
+	private final SubQueryEvent event;
+	private volatile PageFetchedEvent pageEvent = null;
+	
+	private final long queueWaitNanos;
+	private final long startNanos = System.nanoTime();
+	private volatile long firstPageNanos = -1;
+	private volatile long durationNanos = -1;
+	private volatile long lastResponseNanos = 0;
+	
+	private final AtomicLong pages = new AtomicLong();
+	private final AtomicLong items = new AtomicLong();
+	private final AtomicLong maxPageItems = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong unmarshalNanos = new AtomicLong();
+	private final DoubleAdder capacityUnits = new DoubleAdder();
+	
+	// sub-query this one replaced on its thread (see bind)
+	private SubQueryMetrics previous = null;
+	private Thread boundThread = null;
+
+	/**
+	 * C-tor
+	 * 
+	 * @param summary null: not measured
+	 * @param indexName index (or table) name
+	 * @param partitionValue
+	 * @param sortKeyRange sort key condition, e.g. the order-date prefix or range, query slot or scan segment
+	 * @param queueWaitNanos
+	 * @param traced commit the JFR events of the sub-query
+	 */
+	SubQueryMetrics(final QuerySummary summary, final String indexName, final String partitionValue, final String sortKeyRange, 
+					final long queueWaitNanos, final boolean traced) {
+		
+		this.summary = summary;
+		this.indexName = indexName;
+		this.partitionValue = partitionValue;
+		this.sortKeyRange = sortKeyRange;
+		this.queueWaitNanos = Math.max(0, queueWaitNanos);
+		
+		if (traced) {
+			
+			SubQueryStartedEvent.emit(indexName, partitionValue, sortKeyRange, this.queueWaitNanos);
+			event = SubQueryEvent.begin(indexName, partitionValue, sortKeyRange);
+		}
+		else event = null;
+	}
+	
+	/**
+	 * @return sub-query running on this thread, or {@link #NONE}
+	 */
+	public static SubQueryMetrics current() {
+		
+		SubQueryMetrics current = CURRENT.get();
+		return current == null ? NONE : current;
+	}
+	
+	/**
+	 * Run the task with the current sub-query of the calling thread bound to the executing thread 
+	 * (e.g. the hedged page attempts)
+	 * 
+	 * @param <R>
+	 * @param task
+	 * @return
+	 */
+	public static <R> Supplier<R> propagate(final Supplier<R> task) {
+		
+		SubQueryMetrics current = CURRENT.get();
+		if (current == null) return task;
+		
+		return () -> {
+			
+			SubQueryMetrics previous = CURRENT.get();
+			CURRENT.set(current);
+			
+			try {
+				return task.get();
+			} finally {
+				CURRENT.set(previous);
+			}
+		};
+	}
+	
+	/**
+	 * Bind to the calling thread until {@link #finish()}
+	 * 
+	 * @return
+	 */
+	SubQueryMetrics bind() {
+		
+		if (!isRecording()) return this;
+		
+		previous = CURRENT.get();
+		boundThread = Thread.currentThread();
+		CURRENT.set(this);
+		
+		return this;
+	}
+	
+	/**
+	 * @return true if this sub-query is measured or traced
+	 */
+	public boolean isRecording() {
+		
+		return summary != null || event != null;
+	}
+	
+	/**
+	 * Page requested; the page fetched event counts from now until the page is received
+	 */
+	public void pageRequested() {
+		
+		if (event != null) pageEvent = PageFetchedEvent.begin(indexName, partitionValue, sortKeyRange, pages.get() + 1);
+	}
+	
+	/**
+	 * Page received
+	 * 
+	 * @param pageItems items (or the count of the COUNT-only queries)
+	 * @param pageBytes response bytes, zero if not known (e.g. counted by the SDK request handler)
+	 * @param pageCapacityUnits consumed capacity
+	 */
+	public void page(final int pageItems, final long pageBytes, final double pageCapacityUnits) {
+		
+		if (!isRecording()) return;
+		
+		if (pages.getAndIncrement() == 0) firstPageNanos = System.nanoTime() - startNanos;
+		
+		items.addAndGet(pageItems);
+		maxPageItems.accumulateAndGet(pageItems, Math::max);
+		bytes.addAndGet(pageBytes);
+		capacityUnits.add(pageCapacityUnits);
+		
+		PageFetchedEvent fetched = pageEvent;
+		
+		if (fetched != null) {
+			
+			pageEvent = null;
+			fetched.fetched(pageItems, pageCapacityUnits);
+		}
+		
+		if (summary != null) summary.page(this, pageItems);
+	}
+	
+	/**
+	 * @param responseBytes response bytes of a page request
+	 */
+	public void bytes(final long responseBytes) {
+		
+		if (isRecording()) bytes.addAndGet(responseBytes);
+	}
+	
+	/**
+	 * Page request retried by the SDK (throttling, transient errors)
+	 * 
+	 * @param count
+	 */
+	public void retries(final long count) {
+		
+		if (!isRecording() || count <= 0) return;
+		
+		retries.addAndGet(count);
+		
+		if (event != null) ThrottledEvent.retried(indexName, partitionValue, sortKeyRange, count);
+	}
+	
+	/**
+	 * Page request failed with the throttling error (to be retried by the concurrency limiter, or failing the sub-query)
+	 * 
+	 * @param error
+	 */
+	public void throttled(final Throwable error) {
+		
+		if (event != null) ThrottledEvent.throttled(indexName, partitionValue, sortKeyRange, error);
+	}
+	
+	/**
+	 * @param nanos time spent converting the response into attribute maps or Orders
+	 */
+	public void unmarshal(final long nanos) {
+		
+		if (isRecording() && nanos > 0) unmarshalNanos.addAndGet(nanos);
+	}
+	
+	/**
+	 * The SDK has unmarshalled the response; the conversion into Orders that follows is counted 
+	 * by {@link #unmarshalSinceResponse()}
+	 */
+	public void responseReceived() {
+		
+		if (isRecording()) lastResponseNanos = System.nanoTime();
+	}
+	
+	/**
+	 * Count the time since the last {@link #responseReceived()} as unmarshal time (DynamoDBMapper conversion of the page)
+	 */
+	public void unmarshalSinceResponse() {
+		
+		if (!isRecording() || lastResponseNanos == 0) return;
+		
+		unmarshal(System.nanoTime() - lastResponseNanos);
+		lastResponseNanos = 0;
+	}
+	
+	/**
+	 * Sub-query completed (or failed, or was stopped by its page handler); unbinds it from the thread
+	 */
+	public void finish() {
+		
+		if (!isRecording() || durationNanos >= 0) return;
+		
+		durationNanos = System.nanoTime() - startNanos;
+		
+		if (boundThread == Thread.currentThread()) {
+			
+			CURRENT.set(previous);
+			previous = null;
+			boundThread = null;
+		}
+		
+		if (event != null) {
+			event.finished(queueWaitNanos, firstPageNanos, getPages(), getItems(), getBytes(), getCapacityUnits(), getRetries());
+		}
+		
+		if (summary != null) summary.finished(this);
+	}
+	
+	public String getIndexName() {
+		return indexName;
+	}
+
+	public String getPartitionValue() {
+		return partitionValue;
+	}
+
+	public String getSortKeyRange() {
+		return sortKeyRange;
+	}
+
+	public long getQueueWaitNanos() {
+		return queueWaitNanos;
+	}
+
+	/**
+	 * @return time from the start to the first page, -1 if no page was received
+	 */
+	public long getTimeToFirstPageNanos() {
+		return firstPageNanos;
+	}
+
+	/**
+	 * @return duration, -1 if still running
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	public long getPages() {
+		return pages.get();
+	}
+
+	public long getItems() {
+		return items.get();
+	}
+
+	public long getMaxPageItems() {
+		return maxPageItems.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public double getCapacityUnits() {
+		return capacityUnits.sum();
+	}
+
+	public long getRetries() {
+		return retries.get();
+	}
+
+	public long getUnmarshalNanos() {
+		return unmarshalNanos.get();
+	}
+
+	@Override
+	public String toString() {
+		
+		return String.format(Locale.ROOT, "%s [%s] %s: queue %.1f ms, first page %.1f ms, total %.1f ms, %d pages, %d items, %d bytes, %.1f RCU, %d retries, unmarshal %.1f ms", 
+				indexName, partitionValue, sortKeyRange, millis(queueWaitNanos), millis(firstPageNanos), millis(durationNanos), 
+				getPages(), getItems(), getBytes(), getCapacityUnits(), getRetries(), millis(getUnmarshalNanos()));
+	}
+	
+	private static double millis(final long nanos) {
+		
+		return nanos < 0 ? -1 : nanos / (double)TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
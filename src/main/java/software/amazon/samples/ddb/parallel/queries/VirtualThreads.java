@@ -0,0 +1,54 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads (Java 21+). 
+ * 
+ * This is the Java 11 version of the class: virtual threads are not supported. When the project is 
+ * built with JDK 21+ (profile "java21"), the JAR is multi-release and Java 21+ runtimes load the 
+ * version from src/main/java21 instead.
+ * 
+ * @author zorani
+ *
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {}
+	
+	/**
+	 * @return true if the runtime supports virtual threads
+	 */
+	public static boolean isSupported() {
+		
+		return false;
+	}
+	
+	/**
+	 * Create executor that starts a new virtual thread for each task
+	 * 
+	 * @param namePrefix
+	 * @return
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor(final String namePrefix) {
+		
+		throw new UnsupportedOperationException("Virtual threads require Java 21+ runtime, and the JAR built with JDK 21+ (profile: java21)");
+	}
+}
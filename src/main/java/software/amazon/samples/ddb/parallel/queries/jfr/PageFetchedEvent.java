@@ -0,0 +1,83 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Single page of a sub-query fetched; the duration of the event is the time from the page request 
+ * (including the capacity budget, concurrency limit and hedging) to the received page
+ * 
+ * @author zorani
+ *
+ */
+@Name("software.amazon.samples.ddb.PageFetched")
+@Label("Page Fetched")
+public class PageFetchedEvent extends SubQueryTraceEvent {
+
+	@Label("Page")
+	@Description("Page number within the sub-query, starting with 1")
+	long page;
+	
+	@Label("Items")
+	@Description("Items (or the count of the COUNT-only queries)")
+	int items;
+	
+	@Label("Consumed Capacity")
+	@Description("Consumed read capacity units")
+	double capacityUnits;
+	
+	/**
+	 * Begin the event of the requested page
+	 * 
+	 * @param indexName
+	 * @param partitionValue
+	 * @param sortKeyRange
+	 * @param page
+	 * @return
+	 */
+	public static PageFetchedEvent begin(final String indexName, final String partitionValue, final String sortKeyRange, final long page) {
+		
+		PageFetchedEvent event = new PageFetchedEvent();
+		
+		event.setSubQuery(indexName, partitionValue, sortKeyRange);
+		event.page = page;
+		event.begin();
+		
+		return event;
+	}
+	
+	/**
+	 * End the event and commit it, if enabled
+	 * 
+	 * @param items
+	 * @param capacityUnits
+	 */
+	public void fetched(final int items, final double capacityUnits) {
+		
+		end();
+		if (!shouldCommit()) return;
+		
+		this.items = items;
+		this.capacityUnits = capacityUnits;
+		
+		commit();
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Order-date plan created by the partition planner; the duration of the event is the time spent 
+ * sampling the key distribution (COUNT-only queries) and planning
+ * 
+ * @author zorani
+ *
+ */
+@Name("software.amazon.samples.ddb.QueryPlan")
+@Label("Query Plan Created")
+@Category({ "DynamoDB", "Parallel Queries" })
+@StackTrace(false)
+public class QueryPlanEvent extends Event {
+
+	@Label("Partition Value")
+	String partitionValue;
+	
+	@Label("Year")
+	int year;
+	
+	@Label("Sub-Queries")
+	int subQueries;
+	
+	@Label("Estimated Items")
+	long estimatedItems;
+	
+	@Label("Target Items per Sub-Query")
+	@Description("Target item count per sub-query, raised to keep the number of sub-queries within the limit")
+	long targetItemsPerQuery;
+	
+	/**
+	 * Begin the event of the plan
+	 * 
+	 * @param partitionValue
+	 * @param year
+	 * @return
+	 */
+	public static QueryPlanEvent begin(final String partitionValue, final int year) {
+		
+		QueryPlanEvent event = new QueryPlanEvent();
+		
+		event.partitionValue = partitionValue;
+		event.year = year;
+		event.begin();
+		
+		return event;
+	}
+	
+	/**
+	 * End the event and commit it, if enabled
+	 * 
+	 * @param subQueries
+	 * @param estimatedItems
+	 * @param targetItemsPerQuery
+	 */
+	public void created(final int subQueries, final long estimatedItems, final long targetItemsPerQuery) {
+		
+		end();
+		if (!shouldCommit()) return;
+		
+		this.subQueries = subQueries;
+		this.estimatedItems = estimatedItems;
+		this.targetItemsPerQuery = targetItemsPerQuery;
+		
+		commit();
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Results of the fan-out sub-queries merged into the result of the query; the duration of the event 
+ * is the time from the fan-out to the merged result, i.e. how long the calling thread (or the future) 
+ * waited for the slowest sub-query
+ * 
+ * @author zorani
+ *
+ */
+@Name("software.amazon.samples.ddb.ResultsMerged")
+@Label("Results Merged")
+@Category({ "DynamoDB", "Parallel Queries" })
+@StackTrace(false)
+public class ResultsMergedEvent extends Event {
+
+	@Label("Merge")
+	@Description("Engine and merge strategy, e.g. ParallelStreamQuery parallel stream")
+	String merge;
+	
+	@Label("Sub-Queries")
+	int subQueries;
+	
+	@Label("Items")
+	@Description("Merged items (the total count of the COUNT-only queries, Orders of the aggregates)")
+	long items;
+	
+	/**
+	 * Begin the event of the fan-out
+	 * 
+	 * @param merge engine and merge strategy
+	 * @param subQueries
+	 * @return
+	 */
+	public static ResultsMergedEvent begin(final String merge, final int subQueries) {
+		
+		ResultsMergedEvent event = new ResultsMergedEvent();
+		
+		event.merge = merge;
+		event.subQueries = subQueries;
+		event.begin();
+		
+		return event;
+	}
+	
+	/**
+	 * End the event and commit it, if enabled
+	 * 
+	 * @param items
+	 */
+	public void merged(final long items) {
+		
+		end();
+		if (!shouldCommit()) return;
+		
+		this.items = items;
+		commit();
+	}
+}
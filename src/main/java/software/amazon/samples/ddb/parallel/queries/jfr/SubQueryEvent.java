@@ -0,0 +1,109 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Sub-query finished (completed, failed or stopped by its page handler); the duration of the event 
+ * is the duration of the sub-query
+ * 
+ * @author zorani
+ *
+ */
+@Name("software.amazon.samples.ddb.SubQuery")
+@Label("Sub-Query")
+public class SubQueryEvent extends SubQueryTraceEvent {
+
+	@Label("Queue Wait")
+	@Description("Time from the fan-out submission to the start of the sub-query")
+	@Timespan(Timespan.NANOSECONDS)
+	long queueWait;
+	
+	@Label("Time to First Page")
+	@Timespan(Timespan.NANOSECONDS)
+	long timeToFirstPage;
+	
+	@Label("Pages")
+	long pages;
+	
+	@Label("Items")
+	@Description("Items (or the count of the COUNT-only queries)")
+	long items;
+	
+	@Label("Response Bytes")
+	@DataAmount
+	long bytes;
+	
+	@Label("Consumed Capacity")
+	@Description("Consumed read capacity units")
+	double capacityUnits;
+	
+	@Label("SDK Retries")
+	long retries;
+	
+	/**
+	 * Begin the event of the starting sub-query
+	 * 
+	 * @param indexName
+	 * @param partitionValue
+	 * @param sortKeyRange
+	 * @return
+	 */
+	public static SubQueryEvent begin(final String indexName, final String partitionValue, final String sortKeyRange) {
+		
+		SubQueryEvent event = new SubQueryEvent();
+		
+		event.setSubQuery(indexName, partitionValue, sortKeyRange);
+		event.begin();
+		
+		return event;
+	}
+	
+	/**
+	 * End the event and commit it, if enabled
+	 * 
+	 * @param queueWaitNanos
+	 * @param timeToFirstPageNanos -1 if no page was received
+	 * @param pages
+	 * @param items
+	 * @param bytes
+	 * @param capacityUnits
+	 * @param retries
+	 */
+	public void finished(final long queueWaitNanos, final long timeToFirstPageNanos, final long pages, final long items, 
+						final long bytes, final double capacityUnits, final long retries) {
+		
+		end();
+		if (!shouldCommit()) return;
+		
+		this.queueWait = queueWaitNanos;
+		this.timeToFirstPage = timeToFirstPageNanos;
+		this.pages = pages;
+		this.items = items;
+		this.bytes = bytes;
+		this.capacityUnits = capacityUnits;
+		this.retries = retries;
+		
+		commit();
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Sub-query started on its thread (or subscribed to), after waiting in the executor queue or the merge
+ * 
+ * @author zorani
+ *
+ */
+@Name("software.amazon.samples.ddb.SubQueryStarted")
+@Label("Sub-Query Started")
+public class SubQueryStartedEvent extends SubQueryTraceEvent {
+
+	@Label("Queue Wait")
+	@Description("Time from the fan-out submission to the start of the sub-query")
+	@Timespan(Timespan.NANOSECONDS)
+	long queueWait;
+	
+	/**
+	 * Commit the event, if enabled
+	 * 
+	 * @param indexName
+	 * @param partitionValue
+	 * @param sortKeyRange
+	 * @param queueWaitNanos
+	 */
+	public static void emit(final String indexName, final String partitionValue, final String sortKeyRange, final long queueWaitNanos) {
+		
+		SubQueryStartedEvent event = new SubQueryStartedEvent();
+		if (!event.shouldCommit()) return;
+		
+		event.setSubQuery(indexName, partitionValue, sortKeyRange);
+		event.queueWait = queueWaitNanos;
+		event.commit();
+	}
+}
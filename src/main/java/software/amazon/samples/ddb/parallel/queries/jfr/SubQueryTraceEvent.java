@@ -0,0 +1,81 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jfr;
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of the JFR events of a single sub-query (one paginated query or scan segment): 
+ * the index, partition value and sort-key range identify the sub-query; the thread and the start 
+ * time (and duration) are recorded by JFR.
+ * 
+ * @author zorani
+ *
+ */
+@Category({ "DynamoDB", "Parallel Queries" })
+@StackTrace(false)
+public abstract class SubQueryTraceEvent extends Event {
+
+	@Label("Index")
+	@Description("Index (or table) name")
+	String indexName;
+	
+	@Label("Partition Value")
+	String partitionValue;
+	
+	@Label("Sort Key Range")
+	@Description("Sort key condition, e.g. the order-date prefix or range, query slot or scan segment")
+	String sortKeyRange;
+	
+	/**
+	 * @return true if any of the sub-query events is enabled in a running recording
+	 */
+	public static boolean isAnyEnabled() {
+		
+		for (EventType type : EventTypes.SUB_QUERY) {
+			if (type.isEnabled()) return true;
+		}
+		
+		return false;
+	}
+	
+	void setSubQuery(final String indexName, final String partitionValue, final String sortKeyRange) {
+		
+		this.indexName = indexName;
+		this.partitionValue = partitionValue;
+		this.sortKeyRange = sortKeyRange;
+	}
+	
+	/**
+	 * Event types of the sub-query events, looked up once (on the first check, not in the initialization of the events), 
+	 * so the check does not allocate the events
+	 */
+	private static final class EventTypes {
+		
+		static final List<EventType> SUB_QUERY = List.of(
+				EventType.getEventType(SubQueryEvent.class), EventType.getEventType(PageFetchedEvent.class), 
+				EventType.getEventType(ThrottledEvent.class), EventType.getEventType(SubQueryStartedEvent.class));
+	}
+}
\ No newline at end of file
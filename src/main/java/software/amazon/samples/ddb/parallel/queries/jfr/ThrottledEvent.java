@@ -0,0 +1,82 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Page request of a sub-query retried by the SDK, or failed with a throttling error (retried by 
+ * the concurrency limiter, or failing the sub-query)
+ * 
+ * @author zorani
+ *
+ */
+@Name("software.amazon.samples.ddb.Throttled")
+@Label("Sub-Query Throttled or Retried")
+public class ThrottledEvent extends SubQueryTraceEvent {
+
+	@Label("SDK Retries")
+	@Description("Retries of the page request made by the SDK")
+	long retries;
+	
+	@Label("Throttling Error")
+	@Description("The page request failed with a throttling error")
+	boolean throttled;
+	
+	@Label("Error")
+	String error;
+	
+	/**
+	 * Commit the event of the SDK retries, if enabled
+	 * 
+	 * @param indexName
+	 * @param partitionValue
+	 * @param sortKeyRange
+	 * @param retries
+	 */
+	public static void retried(final String indexName, final String partitionValue, final String sortKeyRange, final long retries) {
+		
+		ThrottledEvent event = new ThrottledEvent();
+		if (!event.shouldCommit()) return;
+		
+		event.setSubQuery(indexName, partitionValue, sortKeyRange);
+		event.retries = retries;
+		event.commit();
+	}
+	
+	/**
+	 * Commit the event of the throttling error, if enabled
+	 * 
+	 * @param indexName
+	 * @param partitionValue
+	 * @param sortKeyRange
+	 * @param error
+	 */
+	public static void throttled(final String indexName, final String partitionValue, final String sortKeyRange, final Throwable error) {
+		
+		ThrottledEvent event = new ThrottledEvent();
+		if (!event.shouldCommit()) return;
+		
+		event.setSubQuery(indexName, partitionValue, sortKeyRange);
+		event.throttled = true;
+		event.error = error.getMessage();
+		event.commit();
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.local;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Subset of the DynamoDB expressions supported by the local stand-in: key conditions and filters 
+ * as AND of the comparisons (=, <>, <, <=, >, >=), BETWEEN and begins_with, and the projections 
+ * of the top-level attributes
+ * 
+ * @author zorani
+ *
+ */
+final class Expressions {
+
+	private static final String NAME = "(#?[A-Za-z0-9_.-]+)";
+	private static final String VALUE = "(:[A-Za-z0-9_-]+)";
+	
+	private static final Pattern BEGINS_WITH = Pattern.compile("^\\s*begins_with\\s*\\(\\s*" + NAME + "\\s*,\\s*" + VALUE + "\\s*\\)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern BETWEEN = Pattern.compile("^\\s*" + NAME + "\\s+BETWEEN\\s+" + VALUE + "\\s+AND\\s+" + VALUE, Pattern.CASE_INSENSITIVE);
+	private static final Pattern COMPARISON = Pattern.compile("^\\s*" + NAME + "\\s*(<>|<=|>=|=|<|>)\\s*" + VALUE);
+	private static final Pattern AND = Pattern.compile("^\\s+AND\\s+", Pattern.CASE_INSENSITIVE);
+	
+	/**
+	 * Condition operator
+	 */
+	enum Operator { EQ, NE, LT, LE, GT, GE, BETWEEN, BEGINS_WITH }
+	
+	/**
+	 * Single condition on the attribute
+	 */
+	static final class Clause {
+		
+		final String attributeName;
+		final Operator operator;
+		final JsonNode[] values;
+		
+		private Clause(final String attributeName, final Operator operator, final JsonNode... values) {
+			
+			this.attributeName = attributeName;
+			this.operator = operator;
+			this.values = values;
+		}
+		
+		/**
+		 * Test the item (DynamoDB JSON attribute map)
+		 * 
+		 * @param item
+		 * @return
+		 */
+		boolean test(final JsonNode item) {
+			
+			JsonNode value = item.get(attributeName);
+			if (value == null) return operator == Operator.NE;
+			
+			if (operator == Operator.EQ) return value.equals(values[0]) || compare(value, values[0]) == 0;
+			if (operator == Operator.NE) return !value.equals(values[0]) && compare(value, values[0]) != 0;
+			
+			if (operator == Operator.BEGINS_WITH) {
+				
+				KeyValue actual = scalar(value);
+				return actual != null && actual.startsWith(KeyValue.of(values[0]));
+			}
+			
+			int c = compare(value, values[0]);
+			if (c == Integer.MIN_VALUE) return false;
+			
+			switch (operator) {
+			case LT: return c < 0;
+			case LE: return c <= 0;
+			case GT: return c > 0;
+			case GE: return c >= 0;
+			default: 
+				int upper = compare(value, values[1]);
+				return c >= 0 && upper != Integer.MIN_VALUE && upper <= 0;
+			}
+		}
+		
+		/**
+		 * Compare scalar values of the same type; Integer.MIN_VALUE when they cannot be compared
+		 * 
+		 * @param a
+		 * @param b
+		 * @return
+		 */
+		private static int compare(final JsonNode a, final JsonNode b) {
+			
+			KeyValue x = scalar(a);
+			KeyValue y = scalar(b);
+			
+			if (x == null || y == null || !x.getType().equals(y.getType())) return Integer.MIN_VALUE;
+			
+			return Integer.signum(x.compareTo(y));
+		}
+		
+		private static KeyValue scalar(final JsonNode value) {
+			
+			return value.has("S") || value.has("N") || value.has("B") ? KeyValue.of(value) : null;
+		}
+	}
+	
+	private Expressions() {}
+	
+	/**
+	 * Parse the conditions joined by AND
+	 * 
+	 * @param expression
+	 * @param names ExpressionAttributeNames
+	 * @param values ExpressionAttributeValues
+	 * @return
+	 */
+	static List<Clause> parseConditions(final String expression, final JsonNode names, final JsonNode values) {
+		
+		List<Clause> clauses = new ArrayList<>();
+		String rest = expression;
+		
+		while (true) {
+			
+			Matcher m;
+			
+			if ((m = BEGINS_WITH.matcher(rest)).find()) {
+				
+				clauses.add(new Clause(attributeName(m.group(1), names), Operator.BEGINS_WITH, attributeValue(m.group(2), values)));
+				
+			} else if ((m = BETWEEN.matcher(rest)).find()) {
+				
+				clauses.add(new Clause(attributeName(m.group(1), names), Operator.BETWEEN, 
+						attributeValue(m.group(2), values), attributeValue(m.group(3), values)));
+				
+			} else if ((m = COMPARISON.matcher(rest)).find()) {
+				
+				clauses.add(new Clause(attributeName(m.group(1), names), operator(m.group(2)), attributeValue(m.group(3), values)));
+				
+			} else {
+				throw LocalDynamoDbException.validation("Unsupported expression (the local stand-in supports AND of comparisons, BETWEEN and begins_with): " + expression);
+			}
+			
+			rest = rest.substring(m.end());
+			if (rest.trim().isEmpty()) return clauses;
+			
+			Matcher and = AND.matcher(rest);
+			if (!and.find()) throw LocalDynamoDbException.validation("Unsupported expression (the local stand-in supports AND of comparisons, BETWEEN and begins_with): " + expression);
+			
+			rest = rest.substring(and.end());
+		}
+	}
+	
+	/**
+	 * Top-level attribute names of the projection expression (nested paths project the whole top-level attribute)
+	 * 
+	 * @param expression
+	 * @param names
+	 * @return null when there is no projection
+	 */
+	static List<String> parseProjection(final String expression, final JsonNode names) {
+		
+		if (expression == null || expression.trim().isEmpty()) return null;
+		
+		List<String> attributeNames = new ArrayList<>();
+		
+		for (String path : expression.split(",")) {
+			
+			String token = path.trim().split("[.\\[]")[0];
+			attributeNames.add(attributeName(token, names));
+		}
+		
+		return attributeNames;
+	}
+	
+	/**
+	 * Resolve the #name placeholder
+	 * 
+	 * @param token
+	 * @param names
+	 * @return
+	 */
+	static String attributeName(final String token, final JsonNode names) {
+		
+		if (!token.startsWith("#")) return token;
+		
+		JsonNode name = names == null ? null : names.get(token);
+		if (name == null) throw LocalDynamoDbException.validation("Value provided in ExpressionAttributeNames unused or missing: " + token);
+		
+		return name.asText();
+	}
+	
+	private static JsonNode attributeValue(final String token, final JsonNode values) {
+		
+		JsonNode value = values == null ? null : values.get(token);
+		if (value == null) throw LocalDynamoDbException.validation("An expression attribute value used in expression is not defined: " + token);
+		
+		return value;
+	}
+	
+	private static Operator operator(final String symbol) {
+		
+		switch (symbol) {
+		case "=": return Operator.EQ;
+		case "<>": return Operator.NE;
+		case "<": return Operator.LT;
+		case "<=": return Operator.LE;
+		case ">": return Operator.GT;
+		default: return Operator.GE;
+		}
+	}
+}
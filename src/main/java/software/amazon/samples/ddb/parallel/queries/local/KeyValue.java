@@ -0,0 +1,129 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.local;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Scalar key attribute value (S, N or B), ordered like DynamoDB orders the sort keys: 
+ * strings and binaries by their characters, numbers by their numeric value
+ * 
+ * @author zorani
+ *
+ */
+final class KeyValue implements Comparable<KeyValue> {
+
+	private final String type;
+	private final String value;
+	private final BigDecimal number;
+	
+	private KeyValue(final String type, final String value) {
+		
+		this.type = type;
+		this.value = value;
+		this.number = "N".equals(type) ? new BigDecimal(value) : null;
+	}
+	
+	/**
+	 * Key value of the DynamoDB JSON attribute value, e.g. {"S": "SPORT"}
+	 * 
+	 * @param attributeValue
+	 * @return null for the missing attribute
+	 */
+	static KeyValue of(final JsonNode attributeValue) {
+		
+		if (attributeValue == null || attributeValue.isNull() || attributeValue.isMissingNode()) return null;
+		
+		for (String type : new String[] {"S", "N", "B"}) {
+			
+			JsonNode value = attributeValue.get(type);
+			
+			if (value != null) {
+				
+				try {
+					return new KeyValue(type, value.asText());
+				} catch (NumberFormatException e) {
+					throw LocalDynamoDbException.validation("Invalid number: " + value.asText());
+				}
+			}
+		}
+		
+		throw LocalDynamoDbException.validation("Key attribute must be a scalar (S, N or B): " + attributeValue);
+	}
+	
+	/**
+	 * Value with the characters appended (upper bound of begins_with)
+	 * 
+	 * @param suffix
+	 * @return
+	 */
+	KeyValue append(final String suffix) {
+		
+		return new KeyValue(type, value + suffix);
+	}
+	
+	boolean startsWith(final KeyValue prefix) {
+		
+		return type.equals(prefix.type) && !"N".equals(type) && value.startsWith(prefix.value);
+	}
+	
+	String getType() {
+		return type;
+	}
+	
+	/**
+	 * DynamoDB JSON attribute value
+	 * 
+	 * @return
+	 */
+	ObjectNode toAttributeValue() {
+		
+		return JsonNodeFactory.instance.objectNode().put(type, value);
+	}
+	
+	@Override
+	public int compareTo(final KeyValue other) {
+		
+		int byType = type.compareTo(other.type);
+		if (byType != 0) return byType;
+		
+		return number != null ? number.compareTo(other.number) : value.compareTo(other.value);
+	}
+	
+	@Override
+	public boolean equals(final Object other) {
+		
+		return other instanceof KeyValue && compareTo((KeyValue) other) == 0;
+	}
+	
+	@Override
+	public int hashCode() {
+		
+		return number != null ? number.stripTrailingZeros().hashCode() : value.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		
+		return number != null ? number.stripTrailingZeros().toPlainString() : value;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.local;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency added by the local stand-in to every response
+ * 
+ * @author zorani
+ *
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+	/**
+	 * Next latency
+	 * 
+	 * @return microseconds
+	 */
+	long sampleMicros();
+	
+	/**
+	 * No latency
+	 * 
+	 * @return
+	 */
+	static LatencyDistribution none() {
+		
+		return () -> 0;
+	}
+	
+	/**
+	 * Always the same latency
+	 * 
+	 * @param millis
+	 * @return
+	 */
+	static LatencyDistribution constant(final double millis) {
+		
+		long micros = Math.round(millis * 1_000);
+		return () -> micros;
+	}
+	
+	/**
+	 * Uniformly distributed latency
+	 * 
+	 * @param minMillis
+	 * @param maxMillis
+	 * @return
+	 */
+	static LatencyDistribution uniform(final double minMillis, final double maxMillis) {
+		
+		if (maxMillis < minMillis) throw new IllegalArgumentException("maxMillis must not be less than minMillis");
+		
+		return () -> Math.round(1_000 * (minMillis + ThreadLocalRandom.current().nextDouble() * (maxMillis - minMillis)));
+	}
+	
+	/**
+	 * Log-normal latency (long right tail, like the service latencies), e.g. median 5 ms with sigma 0.5 
+	 * gives p99 of about 16 ms
+	 * 
+	 * @param medianMillis
+	 * @param sigma
+	 * @return
+	 */
+	static LatencyDistribution logNormal(final double medianMillis, final double sigma) {
+		
+		if (medianMillis <= 0 || sigma < 0) throw new IllegalArgumentException("medianMillis must be positive and sigma must not be negative");
+		
+		double mu = Math.log(medianMillis);
+		return () -> Math.round(1_000 * Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+	}
+	
+	/**
+	 * Parse the distribution: none, constant:MS, uniform:MIN_MS:MAX_MS or lognormal:MEDIAN_MS:SIGMA
+	 * 
+	 * @param spec
+	 * @return
+	 */
+	static LatencyDistribution parse(final String spec) {
+		
+		String[] parts = spec.trim().toLowerCase().split(":");
+		
+		try {
+			switch (parts[0]) {
+			case "none": return none();
+			case "constant": return constant(Double.parseDouble(parts[1]));
+			case "uniform": return uniform(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+			case "lognormal": return logNormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+			default: break;
+			}
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid latency distribution: " + spec, e);
+		}
+		
+		throw new IllegalArgumentException("Unknown latency distribution: " + spec + " (none, constant:MS, uniform:MIN_MS:MAX_MS, lognormal:MEDIAN_MS:SIGMA)");
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.local;
+
+/**
+ * DynamoDB error response of the local stand-in: HTTP status and the error type (the SDK clients map 
+ * the type to the exception, e.g. ProvisionedThroughputExceededException)
+ * 
+ * @author zorani
+ *
+ */
+class LocalDynamoDbException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String TYPE_PREFIX = "com.amazonaws.dynamodb.v20120810#";
+	
+	private final int statusCode;
+	private final String type;
+	
+	LocalDynamoDbException(final int statusCode, final String type, final String message) {
+		
+		super(message);
+		this.statusCode = statusCode;
+		this.type = type;
+	}
+	
+	static LocalDynamoDbException validation(final String message) {
+		
+		return new LocalDynamoDbException(400, TYPE_PREFIX + "ValidationException", message);
+	}
+	
+	static LocalDynamoDbException resourceNotFound(final String tableName) {
+		
+		return new LocalDynamoDbException(400, TYPE_PREFIX + "ResourceNotFoundException", "Requested resource not found: Table: " + tableName + " not found");
+	}
+	
+	static LocalDynamoDbException throttled() {
+		
+		return new LocalDynamoDbException(400, TYPE_PREFIX + "ProvisionedThroughputExceededException", 
+				"The level of configured provisioned throughput for the table was exceeded. Consider increasing your provisioning level with the UpdateTable API.");
+	}
+	
+	static LocalDynamoDbException unknownOperation(final String target) {
+		
+		return new LocalDynamoDbException(400, TYPE_PREFIX + "UnknownOperationException", "Unknown operation: " + target);
+	}
+	
+	static LocalDynamoDbException internal(final String message) {
+		
+		return new LocalDynamoDbException(500, TYPE_PREFIX + "InternalServerError", message);
+	}
+
+	int getStatusCode() {
+		return statusCode;
+	}
+
+	String getType() {
+		return type;
+	}
+}
@@ -0,0 +1,701 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.local;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.Config;
+
+/**
+ * Local DynamoDB stand-in: HTTP endpoint speaking the subset of the DynamoDB JSON protocol the queries and loaders 
+ * of this project use (Query, Scan with Segment/TotalSegments, GetItem, BatchGetItem, BatchWriteItem, PutItem, 
+ * DescribeTable), for load tests of the fan-out strategies without paying for the table.
+ * 
+ * It models what makes the concurrency tuning meaningful: 1 MB query and scan pages, read and write capacity 
+ * limits per partition (ProvisionedThroughputExceededException, UnprocessedItems and UnprocessedKeys when exceeded), 
+ * configurable latency distribution of every response and randomly injected throttling errors.
+ * 
+ * Both SDK clients of this project point at it with the ddb.endpoint system property 
+ * (e.g. -Dddb.endpoint=http://localhost:8000, see {@link Config#DDB_ENDPOINT_PROPERTY}).
+ * 
+ * @author zorani
+ *
+ */
+public class LocalDynamoDbServer {
+
+	private static final String TARGET_PREFIX = "DynamoDB_20120810.";
+	private static final String CONTENT_TYPE = "application/x-amz-json-1.0";
+	
+	private static final int MAX_BATCH_WRITE_ITEMS = 25;
+	private static final int MAX_BATCH_GET_KEYS = 100;
+	
+	private final int port;
+	private final Map<String, LocalTable> tables = new ConcurrentHashMap<>();
+	
+	private LatencyDistribution latency = LatencyDistribution.none();
+	private double throttleProbability = 0;
+	private PartitionThroughput throughput = new PartitionThroughput(Config.LOCAL_DDB_PARTITIONS, 
+			Config.LOCAL_DDB_PARTITION_RCU, Config.LOCAL_DDB_PARTITION_WCU, Config.LOCAL_DDB_BURST_SECONDS);
+	
+	private HttpServer server = null;
+	private ExecutorService executor = null;
+	
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong injectedThrottles = new AtomicLong();
+	
+	private static final Logger LOG = LoggerFactory.getLogger(LocalDynamoDbServer.class);
+
+	/**
+	 * C-tor
+	 * 
+	 * @param port 0: any free port (see {@link #getEndpoint()})
+	 */
+	public LocalDynamoDbServer(final int port) {
+		
+		this.port = port;
+	}
+	
+	/**
+	 * Add the table
+	 * 
+	 * @param table
+	 * @return
+	 */
+	public LocalDynamoDbServer withTable(@NonNull final LocalTable table) {
+		
+		tables.put(table.getName(), table);
+		return this;
+	}
+	
+	/**
+	 * Latency added to every response
+	 * 
+	 * @param latency
+	 * @return
+	 */
+	public LocalDynamoDbServer withLatency(@NonNull final LatencyDistribution latency) {
+		
+		this.latency = latency;
+		return this;
+	}
+	
+	/**
+	 * Probability of the injected throttling error (any request, or any item of the batch requests), 
+	 * on top of the partition throughput limits
+	 * 
+	 * @param throttleProbability
+	 * @return
+	 */
+	public LocalDynamoDbServer withThrottleProbability(final double throttleProbability) {
+		
+		if (throttleProbability < 0 || throttleProbability > 1) throw new IllegalArgumentException("throttleProbability must be between 0 and 1");
+		
+		this.throttleProbability = throttleProbability;
+		return this;
+	}
+	
+	/**
+	 * Throughput limits per partition
+	 * 
+	 * @param partitions partitions per table or index
+	 * @param readUnitsPerSecond RCU/s per partition, zero: no limit
+	 * @param writeUnitsPerSecond WCU/s per partition, zero: no limit
+	 * @param burstSeconds unused capacity kept for bursts
+	 * @return
+	 */
+	public LocalDynamoDbServer withPartitionThroughput(final int partitions, final double readUnitsPerSecond, 
+			final double writeUnitsPerSecond, final double burstSeconds) {
+		
+		this.throughput = new PartitionThroughput(partitions, readUnitsPerSecond, writeUnitsPerSecond, burstSeconds);
+		return this;
+	}
+	
+	/**
+	 * Start serving requests
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public LocalDynamoDbServer start() throws IOException {
+		
+		if (server != null) throw new IllegalStateException("Server already started");
+		
+		AtomicInteger threads = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(r -> new Thread(r, "local-ddb-" + threads.incrementAndGet()));
+		
+		server = HttpServer.create(new InetSocketAddress(port), 1_024);
+		server.createContext("/", this::handle);
+		server.setExecutor(executor);
+		server.start();
+		
+		LOG.info("Local DynamoDB stand-in listening at {}, tables: {}", getEndpoint(), tables.keySet());
+		return this;
+	}
+	
+	/**
+	 * Stop serving requests
+	 */
+	public void stop() {
+		
+		if (server == null) return;
+		
+		server.stop(0);
+		executor.shutdownNow();
+		server = null;
+	}
+	
+	/**
+	 * Endpoint URL for the clients
+	 * 
+	 * @return
+	 */
+	public String getEndpoint() {
+		
+		return "http://localhost:" + (server == null ? port : server.getAddress().getPort());
+	}
+	
+	public LocalTable getTable(final String tableName) {
+		return tables.get(tableName);
+	}
+	
+	public long getRequestCount() {
+		return requests.get();
+	}
+	
+	/**
+	 * Throttled requests (partition limits and injected errors), including the unprocessed items and keys of the batches
+	 * 
+	 * @return
+	 */
+	public long getThrottledCount() {
+		return throughput.getThrottledRequests() + injectedThrottles.get();
+	}
+	
+	private void handle(final HttpExchange exchange) throws IOException {
+		
+		requests.incrementAndGet();
+		
+		int status = 200;
+		byte[] response;
+		
+		try {
+			
+			String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+			if (target == null || !target.startsWith(TARGET_PREFIX)) throw LocalDynamoDbException.unknownOperation(target);
+			
+			JsonNode request;
+			
+			try {
+				request = LocalTable.MAPPER.readTree(exchange.getRequestBody().readAllBytes());
+			} catch (JsonProcessingException e) {
+				throw new LocalDynamoDbException(400, "com.amazon.coral.service#SerializationException", e.getOriginalMessage());
+			}
+			
+			response = dispatch(target.substring(TARGET_PREFIX.length()), request);
+			
+		} catch (LocalDynamoDbException e) {
+			
+			status = e.getStatusCode();
+			response = error(e.getType(), e.getMessage());
+			
+		} catch (RuntimeException e) {
+			
+			LOG.error("Local DynamoDB stand-in request failed", e);
+			status = 500;
+			response = error("com.amazonaws.dynamodb.v20120810#InternalServerError", String.valueOf(e.getMessage()));
+		}
+		
+		pause(latency.sampleMicros());
+		
+		CRC32 crc32 = new CRC32();
+		crc32.update(response);
+		
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		exchange.getResponseHeaders().set("x-amz-crc32", Long.toString(crc32.getValue()));
+		exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+		exchange.sendResponseHeaders(status, response.length);
+		
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(response);
+		}
+	}
+	
+	private byte[] dispatch(final String operation, final JsonNode request) {
+		
+		switch (operation) {
+		case "Query": return query(injectThrottling(request));
+		case "Scan": return scan(injectThrottling(request));
+		case "GetItem": return getItem(injectThrottling(request));
+		case "PutItem": return putItem(injectThrottling(request));
+		case "BatchGetItem": return batchGetItem(request);
+		case "BatchWriteItem": return batchWriteItem(request);
+		case "DescribeTable": return describeTable(request);
+		default: throw LocalDynamoDbException.unknownOperation(TARGET_PREFIX + operation);
+		}
+	}
+	
+	private byte[] query(final JsonNode request) {
+		
+		LocalTable table = table(request.path("TableName").asText(null));
+		return page(request, table, table.query(request));
+	}
+	
+	private byte[] scan(final JsonNode request) {
+		
+		LocalTable table = table(request.path("TableName").asText(null));
+		return page(request, table, table.scan(request));
+	}
+	
+	private byte[] page(final JsonNode request, final LocalTable table, final LocalTable.Page page) {
+		
+		boolean consistentRead = request.path("ConsistentRead").asBoolean(false);
+		double units = page.readUnits(consistentRead);
+		
+		// every partition is charged for the items read from it (a scan page spans many partitions)
+		Map<String, Double> unitsByPartition = new HashMap<>();
+		page.readUnitsByPartitionKey(consistentRead).forEach((key, keyUnits) -> 
+				unitsByPartition.merge(throughput.partitionOf(page.tableOrIndex, key), keyUnits, Double::sum));
+		
+		throughput.acquireRead(unitsByPartition);
+		
+		ObjectNode result = LocalTable.MAPPER.createObjectNode();
+		result.put("Count", page.count);
+		result.put("ScannedCount", page.scannedCount);
+		if (page.lastEvaluatedKey != null) result.set("LastEvaluatedKey", page.lastEvaluatedKey);
+		addConsumedCapacity(request, result, table, units);
+		
+		return "COUNT".equals(request.path("Select").asText()) ? toBytes(result) : withRawItems("Items", page.items, result);
+	}
+	
+	private byte[] getItem(final JsonNode request) {
+		
+		LocalTable table = table(request.path("TableName").asText(null));
+		KeyValue key = table.primaryKey(request.get("Key"));
+		
+		boolean consistentRead = request.path("ConsistentRead").asBoolean(false);
+		LocalTable.StoredItem item = table.get(key);
+		double units = LocalTable.readUnits(item == null ? 0 : item.size, consistentRead);
+		
+		throughput.acquireRead(throughput.partitionOf(table.getName(), key), units);
+		
+		ObjectNode result = LocalTable.MAPPER.createObjectNode();
+		addConsumedCapacity(request, result, table, units);
+		
+		if (item == null) return toBytes(result);
+		
+		byte[] projected = LocalTable.project(item, Expressions.parseProjection(request.path("ProjectionExpression").asText(null), 
+				request.get("ExpressionAttributeNames")));
+		
+		return withRawItem("Item", projected, result);
+	}
+	
+	private byte[] putItem(final JsonNode request) {
+		
+		if (request.has("ConditionExpression") || request.has("Expected")) {
+			throw LocalDynamoDbException.validation("Conditional writes are not supported by the local stand-in");
+		}
+		
+		LocalTable table = table(request.path("TableName").asText(null));
+		LocalTable.StoredItem item = table.prepare(request.get("Item"));
+		
+		List<String> partitions = table.writePartitions(item, throughput);
+		double units = LocalTable.writeUnits(item);
+		
+		if (!throughput.tryAcquireWrite(partitions, units)) throw LocalDynamoDbException.throttled();
+		
+		table.store(item);
+		
+		ObjectNode result = LocalTable.MAPPER.createObjectNode();
+		addConsumedCapacity(request, result, table, units * partitions.size());
+		
+		return toBytes(result);
+	}
+	
+	private byte[] batchWriteItem(final JsonNode request) {
+		
+		JsonNode requestItems = request.path("RequestItems");
+		
+		int total = 0;
+		for (JsonNode writes : requestItems) total += writes.size();
+		
+		if (total == 0 || total > MAX_BATCH_WRITE_ITEMS) {
+			throw LocalDynamoDbException.validation("Too many items requested for the BatchWriteItem call (1 - " + MAX_BATCH_WRITE_ITEMS + " items)");
+		}
+		
+		ObjectNode unprocessed = LocalTable.MAPPER.createObjectNode();
+		ArrayNode consumedCapacity = LocalTable.MAPPER.createArrayNode();
+		int processed = 0;
+		
+		for (Iterator<Map.Entry<String, JsonNode>> it = requestItems.fields(); it.hasNext(); ) {
+			
+			Map.Entry<String, JsonNode> entry = it.next();
+			LocalTable table = table(entry.getKey());
+			double units = 0;
+			
+			for (JsonNode write : entry.getValue()) {
+				
+				double writeUnits = write.has("PutRequest") ? put(table, write.get("PutRequest").get("Item")) 
+						: delete(table, write.path("DeleteRequest").get("Key"));
+				
+				if (writeUnits < 0) {
+					
+					if (!unprocessed.has(table.getName())) unprocessed.putArray(table.getName());
+					((ArrayNode) unprocessed.get(table.getName())).add(write);
+					continue;
+				}
+				
+				units += writeUnits;
+				++processed;
+			}
+			
+			consumedCapacity.addObject().put("TableName", table.getName()).put("CapacityUnits", units);
+		}
+		
+		if (processed == 0) throw LocalDynamoDbException.throttled();
+		
+		ObjectNode result = LocalTable.MAPPER.createObjectNode();
+		result.set("UnprocessedItems", unprocessed);
+		if (returnConsumedCapacity(request)) result.set("ConsumedCapacity", consumedCapacity);
+		
+		return toBytes(result);
+	}
+	
+	/**
+	 * Put single item of the batch
+	 * 
+	 * @param table
+	 * @param itemNode
+	 * @return consumed write capacity, negative when throttled
+	 */
+	private double put(final LocalTable table, final JsonNode itemNode) {
+		
+		LocalTable.StoredItem item = table.prepare(itemNode);
+		
+		List<String> partitions = table.writePartitions(item, throughput);
+		double units = LocalTable.writeUnits(item);
+		
+		if (isInjectedThrottle() || !throughput.tryAcquireWrite(partitions, units)) return -1;
+		
+		table.store(item);
+		return units * partitions.size();
+	}
+	
+	/**
+	 * Delete single item of the batch
+	 * 
+	 * @param table
+	 * @param keyNode
+	 * @return consumed write capacity, negative when throttled
+	 */
+	private double delete(final LocalTable table, final JsonNode keyNode) {
+		
+		KeyValue key = table.primaryKey(keyNode);
+		LocalTable.StoredItem old = table.get(key);
+		
+		List<String> partitions = old == null ? List.of(throughput.partitionOf(table.getName(), key)) : table.writePartitions(old, throughput);
+		double units = old == null ? 1 : LocalTable.writeUnits(old);
+		
+		if (isInjectedThrottle() || !throughput.tryAcquireWrite(partitions, units)) return -1;
+		
+		table.delete(key);
+		return units * partitions.size();
+	}
+	
+	private byte[] batchGetItem(final JsonNode request) {
+		
+		JsonNode requestItems = request.path("RequestItems");
+		
+		int total = 0;
+		for (JsonNode keysAndAttributes : requestItems) total += keysAndAttributes.path("Keys").size();
+		
+		if (total == 0 || total > MAX_BATCH_GET_KEYS) {
+			throw LocalDynamoDbException.validation("Too many items requested for the BatchGetItem call (1 - " + MAX_BATCH_GET_KEYS + " keys)");
+		}
+		
+		ObjectNode responses = LocalTable.MAPPER.createObjectNode();
+		ObjectNode unprocessed = LocalTable.MAPPER.createObjectNode();
+		ArrayNode consumedCapacity = LocalTable.MAPPER.createArrayNode();
+		int processed = 0;
+		
+		for (Iterator<Map.Entry<String, JsonNode>> it = requestItems.fields(); it.hasNext(); ) {
+			
+			Map.Entry<String, JsonNode> entry = it.next();
+			LocalTable table = table(entry.getKey());
+			JsonNode keysAndAttributes = entry.getValue();
+			
+			boolean consistentRead = keysAndAttributes.path("ConsistentRead").asBoolean(false);
+			List<String> projection = Expressions.parseProjection(keysAndAttributes.path("ProjectionExpression").asText(null), 
+					keysAndAttributes.get("ExpressionAttributeNames"));
+			
+			ArrayNode items = responses.putArray(table.getName());
+			double units = 0;
+			
+			for (JsonNode keyNode : keysAndAttributes.path("Keys")) {
+				
+				KeyValue key = table.primaryKey(keyNode);
+				LocalTable.StoredItem item = table.get(key);
+				double readUnits = LocalTable.readUnits(item == null ? 0 : item.size, consistentRead);
+				
+				if (isInjectedThrottle() || !throughput.tryAcquireRead(throughput.partitionOf(table.getName(), key), readUnits)) {
+					
+					if (!unprocessed.has(table.getName())) {
+						
+						ObjectNode unprocessedKeys = keysAndAttributes.deepCopy();
+						unprocessedKeys.putArray("Keys");
+						unprocessed.set(table.getName(), unprocessedKeys);
+					}
+					
+					((ArrayNode) unprocessed.get(table.getName()).get("Keys")).add(keyNode);
+					continue;
+				}
+				
+				units += readUnits;
+				++processed;
+				
+				if (item != null) items.add(parse(LocalTable.project(item, projection)));
+			}
+			
+			consumedCapacity.addObject().put("TableName", table.getName()).put("CapacityUnits", units);
+		}
+		
+		if (processed == 0) throw LocalDynamoDbException.throttled();
+		
+		ObjectNode result = LocalTable.MAPPER.createObjectNode();
+		result.set("Responses", responses);
+		result.set("UnprocessedKeys", unprocessed);
+		if (returnConsumedCapacity(request)) result.set("ConsumedCapacity", consumedCapacity);
+		
+		return toBytes(result);
+	}
+	
+	private byte[] describeTable(final JsonNode request) {
+		
+		ObjectNode result = LocalTable.MAPPER.createObjectNode();
+		result.set("Table", table(request.path("TableName").asText(null)).describe());
+		
+		return toBytes(result);
+	}
+	
+	private LocalTable table(final String tableName) {
+		
+		LocalTable table = tableName == null ? null : tables.get(tableName);
+		if (table == null) throw LocalDynamoDbException.resourceNotFound(tableName);
+		
+		return table;
+	}
+	
+	private JsonNode injectThrottling(final JsonNode request) {
+		
+		if (isInjectedThrottle()) throw LocalDynamoDbException.throttled();
+		return request;
+	}
+	
+	private boolean isInjectedThrottle() {
+		
+		if (throttleProbability <= 0 || ThreadLocalRandom.current().nextDouble() >= throttleProbability) return false;
+		
+		injectedThrottles.incrementAndGet();
+		return true;
+	}
+	
+	private static boolean returnConsumedCapacity(final JsonNode request) {
+		
+		String returnConsumedCapacity = request.path("ReturnConsumedCapacity").asText("NONE");
+		return "TOTAL".equals(returnConsumedCapacity) || "INDEXES".equals(returnConsumedCapacity);
+	}
+	
+	private static void addConsumedCapacity(final JsonNode request, final ObjectNode result, final LocalTable table, final double units) {
+		
+		if (returnConsumedCapacity(request)) result.putObject("ConsumedCapacity").put("TableName", table.getName()).put("CapacityUnits", units);
+	}
+	
+	/**
+	 * Response with the array of the already serialized items and the other fields
+	 * 
+	 * @param field
+	 * @param items
+	 * @param rest
+	 * @return
+	 */
+	private static byte[] withRawItems(final String field, final List<byte[]> items, final ObjectNode rest) {
+		
+		int size = 0;
+		for (byte[] item : items) size += item.length + 1;
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size + 256);
+		out.writeBytes(("{\"" + field + "\":[").getBytes(StandardCharsets.UTF_8));
+		
+		for (int i = 0; i < items.size(); ++i) {
+			
+			if (i > 0) out.write(',');
+			out.writeBytes(items.get(i));
+		}
+		
+		out.write(']');
+		appendFields(out, rest);
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Response with the already serialized item and the other fields
+	 * 
+	 * @param field
+	 * @param item
+	 * @param rest
+	 * @return
+	 */
+	private static byte[] withRawItem(final String field, final byte[] item, final ObjectNode rest) {
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(item.length + 256);
+		out.writeBytes(("{\"" + field + "\":").getBytes(StandardCharsets.UTF_8));
+		out.writeBytes(item);
+		appendFields(out, rest);
+		
+		return out.toByteArray();
+	}
+	
+	private static void appendFields(final ByteArrayOutputStream out, final ObjectNode rest) {
+		
+		byte[] fields = toBytes(rest);
+		
+		// fields of the object after its opening brace, or just the closing brace of the empty object
+		if (fields.length > 2) {
+			
+			out.write(',');
+			out.write(fields, 1, fields.length - 1);
+		}
+		else out.write('}');
+	}
+	
+	private static byte[] error(final String type, final String message) {
+		
+		ObjectNode error = LocalTable.MAPPER.createObjectNode();
+		error.put("__type", type);
+		error.put("message", message);
+		
+		return toBytes(error);
+	}
+	
+	private static byte[] toBytes(final JsonNode node) {
+		
+		try {
+			return LocalTable.MAPPER.writeValueAsBytes(node);
+		} catch (JsonProcessingException e) {
+			throw LocalDynamoDbException.internal(e.getMessage());
+		}
+	}
+	
+	private static JsonNode parse(final byte[] json) {
+		
+		try {
+			return LocalTable.MAPPER.readTree(json);
+		} catch (IOException e) {
+			throw LocalDynamoDbException.internal(e.getMessage());
+		}
+	}
+	
+	private static void pause(final long micros) {
+		
+		if (micros <= 0) return;
+		
+		try {
+			TimeUnit.MICROSECONDS.sleep(micros);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Start the stand-in with the empty Orders table (load it with LoadTestData and -Dddb.endpoint)
+	 * 
+	 * Options (all optional): --port=8000, --latency=none|constant:MS|uniform:MIN_MS:MAX_MS|lognormal:MEDIAN_MS:SIGMA, 
+	 * --throttle-probability=0.001, --partitions=N, --partition-rcu=3000, --partition-wcu=1000, --burst-seconds=N
+	 * 
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		
+		Map<String, String> options = new HashMap<>();
+		
+		for (String arg : args) {
+			
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) throw new IllegalArgumentException("Unknown argument: " + arg);
+			
+			options.put(arg.substring(2, eq), arg.substring(eq + 1));
+		}
+		
+		LocalDynamoDbServer server = new LocalDynamoDbServer(Integer.parseInt(options.getOrDefault("port", String.valueOf(Config.LOCAL_DDB_PORT))))
+				.withTable(LocalTable.orders(Config.DDB_TABLE_NAME))
+				.withLatency(LatencyDistribution.parse(options.getOrDefault("latency", "none")))
+				.withThrottleProbability(Double.parseDouble(options.getOrDefault("throttle-probability", "0")))
+				.withPartitionThroughput(
+						Integer.parseInt(options.getOrDefault("partitions", String.valueOf(Config.LOCAL_DDB_PARTITIONS))), 
+						Double.parseDouble(options.getOrDefault("partition-rcu", String.valueOf(Config.LOCAL_DDB_PARTITION_RCU))), 
+						Double.parseDouble(options.getOrDefault("partition-wcu", String.valueOf(Config.LOCAL_DDB_PARTITION_WCU))), 
+						Double.parseDouble(options.getOrDefault("burst-seconds", String.valueOf(Config.LOCAL_DDB_BURST_SECONDS))))
+				.start();
+		
+		List<String> unused = new ArrayList<>(options.keySet());
+		unused.removeAll(List.of("port", "latency", "throttle-probability", "partitions", "partition-rcu", "partition-wcu", "burst-seconds"));
+		if (!unused.isEmpty()) LOG.warn("Unknown options ignored: {}", unused);
+		
+		LocalTable orders = server.getTable(Config.DDB_TABLE_NAME);
+		
+		Executors.newSingleThreadScheduledExecutor(r -> {
+			
+			Thread thread = new Thread(r, "local-ddb-stats");
+			thread.setDaemon(true);
+			return thread;
+			
+		}).scheduleAtFixedRate(() -> LOG.info("Requests: {}, throttled: {}, Orders: {}, table size: {} MB", 
+				server.getRequestCount(), server.getThrottledCount(), orders.getItemCount(), orders.getSizeBytes() / (1024 * 1024)), 
+				10, 10, TimeUnit.SECONDS);
+	}
+}
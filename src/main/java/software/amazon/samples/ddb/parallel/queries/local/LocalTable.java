@@ -0,0 +1,870 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.local;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import software.amazon.samples.ddb.parallel.queries.QueryUtils;
+
+/**
+ * In-memory table of the local DynamoDB stand-in: partition key only primary key (like the Orders table) 
+ * and global secondary indexes with the partition and sort key, all projecting all attributes. Items are kept 
+ * as their DynamoDB JSON bytes, so the query pages are written out without converting the items again.
+ * 
+ * Queries read the index partition in the sort key order, scans read the table in the order of the partition 
+ * key hash (segment N of T is the N-th of T hash ranges); both stop at the Limit or at 1 MB of read items, 
+ * with the LastEvaluatedKey to continue from, and apply the filter after the read, like DynamoDB does.
+ * 
+ * @author zorani
+ *
+ */
+public class LocalTable {
+
+	public static final int MAX_PAGE_BYTES = 1024 * 1024;
+	
+	static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	/**
+	 * Global secondary index (string partition key)
+	 */
+	public static final class Index {
+		
+		private final String name;
+		private final String hashKey;
+		private final String rangeKey;
+		private final String rangeKeyType;
+		
+		/**
+		 * C-tor
+		 * 
+		 * @param name
+		 * @param hashKey
+		 * @param rangeKey optional
+		 * @param rangeKeyType S, N or B
+		 */
+		public Index(final String name, final String hashKey, final String rangeKey, final String rangeKeyType) {
+			
+			this.name = Objects.requireNonNull(name);
+			this.hashKey = Objects.requireNonNull(hashKey);
+			this.rangeKey = rangeKey;
+			this.rangeKeyType = rangeKeyType;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+	
+	/**
+	 * Stored item with its key values in the table and in the indexes
+	 */
+	static final class StoredItem {
+		
+		final KeyValue key;
+		final byte[] json;
+		final int size;
+		final KeyValue[] indexHashKeys;
+		final KeyValue[] indexRangeKeys;
+		
+		private StoredItem(final KeyValue key, final byte[] json, final int size, final KeyValue[] indexHashKeys, final KeyValue[] indexRangeKeys) {
+			
+			this.key = key;
+			this.json = json;
+			this.size = size;
+			this.indexHashKeys = indexHashKeys;
+			this.indexRangeKeys = indexRangeKeys;
+		}
+		
+		JsonNode parse() {
+			
+			try {
+				return MAPPER.readTree(json);
+			} catch (IOException e) {
+				throw LocalDynamoDbException.internal("Corrupted item: " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Single page of the query or scan
+	 */
+	static final class Page {
+		
+		final List<byte[]> items;
+		final int count;
+		final int scannedCount;
+		final ObjectNode lastEvaluatedKey;
+		final long readBytes;
+		final String tableOrIndex;
+		final Map<KeyValue, Long> readBytesByPartitionKey;
+		
+		private Page(final List<byte[]> items, final int count, final int scannedCount, final ObjectNode lastEvaluatedKey, 
+				final long readBytes, final String tableOrIndex, final Map<KeyValue, Long> readBytesByPartitionKey) {
+			
+			this.items = items;
+			this.count = count;
+			this.scannedCount = scannedCount;
+			this.lastEvaluatedKey = lastEvaluatedKey;
+			this.readBytes = readBytes;
+			this.tableOrIndex = tableOrIndex;
+			this.readBytesByPartitionKey = readBytesByPartitionKey;
+		}
+		
+		/**
+		 * Read capacity: 4 KB units of the read items (at least one), half of it for eventually consistent reads
+		 * 
+		 * @param consistentRead
+		 * @return
+		 */
+		double readUnits(final boolean consistentRead) {
+			
+			return LocalTable.readUnits(readBytes, consistentRead);
+		}
+		
+		/**
+		 * Read capacity of the page split among the partition keys it read, in proportion to the bytes read from each 
+		 * (a query reads a single partition key, a scan page usually many)
+		 * 
+		 * @param consistentRead
+		 * @return
+		 */
+		Map<KeyValue, Double> readUnitsByPartitionKey(final boolean consistentRead) {
+			
+			double units = readUnits(consistentRead);
+			Map<KeyValue, Double> unitsByKey = new LinkedHashMap<>();
+			
+			readBytesByPartitionKey.forEach((key, bytes) -> 
+					unitsByKey.put(key, readBytes == 0 ? units / readBytesByPartitionKey.size() : units * bytes / readBytes));
+			
+			return unitsByKey;
+		}
+	}
+	
+	/**
+	 * Position in the table scan order
+	 */
+	private static final class ScanKey implements Comparable<ScanKey> {
+		
+		private final long hash;
+		private final KeyValue key;
+		
+		private ScanKey(final long hash, final KeyValue key) {
+			
+			this.hash = hash;
+			this.key = key;
+		}
+		
+		@Override
+		public int compareTo(final ScanKey other) {
+			
+			int byHash = Long.compare(hash, other.hash);
+			if (byHash != 0) return byHash;
+			
+			// null key: before all keys of the hash
+			if (key == null || other.key == null) return key == other.key ? 0 : key == null ? -1 : 1;
+			
+			return key.compareTo(other.key);
+		}
+	}
+	
+	/**
+	 * Position in the index partition: sort key, then the table key (the bound places the key before or after all table keys)
+	 */
+	private static final class IndexKey implements Comparable<IndexKey> {
+		
+		private final KeyValue rangeKey;
+		private final KeyValue key;
+		private final int bound;
+		
+		private IndexKey(final KeyValue rangeKey, final KeyValue key, final int bound) {
+			
+			this.rangeKey = rangeKey;
+			this.key = key;
+			this.bound = bound;
+		}
+		
+		@Override
+		public int compareTo(final IndexKey other) {
+			
+			int byRange = rangeKey == null || other.rangeKey == null ? 0 : rangeKey.compareTo(other.rangeKey);
+			if (byRange != 0) return byRange;
+			
+			if (bound != 0 || other.bound != 0) return Integer.compare(bound, other.bound);
+			
+			return key.compareTo(other.key);
+		}
+	}
+	
+	private final String name;
+	private final String hashKey;
+	private final List<Index> indexes;
+	private final long creationEpochSeconds = System.currentTimeMillis() / 1_000;
+	
+	private final ConcurrentSkipListMap<ScanKey, StoredItem> items = new ConcurrentSkipListMap<>();
+	private final ConcurrentHashMap<KeyValue, StoredItem> itemsByKey = new ConcurrentHashMap<>();
+	private final List<ConcurrentHashMap<KeyValue, ConcurrentSkipListMap<IndexKey, StoredItem>>> indexPartitions = new ArrayList<>();
+	
+	private final AtomicLong sizeBytes = new AtomicLong();
+	private final Object[] locks = new Object[256];
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param name
+	 * @param hashKey string partition key of the table
+	 * @param indexes
+	 */
+	public LocalTable(final String name, final String hashKey, final List<Index> indexes) {
+		
+		this.name = Objects.requireNonNull(name);
+		this.hashKey = Objects.requireNonNull(hashKey);
+		this.indexes = Collections.unmodifiableList(new ArrayList<>(indexes));
+		
+		for (int i = 0; i < this.indexes.size(); ++i) indexPartitions.add(new ConcurrentHashMap<>());
+		for (int i = 0; i < locks.length; ++i) locks[i] = new Object();
+	}
+	
+	/**
+	 * Orders table with the indexes the queries of this project use: category-order-date-index, 
+	 * category-query-slot-mod64-index and category-query-slot-mod128-index
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public static LocalTable orders(final String name) {
+		
+		return new LocalTable(name, "id", Arrays.asList(
+				new Index("category-order-date-index", "category", "order-date", "S"), 
+				new Index("category-" + QueryUtils.querySlotAttribute(64) + "-index", "category", QueryUtils.querySlotAttribute(64), "N"), 
+				new Index("category-" + QueryUtils.querySlotAttribute(128) + "-index", "category", QueryUtils.querySlotAttribute(128), "N")));
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public long getItemCount() {
+		return itemsByKey.size();
+	}
+	
+	public long getSizeBytes() {
+		return sizeBytes.get();
+	}
+	
+	/**
+	 * Partition key of the table from the DynamoDB JSON key
+	 * 
+	 * @param key
+	 * @return
+	 */
+	KeyValue primaryKey(final JsonNode key) {
+		
+		if (key == null || !key.isObject() || key.size() != 1 || !key.has(hashKey)) {
+			throw LocalDynamoDbException.validation("The provided key element does not match the schema");
+		}
+		
+		return KeyValue.of(key.get(hashKey));
+	}
+	
+	/**
+	 * Validate and prepare the item for {@link #store(StoredItem)}
+	 * 
+	 * @param item DynamoDB JSON item
+	 * @return
+	 */
+	StoredItem prepare(final JsonNode item) {
+		
+		if (item == null || !item.isObject()) throw LocalDynamoDbException.validation("Item is missing");
+		
+		KeyValue key = KeyValue.of(item.get(hashKey));
+		if (key == null) throw LocalDynamoDbException.validation("One or more parameter values were invalid: Missing the key " + hashKey + " in the item");
+		
+		KeyValue[] indexHashKeys = new KeyValue[indexes.size()];
+		KeyValue[] indexRangeKeys = new KeyValue[indexes.size()];
+		
+		for (int i = 0; i < indexes.size(); ++i) {
+			
+			Index index = indexes.get(i);
+			
+			// sparse indexes: the item is indexed only when it has the index keys
+			indexHashKeys[i] = KeyValue.of(item.get(index.hashKey));
+			indexRangeKeys[i] = index.rangeKey == null ? null : KeyValue.of(item.get(index.rangeKey));
+			
+			if (indexRangeKeys[i] != null && !indexRangeKeys[i].getType().equals(index.rangeKeyType)) {
+				throw LocalDynamoDbException.validation("One or more parameter values were invalid: Type mismatch for Index Key " + index.rangeKey);
+			}
+		}
+		
+		try {
+			return new StoredItem(key, MAPPER.writeValueAsBytes(item), itemSize(item), indexHashKeys, indexRangeKeys);
+		} catch (JsonProcessingException e) {
+			throw LocalDynamoDbException.validation("Invalid item: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Partitions (table and indexes) the item is written to
+	 * 
+	 * @param item
+	 * @param throughput
+	 * @return
+	 */
+	List<String> writePartitions(final StoredItem item, final PartitionThroughput throughput) {
+		
+		List<String> partitions = new ArrayList<>(1 + indexes.size());
+		partitions.add(throughput.partitionOf(name, item.key));
+		
+		for (int i = 0; i < indexes.size(); ++i) {
+			if (isIndexed(item, i)) partitions.add(throughput.partitionOf(indexes.get(i).name, item.indexHashKeys[i]));
+		}
+		
+		return partitions;
+	}
+	
+	/**
+	 * Put the item, replacing the one with the same key
+	 * 
+	 * @param item
+	 */
+	void store(final StoredItem item) {
+		
+		synchronized (lock(item.key)) {
+			
+			StoredItem old = itemsByKey.put(item.key, item);
+			if (old != null) remove(old);
+			
+			items.put(new ScanKey(hash(item.key), item.key), item);
+			sizeBytes.addAndGet(item.size);
+			
+			for (int i = 0; i < indexes.size(); ++i) {
+				
+				if (!isIndexed(item, i)) continue;
+				
+				indexPartitions.get(i).computeIfAbsent(item.indexHashKeys[i], x -> new ConcurrentSkipListMap<>())
+						.put(new IndexKey(item.indexRangeKeys[i], item.key, 0), item);
+			}
+		}
+	}
+	
+	/**
+	 * Delete the item
+	 * 
+	 * @param key
+	 * @return deleted item, null if there was none
+	 */
+	StoredItem delete(final KeyValue key) {
+		
+		synchronized (lock(key)) {
+			
+			StoredItem old = itemsByKey.remove(key);
+			if (old != null) remove(old);
+			
+			return old;
+		}
+	}
+	
+	StoredItem get(final KeyValue key) {
+		
+		return itemsByKey.get(key);
+	}
+	
+	/**
+	 * Query page (KeyConditionExpression, FilterExpression, ProjectionExpression, ScanIndexForward, Limit, 
+	 * ExclusiveStartKey and Select COUNT of the request)
+	 * 
+	 * @param request
+	 * @return
+	 */
+	Page query(final JsonNode request) {
+		
+		String keyConditionExpression = text(request, "KeyConditionExpression");
+		if (keyConditionExpression == null) throw LocalDynamoDbException.validation("KeyConditionExpression is required (KeyConditions are not supported by the local stand-in)");
+		
+		JsonNode names = request.get("ExpressionAttributeNames");
+		JsonNode values = request.get("ExpressionAttributeValues");
+		
+		String indexName = text(request, "IndexName");
+		int indexPosition = indexName == null ? -1 : indexPosition(indexName);
+		Index index = indexName == null ? null : indexes.get(indexPosition);
+		
+		if (index != null && request.path("ConsistentRead").asBoolean(false)) {
+			throw LocalDynamoDbException.validation("Consistent reads are not supported on global secondary indexes");
+		}
+		
+		String hashAttribute = index == null ? hashKey : index.hashKey;
+		String rangeAttribute = index == null ? null : index.rangeKey;
+		
+		Expressions.Clause hashCondition = null;
+		Expressions.Clause rangeCondition = null;
+		
+		for (Expressions.Clause clause : Expressions.parseConditions(keyConditionExpression, names, values)) {
+			
+			if (hashCondition == null && clause.attributeName.equals(hashAttribute) && clause.operator == Expressions.Operator.EQ) hashCondition = clause;
+			else if (rangeCondition == null && clause.attributeName.equals(rangeAttribute) && clause.operator != Expressions.Operator.NE) rangeCondition = clause;
+			else throw LocalDynamoDbException.validation("Query key condition not supported: " + keyConditionExpression);
+		}
+		
+		if (hashCondition == null) throw LocalDynamoDbException.validation("Query condition missed key schema element: " + hashAttribute);
+		
+		KeyValue hashValue = KeyValue.of(hashCondition.values[0]);
+		
+		if (index == null) {
+			
+			StoredItem item = itemsByKey.get(hashValue);
+			
+			return page(request, item == null ? Collections.emptyIterator() : Collections.singletonList(item).iterator(), 
+					x -> lastEvaluatedKey(x, -1), name, hashValue);
+		}
+		
+		NavigableMap<IndexKey, StoredItem> partition = indexPartitions.get(indexPosition).get(hashValue);
+		if (partition == null) partition = Collections.emptyNavigableMap();
+		
+		NavigableMap<IndexKey, StoredItem> range = rangeCondition == null ? partition : range(partition, rangeCondition);
+		if (!request.path("ScanIndexForward").asBoolean(true)) range = range.descendingMap();
+		
+		JsonNode exclusiveStartKey = request.get("ExclusiveStartKey");
+		
+		if (exclusiveStartKey != null && exclusiveStartKey.size() > 0) {
+			
+			range = range.tailMap(new IndexKey(rangeAttribute == null ? null : KeyValue.of(exclusiveStartKey.get(rangeAttribute)), 
+					KeyValue.of(exclusiveStartKey.get(hashKey)), 0), false);
+		}
+		
+		Iterator<StoredItem> iterator = range.values().iterator();
+		
+		// begins_with bounds are approximate, the condition is checked for every item
+		if (rangeCondition != null && rangeCondition.operator == Expressions.Operator.BEGINS_WITH) {
+			
+			Expressions.Clause condition = rangeCondition;
+			iterator = filter(iterator, x -> x.indexRangeKeys[indexPosition].startsWith(KeyValue.of(condition.values[0])));
+		}
+		
+		return page(request, iterator, x -> lastEvaluatedKey(x, indexPosition), index.name, hashValue);
+	}
+	
+	/**
+	 * Scan page (Segment, TotalSegments, FilterExpression, ProjectionExpression, Limit, 
+	 * ExclusiveStartKey and Select COUNT of the request)
+	 * 
+	 * @param request
+	 * @return
+	 */
+	Page scan(final JsonNode request) {
+		
+		if (text(request, "IndexName") != null) throw LocalDynamoDbException.validation("Index scans are not supported by the local stand-in");
+		
+		int segment = request.path("Segment").asInt(0);
+		int totalSegments = request.path("TotalSegments").asInt(1);
+		
+		if (totalSegments < 1 || totalSegments > 1_000_000 || segment < 0 || segment >= totalSegments) {
+			throw LocalDynamoDbException.validation("Invalid Segment " + segment + " of TotalSegments " + totalSegments);
+		}
+		
+		long from = ((long) segment << 32) / totalSegments;
+		long to = ((long) (segment + 1) << 32) / totalSegments;
+		
+		NavigableMap<ScanKey, StoredItem> range = items.subMap(new ScanKey(from, null), true, new ScanKey(to, null), false);
+		
+		JsonNode exclusiveStartKey = request.get("ExclusiveStartKey");
+		
+		if (exclusiveStartKey != null && exclusiveStartKey.size() > 0) {
+			
+			KeyValue key = primaryKey(exclusiveStartKey);
+			range = range.tailMap(new ScanKey(hash(key), key), false);
+		}
+		
+		return page(request, range.values().iterator(), x -> lastEvaluatedKey(x, -1), name, null);
+	}
+	
+	/**
+	 * Project the item to the attributes
+	 * 
+	 * @param item
+	 * @param attributeNames null for all attributes
+	 * @return
+	 */
+	static byte[] project(final StoredItem item, final List<String> attributeNames) {
+		
+		if (attributeNames == null) return item.json;
+		
+		JsonNode node = item.parse();
+		ObjectNode projected = MAPPER.createObjectNode();
+		
+		for (String attributeName : attributeNames) {
+			
+			JsonNode value = node.get(attributeName);
+			if (value != null) projected.set(attributeName, value);
+		}
+		
+		try {
+			return MAPPER.writeValueAsBytes(projected);
+		} catch (JsonProcessingException e) {
+			throw LocalDynamoDbException.internal(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Read capacity: 4 KB units of the read items (at least one), half of it for eventually consistent reads
+	 * 
+	 * @param bytes
+	 * @param consistentRead
+	 * @return
+	 */
+	static double readUnits(final long bytes, final boolean consistentRead) {
+		
+		double units = Math.max(1, (bytes + 4095) / 4096);
+		return consistentRead ? units : units / 2;
+	}
+	
+	/**
+	 * Write capacity: 1 KB units of the item (at least one)
+	 * 
+	 * @param item
+	 * @return
+	 */
+	static double writeUnits(final StoredItem item) {
+		
+		return Math.max(1, (item.size + 1023) / 1024);
+	}
+	
+	/**
+	 * Unsigned 32 bit hash of the partition key (murmur3 finalizer)
+	 * 
+	 * @param key
+	 * @return
+	 */
+	static long hash(final KeyValue key) {
+		
+		int h = key.hashCode();
+		
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		
+		return h & 0xffffffffL;
+	}
+	
+	/**
+	 * DescribeTable result
+	 * 
+	 * @return
+	 */
+	ObjectNode describe() {
+		
+		ObjectNode table = MAPPER.createObjectNode();
+		
+		table.put("TableName", name);
+		table.put("TableStatus", "ACTIVE");
+		table.put("CreationDateTime", creationEpochSeconds);
+		table.put("ItemCount", getItemCount());
+		table.put("TableSizeBytes", getSizeBytes());
+		table.putObject("BillingModeSummary").put("BillingMode", "PAY_PER_REQUEST");
+		table.putObject("ProvisionedThroughput").put("ReadCapacityUnits", 0).put("WriteCapacityUnits", 0).put("NumberOfDecreasesToday", 0);
+		
+		ArrayNode attributes = table.putArray("AttributeDefinitions");
+		attributes.addObject().put("AttributeName", hashKey).put("AttributeType", "S");
+		
+		table.putArray("KeySchema").addObject().put("AttributeName", hashKey).put("KeyType", "HASH");
+		
+		if (indexes.isEmpty()) return table;
+		
+		ArrayNode indexDescriptions = table.putArray("GlobalSecondaryIndexes");
+		
+		for (int i = 0; i < indexes.size(); ++i) {
+			
+			Index index = indexes.get(i);
+			
+			addAttributeDefinition(attributes, index.hashKey, "S");
+			if (index.rangeKey != null) addAttributeDefinition(attributes, index.rangeKey, index.rangeKeyType);
+			
+			ObjectNode description = indexDescriptions.addObject();
+			description.put("IndexName", index.name);
+			description.put("IndexStatus", "ACTIVE");
+			description.put("ItemCount", indexPartitions.get(i).values().stream().mapToLong(Map::size).sum());
+			description.putObject("Projection").put("ProjectionType", "ALL");
+			
+			ArrayNode keySchema = description.putArray("KeySchema");
+			keySchema.addObject().put("AttributeName", index.hashKey).put("KeyType", "HASH");
+			if (index.rangeKey != null) keySchema.addObject().put("AttributeName", index.rangeKey).put("KeyType", "RANGE");
+		}
+		
+		return table;
+	}
+	
+	/**
+	 * Read the page from the items
+	 * 
+	 * @param request
+	 * @param iterator
+	 * @param lastEvaluatedKey
+	 * @param tableOrIndex
+	 * @param partitionKey partition key of the query (charged even for an empty page), null: the key of every item (scan)
+	 * @return
+	 */
+	private Page page(final JsonNode request, final Iterator<StoredItem> iterator, final Function<StoredItem, ObjectNode> lastEvaluatedKey, 
+			final String tableOrIndex, final KeyValue partitionKey) {
+		
+		JsonNode names = request.get("ExpressionAttributeNames");
+		JsonNode values = request.get("ExpressionAttributeValues");
+		
+		String filterExpression = text(request, "FilterExpression");
+		List<Expressions.Clause> filter = filterExpression == null ? null : Expressions.parseConditions(filterExpression, names, values);
+		List<String> projection = Expressions.parseProjection(text(request, "ProjectionExpression"), names);
+		
+		boolean countOnly = "COUNT".equals(text(request, "Select"));
+		int limit = request.path("Limit").asInt(0);
+		
+		List<byte[]> result = new ArrayList<>();
+		int count = 0, scanned = 0;
+		long bytes = 0;
+		StoredItem last = null;
+		boolean more = false;
+		
+		Map<KeyValue, Long> bytesByPartitionKey = new LinkedHashMap<>();
+		if (partitionKey != null) bytesByPartitionKey.put(partitionKey, 0L);
+		
+		while (iterator.hasNext()) {
+			
+			if (limit > 0 && scanned >= limit) {
+				
+				more = true;
+				break;
+			}
+			
+			StoredItem item = iterator.next();
+			
+			// 1 MB page: the item over the limit is read by the next page
+			if (scanned > 0 && bytes + item.size > MAX_PAGE_BYTES) {
+				
+				more = true;
+				break;
+			}
+			
+			++scanned;
+			bytes += item.size;
+			last = item;
+			
+			bytesByPartitionKey.merge(partitionKey != null ? partitionKey : item.key, (long) item.size, Long::sum);
+			
+			if (filter != null) {
+				
+				JsonNode node = item.parse();
+				if (!filter.stream().allMatch(x -> x.test(node))) continue;
+			}
+			
+			++count;
+			if (!countOnly) result.add(project(item, projection));
+		}
+		
+		return new Page(result, count, scanned, more ? lastEvaluatedKey.apply(last) : null, bytes, tableOrIndex, bytesByPartitionKey);
+	}
+	
+	private ObjectNode lastEvaluatedKey(final StoredItem item, final int indexPosition) {
+		
+		ObjectNode key = MAPPER.createObjectNode();
+		key.set(hashKey, item.key.toAttributeValue());
+		
+		if (indexPosition >= 0) {
+			
+			Index index = indexes.get(indexPosition);
+			
+			key.set(index.hashKey, item.indexHashKeys[indexPosition].toAttributeValue());
+			if (index.rangeKey != null) key.set(index.rangeKey, item.indexRangeKeys[indexPosition].toAttributeValue());
+		}
+		
+		return key;
+	}
+	
+	/**
+	 * Sub-range of the index partition for the sort key condition
+	 * 
+	 * @param partition
+	 * @param condition
+	 * @return
+	 */
+	private static NavigableMap<IndexKey, StoredItem> range(final NavigableMap<IndexKey, StoredItem> partition, final Expressions.Clause condition) {
+		
+		KeyValue value = KeyValue.of(condition.values[0]);
+		
+		switch (condition.operator) {
+		case EQ: return partition.subMap(new IndexKey(value, null, -1), true, new IndexKey(value, null, 1), true);
+		case LT: return partition.headMap(new IndexKey(value, null, -1), false);
+		case LE: return partition.headMap(new IndexKey(value, null, 1), false);
+		case GT: return partition.tailMap(new IndexKey(value, null, 1), false);
+		case GE: return partition.tailMap(new IndexKey(value, null, -1), false);
+		case BETWEEN: 
+			KeyValue to = KeyValue.of(condition.values[1]);
+			if (value.compareTo(to) > 0) throw LocalDynamoDbException.validation("Invalid KeyConditionExpression: the BETWEEN lower bound is greater than the upper bound");
+			return partition.subMap(new IndexKey(value, null, -1), true, new IndexKey(to, null, 1), true);
+		default: 
+			return partition.subMap(new IndexKey(value, null, -1), true, new IndexKey(value.append("\uffff"), null, 1), true);
+		}
+	}
+	
+	private static Iterator<StoredItem> filter(final Iterator<StoredItem> iterator, final Predicate<StoredItem> predicate) {
+		
+		return new Iterator<StoredItem>() {
+			
+			private StoredItem next = advance();
+			
+			private StoredItem advance() {
+				
+				while (iterator.hasNext()) {
+					
+					StoredItem item = iterator.next();
+					if (predicate.test(item)) return item;
+				}
+				
+				return null;
+			}
+			
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+			
+			@Override
+			public StoredItem next() {
+				
+				StoredItem item = next;
+				next = advance();
+				return item;
+			}
+		};
+	}
+	
+	private void remove(final StoredItem old) {
+		
+		items.remove(new ScanKey(hash(old.key), old.key));
+		sizeBytes.addAndGet(-old.size);
+		
+		for (int i = 0; i < indexes.size(); ++i) {
+			
+			if (!isIndexed(old, i)) continue;
+			
+			Map<IndexKey, StoredItem> partition = indexPartitions.get(i).get(old.indexHashKeys[i]);
+			if (partition != null) partition.remove(new IndexKey(old.indexRangeKeys[i], old.key, 0));
+		}
+	}
+	
+	private boolean isIndexed(final StoredItem item, final int indexPosition) {
+		
+		return item.indexHashKeys[indexPosition] != null && (indexes.get(indexPosition).rangeKey == null || item.indexRangeKeys[indexPosition] != null);
+	}
+	
+	private int indexPosition(final String indexName) {
+		
+		for (int i = 0; i < indexes.size(); ++i) if (indexes.get(i).name.equals(indexName)) return i;
+		
+		throw LocalDynamoDbException.validation("The table does not have the specified index: " + indexName);
+	}
+	
+	private Object lock(final KeyValue key) {
+		
+		return locks[(int) (hash(key) & (locks.length - 1))];
+	}
+	
+	private static void addAttributeDefinition(final ArrayNode attributes, final String attributeName, final String type) {
+		
+		for (JsonNode x : attributes) if (attributeName.equals(x.path("AttributeName").asText())) return;
+		
+		attributes.addObject().put("AttributeName", attributeName).put("AttributeType", type);
+	}
+	
+	private static String text(final JsonNode request, final String field) {
+		
+		JsonNode value = request.get(field);
+		return value == null || value.isNull() ? null : value.asText();
+	}
+	
+	/**
+	 * DynamoDB item size: attribute names plus values (strings and binaries by length, numbers about one byte per two digits)
+	 * 
+	 * @param item
+	 * @return
+	 */
+	private static int itemSize(final JsonNode item) {
+		
+		int size = 0;
+		
+		for (Iterator<Map.Entry<String, JsonNode>> it = item.fields(); it.hasNext(); ) {
+			
+			Map.Entry<String, JsonNode> attribute = it.next();
+			size += utf8Length(attribute.getKey()) + valueSize(attribute.getValue());
+		}
+		
+		return size;
+	}
+	
+	private static int valueSize(final JsonNode value) {
+		
+		Map.Entry<String, JsonNode> typed = value.fields().hasNext() ? value.fields().next() : null;
+		if (typed == null) return 0;
+		
+		JsonNode v = typed.getValue();
+		
+		switch (typed.getKey()) {
+		case "S": return utf8Length(v.asText());
+		case "N": return v.asText().length() / 2 + 1;
+		case "B": return v.asText().length() * 3 / 4;
+		case "BOOL": 
+		case "NULL": return 1;
+		case "SS": 
+		case "NS": 
+		case "BS": 
+			int setSize = 0;
+			for (JsonNode x : v) setSize += "NS".equals(typed.getKey()) ? x.asText().length() / 2 + 1 : utf8Length(x.asText());
+			return setSize;
+		case "L": 
+			int listSize = 3;
+			for (JsonNode x : v) listSize += 1 + valueSize(x);
+			return listSize;
+		case "M": 
+			return 3 + itemSize(v) + v.size();
+		default: return 0;
+		}
+	}
+	
+	private static int utf8Length(final String value) {
+		
+		return value.getBytes(StandardCharsets.UTF_8).length;
+	}
+}
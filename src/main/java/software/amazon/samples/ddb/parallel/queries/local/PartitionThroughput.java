@@ -0,0 +1,211 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.local;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read and write throughput limits per partition of the local stand-in: every table and index is split into 
+ * the fixed number of partitions (ranges of the partition key hash, like the scan segments), each one with its own token buckets of RCUs and WCUs, 
+ * refilled at the partition limits and holding at most burstSeconds worth of capacity. 
+ * A request that its partition cannot cover is throttled, like in DynamoDB, where a hot partition key 
+ * is throttled while the table as a whole is far below its capacity.
+ * 
+ * @author zorani
+ *
+ */
+class PartitionThroughput {
+
+	private final int partitions;
+	private final double readUnitsPerSecond;
+	private final double writeUnitsPerSecond;
+	private final double burstSeconds;
+	
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+	
+	private final AtomicLong throttledRequests = new AtomicLong();
+	
+	/**
+	 * Token bucket of the partition
+	 */
+	private static final class Bucket {
+		
+		private final double rate;
+		private final double capacity;
+		
+		private double tokens;
+		private long lastRefillNanos = System.nanoTime();
+		
+		private Bucket(final double rate, final double burstSeconds) {
+			
+			this.rate = rate;
+			this.capacity = Math.max(rate * burstSeconds, 1.0);
+			this.tokens = capacity;
+		}
+		
+		private synchronized boolean tryAcquire(final double units) {
+			
+			long now = System.nanoTime();
+			tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * rate / 1_000_000_000.0);
+			lastRefillNanos = now;
+			
+			// a single request larger than the bucket passes when the bucket is full (it still drains it)
+			if (tokens < Math.min(units, capacity)) return false;
+			
+			tokens -= units;
+			return true;
+		}
+		
+		private synchronized void release(final double units) {
+			
+			tokens = Math.min(capacity, tokens + units);
+		}
+	}
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param partitions partitions per table or index
+	 * @param readUnitsPerSecond RCU/s per partition (DynamoDB: 3,000), zero or negative: no limit
+	 * @param writeUnitsPerSecond WCU/s per partition (DynamoDB: 1,000), zero or negative: no limit
+	 * @param burstSeconds unused capacity kept for bursts
+	 */
+	PartitionThroughput(final int partitions, final double readUnitsPerSecond, final double writeUnitsPerSecond, final double burstSeconds) {
+		
+		if (partitions <= 0) throw new IllegalArgumentException("partitions must be positive");
+		
+		this.partitions = partitions;
+		this.readUnitsPerSecond = readUnitsPerSecond;
+		this.writeUnitsPerSecond = writeUnitsPerSecond;
+		this.burstSeconds = burstSeconds;
+	}
+	
+	/**
+	 * Partition of the partition key in the table or index
+	 * 
+	 * @param tableOrIndex
+	 * @param partitionKey
+	 * @return
+	 */
+	String partitionOf(final String tableOrIndex, final KeyValue partitionKey) {
+		
+		return tableOrIndex + "#" + ((LocalTable.hash(partitionKey) * partitions) >>> 32);
+	}
+	
+	/**
+	 * Take the read capacity from the partition, or throw ProvisionedThroughputExceededException
+	 * 
+	 * @param partition
+	 * @param units
+	 */
+	void acquireRead(final String partition, final double units) {
+		
+		if (!tryAcquire(partition, units, true)) throw throttled();
+	}
+	
+	/**
+	 * Take the read capacity from all the partitions (e.g. of a scan page), or from none of them and 
+	 * throw ProvisionedThroughputExceededException
+	 * 
+	 * @param unitsByPartition
+	 */
+	void acquireRead(final Map<String, Double> unitsByPartition) {
+		
+		List<String> acquired = new ArrayList<>(unitsByPartition.size());
+		
+		for (Map.Entry<String, Double> entry : unitsByPartition.entrySet()) {
+			
+			if (!tryAcquire(entry.getKey(), entry.getValue(), true)) {
+				
+				for (String partition : acquired) release(partition, unitsByPartition.get(partition), true);
+				
+				throw throttled();
+			}
+			
+			acquired.add(entry.getKey());
+		}
+	}
+	
+	/**
+	 * Take the read capacity from the partition
+	 * 
+	 * @param partition
+	 * @param units
+	 * @return false: the request is throttled
+	 */
+	boolean tryAcquireRead(final String partition, final double units) {
+		
+		if (tryAcquire(partition, units, true)) return true;
+		
+		throttledRequests.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * Take the write capacity from all the partitions (table and its indexes), or from none of them
+	 * 
+	 * @param partitionsToWrite
+	 * @param units per partition
+	 * @return false: the write is throttled
+	 */
+	boolean tryAcquireWrite(final List<String> partitionsToWrite, final double units) {
+		
+		for (int i = 0; i < partitionsToWrite.size(); ++i) {
+			
+			if (!tryAcquire(partitionsToWrite.get(i), units, false)) {
+				
+				for (int j = 0; j < i; ++j) release(partitionsToWrite.get(j), units, false);
+				
+				throttledRequests.incrementAndGet();
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	long getThrottledRequests() {
+		
+		return throttledRequests.get();
+	}
+	
+	private LocalDynamoDbException throttled() {
+		
+		throttledRequests.incrementAndGet();
+		return LocalDynamoDbException.throttled();
+	}
+	
+	private boolean tryAcquire(final String partition, final double units, final boolean read) {
+		
+		double rate = read ? readUnitsPerSecond : writeUnitsPerSecond;
+		if (rate <= 0) return true;
+		
+		return buckets.computeIfAbsent((read ? "R#" : "W#") + partition, x -> new Bucket(rate, burstSeconds)).tryAcquire(units);
+	}
+	
+	private void release(final String partition, final double units, final boolean read) {
+		
+		Bucket bucket = buckets.get((read ? "R#" : "W#") + partition);
+		if (bucket != null) bucket.release(units);
+	}
+}
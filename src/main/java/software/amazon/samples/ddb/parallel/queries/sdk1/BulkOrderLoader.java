@@ -0,0 +1,412 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.BoundedQueryExecutor;
+import software.amazon.samples.ddb.parallel.queries.Config;
+
+/**
+ * Parallel bulk loader of Orders: the Orders (converted by {@link OrderCodec}) are grouped into BatchWriteItem 
+ * requests of 25 items, written by a bounded pool of writer threads. 
+ * 
+ * At most two batches per writer are pending (queued or being written); adding more blocks the producer 
+ * until a writer catches up, so the memory stays constant whatever the number of Orders. UnprocessedItems 
+ * (and batches rejected by throttling) are resubmitted with jittered exponential backoff. 
+ * Loaded items, items/s and consumed WCU/s are logged periodically and on close.
+ * 
+ * Orders are added from a single producer thread; the loader is closed (or flushed) by the same thread.
+ * 
+ * @author zorani
+ *
+ */
+public class BulkOrderLoader implements OrderSink {
+
+	/**
+	 * Max items of a single BatchWriteItem request
+	 */
+	public static final int MAX_BATCH_ITEMS = 25;
+	
+	private final AmazonDynamoDB dynamoDB;
+	private final String tableName;
+	private final int writers;
+	
+	private int maxAttempts = Config.BULK_LOAD_MAX_ATTEMPTS;
+	private long backoffBaseMillis = Config.BULK_LOAD_BACKOFF_BASE_MS;
+	private long backoffMaxMillis = Config.BULK_LOAD_BACKOFF_MAX_MS;
+	private long reportIntervalSeconds = Config.BULK_LOAD_REPORT_INTERVAL_SEC;
+	
+	private final ExecutorService writerPool;
+	private final int maxPendingBatches;
+	private final Semaphore pendingBatches;
+	
+	// batch being filled, by Order id (a repeated Order replaces the previous one, BatchWriteItem rejects duplicate keys)
+	private Map<String, WriteRequest> batch = new LinkedHashMap<>();
+	
+	private ScheduledExecutorService reporter = null;
+	private long startNanos = 0;
+	
+	private final AtomicLong itemsWritten = new AtomicLong();
+	private final AtomicLong batchesWritten = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong failedItems = new AtomicLong();
+	private final DoubleAdder writeCapacityUnits = new DoubleAdder();
+	
+	private static final Logger LOG = LoggerFactory.getLogger(BulkOrderLoader.class);
+
+	/**
+	 * C-tor
+	 * 
+	 * @param dynamoDB
+	 * @param tableName
+	 * @param writers concurrent BatchWriteItem requests
+	 */
+	public BulkOrderLoader(@NonNull final AmazonDynamoDB dynamoDB, @NonNull final String tableName, final int writers) {
+		
+		if (writers <= 0) throw new IllegalArgumentException("writers must be positive");
+		
+		this.dynamoDB = dynamoDB;
+		this.tableName = tableName;
+		this.writers = writers;
+		this.maxPendingBatches = 2 * writers;
+		this.pendingBatches = new Semaphore(maxPendingBatches);
+		this.writerPool = new ThreadPoolExecutor(writers, writers, 0, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<>(), BoundedQueryExecutor.daemonThreadFactory("ddb-writer"));
+	}
+	
+	/**
+	 * C-tor, writing to the Orders table with the default number of writers ({@link Config#BULK_LOAD_WRITERS})
+	 * 
+	 * @param dynamoDB
+	 */
+	public BulkOrderLoader(@NonNull final AmazonDynamoDB dynamoDB) {
+		
+		this(dynamoDB, Config.DDB_TABLE_NAME, Config.BULK_LOAD_WRITERS);
+	}
+	
+	/**
+	 * @param maxAttempts max attempts of a batch, including the resubmitted UnprocessedItems; the items still unprocessed 
+	 * 		after that are counted as failed
+	 * @return
+	 */
+	public BulkOrderLoader withMaxAttempts(final int maxAttempts) {
+		
+		if (maxAttempts <= 0) throw new IllegalArgumentException("maxAttempts must be positive");
+		
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+	
+	/**
+	 * @param baseMillis backoff of the first resubmission, doubled with every attempt
+	 * @param maxMillis backoff cap
+	 * @return
+	 */
+	public BulkOrderLoader withBackoff(final long baseMillis, final long maxMillis) {
+		
+		if (baseMillis <= 0 || maxMillis < baseMillis) throw new IllegalArgumentException("invalid backoff: " + baseMillis + ".." + maxMillis);
+		
+		this.backoffBaseMillis = baseMillis;
+		this.backoffMaxMillis = maxMillis;
+		return this;
+	}
+	
+	/**
+	 * @param seconds progress report interval, zero: report only on close
+	 * @return
+	 */
+	public BulkOrderLoader withReportInterval(final long seconds) {
+		
+		this.reportIntervalSeconds = Math.max(0, seconds);
+		return this;
+	}
+	
+	/**
+	 * Add the Order to the current batch, submitting the batch when full; blocks while all writers are behind
+	 * 
+	 * @param order
+	 */
+	@Override
+	public void add(@NonNull final Order order) {
+		
+		Map<String, AttributeValue> item = OrderCodec.toItem(order);
+		
+		batch.put(order.getId(), new WriteRequest().withPutRequest(new PutRequest().withItem(item)));
+		
+		if (batch.size() >= MAX_BATCH_ITEMS) submitBatch();
+	}
+	
+	/**
+	 * Add all the Orders, see {@link #add(Order)}
+	 * 
+	 * @param orders
+	 */
+	public void addAll(@NonNull final Iterable<Order> orders) {
+		
+		for (Order order : orders) add(order);
+	}
+	
+	/**
+	 * Submit the partial batch and wait until all the submitted batches are written
+	 */
+	@Override
+	public void flush() {
+		
+		if (!batch.isEmpty()) submitBatch();
+		
+		try {
+			pendingBatches.acquire(maxPendingBatches);
+			pendingBatches.release(maxPendingBatches);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Flush, stop the writers and log the final progress
+	 */
+	@Override
+	public void close() {
+		
+		flush();
+		
+		writerPool.shutdown();
+		if (reporter != null) reporter.shutdown();
+		
+		if (startNanos != 0) logProgress();
+	}
+	
+	/**
+	 * Hand the current batch over to the writers, waiting for a free pending slot
+	 */
+	private void submitBatch() {
+		
+		if (startNanos == 0) start();
+		
+		List<WriteRequest> requests = new ArrayList<>(batch.values());
+		batch = new LinkedHashMap<>();
+		
+		try {
+			pendingBatches.acquire();
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			failedItems.addAndGet(requests.size());
+			return;
+		}
+		
+		writerPool.execute(() -> {
+			
+			try {
+				write(requests);
+			} finally {
+				pendingBatches.release();
+			}
+		});
+	}
+	
+	/**
+	 * Start the clock (and the progress reporter) with the first batch
+	 */
+	private void start() {
+		
+		startNanos = System.nanoTime();
+		
+		if (reportIntervalSeconds <= 0) return;
+		
+		reporter = Executors.newSingleThreadScheduledExecutor(BoundedQueryExecutor.daemonThreadFactory("ddb-writer-progress"));
+		reporter.scheduleAtFixedRate(this::logProgress, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Write the batch, resubmitting the unprocessed items (and the batch rejected by throttling) with backoff
+	 * 
+	 * @param requests
+	 */
+	private void write(final List<WriteRequest> requests) {
+		
+		Map<String, List<WriteRequest>> requestItems = Collections.singletonMap(tableName, requests);
+		
+		for (int attempt = 1; ; ++attempt) {
+			
+			int items = size(requestItems);
+			
+			try {
+				
+				BatchWriteItemResult result = dynamoDB.batchWriteItem(new BatchWriteItemRequest()
+						.withRequestItems(requestItems)
+						.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+				
+				if (result.getConsumedCapacity() != null) {
+					
+					for (ConsumedCapacity c : result.getConsumedCapacity()) {
+						if (c.getCapacityUnits() != null) writeCapacityUnits.add(c.getCapacityUnits());
+					}
+				}
+				
+				Map<String, List<WriteRequest>> unprocessed = result.getUnprocessedItems();
+				int unprocessedItems = unprocessed == null ? 0 : size(unprocessed);
+				
+				itemsWritten.addAndGet(items - unprocessedItems);
+				
+				if (unprocessedItems == 0) {
+					
+					batchesWritten.incrementAndGet();
+					return;
+				}
+				
+				requestItems = unprocessed;
+				
+			} catch (RuntimeException e) {
+				
+				if (!Utils.isThrottling(e)) {
+					
+					LOG.error("BatchWriteItem of {} items has failed: {}", items, e.getMessage());
+					failedItems.addAndGet(items);
+					return;
+				}
+			}
+			
+			if (attempt >= maxAttempts) {
+				
+				LOG.error("BatchWriteItem: {} items still unprocessed after {} attempts", size(requestItems), attempt);
+				failedItems.addAndGet(size(requestItems));
+				return;
+			}
+			
+			retries.incrementAndGet();
+			
+			try {
+				Thread.sleep(backoffMillis(attempt));
+			} catch (InterruptedException e) {
+				
+				Thread.currentThread().interrupt();
+				failedItems.addAndGet(size(requestItems));
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Exponential backoff with jitter: between half and the whole of base * 2^(attempt - 1), capped
+	 * 
+	 * @param attempt
+	 * @return
+	 */
+	private long backoffMillis(final int attempt) {
+		
+		long max = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempt - 1, 20));
+		
+		return ThreadLocalRandom.current().nextLong(max / 2, max + 1);
+	}
+	
+	private static int size(final Map<String, List<WriteRequest>> requestItems) {
+		
+		int size = 0;
+		for (List<WriteRequest> requests : requestItems.values()) size += requests.size();
+		
+		return size;
+	}
+	
+	private void logProgress() {
+		
+		LOG.info("Loaded {} items in {} batches: {} items/s, {} WCU/s ({} WCU), {} resubmissions, {} failed items", 
+				getItemsWritten(), batchesWritten.get(), Math.round(getItemsPerSecond()), Math.round(getWriteCapacityUnitsPerSecond()), 
+				Math.round(getWriteCapacityUnits()), getRetries(), getFailedItems());
+	}
+	
+	public int getWriters() {
+		return writers;
+	}
+
+	public long getItemsWritten() {
+		return itemsWritten.get();
+	}
+
+	/**
+	 * @return consumed write capacity units
+	 */
+	public double getWriteCapacityUnits() {
+		return writeCapacityUnits.sum();
+	}
+
+	/**
+	 * @return resubmissions of unprocessed items and throttled batches
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * @return items not written (failed batches, items still unprocessed after the max attempts)
+	 */
+	@Override
+	public long getFailedItems() {
+		return failedItems.get();
+	}
+	
+	/**
+	 * @return written items per second since the first batch
+	 */
+	public double getItemsPerSecond() {
+		return perSecond(getItemsWritten());
+	}
+	
+	/**
+	 * @return consumed WCU per second since the first batch
+	 */
+	public double getWriteCapacityUnitsPerSecond() {
+		return perSecond(getWriteCapacityUnits());
+	}
+	
+	private double perSecond(final double value) {
+		
+		if (startNanos == 0) return 0;
+		
+		double seconds = (System.nanoTime() - startNanos) / (double)TimeUnit.SECONDS.toNanos(1);
+		return seconds <= 0 ? 0 : value / seconds;
+	}
+}
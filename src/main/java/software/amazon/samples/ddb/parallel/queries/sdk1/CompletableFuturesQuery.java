@@ -21,8 +21,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
@@ -30,28 +31,93 @@ import org.apache.commons.lang3.StringUtils;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 
 import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.BoundedQueryExecutor;
 import software.amazon.samples.ddb.parallel.queries.Config;
+import software.amazon.samples.ddb.parallel.queries.OrderAggregate;
+import software.amazon.samples.ddb.parallel.queries.OrderBatch;
+import software.amazon.samples.ddb.parallel.queries.PartitionCounts;
+import software.amazon.samples.ddb.parallel.queries.PartitionPlanner;
+import software.amazon.samples.ddb.parallel.queries.Projection;
+import software.amazon.samples.ddb.parallel.queries.QueryExecutor;
+import software.amazon.samples.ddb.parallel.queries.QueryPlan;
 import software.amazon.samples.ddb.parallel.queries.QueryUtils;
+import software.amazon.samples.ddb.parallel.queries.SortKeyRange;
+import software.amazon.samples.ddb.parallel.queries.jfr.ResultsMergedEvent;
 
 /**
  * AWS Blog post: Query Orders using completable futures
  * 
+ * All sub-queries run on the shared {@link QueryExecutor} (instead of creating new thread pool per call), 
+ * which caps the number of sub-queries running at the same time across all callers.
+ * 
  * @author zorani
  *
  */
 public class CompletableFuturesQuery {
 
 	private OrdersDbUtils ordersDbUtils = null;
+	private PartitionPlanner planner = null;
+	private QueryExecutor executor = null;
+	private int maxQueryConcurrency = Config.QUERY_MAX_CONCURRENCY;
 
 	/**
-	 * C-tor
+	 * C-tor, using the shared query executor
 	 * 
-	 * @param dynamoDB
 	 * @param dbMapper
 	 */
 	public CompletableFuturesQuery(@NonNull final DynamoDBMapper dbMapper) {
 			
-		this.ordersDbUtils = new OrdersDbUtils(dbMapper);
+		this(dbMapper, BoundedQueryExecutor.shared());
+	}
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param dbMapper
+	 * @param executor
+	 */
+	public CompletableFuturesQuery(@NonNull final DynamoDBMapper dbMapper, @NonNull final QueryExecutor executor) {
+			
+		this(new OrdersDbUtils(dbMapper), executor, Config.QUERY_MAX_CONCURRENCY);
+	}
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param dbMapper
+	 * @param executor
+	 * @param maxQueryConcurrency max sub-queries of a single fan-out call running at the same time 
+	 * 			(for example, virtual threads executor can run all 365 daily sub-queries at once)
+	 */
+	public CompletableFuturesQuery(@NonNull final DynamoDBMapper dbMapper, @NonNull final QueryExecutor executor, final int maxQueryConcurrency) {
+			
+		this(new OrdersDbUtils(dbMapper), executor, maxQueryConcurrency);
+	}
+	
+	/**
+	 * C-tor, using already configured OrdersDbUtils (for example with the concurrency limiter)
+	 * 
+	 * @param ordersDbUtils
+	 * @param executor
+	 * @param maxQueryConcurrency
+	 */
+	public CompletableFuturesQuery(@NonNull final OrdersDbUtils ordersDbUtils, @NonNull final QueryExecutor executor, final int maxQueryConcurrency) {
+			
+		this.ordersDbUtils = ordersDbUtils;
+		this.planner = new PartitionPlanner(ordersDbUtils::countOrdersByCategoryAndOrderDateRange);
+		this.executor = executor;
+		this.maxQueryConcurrency = maxQueryConcurrency;
+	}
+	
+	/**
+	 * Same fan-out queries, fetching only the projected attributes (returned Orders are partially populated)
+	 * 
+	 * @param projection
+	 * @return new query object; this one is not changed
+	 */
+	public CompletableFuturesQuery withProjection(final Projection projection) {
+		
+		return new CompletableFuturesQuery(ordersDbUtils.copy().withProjection(projection), executor, maxQueryConcurrency);
 	}
 	
 	/**
@@ -64,25 +130,38 @@ public class CompletableFuturesQuery {
 
 		if (StringUtils.isEmpty(category)) return null;
 		
-		// this changes depending on the sub-queries we plan to run (here: 12)
-		ForkJoinPool executorService = new ForkJoinPool(12);
-
 		// this is place where we create date prefixes, either monthly (12), 4 per month (48), 
 		// or daily splits (365/366)
 		List<String> yearMonthsList = QueryUtils.generate12YearMonthDatePrefixes(Config.YEAR);
 
-		// invoke async queries and create futures
-		List<CompletableFuture<List<Order>>> listFutures = yearMonthsList.stream()
-				.map(x -> CompletableFuture.supplyAsync(() -> ordersDbUtils.listOrdersByCategoryAndOrderDate(category, x), executorService))
-				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
+		return executeSubQueries(yearMonthsList, x -> ordersDbUtils.listOrdersByCategoryAndOrderDate(category, x));
+	}
 
-		// wait for the completion and retrieve final list of Orders as a list
-		List<Order> list = listFutures.stream()
-				.map(CompletableFuture::join)
-				.flatMap(Collection::stream)
-				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
+	/**
+	 * List orders using CF and balanced order-date ranges created by the partition planner
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public List<Order> getOrdersUsingCategoryAndPlannedDatesQueryWithCompletableFuture(final String category) {
 
-		return list;
+		if (StringUtils.isEmpty(category)) return null;
+		
+		return getOrdersUsingCategoryAndPlannedDatesQueryWithCompletableFuture(category, planner.plan(category, Config.YEAR));
+	}
+
+	/**
+	 * List orders using CF and previously created query plan
+	 * 
+	 * @param category
+	 * @param plan
+	 * @return
+	 */
+	public List<Order> getOrdersUsingCategoryAndPlannedDatesQueryWithCompletableFuture(final String category, @NonNull final QueryPlan plan) {
+
+		if (StringUtils.isEmpty(category)) return null;
+		
+		return executeSubQueries(plan.getRanges(), x -> ordersDbUtils.listOrdersByCategoryAndOrderDateRange(category, x));
 	}
 
 	/**
@@ -95,19 +174,89 @@ public class CompletableFuturesQuery {
 
 		if (StringUtils.isEmpty(category)) return null;
 		
-		ForkJoinPool executorService = new ForkJoinPool(48);
 		List<String> yearMonthsList = QueryUtils.generate48YearMonthDatePrefixes(Config.YEAR);
 
-		List<CompletableFuture<List<Order>>> listFutures = yearMonthsList.stream()
-				.map(x -> CompletableFuture.supplyAsync(() -> ordersDbUtils.listOrdersByCategoryAndOrderDate(category, x), executorService))
-				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
+		return executeSubQueries(yearMonthsList, x -> ordersDbUtils.listOrdersByCategoryAndOrderDate(category, x));
+	}
 
-		List<Order> list = listFutures.stream()
+	/**
+	 * Get Orders as the columnar batch, using CF and 48 order-date prefixes; every sub-query builds its own batch 
+	 * straight from the attribute maps, and the batches are concatenated (requires OrdersDbUtils with the low-level client)
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public OrderBatch getOrderBatchUsingCategoryAndDates48QueryWithCompletableFuture(final String category) {
+
+		if (StringUtils.isEmpty(category)) return null;
+		
+		List<SortKeyRange> ranges = QueryUtils.generate48YearMonthDatePrefixes(Config.YEAR).stream()
+				.map(QueryUtils::orderDatePrefixToRange)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+
+		ResultsMergedEvent event = ResultsMergedEvent.begin("CompletableFuturesQuery batch", ranges.size());
+		List<CompletableFuture<OrderBatch>> futures = executor.submitAll(ranges, 
+				x -> ordersDbUtils.listOrderBatchByCategoryAndOrderDateRange(category, x), maxQueryConcurrency);
+		
+		OrderBatch batch = OrderBatch.concat(futures.stream()
 				.map(CompletableFuture::join)
-				.flatMap(Collection::stream)
-				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
+				.collect(Collectors.toList()));
+		
+		event.merged(batch.size());
+		return batch;
+	}
 
-		return list;
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, using CF and 48 order-date ranges; every sub-query 
+	 * folds its pages into its own aggregate, which are merged at the end (requires OrdersDbUtils with the low-level client)
+	 * 
+	 * @param category
+	 * @param groupBy
+	 * @return
+	 */
+	public OrderAggregate aggregateUsingCategoryAndDates48QueryWithCompletableFuture(final String category, @NonNull final OrderAggregate.GroupBy groupBy) {
+
+		if (StringUtils.isEmpty(category)) return null;
+		
+		List<SortKeyRange> ranges = QueryUtils.generate48YearMonthDatePrefixes(Config.YEAR).stream()
+				.map(QueryUtils::orderDatePrefixToRange)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+
+		return aggregateSubQueries(ranges, groupBy, x -> ordersDbUtils.aggregateByCategoryAndOrderDateRange(category, x, groupBy));
+	}
+
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, using CF and 64 query slots 
+	 * (requires OrdersDbUtils with the low-level client)
+	 * 
+	 * @param category
+	 * @param groupBy
+	 * @return
+	 */
+	public OrderAggregate aggregateUsingCategoryAndQuerySlots64WithCompletableFuture(final String category, @NonNull final OrderAggregate.GroupBy groupBy) {
+
+		if (StringUtils.isEmpty(category)) return null;
+		
+		return aggregateSubQueries(QueryUtils.create64QuerySlotsList(), groupBy, 
+				x -> ordersDbUtils.aggregateByCategoryAndQuerySlot(category, x, 64, groupBy));
+	}
+
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, using CF and 128 query slots 
+	 * (requires OrdersDbUtils with the low-level client)
+	 * 
+	 * @param category
+	 * @param groupBy
+	 * @return
+	 */
+	public OrderAggregate aggregateUsingCategoryAndQuerySlots128WithCompletableFuture(final String category, @NonNull final OrderAggregate.GroupBy groupBy) {
+
+		if (StringUtils.isEmpty(category)) return null;
+		
+		return aggregateSubQueries(QueryUtils.create128QuerySlotsList(), groupBy, 
+				x -> ordersDbUtils.aggregateByCategoryAndQuerySlot(category, x, 128, groupBy));
 	}
 
 	/**
@@ -120,19 +269,9 @@ public class CompletableFuturesQuery {
 
 		if (StringUtils.isEmpty(category)) return null;
 		
-		ForkJoinPool executorService = new ForkJoinPool(365);
 		List<String> yearMonthsList = QueryUtils.generateDailyOrdersDatePrefixes(Config.YEAR);
 
-		List<CompletableFuture<List<Order>>> listFutures = yearMonthsList.stream()
-				.map(x -> CompletableFuture.supplyAsync(() -> ordersDbUtils.listOrdersByCategoryAndOrderDate(category, x), executorService))
-				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
-
-		List<Order> list = listFutures.stream()
-				.map(CompletableFuture::join)
-				.flatMap(Collection::stream)
-				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
-
-		return list;
+		return executeSubQueries(yearMonthsList, x -> ordersDbUtils.listOrdersByCategoryAndOrderDate(category, x));
 	}
 
 	/**
@@ -145,19 +284,9 @@ public class CompletableFuturesQuery {
 
 		if (StringUtils.isEmpty(category)) return null;
 		
-		ForkJoinPool executorService = new ForkJoinPool(64);
 		List<Integer> querySlotValuesList = QueryUtils.create64QuerySlotsList();
 
-		List<CompletableFuture<List<Order>>> listFutures = querySlotValuesList.stream()
-				.map(x -> CompletableFuture.supplyAsync(() -> ordersDbUtils.listOrdersByCategoryAndQuerySlot(category, x), executorService))
-				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
-
-		List<Order> list = listFutures.stream()
-				.map(CompletableFuture::join)
-				.flatMap(Collection::stream)
-				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
-
-		return list;
+		return executeSubQueries(querySlotValuesList, x -> ordersDbUtils.listOrdersByCategoryAndQuerySlot(category, x));
 	}
 	
 	/**
@@ -170,18 +299,151 @@ public class CompletableFuturesQuery {
 
 		if (StringUtils.isEmpty(category)) return null;
 		
-		ForkJoinPool executorService = new ForkJoinPool(128);
 		List<Integer> querySlotValuesList = QueryUtils.create128QuerySlotsList();
 
-		List<CompletableFuture<List<Order>>> listFutures = querySlotValuesList.stream()
-				.map(x -> CompletableFuture.supplyAsync(() -> ordersDbUtils.listOrdersByCategoryAndQuerySlot(category, x), executorService))
-				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
+		return executeSubQueries(querySlotValuesList, x -> ordersDbUtils.listOrdersByCategoryAndQuerySlot(category, x, 128));
+	}	
+
+	/**
+	 * Count Orders using CF and COUNT-only queries of 12 order-date prefixes, per month
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public PartitionCounts countUsingCategoryAndDates12QueryWithCompletableFuture(final String category) {
+
+		return countUsingCategoryAndDatesQueryWithCompletableFuture(category, QueryUtils.generate12YearMonthDatePrefixes(Config.YEAR));
+	}
+
+	/**
+	 * Count Orders using CF and COUNT-only queries of 48 order-date prefixes
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public PartitionCounts countUsingCategoryAndDates48QueryWithCompletableFuture(final String category) {
+
+		return countUsingCategoryAndDatesQueryWithCompletableFuture(category, QueryUtils.generate48YearMonthDatePrefixes(Config.YEAR));
+	}
+
+	/**
+	 * Count Orders using CF and COUNT-only queries of all order-date prefixes, per day
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public PartitionCounts countUsingCategoryAndDates365QueryWithCompletableFuture(final String category) {
+
+		return countUsingCategoryAndDatesQueryWithCompletableFuture(category, QueryUtils.generateDailyOrdersDatePrefixes(Config.YEAR));
+	}
+
+	/**
+	 * Count Orders using CF and COUNT-only queries of the order-date prefixes, per prefix
+	 * 
+	 * @param category
+	 * @param orderDatePrefixList
+	 * @return
+	 */
+	public PartitionCounts countUsingCategoryAndDatesQueryWithCompletableFuture(final String category, @NonNull final List<String> orderDatePrefixList) {
+
+		if (StringUtils.isEmpty(category)) return null;
+		
+		return countSubQueries(orderDatePrefixList, x -> ordersDbUtils.countOrdersByCategoryAndOrderDate(category, x));
+	}
+
+	/**
+	 * Count Orders using CF and COUNT-only queries of 64 query slots, per slot
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public PartitionCounts countUsingCategoryAndQuerySlots64WithCompletableFuture(final String category) {
+
+		if (StringUtils.isEmpty(category)) return null;
+		
+		return countSubQueries(QueryUtils.create64QuerySlotsList(), x -> ordersDbUtils.countOrdersByCategoryAndQuerySlot(category, x, 64));
+	}
+
+	/**
+	 * Count Orders using CF and COUNT-only queries of 128 query slots, per slot
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public PartitionCounts countUsingCategoryAndQuerySlots128WithCompletableFuture(final String category) {
+
+		if (StringUtils.isEmpty(category)) return null;
+		
+		return countSubQueries(QueryUtils.create128QuerySlotsList(), x -> ordersDbUtils.countOrdersByCategoryAndQuerySlot(category, x, 128));
+	}
+
+	/**
+	 * Run one sub-query per input on the query executor (at most maxQueryConcurrency at once), 
+	 * wait for the completion and retrieve final list of Orders as a list
+	 * 
+	 * @param <T>
+	 * @param inputs
+	 * @param subQuery
+	 * @return
+	 */
+	private <T> List<Order> executeSubQueries(final List<T> inputs, final Function<T, List<Order>> subQuery) {
+		
+		ResultsMergedEvent event = ResultsMergedEvent.begin("CompletableFuturesQuery", inputs.size());
+		
+		// invoke async queries and create futures
+		List<CompletableFuture<List<Order>>> listFutures = executor.submitAll(inputs, subQuery, maxQueryConcurrency);
 
+		// wait for the completion and retrieve final list of Orders as a list
 		List<Order> list = listFutures.stream()
 				.map(CompletableFuture::join)
 				.flatMap(Collection::stream)
 				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
-
+		
+		event.merged(list.size());
 		return list;
-	}	
-}
\ No newline at end of file
+	}
+
+	/**
+	 * Run one COUNT-only sub-query per input on the query executor, and collect the counts per input
+	 * 
+	 * @param <T>
+	 * @param inputs
+	 * @param subQuery
+	 * @return
+	 */
+	private <T> PartitionCounts countSubQueries(final List<T> inputs, final Function<T, Long> subQuery) {
+		
+		ResultsMergedEvent event = ResultsMergedEvent.begin("CompletableFuturesQuery count", inputs.size());
+		List<CompletableFuture<Long>> futures = executor.submitAll(inputs, subQuery, maxQueryConcurrency);
+
+		PartitionCounts counts = PartitionCounts.of(inputs, futures.stream()
+				.map(CompletableFuture::join)
+				.collect(Collectors.toList()));
+		
+		event.merged(counts.getTotal());
+		return counts;
+	}
+
+	/**
+	 * Run one aggregating sub-query per input on the query executor, and merge the aggregates of the sub-queries
+	 * 
+	 * @param <T>
+	 * @param inputs
+	 * @param groupBy
+	 * @param subQuery
+	 * @return
+	 */
+	private <T> OrderAggregate aggregateSubQueries(final List<T> inputs, final OrderAggregate.GroupBy groupBy, 
+									final Function<T, OrderAggregate> subQuery) {
+		
+		ResultsMergedEvent event = ResultsMergedEvent.begin("CompletableFuturesQuery aggregate", inputs.size());
+		List<CompletableFuture<OrderAggregate>> futures = executor.submitAll(inputs, subQuery, maxQueryConcurrency);
+
+		OrderAggregate aggregate = OrderAggregate.merge(groupBy, futures.stream()
+				.map(CompletableFuture::join)
+				.collect(Collectors.toList()));
+		
+		event.merged(aggregate.getTotalOrderCount());
+		return aggregate;
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk1;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import lombok.NonNull;
+
+/**
+ * Distributions of the generated Orders: uniform, weighted (e.g. the category mix), Zipf (e.g. popular SKUs) 
+ * and seasonal order dates over multiple years. 
+ * 
+ * The weighted samplers use the cumulative weights and StrictMath, so the samples of the same seed are the same 
+ * on every JVM and machine.
+ * 
+ * @author zorani
+ *
+ */
+public final class Distributions {
+
+	private Distributions() {}
+	
+	/**
+	 * @param <T>
+	 * @param values
+	 * @return every value with the same probability
+	 */
+	public static <T> Distribution<T> uniform(@NonNull final List<T> values) {
+		
+		if (values.isEmpty()) throw new IllegalArgumentException("no values");
+		
+		List<T> copy = new ArrayList<>(values);
+		
+		return random -> copy.get(random.nextInt(copy.size()));
+	}
+	
+	/**
+	 * @param <T>
+	 * @param weights relative weight per value, in the iteration order of the map (use a sorted or linked map)
+	 * @return values with the probability proportional to their weights
+	 */
+	public static <T> Distribution<T> weighted(@NonNull final Map<T, Double> weights) {
+		
+		List<T> values = new ArrayList<>(weights.size());
+		double[] w = new double[weights.size()];
+		
+		for (Map.Entry<T, Double> e : weights.entrySet()) {
+			
+			w[values.size()] = e.getValue();
+			values.add(e.getKey());
+		}
+		
+		return new Cumulative<>(values, w);
+	}
+	
+	/**
+	 * Zipf distribution: the value of rank k (starting with 1) has the probability proportional to 1 / k^exponent
+	 * 
+	 * @param <T>
+	 * @param values values by rank, the most frequent first
+	 * @param exponent skew, zero: uniform; around 1 for the typical popularity skew
+	 * @return
+	 */
+	public static <T> Distribution<T> zipf(@NonNull final List<T> values, final double exponent) {
+		
+		if (exponent < 0) throw new IllegalArgumentException("exponent must not be negative");
+		if (exponent == 0) return uniform(values);
+		
+		double[] w = new double[values.size()];
+		for (int k = 0; k < w.length; ++k) w[k] = 1 / StrictMath.pow(k + 1, exponent);
+		
+		return new Cumulative<>(values, w);
+	}
+	
+	/**
+	 * Order dates of the years fromYear..toYear, with every day of a month weighted by the weight of the month
+	 * 
+	 * @param fromYear
+	 * @param toYear
+	 * @param monthWeights 12 relative weights, January first (e.g. higher weights of November and December for the holiday peak)
+	 * @return
+	 */
+	public static Distribution<LocalDate> seasonalDates(final int fromYear, final int toYear, @NonNull final double[] monthWeights) {
+		
+		if (toYear < fromYear) throw new IllegalArgumentException("invalid years: " + fromYear + ".." + toYear);
+		if (monthWeights.length != 12) throw new IllegalArgumentException("12 month weights expected, got " + monthWeights.length);
+		
+		List<LocalDate> days = new ArrayList<>();
+		List<Double> weights = new ArrayList<>();
+		
+		for (LocalDate day = LocalDate.of(fromYear, 1, 1); day.getYear() <= toYear; day = day.plusDays(1)) {
+			
+			days.add(day);
+			weights.add(monthWeights[day.getMonthValue() - 1]);
+		}
+		
+		return new Cumulative<>(days, weights.stream().mapToDouble(Double::doubleValue).toArray());
+	}
+	
+	/**
+	 * @param fromYear
+	 * @param toYear
+	 * @return every day of the years fromYear..toYear with the same probability
+	 */
+	public static Distribution<LocalDate> uniformDates(final int fromYear, final int toYear) {
+		
+		double[] monthWeights = new double[12];
+		Arrays.fill(monthWeights, 1);
+		
+		return seasonalDates(fromYear, toYear, monthWeights);
+	}
+	
+	/**
+	 * Sampling by the binary search of the cumulative weights
+	 * 
+	 * @param <T>
+	 */
+	private static final class Cumulative<T> implements Distribution<T> {
+		
+		private final List<T> values;
+		private final double[] cumulative;
+		
+		Cumulative(final List<T> values, final double[] weights) {
+			
+			if (values.isEmpty()) throw new IllegalArgumentException("no values");
+			
+			this.values = new ArrayList<>(values);
+			this.cumulative = new double[weights.length];
+			
+			double sum = 0;
+			
+			for (int i = 0; i < weights.length; ++i) {
+				
+				if (!(weights[i] >= 0) || Double.isInfinite(weights[i])) throw new IllegalArgumentException("invalid weight: " + weights[i]);
+				
+				sum += weights[i];
+				cumulative[i] = sum;
+			}
+			
+			if (sum <= 0) throw new IllegalArgumentException("weights must not be all zero");
+		}
+
+		@Override
+		public T sample(final SplittableRandom random) {
+			
+			double u = random.nextDouble() * cumulative[cumulative.length - 1];
+			
+			int i = Arrays.binarySearch(cumulative, u);
+			if (i < 0) i = -i - 1;
+			else ++i; // exactly at the upper bound of the value i: the next one
+			
+			// skip zero weight values
+			while (i < cumulative.length - 1 && (i > 0 ? cumulative[i] - cumulative[i - 1] : cumulative[i]) <= 0) ++i;
+			
+			return values.get(Math.min(i, values.size() - 1));
+		}
+	}
+}
@@ -17,33 +17,38 @@
  */
 package software.amazon.samples.ddb.parallel.queries.sdk1;
 
-import java.time.LocalDate;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.SaveBehavior;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
 
 import lombok.NonNull;
 import software.amazon.samples.ddb.parallel.queries.Config;
-import software.amazon.samples.ddb.parallel.queries.QueryUtils;
 
 /**
  * AWS Blog post: Orders data generation
  * 
+ * Orders are generated lazily ({@link StreamingOrderGenerator}) into the DynamoDB table, written by the bounded 
+ * pool of BatchWriteItem writers ({@link BulkOrderLoader}), or into a local file that can be replayed into the table later.
+ * 
  * @author zorani
  *
  */
 public class LoadTestData {
 
-	private DynamoDBMapper dbMapper = null;
+	private AmazonDynamoDB dynamoDB = null;
 
 	private static final Logger LOG = LoggerFactory.getLogger(LoadTestData.class);
 
@@ -52,85 +57,45 @@ public class LoadTestData {
 	/**
 	 * Generate and load test Orders data in DynamoDB table
 	 */
-	public void generateTestOrdersData(int totalRecordsToGenerate, int year) {
+	public void generateTestOrdersData(long totalRecordsToGenerate, int year) {
 
-		AmazonDynamoDB dynamoDB = Utils.init();
-		dbMapper = new DynamoDBMapper(dynamoDB);
+		dynamoDB = Utils.init();
 		
-		if (totalRecordsToGenerate < 0 || totalRecordsToGenerate > 500_000) totalRecordsToGenerate = 100;
+		if (totalRecordsToGenerate < 0) throw new IllegalArgumentException("totalRecordsToGenerate must not be negative");
 		if (year < 2015 || year > 2030) year = 2020;
 
-		List<String> products = Arrays.asList("A", "B", "C", "D");
-		List<String> payments = Arrays.asList("CREDIT", "DEBIT", "CASH");
-		List<String> states = Arrays.asList("WA", "TX", "CA", "NY", "MA", "FL", "PA", "NH", "NM");
-
-		Random r = new Random();
-		List<Order> orders = new ArrayList<>();
-
 		long start = System.currentTimeMillis();
 
-		for (int i = 1; i <= totalRecordsToGenerate; i++) {
-
-			int dayOfYear = 1 + r.nextInt(365);
-			LocalDate ld = LocalDate.ofYearDay(year, dayOfYear);
-			if (ld.getYear() > year) ld = ld.minusDays(7);
-
-			double price = (1 + r.nextInt(16)) + (1 + r.nextInt(99))/100.0;
-
-			int productID = 1 + r.nextInt(99);
-			String category = null;
-			if (productID < 30) category = "ELECTRONICS";
-			else if (productID < 60) category = "HOME";
-			else if (productID < 80) category = "SPORT";
-			else category = "GARDEN";
-
-			String state = states.get(r.nextInt(states.size()));
-
-			Order order = Order.builder()
-					.sku(String.format("%s-%03d", products.get(r.nextInt(products.size())), productID))
-					.orderDate(ld.toString())
-					.paymentType(payments.get(r.nextInt(payments.size())))
-					.qty(1 + r.nextInt(10))
-					.pricePerUnit(price)
-					.category(category)
-					.country("USA")
-					.ckCountryState("USA#" + state)
-					.state(state)
-					.querySlotMod64(i % 64)
-					.querySlotMod128(i % 128)
-					.comment("Some comment here ...")
-					.build();
-
-			orders.add(order);
+		// Orders are generated one at a time, straight into 25-item BatchWriteItem requests on the bounded pool of writers
+		try (BulkOrderLoader loader = new BulkOrderLoader(dynamoDB)) {
+			
+			new StreamingOrderGenerator(new OrderGenerator(year)).generate(0, totalRecordsToGenerate, loader);
 		}
 
-		// persist Orders to DynamoDB table		
-		orders.parallelStream()
-				.forEach(this::createOrder);
-
 		long end = System.currentTimeMillis();
 
-		LOG.info(" Generation of data is completed .. total Orders: {}, time: {} msec%n", 
-															totalRecordsToGenerate, (end - start)/1000);
+		LOG.info(" Generation of data is completed .. total Orders: {}, time: {} msec", 
+															totalRecordsToGenerate, end - start);
 	}
 
 	/**
-	 * Saving Order object - overwrite previous values
+	 * Saving Order object - overwrite previous values (PutItem of the item converted by {@link OrderCodec}, 
+	 * the same as DynamoDBMapper save with CLOBBER, without the reflection)
 	 * 
 	 * @param order
 	 */
 	public Order createOrder(@NonNull Order order) {
 
-		DynamoDBMapperConfig mapperConfig = QueryUtils.getDefaultMapperConfigBuilder(Config.DDB_TABLE_NAME)
-				.withSaveBehavior(SaveBehavior.CLOBBER)
-				.build();
+		PutItemRequest request = new PutItemRequest()
+				.withTableName(Config.DDB_TABLE_NAME)
+				.withItem(OrderCodec.toItem(order));
 
 		int attemptCount = 1;
 
 		do {
 
 			try {
-				dbMapper.save(order, mapperConfig);
+				dynamoDB.putItem(request);
 				return order;
 				
 			} catch (Exception e) {
@@ -152,11 +117,138 @@ public class LoadTestData {
 	/**
 	 * Loading Orders data main()
 	 * 
+	 * Options: --orders=100 (Orders to generate), --year=2020, --writers=16 (BatchWriteItem writers), 
+	 * --output=orders.jsonl.gz (write to the local file instead of the table), --replay=orders.jsonl.gz (load the file 
+	 * into the table instead of generating), --checkpoint=orders.checkpoint (save the checkpoints, and resume from the saved one), 
+	 * --offset=N (resume after N Orders written)
+	 * 
+	 * Workload options (the same options and seed, the same Orders): --seed=20200101, --years=2019-2021 (instead of --year), 
+	 * --months=1,1,1,1,1,1,1,1,1,1,3,4 (relative order-date weights per month, e.g. the holiday peak), 
+	 * --categories=ELECTRONICS:50,HOME:30,SPORT:10,GARDEN:10 (category mix), --sku-zipf=1.1 (Zipf exponent of the SKU popularity)
+	 * 
 	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+
+		Map<String,String> options = parseOptions(args);
+		
+		List<String> unknown = new ArrayList<>(options.keySet());
+		unknown.removeAll(List.of("orders", "year", "writers", "output", "replay", "checkpoint", "offset", 
+				"seed", "years", "months", "categories", "sku-zipf"));
+		if (!unknown.isEmpty()) throw new IllegalArgumentException("Unknown options: " + unknown);
+		
+		long total = Long.parseLong(options.getOrDefault("orders", "100"));
+		Path checkpointFile = options.containsKey("checkpoint") ? Paths.get(options.get("checkpoint")) : null;
+		
+		long offset = options.containsKey("offset") ? Long.parseLong(options.get("offset")) 
+				: checkpointFile == null ? 0 : StreamingOrderGenerator.readCheckpoint(checkpointFile);
+		
+		StreamingOrderGenerator generator = new StreamingOrderGenerator(orderGenerator(options))
+				.withCheckpointFile(checkpointFile);
+		
+		try (OrderSink sink = options.containsKey("output") 
+				? OrderFile.writer(Paths.get(options.get("output")), outputPosition(offset, options.containsKey("offset") ? null : checkpointFile)) 
+				: new BulkOrderLoader(Utils.init(), Config.DDB_TABLE_NAME, 
+						Integer.parseInt(options.getOrDefault("writers", String.valueOf(Config.BULK_LOAD_WRITERS))))) {
+			
+			if (!options.containsKey("replay")) {
+				
+				generator.generate(offset, total, sink);
+				return;
+			}
+			
+			try (Stream<Order> orders = OrderFile.read(Paths.get(options.get("replay")))) {
+				
+				generator.replay(orders, offset, sink);
+			}
+		}
+	}
+	
+	/**
+	 * Length of the output file to resume from: the one saved with the checkpoint, so the Orders written 
+	 * after it (and the torn gzip member) are dropped
+	 * 
+	 * @param offset
+	 * @param checkpointFile null if resumed from the --offset option
+	 * @return
+	 * @throws IOException
 	 */
-	public static void main(String[] args) {
+	private static long outputPosition(final long offset, final Path checkpointFile) throws IOException {
+		
+		if (offset == 0) return 0;
+		
+		long position = checkpointFile == null ? -1 : StreamingOrderGenerator.readCheckpointPosition(checkpointFile);
+		
+		if (position < 0) throw new IllegalArgumentException("Resuming the output file needs the checkpoint with its length (--checkpoint), not --offset");
+		
+		return position;
+	}
 
-		LoadTestData loadData = new LoadTestData();
-		loadData.generateTestOrdersData(100, 2020);
+	/**
+	 * Order generator of the workload options
+	 * 
+	 * @param options
+	 * @return
+	 */
+	private static OrderGenerator orderGenerator(final Map<String,String> options) {
+		
+		String[] years = options.getOrDefault("years", options.getOrDefault("year", String.valueOf(Config.YEAR))).split("-");
+		int fromYear = Integer.parseInt(years[0]);
+		int toYear = Integer.parseInt(years[years.length - 1]);
+		
+		OrderGenerator generator = new OrderGenerator(fromYear)
+				.withSeed(Long.parseLong(options.getOrDefault("seed", String.valueOf(Config.GENERATOR_SEED))))
+				.withSkuZipfExponent(Double.parseDouble(options.getOrDefault("sku-zipf", String.valueOf(Config.GENERATOR_SKU_ZIPF_EXPONENT))));
+		
+		if (options.containsKey("months")) {
+			
+			double[] weights = Arrays.stream(options.get("months").split(",")).mapToDouble(Double::parseDouble).toArray();
+			generator.withDates(Distributions.seasonalDates(fromYear, toYear, weights), 
+					"seasonal " + fromYear + ".." + toYear + " " + Arrays.toString(weights));
+			
+		} else if (toYear != fromYear) {
+			
+			generator.withDates(Distributions.uniformDates(fromYear, toYear), "uniform " + fromYear + ".." + toYear);
+		}
+		
+		if (options.containsKey("categories")) {
+			
+			Map<String, Double> mix = new LinkedHashMap<>();
+			
+			for (String category : options.get("categories").split(",")) {
+				
+				int colon = category.indexOf(':');
+				if (colon < 0) throw new IllegalArgumentException("Category weight expected: " + category);
+				
+				mix.put(category.substring(0, colon), Double.parseDouble(category.substring(colon + 1)));
+			}
+			
+			generator.withCategoryMix(mix);
+		}
+		
+		return generator;
+	}
+	
+	/**
+	 * Parse --name=value command line options
+	 * 
+	 * @param args
+	 * @return
+	 */
+	private static Map<String,String> parseOptions(final String[] args) {
+		
+		Map<String,String> options = new HashMap<>();
+		
+		for (String arg : args) {
+			
+			int eq = arg.indexOf('=');
+			
+			if (!arg.startsWith("--") || eq < 0) throw new IllegalArgumentException("Unknown argument: " + arg);
+			
+			options.put(arg.substring(2, eq), arg.substring(eq + 1));
+		}
+		
+		return options;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk1;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import lombok.NonNull;
+
+/**
+ * Hand-written codec between DynamoDB items and Orders, with no reflection or annotation lookups 
+ * (DynamoDBMapper converts every item through the reflected model of the annotated Order class). 
+ * Attribute names and types are the same as in the {@link Order} annotations, so items written 
+ * by either of them are read by the other one; it's used with the low-level AmazonDynamoDB query API 
+ * in {@link OrdersDbUtils#withOrderCodec(boolean)} and for writes in {@link LoadTestData}.
+ * 
+ * Like DynamoDBMapper: null attributes are not written, missing numbers are read as 0, 
+ * and a missing id is generated (random UUID) on write.
+ * 
+ * @author zorani
+ *
+ */
+public final class OrderCodec {
+
+	public static final String ID = "id";
+	public static final String CATEGORY = "category";
+	public static final String COUNTRY = "country";
+	public static final String CK_COUNTRY_STATE = "ck-country-state";
+	public static final String SKU = "sku";
+	public static final String ORDER_DATE = "order-date";
+	public static final String QUERY_SLOT_MOD64 = "query-slot-mod64";
+	public static final String QUERY_SLOT_MOD128 = "query-slot-mod128";
+	public static final String QTY = "qty";
+	public static final String UNIT_PRICE = "unit-price";
+	public static final String STATE = "state";
+	public static final String PAYMENT_TYPE = "payment-type";
+	public static final String COMMENT = "comment";
+	
+	private OrderCodec() {}
+	
+	/**
+	 * Convert DynamoDB item to Order
+	 * 
+	 * @param item
+	 * @return
+	 */
+	public static Order fromItem(@NonNull final Map<String, AttributeValue> item) {
+		
+		Order order = new Order();
+		
+		order.setId(string(item.get(ID)));
+		order.setCategory(string(item.get(CATEGORY)));
+		order.setCountry(string(item.get(COUNTRY)));
+		order.setCkCountryState(string(item.get(CK_COUNTRY_STATE)));
+		order.setSku(string(item.get(SKU)));
+		order.setOrderDate(string(item.get(ORDER_DATE)));
+		order.setQuerySlotMod64(intNumber(item.get(QUERY_SLOT_MOD64)));
+		order.setQuerySlotMod128(intNumber(item.get(QUERY_SLOT_MOD128)));
+		order.setQty(intNumber(item.get(QTY)));
+		order.setPricePerUnit(doubleNumber(item.get(UNIT_PRICE)));
+		order.setState(string(item.get(STATE)));
+		order.setPaymentType(string(item.get(PAYMENT_TYPE)));
+		order.setComment(string(item.get(COMMENT)));
+		
+		return order;
+	}
+	
+	/**
+	 * Convert DynamoDB items (e.g. a query page) to Orders
+	 * 
+	 * @param items
+	 * @return
+	 */
+	public static List<Order> fromItems(@NonNull final List<Map<String, AttributeValue>> items) {
+		
+		List<Order> orders = new ArrayList<>(items.size());
+		
+		for (Map<String, AttributeValue> item : items) orders.add(fromItem(item));
+		
+		return orders;
+	}
+	
+	/**
+	 * Convert Order to DynamoDB item; if the Order has no id, a random UUID is generated and set on the Order
+	 * 
+	 * @param order
+	 * @return
+	 */
+	public static Map<String, AttributeValue> toItem(@NonNull final Order order) {
+		
+		if (order.getId() == null) order.setId(UUID.randomUUID().toString());
+		
+		Map<String, AttributeValue> item = new HashMap<>(32);
+		
+		putString(item, ID, order.getId());
+		putString(item, CATEGORY, order.getCategory());
+		putString(item, COUNTRY, order.getCountry());
+		putString(item, CK_COUNTRY_STATE, order.getCkCountryState());
+		putString(item, SKU, order.getSku());
+		putString(item, ORDER_DATE, order.getOrderDate());
+		item.put(QUERY_SLOT_MOD64, new AttributeValue().withN(Integer.toString(order.getQuerySlotMod64())));
+		item.put(QUERY_SLOT_MOD128, new AttributeValue().withN(Integer.toString(order.getQuerySlotMod128())));
+		item.put(QTY, new AttributeValue().withN(Integer.toString(order.getQty())));
+		item.put(UNIT_PRICE, new AttributeValue().withN(BigDecimal.valueOf(order.getPricePerUnit()).toPlainString()));
+		putString(item, STATE, order.getState());
+		putString(item, PAYMENT_TYPE, order.getPaymentType());
+		putString(item, COMMENT, order.getComment());
+		
+		return item;
+	}
+	
+	private static void putString(final Map<String, AttributeValue> item, final String name, final String value) {
+		
+		if (value != null) item.put(name, new AttributeValue().withS(value));
+	}
+	
+	private static String string(final AttributeValue value) {
+		
+		return value == null ? null : value.getS();
+	}
+	
+	private static int intNumber(final AttributeValue value) {
+		
+		return value == null || value.getN() == null ? 0 : Integer.parseInt(value.getN());
+	}
+
+	private static double doubleNumber(final AttributeValue value) {
+		
+		return value == null || value.getN() == null ? 0 : Double.parseDouble(value.getN());
+	}
+}
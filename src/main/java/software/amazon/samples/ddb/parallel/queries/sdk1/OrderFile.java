@@ -0,0 +1,218 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk1;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.NonNull;
+
+/**
+ * Local file of Orders for replay: one JSON Order per line, gzip compressed if the file name ends with .gz
+ * 
+ * Every flush (checkpoint) ends the line and, for the .gz file, the gzip member, so the file length at the flush 
+ * ({@link OrderSink#getPosition()}) is a clean cut: the resumed generation truncates the file to the length 
+ * of its checkpoint, dropping the Orders written after it (and the torn line or gzip member), and appends from there.
+ * 
+ * @author zorani
+ *
+ */
+public final class OrderFile {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	private OrderFile() {}
+	
+	/**
+	 * Open the file for writing
+	 * 
+	 * @param path
+	 * @param position length to truncate the existing file to, and append from (the file length saved 
+	 * 		with the checkpoint of the resumed generation); zero: new file
+	 * @return
+	 * @throws IOException
+	 */
+	public static OrderSink writer(@NonNull final Path path, final long position) throws IOException {
+		
+		if (position < 0) throw new IllegalArgumentException("invalid position: " + position);
+		
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		
+		try {
+			
+			if (position > channel.size()) throw new IOException(path + " is shorter than the checkpoint: " + channel.size() + " < " + position);
+			
+			channel.truncate(position);
+			channel.position(position);
+			
+		} catch (IOException e) {
+			
+			channel.close();
+			throw e;
+		}
+		
+		return new FileSink(channel, isGzip(path));
+	}
+	
+	/**
+	 * Read the Orders of the file lazily; close the stream to close the file
+	 * 
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static Stream<Order> read(@NonNull final Path path) throws IOException {
+		
+		InputStream in = Files.newInputStream(path);
+		if (isGzip(path)) in = new GZIPInputStream(in, 64 * 1024);
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+		
+		return reader.lines()
+				.filter(line -> !line.isEmpty())
+				.map(OrderFile::parse)
+				.onClose(() -> {
+					
+					try {
+						reader.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+	
+	private static Order parse(final String line) {
+		
+		try {
+			return MAPPER.readValue(line, Order.class);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException("Invalid Order: " + line, e);
+		}
+	}
+	
+	private static boolean isGzip(final Path path) {
+		
+		return path.getFileName().toString().endsWith(".gz");
+	}
+	
+	/**
+	 * Writes JSON lines; the .gz file gets one gzip member per flush (read back as a single stream)
+	 */
+	private static final class FileSink implements OrderSink {
+		
+		private final FileChannel channel;
+		private final OutputStream file;
+		private final boolean gzip;
+		
+		// writer of the current gzip member (or the plain file); null until the first Order after the flush
+		private GZIPOutputStream member = null;
+		private Writer writer = null;
+		
+		FileSink(final FileChannel channel, final boolean gzip) {
+			
+			this.channel = channel;
+			this.file = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+			this.gzip = gzip;
+		}
+
+		@Override
+		public void add(@NonNull final Order order) {
+			
+			try {
+				
+				if (writer == null) {
+					
+					member = gzip ? new GZIPOutputStream(file, 64 * 1024) : null;
+					writer = new BufferedWriter(new OutputStreamWriter(gzip ? member : file, StandardCharsets.UTF_8), 64 * 1024);
+				}
+				
+				writer.write(MAPPER.writeValueAsString(order));
+				writer.write('\n');
+				
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public void flush() {
+			
+			try {
+				
+				if (writer != null) {
+					
+					writer.flush();
+					if (member != null) member.finish();
+					
+					writer = null;
+					member = null;
+				}
+				
+				file.flush();
+				
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public long getPosition() {
+			
+			try {
+				return channel.position();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public void close() {
+			
+			try {
+				flush();
+			} finally {
+				
+				try {
+					file.close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+}
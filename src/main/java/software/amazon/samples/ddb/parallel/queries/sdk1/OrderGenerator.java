@@ -0,0 +1,254 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk1;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.Config;
+
+/**
+ * AWS Blog post: simulated Orders, generated one at a time (nothing is kept in memory). 
+ * 
+ * The workload is deterministic: every Order is drawn from its own random generator, seeded by the generator seed 
+ * and the order number, so the same seed gives the same dataset (including the Order ids) for any offset, order of 
+ * generation or machine - and a resumed load overwrites the same items. The skew is configurable with pluggable 
+ * {@link Distribution}s: the category mix, Zipf popularity of the SKUs within a category and the (seasonal, 
+ * multi-year) order dates. The query slots follow the order number.
+ * 
+ * Defaults are the original Blog post data: uniform dates of a single year, uniform SKUs and the category mix 
+ * of the product ID ranges.
+ * 
+ * @author zorani
+ *
+ */
+public class OrderGenerator {
+
+	private static final List<String> PRODUCTS = Arrays.asList("A", "B", "C", "D");
+	private static final List<String> PAYMENTS = Arrays.asList("CREDIT", "DEBIT", "CASH");
+	private static final List<String> STATES = Arrays.asList("WA", "TX", "CA", "NY", "MA", "FL", "PA", "NH", "NM");
+	
+	// product ID ranges of the categories, other categories have all of the product IDs
+	private static final Map<String, int[]> CATEGORY_PRODUCT_IDS = new LinkedHashMap<>();
+	static {
+		CATEGORY_PRODUCT_IDS.put("ELECTRONICS", new int[] {1, 29});
+		CATEGORY_PRODUCT_IDS.put("HOME", new int[] {30, 59});
+		CATEGORY_PRODUCT_IDS.put("SPORT", new int[] {60, 79});
+		CATEGORY_PRODUCT_IDS.put("GARDEN", new int[] {80, 99});
+	}
+	private static final int[] ALL_PRODUCT_IDS = {1, 99};
+	
+	private long seed = Config.GENERATOR_SEED;
+	private Distribution<LocalDate> dates;
+	private Map<String, Double> categoryMix = new LinkedHashMap<>();
+	private double skuExponent = Config.GENERATOR_SKU_ZIPF_EXPONENT;
+	private String description;
+	
+	// built from the settings on the first Order
+	private volatile Distribution<String> categories;
+	private volatile Map<String, Distribution<String>> skus;
+
+	/**
+	 * C-tor
+	 * 
+	 * @param year order-date year (uniform dates, see {@link #withDates(Distribution, String)})
+	 */
+	public OrderGenerator(final int year) {
+		
+		this.dates = Distributions.uniformDates(year, year);
+		this.description = "uniform " + year;
+		
+		for (Map.Entry<String, int[]> e : CATEGORY_PRODUCT_IDS.entrySet()) {
+			categoryMix.put(e.getKey(), (double)(e.getValue()[1] - e.getValue()[0] + 1));
+		}
+	}
+	
+	/**
+	 * @param seed the same seed, the same Orders
+	 * @return
+	 */
+	public OrderGenerator withSeed(final long seed) {
+		
+		this.seed = seed;
+		return this;
+	}
+	
+	/**
+	 * @param dates order dates, e.g. {@link Distributions#seasonalDates(int, int, double[])}
+	 * @param description of the dates, for the progress log
+	 * @return
+	 */
+	public OrderGenerator withDates(@NonNull final Distribution<LocalDate> dates, final String description) {
+		
+		this.dates = dates;
+		this.description = description;
+		return this;
+	}
+	
+	/**
+	 * @param categoryMix relative weight per category, in the iteration order of the map
+	 * @return
+	 */
+	public OrderGenerator withCategoryMix(@NonNull final Map<String, Double> categoryMix) {
+		
+		if (categoryMix.isEmpty()) throw new IllegalArgumentException("no categories");
+		
+		this.categoryMix = new LinkedHashMap<>(categoryMix);
+		this.categories = null;
+		this.skus = null;
+		return this;
+	}
+	
+	/**
+	 * @param exponent Zipf exponent of the SKU popularity within a category, 0: uniform
+	 * @return
+	 */
+	public OrderGenerator withSkuZipfExponent(final double exponent) {
+		
+		if (exponent < 0) throw new IllegalArgumentException("exponent must not be negative");
+		
+		this.skuExponent = exponent;
+		this.skus = null;
+		return this;
+	}
+	
+	/**
+	 * Generate the Order
+	 * 
+	 * @param number order number, starting with 1
+	 * @return
+	 */
+	public Order generate(final long number) {
+		
+		SplittableRandom r = new SplittableRandom(mix(seed + number * 0x9E3779B97F4A7C15L));
+		
+		String category = categories().sample(r);
+		String sku = skus().get(category).sample(r);
+		LocalDate ld = dates.sample(r);
+
+		double price = (1 + r.nextInt(16)) + (1 + r.nextInt(99))/100.0;
+
+		String state = STATES.get(r.nextInt(STATES.size()));
+
+		return Order.builder()
+				.id(new UUID(r.nextLong(), r.nextLong()).toString())
+				.sku(sku)
+				.orderDate(ld.toString())
+				.paymentType(PAYMENTS.get(r.nextInt(PAYMENTS.size())))
+				.qty(1 + r.nextInt(10))
+				.pricePerUnit(price)
+				.category(category)
+				.country("USA")
+				.ckCountryState("USA#" + state)
+				.state(state)
+				.querySlotMod64((int)(number % 64))
+				.querySlotMod128((int)(number % 128))
+				.comment("Some comment here ...")
+				.build();
+	}
+	
+	/**
+	 * Lazily generated Orders, numbers offset + 1 .. total
+	 * 
+	 * @param offset Orders already generated (skipped)
+	 * @param total
+	 * @return
+	 */
+	public Iterator<Order> orders(final long offset, final long total) {
+		
+		return new Iterator<Order>() {
+			
+			private long number = offset;
+			
+			@Override
+			public boolean hasNext() {
+				
+				return number < total;
+			}
+
+			@Override
+			public Order next() {
+				
+				if (!hasNext()) throw new NoSuchElementException();
+				
+				return generate(++number);
+			}
+		};
+	}
+	
+	private Distribution<String> categories() {
+		
+		Distribution<String> c = categories;
+		if (c == null) categories = c = Distributions.weighted(categoryMix);
+		
+		return c;
+	}
+	
+	/**
+	 * @return SKUs per category, ranked by the product ID and the product
+	 */
+	private Map<String, Distribution<String>> skus() {
+		
+		Map<String, Distribution<String>> s = skus;
+		
+		if (s == null) {
+			
+			s = new LinkedHashMap<>();
+			
+			for (String category : categoryMix.keySet()) {
+				
+				int[] ids = CATEGORY_PRODUCT_IDS.getOrDefault(category, ALL_PRODUCT_IDS);
+				List<String> ranked = new ArrayList<>();
+				
+				for (int productID = ids[0]; productID <= ids[1]; ++productID) {
+					for (String product : PRODUCTS) ranked.add(String.format("%s-%03d", product, productID));
+				}
+				
+				s.put(category, Distributions.zipf(ranked, skuExponent));
+			}
+			
+			skus = s;
+		}
+		
+		return s;
+	}
+	
+	/**
+	 * 64-bit finalizer of MurmurHash3, so the neighbouring order numbers get unrelated seeds
+	 */
+	private static long mix(long z) {
+		
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return z ^ (z >>> 33);
+	}
+	
+	@Override
+	public String toString() {
+		return "seed " + seed + ", dates " + description + ", categories " + categoryMix + ", SKU Zipf exponent " + skuExponent;
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk1;
+
+/**
+ * Destination of the generated (or replayed) Orders: the DynamoDB table ({@link BulkOrderLoader}) 
+ * or a local file ({@link OrderFile})
+ * 
+ * @author zorani
+ *
+ */
+public interface OrderSink extends AutoCloseable {
+
+	/**
+	 * Add the Order; may block while the sink is behind
+	 * 
+	 * @param order
+	 */
+	void add(Order order);
+	
+	/**
+	 * Wait until all the Orders added so far are written
+	 */
+	void flush();
+	
+	/**
+	 * @return bytes written, valid right after {@link #flush()} (saved with the checkpoint to resume from); 
+	 * 		-1 if the sink is not a file
+	 */
+	default long getPosition() {
+		
+		return -1;
+	}
+	
+	/**
+	 * @return Orders that could not be written
+	 */
+	default long getFailedItems() {
+		
+		return 0;
+	}
+	
+	/**
+	 * Flush and release the sink
+	 */
+	@Override
+	void close();
+}
@@ -21,28 +21,84 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.datamodeling.ScanResultPage;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.Select;
 
 import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.AimdConcurrencyLimiter;
+import software.amazon.samples.ddb.parallel.queries.BoundedQueryExecutor;
 import software.amazon.samples.ddb.parallel.queries.Config;
+import software.amazon.samples.ddb.parallel.queries.OrderAggregate;
+import software.amazon.samples.ddb.parallel.queries.OrderBatch;
+import software.amazon.samples.ddb.parallel.queries.PartitionCounts;
+import software.amazon.samples.ddb.parallel.queries.Projection;
+import software.amazon.samples.ddb.parallel.queries.QueryExecutor;
+import software.amazon.samples.ddb.parallel.queries.QueryMetrics;
+import software.amazon.samples.ddb.parallel.queries.QueryMetricsRequestHandler;
+import software.amazon.samples.ddb.parallel.queries.QueryResultCache;
 import software.amazon.samples.ddb.parallel.queries.QueryUtils;
+import software.amazon.samples.ddb.parallel.queries.ReadCapacityBudget;
+import software.amazon.samples.ddb.parallel.queries.RequestHedger;
+import software.amazon.samples.ddb.parallel.queries.SortKeyRange;
+import software.amazon.samples.ddb.parallel.queries.SubQueryMetrics;
 
 /**
  * Utilities for read/write Orders records to and from DynamoDB table
  * 
+ * Queries and scans are executed page by page: list* methods collect all pages into a list, 
+ * while the page handler methods hand over every page as soon as it arrives (the handler 
+ * can stop the query by returning false), so the caller never has to hold all the results.
+ * 
+ * All queries and scans request the consumed capacity (TOTAL), which is charged to the read 
+ * capacity budget if set.
+ * 
+ * With the result cache set, order-date queries of closed periods are served from the cache 
+ * (see {@link QueryResultCache}), and only the uncached ranges are sent to DynamoDB.
+ * 
+ * With the projection set, queries and scans fetch only the projected attributes, and return partially 
+ * populated Orders (the result cache is not used, as it holds only the full items).
+ * 
+ * Within a measured query (see {@link QueryMetrics}), every query and scan segment records its sub-query metrics; 
+ * the response bytes, SDK retries and unmarshalling time come from {@link QueryMetricsRequestHandler} of the client.
+ * 
  * @author zorani
  *
  */
 public class OrdersDbUtils {
 	
 	private DynamoDBMapper dbMapper = null;
+	private AmazonDynamoDB dynamoDB = null;
+	private QueryExecutor executor = null;
+	private AimdConcurrencyLimiter concurrencyLimiter = null;
+	private ReadCapacityBudget capacityBudget = null;
+	private RequestHedger requestHedger = null;
+	private QueryResultCache<Order> resultCache = null;
+	private Projection projection = null;
+	private boolean useOrderCodec = false;
+	
+	private static final String CATEGORY_ORDER_DATE_INDEX = "category-order-date-index";
 	
 	/**
 	 * C-tor
@@ -53,6 +109,169 @@ public class OrdersDbUtils {
 		
 		this.dbMapper = dbMapper;
 	}
+
+	/**
+	 * C-tor, with the low-level client for the queries returning raw attribute maps (such as Order batches)
+	 * 
+	 * @param dbMapper
+	 * @param dynamoDB
+	 */
+	public OrdersDbUtils(@NonNull final DynamoDBMapper dbMapper, @NonNull final AmazonDynamoDB dynamoDB) {
+		
+		this.dbMapper = dbMapper;
+		this.dynamoDB = dynamoDB;
+	}
+
+	/**
+	 * Run the segments of the parallel scans on the query executor (instead of the shared one)
+	 * 
+	 * @param executor
+	 * @return
+	 */
+	public OrdersDbUtils withQueryExecutor(final QueryExecutor executor) {
+		
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Limit the in-flight page requests (of all queries and scans done via this object) with the AIMD limiter, 
+	 * which adapts to the throttling feedback; the client should not retry the throttled requests (see 
+	 * {@link Utils#init(boolean)}), otherwise the SDK retries hide most of the throttling from the limiter
+	 * 
+	 * @param concurrencyLimiter
+	 * @return
+	 */
+	public OrdersDbUtils withConcurrencyLimiter(final AimdConcurrencyLimiter concurrencyLimiter) {
+		
+		this.concurrencyLimiter = concurrencyLimiter;
+		return this;
+	}
+
+	/**
+	 * Pace the page requests (of all queries and scans done via this object) to the RCU/s ceiling of the budget, 
+	 * and count the consumed capacity
+	 * 
+	 * @param capacityBudget
+	 * @return
+	 */
+	public OrdersDbUtils withReadCapacityBudget(final ReadCapacityBudget capacityBudget) {
+		
+		this.capacityBudget = capacityBudget;
+		return this;
+	}
+
+	/**
+	 * Hedge the page requests (of all queries and scans done via this object): a slow page request is duplicated, 
+	 * and the first response wins
+	 * 
+	 * @param requestHedger
+	 * @return
+	 */
+	public OrdersDbUtils withRequestHedger(final RequestHedger requestHedger) {
+		
+		this.requestHedger = requestHedger;
+		return this;
+	}
+
+	/**
+	 * Serve order-date queries of closed periods from the result cache
+	 * 
+	 * @param resultCache
+	 * @return
+	 */
+	public OrdersDbUtils withResultCache(final QueryResultCache<Order> resultCache) {
+		
+		this.resultCache = resultCache;
+		return this;
+	}
+
+	/**
+	 * Fetch only the projected attributes in all queries and scans (COUNT queries excluded)
+	 * 
+	 * @param projection null to fetch whole items
+	 * @return
+	 */
+	public OrdersDbUtils withProjection(final Projection projection) {
+		
+		this.projection = projection;
+		return this;
+	}
+	
+	/**
+	 * Run the Order queries with the low-level client and convert items using {@link OrderCodec}, 
+	 * instead of DynamoDBMapper's reflection based conversion (requires the c-tor with AmazonDynamoDB)
+	 * 
+	 * @param useOrderCodec
+	 * @return
+	 */
+	public OrdersDbUtils withOrderCodec(final boolean useOrderCodec) {
+		
+		if (useOrderCodec && dynamoDB == null) throw new IllegalStateException("Low-level DynamoDB client is not set");
+		
+		this.useOrderCodec = useOrderCodec;
+		return this;
+	}
+	
+	/**
+	 * @return copy of this object, with the same client, executor, limiter, budget, hedger, cache, projection and codec setting
+	 */
+	public OrdersDbUtils copy() {
+		
+		OrdersDbUtils copy = new OrdersDbUtils(dbMapper);
+		
+		copy.dynamoDB = dynamoDB;
+		copy.executor = executor;
+		copy.concurrencyLimiter = concurrencyLimiter;
+		copy.capacityBudget = capacityBudget;
+		copy.requestHedger = requestHedger;
+		copy.resultCache = resultCache;
+		copy.projection = projection;
+		copy.useOrderCodec = useOrderCodec;
+		
+		return copy;
+	}
+
+	/**
+	 * @return query executor of the parallel scans: the one set, otherwise the shared one
+	 */
+	private QueryExecutor queryExecutor() {
+		
+		return executor != null ? executor : BoundedQueryExecutor.shared();
+	}
+
+	/**
+	 * @return projection, or null if whole items are fetched
+	 */
+	public Projection getProjection() {
+		
+		return projection;
+	}
+	
+	/**
+	 * @param range
+	 * @return true if the order-date range query results can be cached
+	 */
+	public boolean isCacheable(final SortKeyRange range) {
+		
+		return resultCache != null && projection == null && resultCache.isCacheable(range);
+	}
+
+	/**
+	 * @return result cache, or null if not set
+	 */
+	public QueryResultCache<Order> getResultCache() {
+		
+		return resultCache;
+	}
+
+	/**
+	 * @return read capacity budget, or null if not set
+	 */
+	public ReadCapacityBudget getReadCapacityBudget() {
+		
+		return capacityBudget;
+	}
 		
 	/**
 	 * List all orders
@@ -74,10 +293,133 @@ public class OrdersDbUtils {
 	 */
 	public List<Order> listAllOrdersUsingParallelScan(String category, int segments) {
 
+		// segments are scanned page by page (instead of DynamoDBMapper.parallelScan), so the pages are paced and counted
+		List<Integer> segmentList = IntStream.range(0, segments).boxed().collect(Collectors.toList());
+		
+		return queryExecutor().invokeAllAndFlatten(segmentList, segment -> {
+			
+			List<Order> orders = new ArrayList<>();
+			scanOrdersSegment(category, segment, segments, page -> { orders.addAll(page); return true; });
+			return orders;
+			
+		}, segments);
+	}
+
+	/**
+	 * Count all Orders (optionally filtered by category) using COUNT-only parallel scan, per segment
+	 * 
+	 * @param category
+	 * @param segments
+	 * @return
+	 */
+	public PartitionCounts countAllOrdersUsingParallelScan(final String category, final int segments) {
+
+		List<Integer> segmentList = IntStream.range(0, segments).boxed().collect(Collectors.toList());
+		
+		List<CompletableFuture<Long>> futures = queryExecutor().submitAll(segmentList, 
+				segment -> countOrdersSegment(category, segment, segments), segments);
+		
+		return PartitionCounts.of(segmentList, futures.stream()
+				.map(CompletableFuture::join)
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Count Orders (optionally filtered by category) in a single segment, using COUNT-only scan 
+	 * (sums Count across the pages, no items are returned)
+	 * 
+	 * @param category
+	 * @param segment
+	 * @param totalSegments
+	 * @return
+	 */
+	public long countOrdersSegment(final String category, final int segment, final int totalSegments) {
+
 		DynamoDBMapperConfig mapperConfig = QueryUtils.getDefaultMapperConfig(Config.DDB_TABLE_NAME);
 
+		long count = 0;
+		Map<String,AttributeValue> lastEvaluatedKey = null;
+		SubQueryMetrics subQuery = startScanSubQuery(category, segment, totalSegments);
+		
+		try {
+			do {
+				
+				// expression per page: attempts of a hedged page request must not see the next start key
+				DynamoDBScanExpression scanExpr = createScanExpression(category, null)
+						.withSelect(Select.COUNT)
+						.withSegment(segment)
+						.withTotalSegments(totalSegments)
+						.withExclusiveStartKey(lastEvaluatedKey);
+				
+				ScanResultPage<Order> page = fetchPage(() -> dbMapper.scanPage(Order.class, scanExpr, mapperConfig), 
+														ScanResultPage::getConsumedCapacity);
+				count += page.getCount();
+				subQuery.page(page.getCount(), 0, capacityUnits(page.getConsumedCapacity()));
+				
+				lastEvaluatedKey = page.getLastEvaluatedKey();
+				
+			} while (lastEvaluatedKey != null);
+			
+		} finally {
+			subQuery.finish();
+		}
+		
+		return count;
+	}
+
+	/**
+	 * Scan single segment of the table page by page, optionally filtered by category
+	 * 
+	 * @param category
+	 * @param segment
+	 * @param totalSegments
+	 * @param pageHandler returns false to stop the scan
+	 */
+	public void scanOrdersSegment(final String category, final int segment, final int totalSegments, 
+									@NonNull final Predicate<List<Order>> pageHandler) {
+
+		DynamoDBMapperConfig mapperConfig = QueryUtils.getDefaultMapperConfig(Config.DDB_TABLE_NAME);
+
+		Map<String,AttributeValue> lastEvaluatedKey = null;
+		SubQueryMetrics subQuery = startScanSubQuery(category, segment, totalSegments);
+		
+		try {
+			do {
+				
+				// expression per page: attempts of a hedged page request must not see the next start key
+				DynamoDBScanExpression scanExpr = createScanExpression(category, projection)
+						.withSegment(segment)
+						.withTotalSegments(totalSegments)
+						.withExclusiveStartKey(lastEvaluatedKey);
+				
+				ScanResultPage<Order> page = fetchPage(() -> dbMapper.scanPage(Order.class, scanExpr, mapperConfig), 
+														ScanResultPage::getConsumedCapacity);
+				subQuery.unmarshalSinceResponse();
+				subQuery.page(page.getResults().size(), 0, capacityUnits(page.getConsumedCapacity()));
+				
+				if (!pageHandler.test(page.getResults())) return;
+				
+				lastEvaluatedKey = page.getLastEvaluatedKey();
+				
+			} while (lastEvaluatedKey != null);
+			
+		} finally {
+			subQuery.finish();
+		}
+	}
+
+	/**
+	 * Create scan expression, optionally filtered by category
+	 * 
+	 * @param category
+	 * @param projection null to fetch whole items
+	 * @return
+	 */
+	private static DynamoDBScanExpression createScanExpression(final String category, final Projection projection) {
+		
 		DynamoDBScanExpression scanExpr = new DynamoDBScanExpression();
-		scanExpr.withConsistentRead(false);
+		scanExpr.withConsistentRead(false)
+				.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
 
 		if (StringUtils.isNotEmpty(category)) {
 
@@ -91,10 +433,18 @@ public class OrdersDbUtils {
 			scanExpr.setExpressionAttributeValues(values);
 			scanExpr.setFilterExpression("#cat = :cat");
 		}
-
-		return dbMapper.parallelScan(Order.class, scanExpr, segments, mapperConfig);
+		
+		if (projection != null) {
+			
+			Map<String,String> names = scanExpr.getExpressionAttributeNames() == null ? new HashMap<>() : scanExpr.getExpressionAttributeNames();
+			
+			scanExpr.setProjectionExpression(projection.toExpression(names));
+			scanExpr.setExpressionAttributeNames(names);
+		}
+		
+		return scanExpr;
 	}
-
+	
 	/**
 	 * Retrieve the Order record by id
 	 * 
@@ -119,9 +469,53 @@ public class OrdersDbUtils {
 	 */
 	public List<Order> listOrdersByCategoryAndOrderDate(@NonNull final String category, final String orderDate) {
 
-		if (StringUtils.isEmpty(category)) return new ArrayList<>();
+		List<Order> orders = new ArrayList<>();
+		
+		queryOrdersByCategoryAndOrderDate(category, orderDate, page -> { orders.addAll(page); return true; });
+		
+		return orders;
+	}		
 
-		DynamoDBMapperConfig mapperConfig = QueryUtils.getDefaultMapperConfig(Config.DDB_TABLE_NAME);
+	/**
+	 * Query Orders by category and the order-date prefix, page by page
+	 * 
+	 * @param category
+	 * @param orderDate
+	 * @param pageHandler returns false to stop the query
+	 */
+	public void queryOrdersByCategoryAndOrderDate(@NonNull final String category, final String orderDate, 
+									@NonNull final Predicate<List<Order>> pageHandler) {
+
+		if (StringUtils.isEmpty(category)) return;
+
+		DynamoDBQueryExpression<Order> queryExpr = createCategoryAndOrderDateQuery(category, orderDate);
+		SortKeyRange range = StringUtils.isNotEmpty(orderDate) ? QueryUtils.orderDatePrefixToRange(orderDate) : null;
+		
+		queryPagesCached(category, range, pageHandler, handler -> queryPages(queryExpr, handler));
+	}		
+
+	/**
+	 * Count Orders by category and the order-date prefix, using COUNT-only query
+	 * 
+	 * @param category
+	 * @param orderDate
+	 * @return
+	 */
+	public long countOrdersByCategoryAndOrderDate(@NonNull final String category, final String orderDate) {
+
+		if (StringUtils.isEmpty(category)) return 0;
+
+		return countPages(createCategoryAndOrderDateQuery(category, orderDate));
+	}		
+
+	/**
+	 * Create query expression for the category and order-date prefix: "begins_with(#od, :od)"
+	 * 
+	 * @param category
+	 * @param orderDate
+	 * @return
+	 */
+	private DynamoDBQueryExpression<Order> createCategoryAndOrderDateQuery(final String category, final String orderDate) {
 
 		String indexName = null;
 		String keyCondExpr = null;
@@ -131,7 +525,7 @@ public class OrdersDbUtils {
 		names.put("#cat", "category");
 		values.put(":cat", new AttributeValue().withS(category.trim().toUpperCase()));
 		keyCondExpr = "#cat = :cat";
-		indexName = "category-order-date-index";
+		indexName = CATEGORY_ORDER_DATE_INDEX;
 
 		if (StringUtils.isNotEmpty(orderDate)) {
 
@@ -140,17 +534,383 @@ public class OrdersDbUtils {
 			keyCondExpr += " AND begins_with(#od, :od)";
 		}
 
-		DynamoDBQueryExpression<Order> queryExpr = new DynamoDBQueryExpression<Order>()
+		return new DynamoDBQueryExpression<Order>()
 				.withKeyConditionExpression(keyCondExpr)
 				.withIndexName(indexName)
 				.withExpressionAttributeNames(names)
 				.withExpressionAttributeValues(values)
 				.withScanIndexForward(false)
-				.withConsistentRead(false);
+				.withConsistentRead(false)
+				.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+	}
+
+	/**
+	 * Get the list of Orders by category and the inclusive order-date range
+	 * 
+	 * @param category
+	 * @param range
+	 * @return
+	 */
+	public List<Order> listOrdersByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range) {
+
+		List<Order> orders = new ArrayList<>();
+		
+		queryOrdersByCategoryAndOrderDateRange(category, range, page -> { orders.addAll(page); return true; });
+		
+		return orders;
+	}		
+
+	/**
+	 * Query Orders by category and the inclusive order-date range, page by page
+	 * 
+	 * @param category
+	 * @param range
+	 * @param pageHandler returns false to stop the query
+	 */
+	public void queryOrdersByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range, 
+									@NonNull final Predicate<List<Order>> pageHandler) {
+
+		if (StringUtils.isEmpty(category)) return;
+
+		queryPagesCached(category, range, pageHandler, 
+				handler -> queryPages(createCategoryAndOrderDateRangeQuery(category, range), handler));
+	}		
+
+	/**
+	 * Get Orders by category and the inclusive order-date range as the columnar batch, built directly from 
+	 * the DynamoDB attribute maps (no Order objects are created)
+	 * 
+	 * @param category
+	 * @param range
+	 * @return
+	 */
+	public OrderBatch listOrderBatchByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range) {
+
+		OrderBatch.Builder builder = OrderBatch.builder();
+		
+		queryItemsByCategoryAndOrderDateRange(category, range, page -> { page.forEach(builder::addItem); return true; });
+		
+		return builder.build();
+	}		
+
+	/**
+	 * Query items (raw attribute maps) by category and the inclusive order-date range, page by page, 
+	 * using the low-level client (requires the c-tor with AmazonDynamoDB)
+	 * 
+	 * @param category
+	 * @param range
+	 * @param pageHandler returns false to stop the query
+	 */
+	public void queryItemsByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range, 
+									@NonNull final Predicate<List<Map<String,AttributeValue>>> pageHandler) {
+
+		if (StringUtils.isEmpty(category)) return;
+
+		queryItems(createCategoryAndOrderDateRangeQuery(category, range), projection, pageHandler);
+	}		
+
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, by category and the inclusive order-date range; 
+	 * only the attributes needed by the aggregation are fetched, and no Orders are created 
+	 * (requires the c-tor with AmazonDynamoDB)
+	 * 
+	 * @param category
+	 * @param range
+	 * @param groupBy
+	 * @return
+	 */
+	public OrderAggregate aggregateByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range, 
+									@NonNull final OrderAggregate.GroupBy groupBy) {
+
+		OrderAggregate aggregate = new OrderAggregate(groupBy);
+		
+		if (StringUtils.isEmpty(category)) return aggregate;
+		
+		queryItems(createCategoryAndOrderDateRangeQuery(category, range), groupBy.getProjection(), 
+				page -> { page.forEach(aggregate::addItem); return true; });
+		
+		return aggregate;
+	}
+
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, by category and a query-slot attribute value 
+	 * (requires the c-tor with AmazonDynamoDB)
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param groupBy
+	 * @return
+	 */
+	public OrderAggregate aggregateByCategoryAndQuerySlot(@NonNull final String category, final int querySlot, 
+									@NonNull final OrderAggregate.GroupBy groupBy) {
+
+		return aggregateByCategoryAndQuerySlot(category, querySlot, 64, groupBy);
+	}
+
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, by category and a query-slot attribute value 
+	 * (requires the c-tor with AmazonDynamoDB)
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @param groupBy
+	 * @return
+	 */
+	public OrderAggregate aggregateByCategoryAndQuerySlot(@NonNull final String category, final int querySlot, final int querySlots, 
+									@NonNull final OrderAggregate.GroupBy groupBy) {
+
+		OrderAggregate aggregate = new OrderAggregate(groupBy);
+		
+		if (StringUtils.isEmpty(category)) return aggregate;
+		if (querySlot < 0 || querySlot >= querySlots) return aggregate;
+		
+		queryItems(createCategoryAndQuerySlotQuery(category, querySlot, querySlots), groupBy.getProjection(), 
+				page -> { page.forEach(aggregate::addItem); return true; });
+		
+		return aggregate;
+	}
+
+	/**
+	 * Execute the query with the low-level client, one page of raw items at a time
+	 * 
+	 * @param queryExpr
+	 * @param projection null to fetch whole items
+	 * @param pageHandler returns false to stop the query
+	 */
+	private void queryItems(final DynamoDBQueryExpression<Order> queryExpr, final Projection projection, 
+									final Predicate<List<Map<String,AttributeValue>>> pageHandler) {
+
+		queryItems(queryExpr, projection, null, (page, lastEvaluatedKey) -> pageHandler.test(page));
+	}		
+
+	/**
+	 * Execute the query with the low-level client, one page of raw items at a time, starting at the given key
+	 * 
+	 * @param queryExpr
+	 * @param projection null to fetch whole items
+	 * @param exclusiveStartKey
+	 * @param pageHandler gets the page and its last evaluated key; returns false to stop the query
+	 */
+	private void queryItems(final DynamoDBQueryExpression<Order> queryExpr, final Projection projection, 
+									final Map<String,AttributeValue> exclusiveStartKey, 
+									final BiPredicate<List<Map<String,AttributeValue>>, Map<String,AttributeValue>> pageHandler) {
+
+		if (dynamoDB == null) throw new IllegalStateException("Low-level DynamoDB client is not set");
+
+		applyProjection(queryExpr, projection);
+		
+		QueryRequest request = new QueryRequest()
+				.withTableName(Config.DDB_TABLE_NAME)
+				.withIndexName(queryExpr.getIndexName())
+				.withKeyConditionExpression(queryExpr.getKeyConditionExpression())
+				.withProjectionExpression(queryExpr.getProjectionExpression())
+				.withExpressionAttributeNames(queryExpr.getExpressionAttributeNames())
+				.withExpressionAttributeValues(queryExpr.getExpressionAttributeValues())
+				.withScanIndexForward(false)
+				.withConsistentRead(false)
+				.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+		
+		Map<String,AttributeValue> lastEvaluatedKey = exclusiveStartKey;
+		SubQueryMetrics subQuery = startSubQuery(queryExpr);
+		
+		try {
+			do {
+				
+				// request per page: attempts of a hedged page request must not see the next start key
+				QueryRequest pageRequest = request.clone().withExclusiveStartKey(lastEvaluatedKey);
+				
+				QueryResult page = fetchPage(() -> dynamoDB.query(pageRequest), QueryResult::getConsumedCapacity);
+				lastEvaluatedKey = page.getLastEvaluatedKey();
+				subQuery.page(page.getItems().size(), 0, capacityUnits(page.getConsumedCapacity()));
+				
+				if (!pageHandler.test(page.getItems(), lastEvaluatedKey)) return;
+				
+			} while (lastEvaluatedKey != null);
+			
+		} finally {
+			subQuery.finish();
+		}
+	}		
+
+	/**
+	 * Serve the order-date query from the result cache if cached, otherwise run the query and cache 
+	 * its result (only if all the pages were read, and the range is cacheable)
+	 * 
+	 * @param category
+	 * @param range null if the query is not limited to a range of dates
+	 * @param pageHandler
+	 * @param query runs the query with the given page handler
+	 */
+	private void queryPagesCached(final String category, final SortKeyRange range, final Predicate<List<Order>> pageHandler, 
+									final Consumer<Predicate<List<Order>>> query) {
+		
+		if (!isCacheable(range)) {
+			
+			query.accept(pageHandler);
+			return;
+		}
+		
+		List<Order> cached = getCachedOrdersByCategoryAndOrderDateRange(category, range);
+		
+		if (cached != null) {
+			
+			pageHandler.test(cached);
+			return;
+		}
+		
+		List<Order> orders = new ArrayList<>();
+		boolean[] complete = { true };
+		
+		query.accept(page -> {
+			
+			// don't collect more than the cache can hold
+			if (orders.size() + page.size() <= resultCache.getMaxWeight()) orders.addAll(page);
+			else complete[0] = false;
+			
+			if (pageHandler.test(page)) return true;
+			
+			complete[0] = false;
+			return false;
+		});
+		
+		if (complete[0]) cacheOrdersByCategoryAndOrderDateRange(category, range, orders);
+	}
+	
+	/**
+	 * Get the cached Orders by category and the inclusive order-date range
+	 * 
+	 * @param category
+	 * @param range
+	 * @return copy of the cached Orders list, or null if not cached (or the cache is not set)
+	 */
+	public List<Order> getCachedOrdersByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range) {
+		
+		if (resultCache == null || projection != null) return null;
+		
+		List<Order> cached = resultCache.get(new QueryResultCache.Key(CATEGORY_ORDER_DATE_INDEX, category.trim().toUpperCase(), range));
+		
+		return cached == null ? null : new ArrayList<>(cached);
+	}
+	
+	/**
+	 * Cache all Orders of the category and the inclusive order-date range (if the cache is set, and the range is cacheable)
+	 * 
+	 * @param category
+	 * @param range
+	 * @param orders
+	 */
+	public void cacheOrdersByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range, 
+									@NonNull final List<Order> orders) {
+		
+		if (resultCache == null || projection != null) return;
+		
+		resultCache.put(new QueryResultCache.Key(CATEGORY_ORDER_DATE_INDEX, category.trim().toUpperCase(), range), orders);
+	}
+
+	/**
+	 * Query Orders by category and the inclusive order-date range, page by page, starting at the given key; 
+	 * the page handler also gets the last evaluated key of the page (null for the last page), so the caller 
+	 * can stop and resume the query, or split the remaining range
+	 * 
+	 * @param category
+	 * @param range
+	 * @param exclusiveStartKey null to start from the beginning of the range
+	 * @param pageHandler returns false to stop the query
+	 */
+	public void queryOrdersByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range, 
+									final Map<String,AttributeValue> exclusiveStartKey, 
+									@NonNull final BiPredicate<List<Order>, Map<String,AttributeValue>> pageHandler) {
 
-		return this.dbMapper.query(Order.class, queryExpr, mapperConfig);
+		if (StringUtils.isEmpty(category)) return;
+
+		queryPages(createCategoryAndOrderDateRangeQuery(category, range), exclusiveStartKey, pageHandler);
 	}		
 
+	/**
+	 * Count Orders by category and the inclusive order-date range, using COUNT-only query 
+	 * (items are not returned nor unmarshalled, however the read capacity is still consumed)
+	 * 
+	 * The pages are counted one by one (same as DynamoDBMapper.count does), so they are paced and 
+	 * charged to the read capacity budget.
+	 * 
+	 * @param category
+	 * @param range
+	 * @return
+	 */
+	public long countOrdersByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range) {
+
+		if (StringUtils.isEmpty(category)) return 0;
+
+		return countPages(createCategoryAndOrderDateRangeQuery(category, range));
+	}		
+
+	/**
+	 * Execute the query with Select.COUNT, summing Count across the pages (no items are returned, 
+	 * but the consumed capacity is the same as reading the items)
+	 * 
+	 * @param queryExpr
+	 * @return
+	 */
+	private long countPages(final DynamoDBQueryExpression<Order> queryExpr) {
+
+		DynamoDBMapperConfig mapperConfig = QueryUtils.getDefaultMapperConfig(Config.DDB_TABLE_NAME);
+
+		queryExpr.setSelect(Select.COUNT);
+		
+		long count = 0;
+		Map<String,AttributeValue> lastEvaluatedKey = null;
+		SubQueryMetrics subQuery = startSubQuery(queryExpr);
+		
+		try {
+			do {
+				
+				DynamoDBQueryExpression<Order> pageExpr = pageQuery(queryExpr, lastEvaluatedKey);
+				
+				QueryResultPage<Order> page = fetchPage(() -> this.dbMapper.queryPage(Order.class, pageExpr, mapperConfig), 
+														QueryResultPage::getConsumedCapacity);
+				count += page.getCount();
+				subQuery.page(page.getCount(), 0, capacityUnits(page.getConsumedCapacity()));
+				
+				lastEvaluatedKey = page.getLastEvaluatedKey();
+				
+			} while (lastEvaluatedKey != null);
+			
+		} finally {
+			subQuery.finish();
+		}
+		
+		return count;
+	}		
+
+	/**
+	 * Create query expression for the category and order-date range: "BETWEEN :from AND :to"
+	 * 
+	 * @param category
+	 * @param range
+	 * @return
+	 */
+	private DynamoDBQueryExpression<Order> createCategoryAndOrderDateRangeQuery(final String category, final SortKeyRange range) {
+
+		Map<String,String> names = new HashMap<>();
+		Map<String,AttributeValue> values = new HashMap<>();
+
+		names.put("#cat", "category");
+		names.put("#od", "order-date");
+		values.put(":cat", new AttributeValue().withS(category.trim().toUpperCase()));
+		values.put(":from", new AttributeValue().withS(range.getFrom()));
+		values.put(":to", new AttributeValue().withS(range.getTo()));
+
+		return new DynamoDBQueryExpression<Order>()
+				.withKeyConditionExpression("#cat = :cat AND #od BETWEEN :from AND :to")
+				.withIndexName(CATEGORY_ORDER_DATE_INDEX)
+				.withExpressionAttributeNames(names)
+				.withExpressionAttributeValues(values)
+				.withScanIndexForward(false)
+				.withConsistentRead(false)
+				.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+	}
+
 	/**
 	 * Get the list of Orders by category and a query-slot attribute value
 	 * 
@@ -160,11 +920,83 @@ public class OrdersDbUtils {
 	 */
 	public List<Order> listOrdersByCategoryAndQuerySlot(String category, int querySlot) {
 
-		if (StringUtils.isEmpty(category)) return new ArrayList<>();
-		if (querySlot < 0 || querySlot >= 64) return new ArrayList<>();
+		return listOrdersByCategoryAndQuerySlot(category, querySlot, 64);
+	}		
 
-		DynamoDBMapperConfig mapperConfig = QueryUtils.getDefaultMapperConfig(Config.DDB_TABLE_NAME);
+	/**
+	 * Get the list of Orders by category and a query-slot attribute value
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @return
+	 */
+	public List<Order> listOrdersByCategoryAndQuerySlot(final String category, final int querySlot, final int querySlots) {
+
+		List<Order> orders = new ArrayList<>();
+		
+		queryOrdersByCategoryAndQuerySlot(category, querySlot, querySlots, page -> { orders.addAll(page); return true; });
+		
+		return orders;
+	}		
+
+	/**
+	 * Query Orders by category and a query-slot attribute value, page by page
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param pageHandler returns false to stop the query
+	 */
+	public void queryOrdersByCategoryAndQuerySlot(final String category, final int querySlot, 
+									@NonNull final Predicate<List<Order>> pageHandler) {
+
+		queryOrdersByCategoryAndQuerySlot(category, querySlot, 64, pageHandler);
+	}		
+
+	/**
+	 * Query Orders by category and a query-slot attribute value, page by page
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @param pageHandler returns false to stop the query
+	 */
+	public void queryOrdersByCategoryAndQuerySlot(final String category, final int querySlot, final int querySlots, 
+									@NonNull final Predicate<List<Order>> pageHandler) {
 
+		if (StringUtils.isEmpty(category)) return;
+		if (querySlot < 0 || querySlot >= querySlots) return;
+
+		queryPages(createCategoryAndQuerySlotQuery(category, querySlot, querySlots), pageHandler);
+	}		
+
+	/**
+	 * Count Orders by category and a query-slot attribute value, using COUNT-only query
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @return
+	 */
+	public long countOrdersByCategoryAndQuerySlot(final String category, final int querySlot, final int querySlots) {
+
+		if (StringUtils.isEmpty(category)) return 0;
+		if (querySlot < 0 || querySlot >= querySlots) return 0;
+
+		return countPages(createCategoryAndQuerySlotQuery(category, querySlot, querySlots));
+	}		
+	
+	/**
+	 * Create query for the category and query-slot value
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @return
+	 */
+	private DynamoDBQueryExpression<Order> createCategoryAndQuerySlotQuery(final String category, final int querySlot, final int querySlots) {
+		
+		String querySlotAttribute = QueryUtils.querySlotAttribute(querySlots);
 		String indexName = null;
 		String keyCondExpr = null;
 		Map<String,String> names = new HashMap<>();
@@ -173,20 +1005,257 @@ public class OrdersDbUtils {
 		names.put("#cat", "category");
 		values.put(":cat", new AttributeValue().withS(category.trim().toUpperCase()));
 		keyCondExpr = "#cat = :cat";
-		indexName = "category-query-slot-mod64-index";
+		indexName = "category-" + querySlotAttribute + "-index";
 
-		names.put("#qs", "query-slot-mod64");
+		names.put("#qs", querySlotAttribute);
 		values.put(":qs", new AttributeValue().withN(String.valueOf(querySlot)));
 		keyCondExpr += " AND #qs = :qs";
 
-		DynamoDBQueryExpression<Order> queryExpr = new DynamoDBQueryExpression<Order>()
+		return new DynamoDBQueryExpression<Order>()
 				.withKeyConditionExpression(keyCondExpr)
 				.withIndexName(indexName)
 				.withExpressionAttributeNames(names)
 				.withExpressionAttributeValues(values)
 				.withScanIndexForward(false)
-				.withConsistentRead(false);
+				.withConsistentRead(false)
+				.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+	}
+	
+	/**
+	 * Execute the query one page at a time (instead of DynamoDBMapper's eager loading of all pages)
+	 * 
+	 * @param queryExpr
+	 * @param pageHandler returns false to stop the query
+	 */
+	private void queryPages(final DynamoDBQueryExpression<Order> queryExpr, final Predicate<List<Order>> pageHandler) {
+		
+		queryPages(queryExpr, null, (page, lastEvaluatedKey) -> pageHandler.test(page));
+	}
 
-		return this.dbMapper.query(Order.class, queryExpr, mapperConfig);
-	}		
-}
\ No newline at end of file
+	/**
+	 * Execute the query one page at a time, starting at the given key
+	 * 
+	 * @param queryExpr
+	 * @param exclusiveStartKey
+	 * @param pageHandler gets the page and its last evaluated key; returns false to stop the query
+	 */
+	private void queryPages(final DynamoDBQueryExpression<Order> queryExpr, final Map<String,AttributeValue> exclusiveStartKey, 
+							final BiPredicate<List<Order>, Map<String,AttributeValue>> pageHandler) {
+		
+		if (useOrderCodec) {
+			
+			queryItems(queryExpr, projection, exclusiveStartKey, 
+					(page, lastEvaluatedKey) -> pageHandler.test(fromItems(page), lastEvaluatedKey));
+			return;
+		}
+		
+		DynamoDBMapperConfig mapperConfig = QueryUtils.getDefaultMapperConfig(Config.DDB_TABLE_NAME);
+		applyProjection(queryExpr);
+
+		Map<String,AttributeValue> lastEvaluatedKey = exclusiveStartKey;
+		SubQueryMetrics subQuery = startSubQuery(queryExpr);
+		
+		try {
+			do {
+				
+				DynamoDBQueryExpression<Order> pageExpr = pageQuery(queryExpr, lastEvaluatedKey);
+				
+				QueryResultPage<Order> page = fetchPage(() -> this.dbMapper.queryPage(Order.class, pageExpr, mapperConfig), 
+														QueryResultPage::getConsumedCapacity);
+				lastEvaluatedKey = page.getLastEvaluatedKey();
+				subQuery.unmarshalSinceResponse();
+				subQuery.page(page.getResults().size(), 0, capacityUnits(page.getConsumedCapacity()));
+				
+				if (!pageHandler.test(page.getResults(), lastEvaluatedKey)) return;
+				
+			} while (lastEvaluatedKey != null);
+			
+		} finally {
+			subQuery.finish();
+		}
+	}
+	
+	/**
+	 * Convert the page items using {@link OrderCodec}, counted as the unmarshal time of the running sub-query
+	 * 
+	 * @param items
+	 * @return
+	 */
+	private static List<Order> fromItems(final List<Map<String,AttributeValue>> items) {
+		
+		long start = System.nanoTime();
+		List<Order> orders = OrderCodec.fromItems(items);
+		
+		SubQueryMetrics.current().unmarshal(System.nanoTime() - start);
+		return orders;
+	}
+	
+	/**
+	 * Start the metrics of the query (if a query is measured on this thread, or traced): index, category and the sort key condition
+	 * 
+	 * @param queryExpr
+	 * @return
+	 */
+	private static SubQueryMetrics startSubQuery(final DynamoDBQueryExpression<Order> queryExpr) {
+		
+		if (!QueryMetrics.isRecording()) return SubQueryMetrics.NONE;
+		
+		Map<String,AttributeValue> values = queryExpr.getExpressionAttributeValues();
+		String sortKeyCondition = null;
+		
+		if (values.containsKey(":od")) sortKeyCondition = "begins_with " + values.get(":od").getS();
+		else if (values.containsKey(":from")) sortKeyCondition = values.get(":from").getS() + ".." + values.get(":to").getS();
+		else if (values.containsKey(":qs")) sortKeyCondition = "slot " + values.get(":qs").getN();
+		
+		return QueryMetrics.startSubQuery(queryExpr.getIndexName(), values.containsKey(":cat") ? values.get(":cat").getS() : null, sortKeyCondition);
+	}
+	
+	/**
+	 * Start the metrics of the scan segment (if a query is measured on this thread, or traced)
+	 * 
+	 * @param category
+	 * @param segment
+	 * @param totalSegments
+	 * @return
+	 */
+	private static SubQueryMetrics startScanSubQuery(final String category, final int segment, final int totalSegments) {
+		
+		if (!QueryMetrics.isRecording()) return SubQueryMetrics.NONE;
+		
+		return QueryMetrics.startSubQuery(Config.DDB_TABLE_NAME, category, "segment " + segment + "/" + totalSegments);
+	}
+
+	/**
+	 * Set the projection expression (and its attribute name placeholders) on the query, if the projection is set
+	 * 
+	 * @param queryExpr
+	 */
+	private void applyProjection(final DynamoDBQueryExpression<Order> queryExpr) {
+		
+		applyProjection(queryExpr, projection);
+	}
+
+	/**
+	 * Set the projection expression (and its attribute name placeholders) on the query
+	 * 
+	 * @param queryExpr
+	 * @param projection null to fetch whole items
+	 */
+	private static void applyProjection(final DynamoDBQueryExpression<Order> queryExpr, final Projection projection) {
+		
+		if (projection == null) return;
+		
+		Map<String,String> names = queryExpr.getExpressionAttributeNames() == null ? new HashMap<>() 
+				: new HashMap<>(queryExpr.getExpressionAttributeNames());
+		
+		queryExpr.setProjectionExpression(projection.toExpression(names));
+		queryExpr.setExpressionAttributeNames(names);
+	}
+	
+	/**
+	 * Copy of the query for a single page, from the start key: the attempts of a hedged page request can still 
+	 * be running when the next page is requested, so they must not share the (mutable) query expression
+	 * 
+	 * @param queryExpr
+	 * @param exclusiveStartKey
+	 * @return
+	 */
+	private static DynamoDBQueryExpression<Order> pageQuery(final DynamoDBQueryExpression<Order> queryExpr, 
+									final Map<String,AttributeValue> exclusiveStartKey) {
+		
+		DynamoDBQueryExpression<Order> pageExpr = new DynamoDBQueryExpression<Order>()
+				.withIndexName(queryExpr.getIndexName())
+				.withKeyConditionExpression(queryExpr.getKeyConditionExpression())
+				.withFilterExpression(queryExpr.getFilterExpression())
+				.withProjectionExpression(queryExpr.getProjectionExpression())
+				.withExpressionAttributeNames(queryExpr.getExpressionAttributeNames())
+				.withExpressionAttributeValues(queryExpr.getExpressionAttributeValues())
+				.withScanIndexForward(queryExpr.isScanIndexForward())
+				.withConsistentRead(queryExpr.isConsistentRead())
+				.withLimit(queryExpr.getLimit())
+				.withExclusiveStartKey(exclusiveStartKey);
+		
+		pageExpr.setSelect(queryExpr.getSelect());
+		pageExpr.setReturnConsumedCapacity(queryExpr.getReturnConsumedCapacity());
+		
+		return pageExpr;
+	}
+	
+	/**
+	 * Fetch single page, hedged if the hedger is set
+	 * 
+	 * @param <R>
+	 * @param pageRequest
+	 * @param consumedCapacity consumed capacity of the fetched page
+	 * @return
+	 */
+	private <R> R fetchPage(final Supplier<R> pageRequest, final Function<R, ConsumedCapacity> consumedCapacity) {
+		
+		SubQueryMetrics.current().pageRequested();
+		
+		if (requestHedger == null) return fetchPageAttempt(pageRequest, consumedCapacity);
+		
+		// the duplicate attempt (if any) runs on a hedge thread, with the sub-query of this thread
+		return requestHedger.execute(SubQueryMetrics.propagate(() -> fetchPageAttempt(pageRequest, consumedCapacity)));
+	}
+	
+	/**
+	 * Single attempt to fetch the page, paced by the read capacity budget and within the concurrency limit (if set)
+	 * 
+	 * @param <R>
+	 * @param pageRequest
+	 * @param consumedCapacity consumed capacity of the fetched page
+	 * @return
+	 */
+	private <R> R fetchPageAttempt(final Supplier<R> pageRequest, final Function<R, ConsumedCapacity> consumedCapacity) {
+		
+		double reserved = capacityBudget == null ? 0 : capacityBudget.reserve();
+		Supplier<R> tracedRequest = throttled(pageRequest);
+		R page = null;
+		
+		try {
+			
+			page = concurrencyLimiter == null ? tracedRequest.get() : concurrencyLimiter.execute(tracedRequest, Utils::isThrottling);
+			return page;
+			
+		} finally {
+			
+			if (capacityBudget != null) capacityBudget.settle(reserved, page == null ? 0 : capacityUnits(consumedCapacity.apply(page)));
+		}
+	}
+	
+	/**
+	 * Note the throttling errors of the page request attempts in the sub-query running on this thread (if any)
+	 * 
+	 * @param <R>
+	 * @param pageRequest
+	 * @return
+	 */
+	private static <R> Supplier<R> throttled(final Supplier<R> pageRequest) {
+		
+		SubQueryMetrics subQuery = SubQueryMetrics.current();
+		if (!subQuery.isRecording()) return pageRequest;
+		
+		return () -> {
+			
+			try {
+				return pageRequest.get();
+			} catch (RuntimeException e) {
+				
+				if (Utils.isThrottling(e)) subQuery.throttled(e);
+				throw e;
+			}
+		};
+	}
+	
+	/**
+	 * @param consumedCapacity
+	 * @return capacity units, zero if not returned
+	 */
+	private static double capacityUnits(final ConsumedCapacity consumedCapacity) {
+		
+		if (consumedCapacity == null || consumedCapacity.getCapacityUnits() == null) return 0;
+		
+		return consumedCapacity.getCapacityUnits();
+	}
+}
@@ -21,6 +21,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
@@ -29,7 +32,14 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 
 import lombok.NonNull;
 import software.amazon.samples.ddb.parallel.queries.Config;
+import software.amazon.samples.ddb.parallel.queries.PartitionPlanner;
+import software.amazon.samples.ddb.parallel.queries.Projection;
+import software.amazon.samples.ddb.parallel.queries.QueryExecutor;
+import software.amazon.samples.ddb.parallel.queries.QueryMetrics;
+import software.amazon.samples.ddb.parallel.queries.QueryPlan;
 import software.amazon.samples.ddb.parallel.queries.QueryUtils;
+import software.amazon.samples.ddb.parallel.queries.SortKeyRange;
+import software.amazon.samples.ddb.parallel.queries.jfr.ResultsMergedEvent;
 
 /**
  * AWS Blog post: Query Orders using parallel streams
@@ -41,17 +51,113 @@ public class ParallelStreamQuery {
 
 	private DynamoDBMapper dbMapper = null;
 	private OrdersDbUtils ordersDbUtils = null;
+	private PartitionPlanner planner = null;
+	private QueryExecutor executor = null;
+	private int maxQueryConcurrency = Config.QUERY_MAX_CONCURRENCY;
+	private int splitAfterPages = Config.SPLIT_AFTER_PAGES;
 
 	/**
-	 * C-tor
+	 * C-tor, sub-queries run on the common ForkJoinPool (parallel streams)
 	 * 
 	 * @param dbMapper
 	 */
 	public ParallelStreamQuery(@NonNull final DynamoDBMapper dbMapper) {
 			
+		this(new OrdersDbUtils(dbMapper));
+		
 		this.dbMapper = dbMapper;
+	}
+
+	/**
+	 * C-tor, using already configured OrdersDbUtils (for example with the concurrency limiter); 
+	 * sub-queries run on the common ForkJoinPool
+	 * 
+	 * @param ordersDbUtils
+	 */
+	public ParallelStreamQuery(@NonNull final OrdersDbUtils ordersDbUtils) {
+		
+		this.ordersDbUtils = ordersDbUtils;
+		this.planner = new PartitionPlanner(ordersDbUtils::countOrdersByCategoryAndOrderDateRange);
+	}
+
+	/**
+	 * C-tor, sub-queries run on the given (shared) query executor instead of the common ForkJoinPool
+	 * 
+	 * @param dbMapper
+	 * @param executor
+	 */
+	public ParallelStreamQuery(@NonNull final DynamoDBMapper dbMapper, @NonNull final QueryExecutor executor) {
+			
+		this(dbMapper);
 		
-		this.ordersDbUtils = new OrdersDbUtils(this.dbMapper);
+		this.executor = executor;
+	}
+
+	/**
+	 * C-tor, sub-queries run on the given query executor, at most maxQueryConcurrency per fan-out call
+	 * 
+	 * @param dbMapper
+	 * @param executor
+	 * @param maxQueryConcurrency
+	 */
+	public ParallelStreamQuery(@NonNull final DynamoDBMapper dbMapper, @NonNull final QueryExecutor executor, final int maxQueryConcurrency) {
+			
+		this(dbMapper, executor);
+		
+		this.maxQueryConcurrency = maxQueryConcurrency;
+	}
+
+	/**
+	 * C-tor, using already configured OrdersDbUtils; sub-queries run on the given query executor
+	 * 
+	 * @param ordersDbUtils
+	 * @param executor
+	 * @param maxQueryConcurrency
+	 */
+	public ParallelStreamQuery(@NonNull final OrdersDbUtils ordersDbUtils, @NonNull final QueryExecutor executor, final int maxQueryConcurrency) {
+			
+		this(ordersDbUtils);
+		
+		this.executor = executor;
+		this.maxQueryConcurrency = maxQueryConcurrency;
+	}
+	
+	/**
+	 * Same fan-out queries, fetching only the projected attributes (returned Orders are partially populated)
+	 * 
+	 * @param projection
+	 * @return new query object; this one is not changed
+	 */
+	public ParallelStreamQuery withProjection(final Projection projection) {
+		
+		ParallelStreamQuery query = new ParallelStreamQuery(ordersDbUtils.copy().withProjection(projection));
+		
+		query.dbMapper = dbMapper;
+		query.executor = executor;
+		query.maxQueryConcurrency = maxQueryConcurrency;
+		query.splitAfterPages = splitAfterPages;
+		
+		return query;
+	}
+	
+	/**
+	 * Same fan-out queries, with the order-date prefix sub-queries split on the fly (see {@link WorkSplittingQuery})
+	 * 
+	 * @param splitAfterPages sub-query still paginating after this many pages is split, zero: never
+	 * @return new query object; this one is not changed
+	 */
+	public ParallelStreamQuery withWorkSplitting(final int splitAfterPages) {
+		
+		if (splitAfterPages < 0) throw new IllegalArgumentException("splitAfterPages must not be negative");
+		
+		ParallelStreamQuery query = new ParallelStreamQuery(ordersDbUtils);
+		
+		query.dbMapper = dbMapper;
+		query.executor = executor;
+		query.maxQueryConcurrency = maxQueryConcurrency;
+		query.splitAfterPages = splitAfterPages;
+		
+		return query;
 	}
 	
 	/**
@@ -96,9 +202,52 @@ public class ParallelStreamQuery {
 								QueryUtils.generateDailyOrdersDatePrefixes(Config.YEAR));
 	}
 	
+	/**
+	 * Get list of orders by Category, using Java 8+ parallel streams and balanced order-date ranges 
+	 * created by the partition planner (based on COUNT queries per month)
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public List<Order> getOrdersByCategoryAndPlannedDatesUsingParallelStream(final String category) {
+
+		if (StringUtils.isEmpty(category)) return null;
+
+		return getOrdersByCategoryAndPlannedDatesUsingParallelStream(category, planner.plan(category, Config.YEAR));
+	}
+
+	/**
+	 * Get list of orders by Category, using Java 8+ parallel streams and previously created query plan 
+	 * (plan can be reused as long as the data distribution doesn't change significantly)
+	 * 
+	 * @param category
+	 * @param plan
+	 * @return
+	 */
+	public List<Order> getOrdersByCategoryAndPlannedDatesUsingParallelStream(final String category, @NonNull final QueryPlan plan) {
+
+		if (StringUtils.isEmpty(category)) return null;
+
+		return executeSubQueries(plan.getRanges(), x -> ordersDbUtils.listOrdersByCategoryAndOrderDateRange(category, x));
+	}
+
+	/**
+	 * Create the query plan for the category, for the configured year
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public QueryPlan createQueryPlan(final String category) {
+		
+		return planner.plan(category, Config.YEAR);
+	}
+	
 	/**
 	 * Call parallel stream to execute all sub-queries (uses Common Fork Join Pool)
 	 * 
+	 * With work splitting on (see {@link #withWorkSplitting(int)}), oversized sub-queries are split on the fly, 
+	 * and the new sub-queries are picked up by idle workers (see {@link WorkSplittingQuery}).
+	 * 
 	 * @param category
 	 * @param orderDatePrefixList
 	 * @return
@@ -107,14 +256,35 @@ public class ParallelStreamQuery {
 
 		if (StringUtils.isEmpty(category)) return null;
 		
-		List<Order> orders = orderDatePrefixList.parallelStream()
-				.map(x -> ordersDbUtils.listOrdersByCategoryAndOrderDate(category, x))
-				.flatMap(Collection::stream) // flatten results into a single stream of Orders
-				.unordered() // do not insist to preserve input order (might be faster)
-				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
-
+		if (splitAfterPages <= 0) {
+			
+			return executeSubQueries(orderDatePrefixList, x -> ordersDbUtils.listOrdersByCategoryAndOrderDate(category, x));
+		}
+		
+		List<SortKeyRange> ranges = orderDatePrefixList.stream()
+				.map(QueryUtils::orderDatePrefixToRange)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+		
+		ResultsMergedEvent event = ResultsMergedEvent.begin("ParallelStreamQuery work splitting", ranges.size());
+		List<Order> orders = workSplittingQuery().listOrdersByCategoryAndOrderDateRanges(category, ranges);
+		
+		event.merged(orders.size());
 		return orders;
 	}
+	
+	/**
+	 * Work splitting query, running on the query executor if one is set (at most maxQueryConcurrency sub-queries 
+	 * of the call at once, including the split ones), otherwise on the common ForkJoinPool
+	 * 
+	 * @return
+	 */
+	private WorkSplittingQuery workSplittingQuery() {
+		
+		if (executor == null) return new WorkSplittingQuery(ordersDbUtils, ForkJoinPool.commonPool(), splitAfterPages);
+		
+		return new WorkSplittingQuery(ordersDbUtils, executor.window(maxQueryConcurrency), splitAfterPages);
+	}
 
 	/**
 	 * Get list of orders by Category, using Java 8 parallel streams and the Query Slot 64
@@ -126,7 +296,7 @@ public class ParallelStreamQuery {
 
 		if (StringUtils.isEmpty(category)) return null;
 
-		return queriesUsingQuerySlotsAndParallelStream(category, QueryUtils.create64QuerySlotsList());
+		return queriesUsingQuerySlotsAndParallelStream(category, QueryUtils.create64QuerySlotsList(), 64);
 	}
 	
 	/**
@@ -139,7 +309,7 @@ public class ParallelStreamQuery {
 
 		if (StringUtils.isEmpty(category)) return null;
 
-		return queriesUsingQuerySlotsAndParallelStream(category, QueryUtils.create128QuerySlotsList());
+		return queriesUsingQuerySlotsAndParallelStream(category, QueryUtils.create128QuerySlotsList(), 128);
 	}
 	
 	/**
@@ -147,16 +317,43 @@ public class ParallelStreamQuery {
 	 * 
 	 * @param category
 	 * @param querySlotValuesList
+	 * @param querySlots number of query slots: 64 or 128
+	 * @return
+	 */
+	private List<Order> queriesUsingQuerySlotsAndParallelStream(final String category, final List<Integer> querySlotValuesList, final int querySlots) {
+		
+		return executeSubQueries(querySlotValuesList, x -> ordersDbUtils.listOrdersByCategoryAndQuerySlot(category, x, querySlots));
+	}
+	
+	/**
+	 * Execute sub-queries using parallel stream (common ForkJoinPool), or using the query executor if one is set
+	 * 
+	 * @param <T>
+	 * @param inputs
+	 * @param subQuery
 	 * @return
 	 */
-	private List<Order> queriesUsingQuerySlotsAndParallelStream(final String category, final List<Integer> querySlotValuesList) {
+	private <T> List<Order> executeSubQueries(final List<T> inputs, final Function<T, List<Order>> subQuery) {
+		
+		if (executor != null) {
+			
+			ResultsMergedEvent event = ResultsMergedEvent.begin("ParallelStreamQuery query executor", inputs.size());
+			List<Order> orders = Collections.synchronizedList(new ArrayList<>());
+			orders.addAll(executor.invokeAllAndFlatten(inputs, subQuery, maxQueryConcurrency));
+			
+			event.merged(orders.size());
+			return orders;
+		}
+		
+		ResultsMergedEvent event = ResultsMergedEvent.begin("ParallelStreamQuery parallel stream", inputs.size());
 		
-		List<Order> orders = querySlotValuesList.parallelStream()
-				.map(x -> ordersDbUtils.listOrdersByCategoryAndQuerySlot(category, x))
+		List<Order> orders = inputs.parallelStream()
+				.map(QueryMetrics.propagate(subQuery)) // the measured query (if any) follows the sub-queries to the pool threads
 				.flatMap(Collection::stream) // flatten results into a single stream of Orders
 				.unordered() // do not insist to preserve input order (might be faster)
 				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
 		
+		event.merged(orders.size());
 		return orders;
 	}
 }
\ No newline at end of file
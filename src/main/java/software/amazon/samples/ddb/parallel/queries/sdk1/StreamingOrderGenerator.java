@@ -0,0 +1,271 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk1;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.Config;
+
+/**
+ * Streaming Orders data generation: Orders are generated lazily, one at a time, straight into the sink 
+ * (the bounded writer pool of {@link BulkOrderLoader}, or a local {@link OrderFile} for replay), so the memory 
+ * stays constant whatever the number of Orders.
+ * 
+ * Every {@link Config#GENERATOR_CHECKPOINT_ORDERS} Orders the sink is flushed and the checkpoint (number of 
+ * Orders written so far, and the file length for the file sink) is logged and saved to the checkpoint file, if set; 
+ * an interrupted generation resumes from that offset (the file truncated to that length). The progress 
+ * (Orders/s and ETA) is logged periodically.
+ * 
+ * @author zorani
+ *
+ */
+public class StreamingOrderGenerator {
+
+	private final OrderGenerator generator;
+	
+	private long checkpointOrders = Config.GENERATOR_CHECKPOINT_ORDERS;
+	private long reportIntervalSeconds = Config.GENERATOR_REPORT_INTERVAL_SEC;
+	private Path checkpointFile = null;
+	
+	private static final Logger LOG = LoggerFactory.getLogger(StreamingOrderGenerator.class);
+
+	/**
+	 * C-tor
+	 * 
+	 * @param generator
+	 */
+	public StreamingOrderGenerator(@NonNull final OrderGenerator generator) {
+		
+		this.generator = generator;
+	}
+	
+	/**
+	 * @param orders Orders between checkpoints
+	 * @return
+	 */
+	public StreamingOrderGenerator withCheckpointInterval(final long orders) {
+		
+		if (orders <= 0) throw new IllegalArgumentException("checkpoint interval must be positive");
+		
+		this.checkpointOrders = orders;
+		return this;
+	}
+	
+	/**
+	 * @param seconds progress report interval, zero: report only when done
+	 * @return
+	 */
+	public StreamingOrderGenerator withReportInterval(final long seconds) {
+		
+		this.reportIntervalSeconds = Math.max(0, seconds);
+		return this;
+	}
+	
+	/**
+	 * @param checkpointFile file the checkpoints are saved to, null: checkpoints are only logged
+	 * @return
+	 */
+	public StreamingOrderGenerator withCheckpointFile(final Path checkpointFile) {
+		
+		this.checkpointFile = checkpointFile;
+		return this;
+	}
+	
+	/**
+	 * Read the last saved checkpoint
+	 * 
+	 * @param checkpointFile
+	 * @return offset to resume from, zero if the file doesn't exist
+	 * @throws IOException
+	 */
+	public static long readCheckpoint(@NonNull final Path checkpointFile) throws IOException {
+		
+		String[] checkpoint = readCheckpointFields(checkpointFile);
+		
+		return checkpoint == null ? 0 : Long.parseLong(checkpoint[0]);
+	}
+	
+	/**
+	 * Read the file length saved with the last checkpoint (file sink)
+	 * 
+	 * @param checkpointFile
+	 * @return length to truncate the file to, zero if the file doesn't exist, -1 if the checkpoint has no length
+	 * @throws IOException
+	 */
+	public static long readCheckpointPosition(@NonNull final Path checkpointFile) throws IOException {
+		
+		String[] checkpoint = readCheckpointFields(checkpointFile);
+		
+		if (checkpoint == null) return 0;
+		
+		return checkpoint.length > 1 ? Long.parseLong(checkpoint[1]) : -1;
+	}
+	
+	/**
+	 * @param checkpointFile
+	 * @return Orders written and the file length (if any), null if the file doesn't exist
+	 * @throws IOException
+	 */
+	private static String[] readCheckpointFields(final Path checkpointFile) throws IOException {
+		
+		if (!Files.exists(checkpointFile)) return null;
+		
+		return new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim().split("\\s+");
+	}
+	
+	/**
+	 * Generate Orders number offset + 1 .. total into the sink
+	 * 
+	 * @param offset Orders already written (resumed generation)
+	 * @param total
+	 * @param sink
+	 * @return Orders written (the last checkpoint if the sink failed to write some)
+	 */
+	public long generate(final long offset, final long total, @NonNull final OrderSink sink) {
+		
+		if (offset < 0 || total < offset) throw new IllegalArgumentException("invalid range: " + offset + ".." + total);
+		
+		LOG.info("Generating Orders {}..{}: {}", offset + 1, total, generator);
+		
+		return pump(generator.orders(offset, total), offset, total, sink);
+	}
+	
+	/**
+	 * Replay Orders (e.g. read from {@link OrderFile}) into the sink
+	 * 
+	 * @param orders
+	 * @param offset Orders already written (skipped)
+	 * @param sink
+	 * @return Orders written (the last checkpoint if the sink failed to write some)
+	 */
+	public long replay(@NonNull final Stream<Order> orders, final long offset, @NonNull final OrderSink sink) {
+		
+		if (offset < 0) throw new IllegalArgumentException("invalid offset: " + offset);
+		
+		LOG.info("Replaying Orders from {}", offset + 1);
+		
+		return pump(orders.skip(offset).iterator(), offset, -1, sink);
+	}
+	
+	/**
+	 * Move the Orders into the sink, with checkpoints and progress
+	 * 
+	 * @param orders
+	 * @param offset
+	 * @param total -1 if not known
+	 * @param sink
+	 * @return
+	 */
+	private long pump(final Iterator<Order> orders, final long offset, final long total, final OrderSink sink) {
+		
+		long start = System.nanoTime();
+		long lastReport = start;
+		long reportIntervalNanos = TimeUnit.SECONDS.toNanos(reportIntervalSeconds);
+		long written = offset;
+		long checkpointed = offset;
+		
+		while (orders.hasNext()) {
+			
+			sink.add(orders.next());
+			++written;
+			
+			if (written - checkpointed >= checkpointOrders) {
+				
+				if (!checkpoint(sink, written)) return checkpointed;
+				checkpointed = written;
+			}
+			
+			if (reportIntervalNanos > 0 && (written & 0x3FF) == 0 && System.nanoTime() - lastReport >= reportIntervalNanos) {
+				
+				lastReport = System.nanoTime();
+				logProgress(written, offset, total, start);
+			}
+		}
+		
+		if (written > checkpointed && !checkpoint(sink, written)) return checkpointed;
+		
+		logProgress(written, offset, total, start);
+		
+		return written;
+	}
+	
+	/**
+	 * Flush the sink and save the checkpoint
+	 * 
+	 * @param sink
+	 * @param written
+	 * @return false if the sink failed to write some Orders (the checkpoint is not saved)
+	 */
+	private boolean checkpoint(final OrderSink sink, final long written) {
+		
+		sink.flush();
+		
+		if (sink.getFailedItems() > 0) {
+			
+			LOG.error("{} Orders could not be written; stopped at {}, resume from the last checkpoint", sink.getFailedItems(), written);
+			return false;
+		}
+		
+		long position = sink.getPosition();
+		
+		LOG.info("Checkpoint: {} Orders written", written);
+		
+		if (checkpointFile != null) {
+			
+			String checkpoint = position < 0 ? Long.toString(written) : written + " " + position;
+			Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+			
+			// replace the previous checkpoint atomically, a crash never leaves a torn checkpoint
+			try {
+				Files.write(tmp, checkpoint.getBytes(StandardCharsets.UTF_8));
+				Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		return true;
+	}
+	
+	private static void logProgress(final long written, final long offset, final long total, final long start) {
+		
+		double seconds = (System.nanoTime() - start) / (double)TimeUnit.SECONDS.toNanos(1);
+		double rate = seconds <= 0 ? 0 : (written - offset) / seconds;
+		
+		if (total < 0) {
+			
+			LOG.info("Written {} Orders: {} Orders/s", written, Math.round(rate));
+			return;
+		}
+		
+		LOG.info("Written {} of {} Orders ({}%): {} Orders/s, ETA {} s", written, total, 
+				total == 0 ? 100 : written * 100 / total, Math.round(rate), rate <= 0 ? "-" : Math.round((total - written) / rate));
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk1;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.BoundedQueryExecutor;
+import software.amazon.samples.ddb.parallel.queries.BoundedResultStream;
+import software.amazon.samples.ddb.parallel.queries.Config;
+import software.amazon.samples.ddb.parallel.queries.Projection;
+import software.amazon.samples.ddb.parallel.queries.QueryExecutor;
+import software.amazon.samples.ddb.parallel.queries.QueryPlan;
+import software.amazon.samples.ddb.parallel.queries.QueryUtils;
+
+/**
+ * Streaming variants of the fan-out queries: instead of List&lt;Order&gt; they return a closeable 
+ * Stream&lt;Order&gt;, that emits Orders as the pages arrive. Sub-queries write into a bounded buffer 
+ * and wait while it is full, so the peak memory doesn't depend on the number of matching Orders.
+ * 
+ * The returned stream must be closed (try-with-resources) if it is not fully consumed:
+ * 
+ * <pre>
+ * try (Stream&lt;Order&gt; orders = query.streamOrdersByCategoryAndDates48("SPORT")) {
+ *     orders.forEach(...);
+ * }
+ * </pre>
+ * 
+ * @author zorani
+ *
+ */
+public class StreamingQuery {
+
+	private OrdersDbUtils ordersDbUtils = null;
+	private QueryExecutor executor = null;
+	private int bufferSize = Config.STREAM_BUFFER_SIZE;
+
+	/**
+	 * C-tor, using the streaming executor (see {@link BoundedQueryExecutor#streaming()})
+	 * 
+	 * @param dbMapper
+	 */
+	public StreamingQuery(@NonNull final DynamoDBMapper dbMapper) {
+			
+		this(dbMapper, BoundedQueryExecutor.streaming(), Config.STREAM_BUFFER_SIZE);
+	}
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param dbMapper
+	 * @param executor producers wait on it while the consumer is slow: don't use the executor of the other queries
+	 * @param bufferSize
+	 */
+	public StreamingQuery(@NonNull final DynamoDBMapper dbMapper, @NonNull final QueryExecutor executor, final int bufferSize) {
+			
+		this(new OrdersDbUtils(dbMapper), executor, bufferSize);
+	}
+	
+	/**
+	 * C-tor, using already configured OrdersDbUtils (for example with the concurrency limiter)
+	 * 
+	 * @param ordersDbUtils
+	 * @param executor producers wait on it while the consumer is slow: don't use the executor of the other queries
+	 * @param bufferSize
+	 */
+	public StreamingQuery(@NonNull final OrdersDbUtils ordersDbUtils, @NonNull final QueryExecutor executor, final int bufferSize) {
+			
+		this.ordersDbUtils = ordersDbUtils;
+		this.executor = executor;
+		this.bufferSize = bufferSize;
+	}
+	
+	/**
+	 * Same streaming queries, fetching only the projected attributes (streamed Orders are partially populated)
+	 * 
+	 * @param projection
+	 * @return new query object; this one is not changed
+	 */
+	public StreamingQuery withProjection(final Projection projection) {
+		
+		return new StreamingQuery(ordersDbUtils.copy().withProjection(projection), executor, bufferSize);
+	}
+	
+	/**
+	 * Stream orders by Category, using 12 order-date monthly prefixes
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public Stream<Order> streamOrdersByCategoryAndDates12(final String category) {
+
+		if (StringUtils.isEmpty(category)) return Stream.empty();
+
+		return stream(QueryUtils.generate12YearMonthDatePrefixes(Config.YEAR), 
+				(x, pageHandler) -> ordersDbUtils.queryOrdersByCategoryAndOrderDate(category, x, pageHandler));
+	}
+
+	/**
+	 * Stream orders by Category, using 48 order-date prefixes
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public Stream<Order> streamOrdersByCategoryAndDates48(final String category) {
+
+		if (StringUtils.isEmpty(category)) return Stream.empty();
+
+		return stream(QueryUtils.generate48YearMonthDatePrefixes(Config.YEAR), 
+				(x, pageHandler) -> ordersDbUtils.queryOrdersByCategoryAndOrderDate(category, x, pageHandler));
+	}
+
+	/**
+	 * Stream orders by Category, using 365/366 daily order-date prefixes
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public Stream<Order> streamOrdersByCategoryAndDates365(final String category) {
+
+		if (StringUtils.isEmpty(category)) return Stream.empty();
+
+		return stream(QueryUtils.generateDailyOrdersDatePrefixes(Config.YEAR), 
+				(x, pageHandler) -> ordersDbUtils.queryOrdersByCategoryAndOrderDate(category, x, pageHandler));
+	}
+
+	/**
+	 * Stream orders by Category, using the order-date ranges from the query plan
+	 * 
+	 * @param category
+	 * @param plan
+	 * @return
+	 */
+	public Stream<Order> streamOrdersByCategoryAndPlannedDates(final String category, @NonNull final QueryPlan plan) {
+
+		if (StringUtils.isEmpty(category)) return Stream.empty();
+
+		return stream(plan.getRanges(), 
+				(x, pageHandler) -> ordersDbUtils.queryOrdersByCategoryAndOrderDateRange(category, x, pageHandler));
+	}
+
+	/**
+	 * Stream orders by Category, using the Query Slot 64
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public Stream<Order> streamOrdersByCategoryAndQuerySlot64(final String category) {
+
+		if (StringUtils.isEmpty(category)) return Stream.empty();
+
+		return stream(QueryUtils.create64QuerySlotsList(), 
+				(x, pageHandler) -> ordersDbUtils.queryOrdersByCategoryAndQuerySlot(category, x, pageHandler));
+	}
+
+	/**
+	 * Stream orders by Category, using the Query Slot 128
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public Stream<Order> streamOrdersByCategoryAndQuerySlot128(final String category) {
+
+		if (StringUtils.isEmpty(category)) return Stream.empty();
+
+		return stream(QueryUtils.create128QuerySlotsList(), 
+				(x, pageHandler) -> ordersDbUtils.queryOrdersByCategoryAndQuerySlot(category, x, 128, pageHandler));
+	}
+
+	/**
+	 * Stream all orders (optionally filtered by category) using parallel scan, one producer per segment
+	 * 
+	 * @param category
+	 * @param segments
+	 * @return
+	 */
+	public Stream<Order> streamAllOrdersUsingParallelScan(final String category, final int segments) {
+
+		List<Integer> segmentsList = IntStream.range(0, segments).boxed().collect(Collectors.toList());
+		
+		return stream(segmentsList, 
+				(x, pageHandler) -> ordersDbUtils.scanOrdersSegment(category, x, segments, pageHandler));
+	}
+	
+	/**
+	 * Start sub-queries (producers) on the query executor and return the stream of results
+	 * 
+	 * @param <T>
+	 * @param inputs
+	 * @param subQuery
+	 * @return
+	 */
+	private <T> Stream<Order> stream(final List<T> inputs, final BiConsumer<T, Predicate<List<Order>>> subQuery) {
+		
+		return BoundedResultStream.start(executor, inputs, subQuery, Config.QUERY_MAX_CONCURRENCY, bufferSize).stream();
+	}
+}
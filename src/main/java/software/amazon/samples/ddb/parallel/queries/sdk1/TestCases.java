@@ -22,6 +22,8 @@ import java.util.List;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 
+import software.amazon.samples.ddb.parallel.queries.PartitionCounts;
+
 /**
  * Runs all query methods
  * 
@@ -77,5 +79,25 @@ public class TestCases {
 		
 		orders = cf.getOrdersUsingCategoryAndQuerySlots128WithCompletableFuture("SPORT");
 		System.out.printf(">> Total orders: [%d], using CF and 128 query slots prefixes%n", orders.size());
+		
+		// --- COUNT only
+		
+		PartitionCounts counts = ordersDbUtils.countAllOrdersUsingParallelScan(null, 128);
+		System.out.printf(">> Total orders in DynamoDB Orders table: [%d], using COUNT only parallel scan%n", counts.getTotal());
+
+		counts = cf.countUsingCategoryAndDates12QueryWithCompletableFuture("SPORT");
+		System.out.printf(">> Total orders: [%d], using COUNT only and 12 date-orders prefixes, per month: %s%n", counts.getTotal(), counts.getCounts());
+
+		counts = cf.countUsingCategoryAndDates48QueryWithCompletableFuture("SPORT");
+		System.out.printf(">> Total orders: [%d], using COUNT only and 48 date-orders prefixes%n", counts.getTotal());
+
+		counts = cf.countUsingCategoryAndDates365QueryWithCompletableFuture("SPORT");
+		System.out.printf(">> Total orders: [%d], using COUNT only and 365 date-orders prefixes%n", counts.getTotal());
+
+		counts = cf.countUsingCategoryAndQuerySlots64WithCompletableFuture("SPORT");
+		System.out.printf(">> Total orders: [%d], using COUNT only and 64 query slots prefixes%n", counts.getTotal());
+
+		counts = cf.countUsingCategoryAndQuerySlots128WithCompletableFuture("SPORT");
+		System.out.printf(">> Total orders: [%d], using COUNT only and 128 query slots prefixes%n", counts.getTotal());
 	}
 }
\ No newline at end of file
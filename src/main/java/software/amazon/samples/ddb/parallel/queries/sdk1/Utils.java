@@ -18,12 +18,16 @@
 package software.amazon.samples.ddb.parallel.queries.sdk1;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.auth.profile.ProfileCredentialsProvider;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.TableNameOverride;
 
+import software.amazon.samples.ddb.parallel.queries.QueryMetricsRequestHandler;
+import software.amazon.samples.ddb.parallel.queries.QueryUtils;
+
 /**
  * A few handy utilities
  * 
@@ -37,6 +41,22 @@ public class Utils {
 	 */
 	public static AmazonDynamoDB init() {
 		
+		return init(false);
+	}
+	
+	/**
+	 * Initialize DynamoDB client
+	 * 
+	 * @param concurrencyLimited true: client of the queries with the AIMD limiter, the SDK does not retry throttled requests 
+	 * 			(see {@link QueryUtils#concurrencyLimitedClientConfiguration()})
+	 * @return
+	 */
+	public static AmazonDynamoDB init(final boolean concurrencyLimited) {
+		
+		// endpoint override, e.g. the local stand-in
+		AmazonDynamoDB endpointOverride = QueryUtils.initEndpointOverride(concurrencyLimited);
+		if (endpointOverride != null) return endpointOverride;
+		
         ProfileCredentialsProvider credentialsProvider = new ProfileCredentialsProvider();
         
         try {
@@ -52,12 +72,14 @@ public class Utils {
         }
         
         // instantiate DynamoDB client
-        AmazonDynamoDB dynamoDB = AmazonDynamoDBClientBuilder.standard()
+        AmazonDynamoDBClientBuilder builder = AmazonDynamoDBClientBuilder.standard()
             .withCredentials(credentialsProvider)
             .withRegion("us-east-1")
-            .build();
+            .withRequestHandlers(new QueryMetricsRequestHandler());
+        
+        if (concurrencyLimited) builder.withClientConfiguration(QueryUtils.concurrencyLimitedClientConfiguration());
 
-        return dynamoDB;
+        return builder.build();
     }
 		
 	/**
@@ -84,4 +106,27 @@ public class Utils {
 				.withTableNameOverride(TableNameOverride.withTableNameReplacement(tableName))
 				.withPaginationLoadingStrategy(DynamoDBMapperConfig.PaginationLoadingStrategy.EAGER_LOADING);
 	}
+
+	/**
+	 * Check if the exception (or its cause) is a throttling error
+	 * 
+	 * @param t
+	 * @return
+	 */
+	public static boolean isThrottling(Throwable t) {
+		
+		for (int depth = 0; t != null && depth < 5; ++depth, t = t.getCause()) {
+			
+			if (t instanceof AmazonServiceException) {
+				
+				String errorCode = ((AmazonServiceException)t).getErrorCode();
+				
+				if ("ProvisionedThroughputExceededException".equals(errorCode) 
+						|| "ThrottlingException".equals(errorCode) 
+						|| "RequestLimitExceeded".equals(errorCode)) return true;
+			}
+		}
+		
+		return false;
+	}
 }
\ No newline at end of file
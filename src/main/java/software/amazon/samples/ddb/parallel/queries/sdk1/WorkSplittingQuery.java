@@ -0,0 +1,309 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk1;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import lombok.NonNull;
+import software.amazon.samples.ddb.parallel.queries.Config;
+import software.amazon.samples.ddb.parallel.queries.QueryMetrics;
+import software.amazon.samples.ddb.parallel.queries.SortKeyRange;
+
+/**
+ * Order-date range sub-queries with dynamic work splitting: a sub-query that still returns the last evaluated 
+ * key after N pages stops, and its remaining range is split into new sub-queries, which are picked up by idle 
+ * workers (stolen from the worker's queue, in the case of ForkJoinPool).
+ * 
+ * Queries read the index backwards (latest order-date first), so the remaining range of a sub-query is from 
+ * the lower bound up to the last seen order-date. The last seen day might be only partially read, so the 
+ * current worker continues that day from the last evaluated key, while the earlier days are split into new 
+ * sub-queries (which can split again). No statistics are needed up-front.
+ * 
+ * If the result cache is set on OrdersDbUtils, cached ranges are served locally, and every queried range 
+ * is cached once all of its pieces have finished.
+ * 
+ * @author zorani
+ *
+ */
+public class WorkSplittingQuery {
+
+	private OrdersDbUtils ordersDbUtils = null;
+	private Executor executor = null;
+	private int splitAfterPages;
+	private int splitWays;
+	
+	private final AtomicLong splitCount = new AtomicLong();
+	
+	// how long the helping caller runs the queued sub-queries before checking its own completion again
+	private static final long HELP_INTERVAL_MS = 10;
+
+	private static final Logger LOG = LoggerFactory.getLogger(WorkSplittingQuery.class);
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param ordersDbUtils
+	 * @param executor runs the sub-queries (for example, common ForkJoinPool)
+	 * @param splitAfterPages
+	 * @param splitWays
+	 */
+	public WorkSplittingQuery(@NonNull final OrdersDbUtils ordersDbUtils, @NonNull final Executor executor, 
+								final int splitAfterPages, final int splitWays) {
+		
+		if (splitAfterPages <= 0) throw new IllegalArgumentException("splitAfterPages must be positive");
+		if (splitWays < 2) throw new IllegalArgumentException("splitWays must be at least 2");
+
+		this.ordersDbUtils = ordersDbUtils;
+		this.executor = executor;
+		this.splitAfterPages = splitAfterPages;
+		this.splitWays = splitWays;
+	}
+
+	/**
+	 * C-tor, splitting into {@link Config#SPLIT_WAYS} sub-queries
+	 * 
+	 * @param ordersDbUtils
+	 * @param executor
+	 * @param splitAfterPages
+	 */
+	public WorkSplittingQuery(@NonNull final OrdersDbUtils ordersDbUtils, @NonNull final Executor executor, final int splitAfterPages) {
+		
+		this(ordersDbUtils, executor, splitAfterPages, Config.SPLIT_WAYS);
+	}
+	
+	/**
+	 * Get list of Orders by category for all order-date ranges, splitting the oversized sub-queries on the fly
+	 * 
+	 * @param category
+	 * @param ranges
+	 * @return
+	 */
+	public List<Order> listOrdersByCategoryAndOrderDateRanges(@NonNull final String category, @NonNull final List<SortKeyRange> ranges) {
+		
+		List<Order> orders = Collections.synchronizedList(new ArrayList<>());
+		List<SortKeyRange> uncached = new ArrayList<>();
+		
+		for (SortKeyRange range : ranges) {
+			
+			List<Order> cached = ordersDbUtils.getCachedOrdersByCategoryAndOrderDateRange(category, range);
+			
+			if (cached != null) orders.addAll(cached);
+			else uncached.add(range);
+		}
+		
+		if (uncached.isEmpty()) return orders;
+		
+		Execution execution = new Execution(category, orders, uncached.size());
+		
+		for (SortKeyRange range : uncached) execution.schedule(new RootRange(range), range, null);
+		
+		awaitDone(execution.done);
+		
+		return orders;
+	}
+
+	/**
+	 * Wait for all sub-queries of the call. On the ForkJoinPool, a caller that is not one of its workers helps 
+	 * to run the queued sub-queries (of any call) while waiting; workers of the pool join, which lets the pool 
+	 * compensate for the blocked worker. Other executors (e.g. the window of the query executor) block the caller.
+	 * 
+	 * @param done
+	 */
+	private void awaitDone(final CompletableFuture<Void> done) {
+		
+		if (executor instanceof ForkJoinPool && !(Thread.currentThread() instanceof ForkJoinWorkerThread)) {
+			
+			ForkJoinPool pool = (ForkJoinPool)executor;
+			
+			while (!done.isDone()) pool.awaitQuiescence(HELP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		}
+		
+		done.join();
+	}
+
+	/**
+	 * @return total number of splits so far
+	 */
+	public long getSplitCount() {
+		
+		return splitCount.get();
+	}
+	
+	/**
+	 * Range of the original sub-query, and the Orders of all its pieces (collected only if the range is cacheable)
+	 */
+	private class RootRange {
+		
+		private final SortKeyRange range;
+		private final List<Order> orders;
+		private final AtomicInteger pending = new AtomicInteger(1);
+		private volatile boolean failed = false;
+		
+		RootRange(final SortKeyRange range) {
+			
+			this.range = range;
+			this.orders = ordersDbUtils.isCacheable(range) ? Collections.synchronizedList(new ArrayList<>()) : null;
+		}
+		
+		/**
+		 * Piece of the range has finished; cache the range when the last piece finishes
+		 * 
+		 * @param category
+		 */
+		void pieceFinished(final String category) {
+			
+			if (pending.decrementAndGet() == 0 && orders != null && !failed) {
+				
+				ordersDbUtils.cacheOrdersByCategoryAndOrderDateRange(category, range, orders);
+			}
+		}
+	}
+	
+	/**
+	 * Single call: collects the Orders and completes when no sub-query is pending
+	 */
+	private class Execution {
+		
+		private final String category;
+		private final List<Order> orders;
+		private final AtomicInteger pending;
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+		
+		Execution(final String category, final List<Order> orders, final int pending) {
+			
+			this.category = category;
+			this.orders = orders;
+			this.pending = new AtomicInteger(pending);
+		}
+		
+		/**
+		 * Schedule sub-query (pending counters already include it)
+		 * 
+		 * @param root
+		 * @param range
+		 * @param exclusiveStartKey
+		 */
+		void schedule(final RootRange root, final SortKeyRange range, final Map<String,AttributeValue> exclusiveStartKey) {
+			
+			executor.execute(QueryMetrics.propagate(() -> {
+				
+				try {
+					if (done.isDone()) root.failed = true;
+					else run(root, range, exclusiveStartKey);
+				} catch (Throwable t) {
+					root.failed = true;
+					done.completeExceptionally(t);
+				} finally {
+					root.pieceFinished(category);
+					if (pending.decrementAndGet() == 0) done.complete(null);
+				}
+			}));
+		}
+		
+		/**
+		 * Run the sub-query; after N pages split the remaining range and continue with the last seen day only
+		 * 
+		 * @param root
+		 * @param range
+		 * @param exclusiveStartKey
+		 */
+		private void run(final RootRange root, final SortKeyRange range, final Map<String,AttributeValue> exclusiveStartKey) {
+			
+			int[] pages = { 0 };
+			@SuppressWarnings("unchecked")
+			Map<String,AttributeValue>[] resumeKey = new Map[1];
+			
+			// a single day can't be split any further
+			boolean splittable = !range.getFrom().equals(range.getTo());
+			
+			ordersDbUtils.queryOrdersByCategoryAndOrderDateRange(category, range, exclusiveStartKey, (page, lastEvaluatedKey) -> {
+				
+				orders.addAll(page);
+				if (root.orders != null) root.orders.addAll(page);
+				
+				if (done.isDone()) {
+					
+					root.failed = true;
+					return false;
+				}
+				
+				if (splittable && lastEvaluatedKey != null && ++pages[0] >= splitAfterPages) {
+					
+					resumeKey[0] = lastEvaluatedKey;
+					return false;
+				}
+				
+				return true;
+			});
+			
+			if (resumeKey[0] == null) return;
+			
+			String lastSeenDate = resumeKey[0].get("order-date").getS();
+			LocalDate lastSeenDay = LocalDate.parse(lastSeenDate);
+			LocalDate from = LocalDate.parse(range.getFrom());
+			
+			if (from.isBefore(lastSeenDay)) split(root, from, lastSeenDay.minusDays(1));
+			
+			// the rest of the partially read day, from the last evaluated key
+			run(root, SortKeyRange.of(lastSeenDate, lastSeenDate), resumeKey[0]);
+		}
+		
+		/**
+		 * Split the inclusive range of days into (up to) N new sub-queries
+		 * 
+		 * @param root
+		 * @param from
+		 * @param to
+		 */
+		private void split(final RootRange root, final LocalDate from, final LocalDate to) {
+			
+			int days = (int)(to.toEpochDay() - from.toEpochDay()) + 1;
+			int ways = Math.min(days, splitWays);
+			
+			splitCount.incrementAndGet();
+			LOG.debug("Split [{}] {}..{} into {} sub-queries", category, from, to, ways);
+			
+			root.pending.addAndGet(ways);
+			pending.addAndGet(ways);
+			
+			for (int w = 0; w < ways; ++w) {
+				
+				LocalDate first = from.plusDays(((long)w * days) / ways);
+				LocalDate last = from.plusDays(((long)(w + 1) * days) / ways - 1);
+				
+				schedule(root, SortKeyRange.of(first.toString(), last.toString()), null);
+			}
+		}
+	}
+}
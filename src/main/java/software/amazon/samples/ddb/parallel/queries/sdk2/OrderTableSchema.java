@@ -0,0 +1,104 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk2;
+
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.primaryPartitionKey;
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.secondaryPartitionKey;
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.secondarySortKey;
+
+import java.util.Arrays;
+
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+
+/**
+ * Table schemas of the SDK v2 Order: the static schema declares the attributes, keys and GSI keys 
+ * of the {@link Order} bean annotations explicitly, with plain getter/setter references, so there is 
+ * no bean introspection (and no generated accessors) when it's created. Both schemas read and write 
+ * the same items.
+ * 
+ * @author zorani
+ *
+ */
+public final class OrderTableSchema {
+
+	private OrderTableSchema() {}
+	
+	/**
+	 * @param staticSchema true for the static schema, false for the bean (annotations) schema
+	 * @return new table schema
+	 */
+	public static TableSchema<Order> create(final boolean staticSchema) {
+		
+		return staticSchema ? createStatic() : TableSchema.fromBean(Order.class);
+	}
+	
+	/**
+	 * @return new static table schema, equivalent to the Order bean annotations
+	 */
+	public static StaticTableSchema<Order> createStatic() {
+		
+		return StaticTableSchema.builder(Order.class)
+				.newItemSupplier(Order::new)
+				.addAttribute(String.class, a -> a.name("id")
+						.getter(Order::getId)
+						.setter(Order::setId)
+						.tags(primaryPartitionKey()))
+				.addAttribute(String.class, a -> a.name("category")
+						.getter(Order::getCategory)
+						.setter(Order::setCategory)
+						.tags(secondaryPartitionKey(Arrays.asList("category-order-date-index", "category-query-slot-mod64-index"))))
+				.addAttribute(String.class, a -> a.name("country")
+						.getter(Order::getCountry)
+						.setter(Order::setCountry)
+						.tags(secondaryPartitionKey("country-order-date-index")))
+				.addAttribute(String.class, a -> a.name("ck-country-state")
+						.getter(Order::getCkCountryState)
+						.setter(Order::setCkCountryState)
+						.tags(secondaryPartitionKey("ck-country-state-order-date-index")))
+				.addAttribute(String.class, a -> a.name("sku")
+						.getter(Order::getSku)
+						.setter(Order::setSku)
+						.tags(secondaryPartitionKey("sku-order-date-index")))
+				.addAttribute(String.class, a -> a.name("order-date")
+						.getter(Order::getOrderDate)
+						.setter(Order::setOrderDate)
+						.tags(secondarySortKey(Arrays.asList("sku-order-date-index", "country-order-date-index", 
+								"category-order-date-index", "ck-country-state-order-date-index"))))
+				.addAttribute(Integer.class, a -> a.name("query-slot-mod64")
+						.getter(Order::getQuerySlotMod64)
+						.setter(Order::setQuerySlotMod64)
+						.tags(secondarySortKey("category-query-slot-mod64-index")))
+				.addAttribute(Integer.class, a -> a.name("qty")
+						.getter(Order::getQty)
+						.setter(Order::setQty))
+				.addAttribute(Double.class, a -> a.name("unit-price")
+						.getter(Order::getPricePerUnit)
+						.setter(Order::setPricePerUnit))
+				.addAttribute(String.class, a -> a.name("state")
+						.getter(Order::getState)
+						.setter(Order::setState))
+				.addAttribute(String.class, a -> a.name("payment-type")
+						.getter(Order::getPaymentType)
+						.setter(Order::setPaymentType))
+				.addAttribute(String.class, a -> a.name("comment")
+						.getter(Order::getComment)
+						.setter(Order::setComment))
+				.build();
+	}
+}
@@ -0,0 +1,867 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.reactivex.processors.UnicastProcessor;
+import lombok.NonNull;
+import software.amazon.awssdk.awscore.retry.AwsRetryPolicy;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.conditions.RetryCondition;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.Select;
+import software.amazon.samples.ddb.parallel.queries.AimdConcurrencyLimiter;
+import software.amazon.samples.ddb.parallel.queries.Config;
+import software.amazon.samples.ddb.parallel.queries.OrderAggregate;
+import software.amazon.samples.ddb.parallel.queries.OrderBatch;
+import software.amazon.samples.ddb.parallel.queries.Projection;
+import software.amazon.samples.ddb.parallel.queries.QueryMetrics;
+import software.amazon.samples.ddb.parallel.queries.QueryUtils;
+import software.amazon.samples.ddb.parallel.queries.ReadCapacityBudget;
+import software.amazon.samples.ddb.parallel.queries.RequestHedger;
+import software.amazon.samples.ddb.parallel.queries.SortKeyRange;
+import software.amazon.samples.ddb.parallel.queries.SubQueryMetrics;
+import software.amazon.samples.ddb.parallel.queries.jfr.ResultsMergedEvent;
+
+/**
+ * Non-blocking utilities for querying Orders with SDK v2 async client. 
+ * 
+ * Every sub-query is a Flowable of pages: the next page is requested only after the previous page 
+ * arrived and the downstream asked for more items (backpressure), and no thread waits for the responses.
+ * 
+ * All queries and scans request the consumed capacity (TOTAL), which is charged to the read 
+ * capacity budget if set.
+ * 
+ * Within a measured query (see {@link QueryMetrics}), every query and scan segment records its sub-query metrics; 
+ * the SDK retries and unmarshalling time come from the SDK metrics of its page requests.
+ * 
+ * @author zorani
+ *
+ */
+public class OrdersAsyncDbUtils {
+
+	private DynamoDbAsyncClient dynamoDB = null;
+	private TableSchema<Order> tableSchema = null;
+	private AimdConcurrencyLimiter concurrencyLimiter = null;
+	private ReadCapacityBudget capacityBudget = null;
+	private RequestHedger requestHedger = null;
+	private Projection projection = null;
+	
+	/**
+	 * C-tor
+	 * 
+	 * @param dynamoDB
+	 * @param tableSchema
+	 */
+	public OrdersAsyncDbUtils(@NonNull final DynamoDbAsyncClient dynamoDB, @NonNull final TableSchema<Order> tableSchema) {
+		
+		this.dynamoDB = dynamoDB;
+		this.tableSchema = tableSchema;
+	}
+	
+	/**
+	 * Limit the in-flight page requests with the AIMD limiter, which adapts to the throttling feedback; 
+	 * the client should not retry the throttled requests (see {@link #concurrencyLimitedRetryPolicy()}), 
+	 * otherwise the SDK retries hide most of the throttling from the limiter
+	 * 
+	 * @param concurrencyLimiter
+	 * @return
+	 */
+	public OrdersAsyncDbUtils withConcurrencyLimiter(final AimdConcurrencyLimiter concurrencyLimiter) {
+		
+		this.concurrencyLimiter = concurrencyLimiter;
+		return this;
+	}
+	
+	/**
+	 * Pace the page requests of all queries and scans to the RCU/s ceiling of the budget (without blocking), 
+	 * and count the consumed capacity
+	 * 
+	 * @param capacityBudget
+	 * @return
+	 */
+	public OrdersAsyncDbUtils withReadCapacityBudget(final ReadCapacityBudget capacityBudget) {
+		
+		this.capacityBudget = capacityBudget;
+		return this;
+	}
+	
+	/**
+	 * Hedge the page requests of all queries and scans: a slow page request is duplicated, and the first response wins
+	 * 
+	 * @param requestHedger
+	 * @return
+	 */
+	public OrdersAsyncDbUtils withRequestHedger(final RequestHedger requestHedger) {
+		
+		this.requestHedger = requestHedger;
+		return this;
+	}
+	
+	/**
+	 * Fetch only the projected attributes in all queries and scans (Orders are partially populated)
+	 * 
+	 * @param projection null to fetch whole items
+	 * @return
+	 */
+	public OrdersAsyncDbUtils withProjection(final Projection projection) {
+		
+		this.projection = projection;
+		return this;
+	}
+	
+	/**
+	 * Merge sub-queries, one per input, running at most maxConcurrency of them at the same time
+	 * 
+	 * @param <T>
+	 * @param inputs
+	 * @param subQuery
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public <T> Flowable<Order> mergeSubQueries(@NonNull final List<T> inputs, @NonNull final Function<T, Flowable<Order>> subQuery, final int maxConcurrency) {
+		
+		// sub-queries are created on the SDK threads as the previous ones complete, within the measured query (if any)
+		Function<T, Flowable<Order>> measuredSubQuery = QueryMetrics.propagate(subQuery);
+		
+		return Flowable.defer(() -> {
+			
+			ResultsMergedEvent event = ResultsMergedEvent.begin("OrdersAsyncDbUtils reactive merge", inputs.size());
+			Flowable<Order> orders = Flowable.fromIterable(inputs)
+					.flatMap(x -> measuredSubQuery.apply(x), Math.max(1, maxConcurrency));
+			
+			if (!event.isEnabled()) return orders;
+			
+			AtomicLong items = new AtomicLong();
+			
+			return orders.doOnNext(x -> items.incrementAndGet())
+					.doOnComplete(() -> event.merged(items.get()));
+		});
+	}
+	
+	/**
+	 * Query Orders by category and the order-date prefix
+	 * 
+	 * @param category
+	 * @param orderDate
+	 * @return
+	 */
+	public Flowable<Order> queryOrdersByCategoryAndOrderDate(@NonNull final String category, final String orderDate) {
+		
+		if (StringUtils.isEmpty(category)) return Flowable.empty();
+
+		return queryItems(createCategoryAndOrderDateRequest(category, orderDate, projection));
+	}
+
+	/**
+	 * Count Orders by category and the order-date prefix, using COUNT-only query
+	 * 
+	 * @param category
+	 * @param orderDate
+	 * @return
+	 */
+	public Single<Long> countByCategoryAndOrderDate(@NonNull final String category, final String orderDate) {
+		
+		if (StringUtils.isEmpty(category)) return Single.just(0L);
+
+		return countPages(createCategoryAndOrderDateRequest(category, orderDate, null));
+	}
+
+	/**
+	 * Create query request for the category and order-date prefix: "begins_with(#od, :od)"
+	 * 
+	 * @param category
+	 * @param orderDate
+	 * @param projection null to fetch whole items
+	 * @return
+	 */
+	private QueryRequest createCategoryAndOrderDateRequest(final String category, final String orderDate, final Projection projection) {
+
+		Map<String,String> names = new HashMap<>();
+		Map<String,AttributeValue> values = new HashMap<>();
+
+		names.put("#cat", "category");
+		values.put(":cat", AttributeValue.builder().s(category.trim().toUpperCase()).build());
+		String keyCondExpr = "#cat = :cat";
+
+		if (StringUtils.isNotEmpty(orderDate)) {
+
+			names.put("#od", "order-date");
+			values.put(":od", AttributeValue.builder().s(orderDate.trim()).build());
+			keyCondExpr += " AND begins_with(#od, :od)";
+		}
+
+		return createQueryRequest("category-order-date-index", keyCondExpr, names, values, projection);
+	}
+
+	/**
+	 * Query Orders by category and the inclusive order-date range
+	 * 
+	 * @param category
+	 * @param range
+	 * @return
+	 */
+	public Flowable<Order> queryOrdersByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range) {
+		
+		if (StringUtils.isEmpty(category)) return Flowable.empty();
+
+		return queryItems(createCategoryAndOrderDateRangeRequest(category, range, projection));
+	}
+
+	/**
+	 * Query Orders by category and the inclusive order-date range into the columnar batch, built directly 
+	 * from the attribute maps of the pages (no Order objects are created)
+	 * 
+	 * @param category
+	 * @param range
+	 * @return
+	 */
+	public Single<OrderBatch> queryOrderBatchByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range) {
+		
+		if (StringUtils.isEmpty(category)) return Single.just(OrderBatch.builder().build());
+
+		return queryPages(createCategoryAndOrderDateRangeRequest(category, range, projection))
+				.collect(OrderBatch::builder, (builder, page) -> page.items().forEach(builder::addItemV2))
+				.map(OrderBatch.Builder::build);
+	}
+	
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, by category and the inclusive order-date range; 
+	 * only the attributes needed by the aggregation are fetched, and pages are folded into the aggregate 
+	 * as they arrive (no Orders are created)
+	 * 
+	 * @param category
+	 * @param range
+	 * @param groupBy
+	 * @return
+	 */
+	public Single<OrderAggregate> aggregateByCategoryAndOrderDateRange(@NonNull final String category, @NonNull final SortKeyRange range, 
+									@NonNull final OrderAggregate.GroupBy groupBy) {
+		
+		if (StringUtils.isEmpty(category)) return Single.just(new OrderAggregate(groupBy));
+
+		return aggregatePages(createCategoryAndOrderDateRangeRequest(category, range, groupBy.getProjection()), groupBy);
+	}
+
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, by category and a query-slot attribute value
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param groupBy
+	 * @return
+	 */
+	public Single<OrderAggregate> aggregateByCategoryAndQuerySlot(@NonNull final String category, final int querySlot, 
+									@NonNull final OrderAggregate.GroupBy groupBy) {
+		
+		return aggregateByCategoryAndQuerySlot(category, querySlot, 64, groupBy);
+	}
+
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, by category and a query-slot attribute value
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @param groupBy
+	 * @return
+	 */
+	public Single<OrderAggregate> aggregateByCategoryAndQuerySlot(@NonNull final String category, final int querySlot, final int querySlots, 
+									@NonNull final OrderAggregate.GroupBy groupBy) {
+		
+		if (StringUtils.isEmpty(category)) return Single.just(new OrderAggregate(groupBy));
+		if (querySlot < 0 || querySlot >= querySlots) return Single.just(new OrderAggregate(groupBy));
+
+		return aggregatePages(createCategoryAndQuerySlotRequest(category, querySlot, querySlots, groupBy.getProjection()), groupBy);
+	}
+	
+	/**
+	 * Fold the items of all the query pages into a new aggregate
+	 * 
+	 * @param request
+	 * @param groupBy
+	 * @return
+	 */
+	private Single<OrderAggregate> aggregatePages(final QueryRequest request, final OrderAggregate.GroupBy groupBy) {
+		
+		return queryPages(request)
+				.collect(() -> new OrderAggregate(groupBy), (aggregate, page) -> page.items().forEach(aggregate::addItemV2));
+	}
+	
+	/**
+	 * Create query request for the category and order-date range: "BETWEEN :from AND :to"
+	 * 
+	 * @param category
+	 * @param range
+	 * @param projection null to fetch whole items
+	 * @return
+	 */
+	private QueryRequest createCategoryAndOrderDateRangeRequest(final String category, final SortKeyRange range, final Projection projection) {
+
+		Map<String,String> names = new HashMap<>();
+		Map<String,AttributeValue> values = new HashMap<>();
+
+		names.put("#cat", "category");
+		names.put("#od", "order-date");
+		values.put(":cat", AttributeValue.builder().s(category.trim().toUpperCase()).build());
+		values.put(":from", AttributeValue.builder().s(range.getFrom()).build());
+		values.put(":to", AttributeValue.builder().s(range.getTo()).build());
+
+		return createQueryRequest("category-order-date-index", "#cat = :cat AND #od BETWEEN :from AND :to", names, values, projection);
+	}
+
+	/**
+	 * Query Orders by category and a query-slot attribute value
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @return
+	 */
+	public Flowable<Order> queryOrdersByCategoryAndQuerySlot(@NonNull final String category, final int querySlot) {
+		
+		if (StringUtils.isEmpty(category)) return Flowable.empty();
+		return queryOrdersByCategoryAndQuerySlot(category, querySlot, 64);
+	}
+
+	/**
+	 * Query Orders by category and a query-slot attribute value
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @return
+	 */
+	public Flowable<Order> queryOrdersByCategoryAndQuerySlot(@NonNull final String category, final int querySlot, final int querySlots) {
+		
+		if (StringUtils.isEmpty(category)) return Flowable.empty();
+		if (querySlot < 0 || querySlot >= querySlots) return Flowable.empty();
+
+		return queryItems(createCategoryAndQuerySlotRequest(category, querySlot, querySlots, projection));
+	}
+
+	/**
+	 * Count Orders by category and a query-slot attribute value, using COUNT-only query
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @return
+	 */
+	public Single<Long> countByCategoryAndQuerySlot(@NonNull final String category, final int querySlot, final int querySlots) {
+		
+		if (StringUtils.isEmpty(category)) return Single.just(0L);
+		if (querySlot < 0 || querySlot >= querySlots) return Single.just(0L);
+
+		return countPages(createCategoryAndQuerySlotRequest(category, querySlot, querySlots, null));
+	}
+
+	/**
+	 * Create query request for the category and query-slot value, with the projection
+	 * 
+	 * @param category
+	 * @param querySlot
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @param projection null to fetch whole items
+	 * @return
+	 */
+	private QueryRequest createCategoryAndQuerySlotRequest(final String category, final int querySlot, final int querySlots, final Projection projection) {
+
+		String querySlotAttribute = QueryUtils.querySlotAttribute(querySlots);
+		Map<String,String> names = new HashMap<>();
+		Map<String,AttributeValue> values = new HashMap<>();
+
+		names.put("#cat", "category");
+		names.put("#qs", querySlotAttribute);
+		values.put(":cat", AttributeValue.builder().s(category.trim().toUpperCase()).build());
+		values.put(":qs", AttributeValue.builder().n(String.valueOf(querySlot)).build());
+
+		return createQueryRequest("category-" + querySlotAttribute + "-index", "#cat = :cat AND #qs = :qs", names, values, projection);
+	}
+
+	/**
+	 * Create query request for the index
+	 * 
+	 * @param indexName
+	 * @param keyCondExpr
+	 * @param names
+	 * @param values
+	 * @param projection null to fetch whole items
+	 * @return
+	 */
+	private QueryRequest createQueryRequest(final String indexName, final String keyCondExpr, 
+									final Map<String,String> names, final Map<String,AttributeValue> values, final Projection projection) {
+		
+		Map<String,String> allNames = new HashMap<>(names);
+		String projectionExpr = projection == null ? null : projection.toExpression(allNames);
+		
+		return QueryRequest.builder()
+				.tableName(Config.DDB_TABLE_NAME)
+				.indexName(indexName)
+				.keyConditionExpression(keyCondExpr)
+				.projectionExpression(projectionExpr)
+				.expressionAttributeNames(allNames)
+				.expressionAttributeValues(values)
+				.scanIndexForward(false)
+				.consistentRead(false)
+				.returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+				.build();
+	}
+	
+	/**
+	 * Items of all the query pages, converted to Orders
+	 * 
+	 * @param request
+	 * @return
+	 */
+	private Flowable<Order> queryItems(final QueryRequest request) {
+		
+		return measured(subQuery(request), metrics -> queryPages(request, metrics)
+				.concatMapIterable(page -> toOrders(page.items(), metrics)));
+	}
+	
+	/**
+	 * Convert the page items into Orders, counted as the unmarshal time of the sub-query
+	 * 
+	 * @param items
+	 * @param metrics
+	 * @return
+	 */
+	private List<Order> toOrders(final List<Map<String,AttributeValue>> items, final SubQueryMetrics metrics) {
+		
+		long start = System.nanoTime();
+		List<Order> orders = new ArrayList<>(items.size());
+		
+		for (Map<String,AttributeValue> item : items) orders.add(tableSchema.mapToItem(item));
+		
+		metrics.unmarshal(System.nanoTime() - start);
+		return orders;
+	}
+	
+	/**
+	 * All query pages: the next page is requested when the previous one has arrived and it's been 
+	 * passed to the downstream (which limits the read-ahead to about a page per sub-query)
+	 * 
+	 * @param request
+	 * @return
+	 */
+	public Flowable<QueryResponse> queryPages(@NonNull final QueryRequest request) {
+		
+		return measured(subQuery(request), metrics -> queryPages(request, metrics));
+	}
+	
+	/**
+	 * All query pages, recorded in the sub-query metrics
+	 * 
+	 * @param request
+	 * @param metrics
+	 * @return
+	 */
+	private Flowable<QueryResponse> queryPages(final QueryRequest request, final SubQueryMetrics metrics) {
+		
+		QueryRequest measuredRequest = !metrics.isRecording() ? request 
+				: request.toBuilder().overrideConfiguration(o -> o.addMetricPublisher(new SubQueryMetricPublisher(metrics))).build();
+		
+		return pages(key -> queryPage(key.isEmpty() ? measuredRequest : measuredRequest.toBuilder().exclusiveStartKey(key).build(), metrics), 
+				QueryResponse::lastEvaluatedKey)
+				.doOnNext(page -> metrics.page(page.count(), contentLength(page), capacityUnits(page.consumedCapacity())));
+	}
+	
+	/**
+	 * Execute the query with Select.COUNT, summing Count across the pages (no items are returned)
+	 * 
+	 * @param request
+	 * @return
+	 */
+	private Single<Long> countPages(final QueryRequest request) {
+		
+		return queryPages(request.toBuilder().select(Select.COUNT).build())
+				.reduce(0L, (count, page) -> count + page.count());
+	}
+	
+	/**
+	 * Scan Orders in a single segment, optionally filtered by category
+	 * 
+	 * @param category
+	 * @param segment
+	 * @param totalSegments
+	 * @return
+	 */
+	public Flowable<Order> scanOrdersSegment(final String category, final int segment, final int totalSegments) {
+		
+		ScanRequest request = createScanRequest(category, segment, totalSegments, projection);
+		
+		return measured(subQuery(request), metrics -> scanPages(request, metrics)
+				.concatMapIterable(page -> toOrders(page.items(), metrics)));
+	}
+	
+	/**
+	 * Count Orders (optionally filtered by category) in a single segment, using COUNT-only scan
+	 * 
+	 * @param category
+	 * @param segment
+	 * @param totalSegments
+	 * @return
+	 */
+	public Single<Long> countOrdersSegment(final String category, final int segment, final int totalSegments) {
+		
+		ScanRequest request = createScanRequest(category, segment, totalSegments, null).toBuilder()
+				.select(Select.COUNT)
+				.build();
+		
+		return scanPages(request)
+				.reduce(0L, (count, page) -> count + page.count());
+	}
+	
+	/**
+	 * Create scan request for the segment, optionally filtered by category
+	 * 
+	 * @param category
+	 * @param segment
+	 * @param totalSegments
+	 * @param projection null to fetch whole items
+	 * @return
+	 */
+	private static ScanRequest createScanRequest(final String category, final int segment, final int totalSegments, final Projection projection) {
+		
+		ScanRequest.Builder builder = ScanRequest.builder()
+				.tableName(Config.DDB_TABLE_NAME)
+				.segment(segment)
+				.totalSegments(totalSegments)
+				.consistentRead(false)
+				.returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+		
+		Map<String,String> names = new HashMap<>();
+		
+		if (StringUtils.isNotEmpty(category)) {
+			
+			names.put("#cat", "category");
+			
+			builder.filterExpression("#cat = :cat")
+					.expressionAttributeValues(Collections.singletonMap(":cat", AttributeValue.builder().s(category.trim().toUpperCase()).build()));
+		}
+		
+		if (projection != null) builder.projectionExpression(projection.toExpression(names));
+		if (!names.isEmpty()) builder.expressionAttributeNames(names);
+
+		return builder.build();
+	}
+	
+	/**
+	 * All scan pages (see {@link #queryPages(QueryRequest)})
+	 * 
+	 * @param request
+	 * @return
+	 */
+	public Flowable<ScanResponse> scanPages(@NonNull final ScanRequest request) {
+		
+		return measured(subQuery(request), metrics -> scanPages(request, metrics));
+	}
+	
+	/**
+	 * All scan pages, recorded in the sub-query metrics
+	 * 
+	 * @param request
+	 * @param metrics
+	 * @return
+	 */
+	private Flowable<ScanResponse> scanPages(final ScanRequest request, final SubQueryMetrics metrics) {
+		
+		ScanRequest measuredRequest = !metrics.isRecording() ? request 
+				: request.toBuilder().overrideConfiguration(o -> o.addMetricPublisher(new SubQueryMetricPublisher(metrics))).build();
+		
+		return pages(key -> fromFuture(() -> {
+					
+					ScanRequest pageRequest = key.isEmpty() ? measuredRequest : measuredRequest.toBuilder().exclusiveStartKey(key).build();
+					
+					metrics.pageRequested();
+					return fetchPage(() -> throttled(dynamoDB.scan(pageRequest), metrics), ScanResponse::consumedCapacity);
+				}), 
+				ScanResponse::lastEvaluatedKey)
+				.doOnNext(page -> metrics.page(page.count(), contentLength(page), capacityUnits(page.consumedCapacity())));
+	}
+	
+	/**
+	 * Sub-query metrics, started on subscription and finished when the pages complete, fail or are cancelled
+	 * 
+	 * @param <R>
+	 * @param subQuery starts the sub-query metrics
+	 * @param pages pages (or items) of the sub-query
+	 * @return
+	 */
+	private static <R> Flowable<R> measured(final Supplier<SubQueryMetrics> subQuery, final Function<SubQueryMetrics, Flowable<R>> pages) {
+		
+		return Flowable.defer(() -> {
+			
+			SubQueryMetrics metrics = subQuery.get();
+			return pages.apply(metrics).doFinally(metrics::finish);
+		});
+	}
+	
+	/**
+	 * Metrics of the query (if a query is measured on this thread, or traced): index, category and the sort key condition
+	 * 
+	 * @param request
+	 * @return
+	 */
+	private static Supplier<SubQueryMetrics> subQuery(final QueryRequest request) {
+		
+		if (!QueryMetrics.isRecording()) return () -> SubQueryMetrics.NONE;
+		
+		Map<String,AttributeValue> values = request.expressionAttributeValues();
+		String sortKeyCondition = null;
+		
+		if (values.containsKey(":od")) sortKeyCondition = "begins_with " + values.get(":od").s();
+		else if (values.containsKey(":from")) sortKeyCondition = values.get(":from").s() + ".." + values.get(":to").s();
+		else if (values.containsKey(":qs")) sortKeyCondition = "slot " + values.get(":qs").n();
+		
+		return QueryMetrics.subQuery(request.indexName(), values.containsKey(":cat") ? values.get(":cat").s() : null, sortKeyCondition);
+	}
+	
+	/**
+	 * Metrics of the scan segment (if a query is measured on this thread, or traced)
+	 * 
+	 * @param request
+	 * @return
+	 */
+	private static Supplier<SubQueryMetrics> subQuery(final ScanRequest request) {
+		
+		if (!QueryMetrics.isRecording()) return () -> SubQueryMetrics.NONE;
+		
+		AttributeValue category = request.expressionAttributeValues().get(":cat");
+		
+		return QueryMetrics.subQuery(request.tableName(), category == null ? null : category.s(), 
+				"segment " + request.segment() + "/" + request.totalSegments());
+	}
+	
+	/**
+	 * @param response
+	 * @return Content-Length of the response, zero if not known
+	 */
+	private static long contentLength(final SdkResponse response) {
+		
+		if (response.sdkHttpResponse() == null) return 0;
+		
+		try {
+			return response.sdkHttpResponse().firstMatchingHeader("Content-Length").map(Long::parseLong).orElse(0L);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Page loop: fetch the first page, then the page starting at the last evaluated key of the previous one, 
+	 * until there is no last evaluated key
+	 * 
+	 * @param <R>
+	 * @param fetchPage fetches the page starting at the given key (empty key for the first page)
+	 * @param lastEvaluatedKey
+	 * @return
+	 */
+	private static <R> Flowable<R> pages(final Function<Map<String,AttributeValue>, Single<R>> fetchPage, 
+										final Function<R, Map<String,AttributeValue>> lastEvaluatedKey) {
+		
+		return Flowable.defer(() -> {
+			
+			// start keys of the pages to read; the first page has no start key
+			UnicastProcessor<Map<String,AttributeValue>> startKeys = UnicastProcessor.create();
+			
+			return startKeys.startWith(Collections.emptyMap())
+					.concatMapSingle(fetchPage::apply)
+					.doOnNext(response -> {
+						
+						Map<String,AttributeValue> key = lastEvaluatedKey.apply(response);
+						
+						if (key != null && !key.isEmpty()) startKeys.onNext(key);
+						else startKeys.onComplete();
+					});
+		});
+	}
+	
+	/**
+	 * Single page request, completed by the SDK's async response (no blocking)
+	 * 
+	 * @param request
+	 * @return
+	 */
+	public Single<QueryResponse> queryPage(@NonNull final QueryRequest request) {
+		
+		return queryPage(request, SubQueryMetrics.NONE);
+	}
+	
+	/**
+	 * Single page request of the sub-query
+	 * 
+	 * @param request
+	 * @param metrics
+	 * @return
+	 */
+	private Single<QueryResponse> queryPage(final QueryRequest request, final SubQueryMetrics metrics) {
+		
+		return fromFuture(() -> {
+			
+			metrics.pageRequested();
+			return fetchPage(() -> throttled(dynamoDB.query(request), metrics), QueryResponse::consumedCapacity);
+		});
+	}
+	
+	/**
+	 * Note the throttling error of the page request attempt in the sub-query metrics
+	 * 
+	 * @param <R>
+	 * @param attempt
+	 * @param metrics
+	 * @return
+	 */
+	private static <R> CompletableFuture<R> throttled(final CompletableFuture<R> attempt, final SubQueryMetrics metrics) {
+		
+		if (!metrics.isRecording()) return attempt;
+		
+		return attempt.whenComplete((page, t) -> {
+			
+			if (t != null && isThrottling(t)) metrics.throttled(t);
+		});
+	}
+	
+	/**
+	 * Send the page request, hedged if the hedger is set
+	 * 
+	 * @param <R>
+	 * @param pageRequest
+	 * @param consumedCapacity consumed capacity of the received page
+	 * @return
+	 */
+	private <R> CompletableFuture<R> fetchPage(final Supplier<CompletableFuture<R>> pageRequest, 
+												final Function<R, ConsumedCapacity> consumedCapacity) {
+		
+		if (requestHedger == null) return fetchPageAttempt(pageRequest, consumedCapacity);
+		
+		return requestHedger.executeAsync(() -> fetchPageAttempt(pageRequest, consumedCapacity));
+	}
+	
+	/**
+	 * Send single attempt of the page request, paced by the read capacity budget and within the concurrency limit (if set)
+	 * 
+	 * @param <R>
+	 * @param pageRequest
+	 * @param consumedCapacity consumed capacity of the received page
+	 * @return
+	 */
+	private <R> CompletableFuture<R> fetchPageAttempt(final Supplier<CompletableFuture<R>> pageRequest, 
+												final Function<R, ConsumedCapacity> consumedCapacity) {
+		
+		Supplier<CompletableFuture<R>> request = concurrencyLimiter == null ? pageRequest 
+				: () -> concurrencyLimiter.executeAsync(pageRequest, OrdersAsyncDbUtils::isThrottling);
+		
+		if (capacityBudget == null) return request.get();
+		
+		return capacityBudget.reserveAsync()
+				.thenCompose(reserved -> request.get()
+						.whenComplete((page, t) -> capacityBudget.settle(reserved, page == null ? 0 : capacityUnits(consumedCapacity.apply(page)))));
+	}
+	
+	/**
+	 * @param consumedCapacity
+	 * @return capacity units, zero if not returned
+	 */
+	private static double capacityUnits(final ConsumedCapacity consumedCapacity) {
+		
+		if (consumedCapacity == null || consumedCapacity.capacityUnits() == null) return 0;
+		
+		return consumedCapacity.capacityUnits();
+	}
+	
+	/**
+	 * Check if the exception (or its cause) is a throttling error
+	 * 
+	 * @param t
+	 * @return
+	 */
+	public static boolean isThrottling(Throwable t) {
+		
+		for (int depth = 0; t != null && depth < 5; ++depth, t = t.getCause()) {
+			
+			if (t instanceof ProvisionedThroughputExceededException) return true;
+			if (t instanceof SdkServiceException && ((SdkServiceException)t).isThrottlingException()) return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Retry policy of the client for the {@link AimdConcurrencyLimiter}: the limiter owns the retries of the throttled 
+	 * requests, so it sees every throttling response (and backs off), and its max attempts are the only ones. 
+	 * The other retryable errors (5xx, I/O) are still retried by the SDK.
+	 * 
+	 * @return
+	 */
+	public static RetryPolicy concurrencyLimitedRetryPolicy() {
+		
+		RetryCondition defaultCondition = AwsRetryPolicy.defaultRetryCondition();
+		
+		return AwsRetryPolicy.defaultRetryPolicy().toBuilder()
+				.retryCondition(context -> !isThrottling(context.exception()) && defaultCondition.shouldRetry(context))
+				.build();
+	}
+	
+	/**
+	 * Wrap CompletableFuture (created on subscription) into a Single, without blocking
+	 * 
+	 * @param <T>
+	 * @param futureSupplier
+	 * @return
+	 */
+	static <T> Single<T> fromFuture(final Supplier<CompletableFuture<T>> futureSupplier) {
+		
+		return Single.create(emitter -> {
+			
+			CompletableFuture<T> future = futureSupplier.get();
+			emitter.setCancellable(() -> future.cancel(false));
+			
+			future.whenComplete((r, t) -> {
+				
+				if (t != null) emitter.tryOnError(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+				else emitter.onSuccess(r);
+			});
+		});
+	}
+}
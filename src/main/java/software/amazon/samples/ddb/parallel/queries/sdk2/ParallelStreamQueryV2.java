@@ -17,13 +17,16 @@
  */
 package software.amazon.samples.ddb.parallel.queries.sdk2;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.reactivestreams.Publisher;
@@ -33,21 +36,35 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.reactivex.Flowable;
+import io.reactivex.Single;
+import lombok.NonNull;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncIndex;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
-import software.amazon.awssdk.enhanced.dynamodb.Expression;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.Page;
-import software.amazon.awssdk.enhanced.dynamodb.model.PagePublisher;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
-import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
-import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+import software.amazon.samples.ddb.parallel.queries.AimdConcurrencyLimiter;
+import software.amazon.samples.ddb.parallel.queries.BenchmarkHarness;
 import software.amazon.samples.ddb.parallel.queries.Config;
+import software.amazon.samples.ddb.parallel.queries.OrderAggregate;
+import software.amazon.samples.ddb.parallel.queries.OrderBatch;
+import software.amazon.samples.ddb.parallel.queries.PartitionCounts;
+import software.amazon.samples.ddb.parallel.queries.Projection;
+import software.amazon.samples.ddb.parallel.queries.QueryMetrics;
+import software.amazon.samples.ddb.parallel.queries.QueryPlan;
 import software.amazon.samples.ddb.parallel.queries.QueryUtils;
+import software.amazon.samples.ddb.parallel.queries.ReadCapacityBudget;
+import software.amazon.samples.ddb.parallel.queries.RequestHedger;
+import software.amazon.samples.ddb.parallel.queries.RunBenchmarks;
+import software.amazon.samples.ddb.parallel.queries.SortKeyRange;
+import software.amazon.samples.ddb.parallel.queries.jfr.ResultsMergedEvent;
 
 /**
  * AWS Blog post: Using SDK v2 to query DynamoDB Orders table
@@ -61,22 +78,151 @@ public class ParallelStreamQueryV2 {
 	DynamoDbEnhancedAsyncClient enhancedDynamoDB = null;
 
 	DynamoDbAsyncTable<Order> table = null;
+	OrdersAsyncDbUtils ordersAsyncDbUtils = null;
+	
+	private Projection projection = null;
 	
 	private static final Logger LOG = LoggerFactory.getLogger(ParallelStreamQueryV2.class);
 
 	public ParallelStreamQueryV2() {
+		
+		this(Config.STATIC_TABLE_SCHEMA);
+	}
 
-		this.dynamoDB = DynamoDbAsyncClient.builder()
-                				.region(Region.US_EAST_1)
-                				.credentialsProvider(ProfileCredentialsProvider.builder()
+	/**
+	 * C-tor
+	 * 
+	 * @param staticTableSchema true: Orders static table schema (see {@link OrderTableSchema}), false: bean introspection schema
+	 */
+	public ParallelStreamQueryV2(final boolean staticTableSchema) {
+
+		this(createClient(), staticTableSchema);
+	}
+	
+	/**
+	 * Default client: us-east-1 with the default profile, or the ddb.endpoint system property override 
+	 * (e.g. the local stand-in, any credentials are accepted)
+	 * 
+	 * @return
+	 */
+	public static DynamoDbAsyncClient createClient() {
+		
+		return createClient(false);
+	}
+	
+	/**
+	 * Default client: us-east-1 with the default profile, or the ddb.endpoint system property override 
+	 * (e.g. the local stand-in, any credentials are accepted)
+	 * 
+	 * @param concurrencyLimited true: client of the queries with the AIMD limiter, the SDK does not retry throttled requests 
+	 * 			(see {@link OrdersAsyncDbUtils#concurrencyLimitedRetryPolicy()})
+	 * @return
+	 */
+	public static DynamoDbAsyncClient createClient(final boolean concurrencyLimited) {
+		
+		String endpoint = System.getProperty(Config.DDB_ENDPOINT_PROPERTY);
+		DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder().region(Region.US_EAST_1);
+		
+		if (StringUtils.isNotEmpty(endpoint)) {
+			
+			builder.endpointOverride(URI.create(endpoint))
+					.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")));
+		}
+		else {
+			
+			builder.credentialsProvider(ProfileCredentialsProvider.builder()
                 						.profileName("default")
-                						.build())
-                				.build();		
+                						.build());
+		}
+		
+		if (concurrencyLimited) builder.overrideConfiguration(o -> o.retryPolicy(OrdersAsyncDbUtils.concurrencyLimitedRetryPolicy()));
+		
+		return builder.build();
+	}
+
+	/**
+	 * C-tor
+	 * 
+	 * @param dynamoDB async client, e.g. one with the endpoint override, or an in-process stand-in
+	 * @param staticTableSchema true: Orders static table schema (see {@link OrderTableSchema}), false: bean introspection schema
+	 */
+	public ParallelStreamQueryV2(@NonNull final DynamoDbAsyncClient dynamoDB, final boolean staticTableSchema) {
+
+		this.dynamoDB = dynamoDB;
 		
 		this.enhancedDynamoDB = DynamoDbEnhancedAsyncClient.builder().dynamoDbClient(this.dynamoDB).build();
 		
         //Create a DynamoDbTable object based on Orders
-        this.table = this.enhancedDynamoDB.table(Config.DDB_TABLE_NAME, TableSchema.fromBean(Order.class));
+        this.table = this.enhancedDynamoDB.table(Config.DDB_TABLE_NAME, OrderTableSchema.create(staticTableSchema));
+        
+        this.ordersAsyncDbUtils = new OrdersAsyncDbUtils(this.dynamoDB, this.table.tableSchema());
+	}
+	
+	/**
+	 * Limit the in-flight page requests of the non-blocking queries and scans with the AIMD limiter; 
+	 * use with the client that leaves the throttled requests to the limiter (see {@link #createClient(boolean)})
+	 * 
+	 * @param concurrencyLimiter
+	 * @return
+	 */
+	public ParallelStreamQueryV2 withConcurrencyLimiter(final AimdConcurrencyLimiter concurrencyLimiter) {
+		
+		this.ordersAsyncDbUtils.withConcurrencyLimiter(concurrencyLimiter);
+		return this;
+	}
+	
+	/**
+	 * Pace the page requests of the non-blocking queries and scans to the RCU/s ceiling of the budget, 
+	 * and count the consumed capacity (the enhanced client queries are not included)
+	 * 
+	 * @param capacityBudget
+	 * @return
+	 */
+	public ParallelStreamQueryV2 withReadCapacityBudget(final ReadCapacityBudget capacityBudget) {
+		
+		this.ordersAsyncDbUtils.withReadCapacityBudget(capacityBudget);
+		return this;
+	}
+	
+	/**
+	 * Hedge the page requests of the non-blocking queries and scans (first response wins)
+	 * 
+	 * @param requestHedger
+	 * @return
+	 */
+	public ParallelStreamQueryV2 withRequestHedger(final RequestHedger requestHedger) {
+		
+		this.ordersAsyncDbUtils.withRequestHedger(requestHedger);
+		return this;
+	}
+	
+	/**
+	 * Fetch only the projected attributes in the non-blocking queries and scans, and in the enhanced client queries 
+	 * (Orders are partially populated)
+	 * 
+	 * @param projection null to fetch whole items
+	 * @return
+	 */
+	public ParallelStreamQueryV2 withProjection(final Projection projection) {
+		
+		this.projection = projection;
+		this.ordersAsyncDbUtils.withProjection(projection);
+		return this;
+	}
+	
+	/**
+	 * Create the enhanced client query request, with the projection
+	 * 
+	 * @param queryConditional
+	 * @return
+	 */
+	private QueryEnhancedRequest createQueryRequest(final QueryConditional queryConditional) {
+		
+		QueryEnhancedRequest.Builder builder = QueryEnhancedRequest.builder().queryConditional(queryConditional);
+		
+		if (projection != null) builder.attributesToProject(projection.getAttributes());
+		
+		return builder.build();
 	}
 	
 	/**
@@ -98,7 +244,7 @@ public class ParallelStreamQueryV2 {
 	}
 
 	/**
-	 * List all Orders
+	 * List all Orders using parallel scan (segments run concurrently, see {@link #scanAllOrders(String, int)})
 	 * 
 	 * @param category
 	 * @param segments
@@ -106,93 +252,45 @@ public class ParallelStreamQueryV2 {
 	 */
 	public List<Order> listAllOrdersUsingParallelScan(String category, int segments) {
 
-        ScanEnhancedRequest enhancedRequest = null;
-		
-		if (StringUtils.isNotEmpty(category)) {
-			
-	        AttributeValue attVal = AttributeValue.builder()
-                    .s(category.trim().toUpperCase())
-                    .build();
-
-        // Get only items for a given category
-        Map<String, AttributeValue> myMap = new HashMap<>();
-        myMap.put(":cat", attVal);
-
-        Map<String, String> myExMap = new HashMap<>();
-        myExMap.put("#cat", "category");
-
-        // Set the Expression so only Closed items are queried from the Work table
-        Expression expression = Expression.builder()
-                .expressionValues(myMap)
-                .expressionNames(myExMap)
-                .expression("#cat = :cat")
-                .build();
-
-        enhancedRequest = ScanEnhancedRequest.builder()
-                .filterExpression(expression)
-                .limit(10)
-                .build();
-		}
-		else {
-			
-	        enhancedRequest = ScanEnhancedRequest.builder()
-	        		.consistentRead(false)
-	                .build();
-		}
-
-        // Get items in the Issues table
-		PagePublisher<Order> pageOrdersPublisher = this.table.scan(enhancedRequest);
-		
-        // snippet-start:[dynamodb.java2.async_pagination.subscriber]
-        // Use subscriber
-		pageOrdersPublisher.subscribe(new Subscriber<Page<Order>>() {
-            private Subscription subscription;
-
-            @Override
-            public void onSubscribe(Subscription s) {
-            	
-                subscription = s;
-                subscription.request(1);
-            }
+		return toFuture(scanAllOrders(category, segments)).join();
+	}
 
-            //@Override
-            public void onNext(Page<Order> pageOrder) {
-            	
-                System.out.println(pageOrder.items().size());
-                subscription.request(1);
-            }
+	/**
+	 * Parallel scan: all segments run concurrently, each one reads its pages as the downstream consumes 
+	 * the items (backpressure); the Flowable completes when all segments complete
+	 * 
+	 * @param category optional category filter
+	 * @param segments
+	 * @return
+	 */
+	public Flowable<Order> scanAllOrders(final String category, final int segments) {
 
-            @Override
-            public void onError(Throwable t) { }
+		if (segments <= 0) throw new IllegalArgumentException("segments must be positive");
+		
+		Function<Integer, Flowable<Order>> segmentScan = QueryMetrics.propagate(segment -> ordersAsyncDbUtils.scanOrdersSegment(category, segment, segments));
+		
+		return Flowable.range(0, segments)
+				.flatMap(segmentScan::apply, segments);
+	}
 
-            @Override
-            public void onComplete() { }
-            // snippet-end:[dynamodb.java2.async_pagination.subscriber]
-        });
+	/**
+	 * Count all Orders (optionally filtered by category) using COUNT-only parallel scan, per segment
+	 * 
+	 * @param category optional category filter
+	 * @param segments
+	 * @return
+	 */
+	public CompletableFuture<PartitionCounts> countAllOrdersUsingParallelScan(final String category, final int segments) {
 
-        // As the above code is non-blocking, make sure your application doesn't end immediately
-        // For this example, I am using Thread.sleep to wait for all pages to get delivered
-        try {
-			Thread.sleep(23_000);
-		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-				
-        // The Flowable class has many helper methods that work with any reactive streams compatible publisher implementation
-//        List<Page<Order>> orders = Flowable.fromPublisher(pageOrdersPublisher)
-//                                      //.flatMapIterable(ListTablesResponse::tableNames)
-//                                      .toList()
-//                                      .blockingGet();
-//
-//        System.out.println(orders.size());
-        
-        
-        return new ArrayList<>();
+		if (segments <= 0) throw new IllegalArgumentException("segments must be positive");
+		
+		return count(IntStream.range(0, segments).boxed().collect(Collectors.toList()), 
+				segment -> ordersAsyncDbUtils.countOrdersSegment(category, segment, segments), segments);
 	}
 
 	/**
-	 * Simple list orders operation
+	 * Simple list orders operation: subscribe to the pages of the query, and wait for the completion 
+	 * (errors of the query are rethrown)
 	 * 
 	 * @param category
 	 * @param orderDate
@@ -205,40 +303,14 @@ public class ParallelStreamQueryV2 {
         //Create a DynamoDbTable object based on Orders
 		DynamoDbAsyncIndex<Order> index = this.table.index("category-order-date-index");
 		
-		String indexName = null;
-		String keyCondExpr = null;
-		Map<String,String> names = new HashMap<>();
-		Map<String,AttributeValue> values = new HashMap<>();
-
-        AttributeValue catVal = AttributeValue.builder()
-                .s(category.trim().toUpperCase())
-                .build();
-		
-		names.put("#cat", "category");
-		values.put(":cat", catVal);
-		keyCondExpr = "#cat = :cat";
-
-		if (StringUtils.isNotEmpty(orderDate)) {
-
-	        AttributeValue dateVal = AttributeValue.builder()
-	                .s(orderDate.trim())
-	                .build();
-
-	        names.put("#od", "order-date");
-			values.put(":od", dateVal);
-			keyCondExpr += " AND begins_with(#od, :od)";
-		}
-
 		QueryConditional queryConditional = QueryConditional
         					.sortBeginsWith(k -> k.partitionValue(category.trim().toUpperCase()).sortValue(orderDate.trim()).build());
 
-        // Get items in the table and write out the ID value
-        //SdkIterable<Page<Order>> iter  = index.query(queryConditional);
-        //List<Order> orders = iter.stream().map(x -> x.items()).flatMap(Collection::stream).collect(Collectors.toList());
-        
 		final long start = System.currentTimeMillis();
 		final List<Order> orders = new ArrayList<>();
-		Publisher<Page<Order>> publisher = index.query(queryConditional);
+		final CompletableFuture<List<Order>> completed = new CompletableFuture<>();
+		
+		Publisher<Page<Order>> publisher = index.query(createQueryRequest(queryConditional));
 		
 		publisher.subscribe(new Subscriber<Page<Order>>() {
             private Subscription subscription;
@@ -250,37 +322,31 @@ public class ParallelStreamQueryV2 {
                 subscription.request(1);
             }
 
-            //@Override
+            @Override
             public void onNext(Page<Order> pageOrder) {
             	
-                System.out.println(pageOrder.items().size());
                 orders.addAll(pageOrder.items());
-                subscription.request(10_000);
+                subscription.request(1);
             }
 
             @Override
-            public void onError(Throwable t) { }
+            public void onError(Throwable t) { 
+            	
+            	LOG.warn("Query of category [{}], date prefix [{}] failed", category, orderDate, t);
+            	completed.completeExceptionally(t);
+            }
 
             @Override
             public void onComplete() { 
-            	System.out.println("DONE");
-                System.out.printf("Total orders for SPORT in March 2020: %d .. duration: %d msec%n", orders.size(), System.currentTimeMillis() - start);
+            	
+            	LOG.debug("Category [{}], date prefix [{}]: {} orders, duration: {} msec", 
+            			category, orderDate, orders.size(), System.currentTimeMillis() - start);
+            	completed.complete(orders);
             }
         });
 
-        // As the above code is non-blocking, make sure your application doesn't end immediately
-        // For this example, I am using Thread.sleep to wait for all pages to get delivered
-        try {
-			Thread.sleep(23_000);
-		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}		
-		
-//        customers.stream()
-//        .forEach(p -> p.items().forEach(item -> System.out.println(item.getCustName())));
-        
-        return orders;
+        // the subscription is non-blocking: wait for the last page, or the error
+        return completed.join();
 	}		
 	
 	/**
@@ -300,7 +366,7 @@ public class ParallelStreamQueryV2 {
 		QueryConditional queryConditional = QueryConditional
         					.sortBeginsWith(k -> k.partitionValue(category.trim().toUpperCase()).sortValue(orderDate.trim()).build());
 
-		Publisher<Page<Order>> publisher = index.query(queryConditional);
+		Publisher<Page<Order>> publisher = index.query(createQueryRequest(queryConditional));
 		
 	       // The Flowable class has many helper methods that work with any reactive streams compatible publisher implementation
         List<Order> orders = Flowable.fromPublisher(publisher)
@@ -319,7 +385,7 @@ public class ParallelStreamQueryV2 {
 	 * @param category
 	 * @return
 	 */
-	List<Order> getOrdersByCategoryAndDateUsingParallelStream(final String category) {
+	public List<Order> getOrdersByCategoryAndDateUsingParallelStream(final String category) {
 
 		List<String> yearMonthsList = QueryUtils.generate12YearMonthDatePrefixes(Order.YEAR);
 
@@ -333,17 +399,18 @@ public class ParallelStreamQueryV2 {
 	}
     
 	/**
-	 * Get list of orders by Category, using Java 8 parallel streams
+	 * Get list of orders by Category, one reactive query after another (baseline of the merged fan-out); 
+	 * the queries go through the same capacity budget, limiter and hedger as the non-blocking ones
 	 * 
 	 * @param category
 	 * @return
 	 */
-	List<Order> getOrdersByCategoryAndDateUsingReactiveStream(final String category) {
+	public List<Order> getOrdersByCategoryAndDateUsingReactiveStream(final String category) {
 
 		List<String> yearMonthsList = QueryUtils.generate48YearMonthDatePrefixes(Order.YEAR);
 
 		List<Order> orders = yearMonthsList.stream()
-				.map(x -> getOrdersListByCategoryAndOrderDate(category, x))
+				.map(x -> ordersAsyncDbUtils.queryOrdersByCategoryAndOrderDate(category, x).toList().blockingGet())
 				.flatMap(Collection::stream) // flatten results into a single stream of Orders
 				.unordered() // do not insist to preserve input order (might be faster)
 				.collect(Collectors.toCollection(() -> Collections.synchronizedList(new ArrayList<>())));
@@ -352,15 +419,287 @@ public class ParallelStreamQueryV2 {
 	}
 		
 	/**
+	 * Non-blocking fan-out: merge one query per order-date prefix, running at most maxConcurrency 
+	 * of them at the same time. Nothing runs until the returned Flowable is subscribed to.
+	 * 
+	 * @param category
+	 * @param orderDatePrefixList
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public Flowable<Order> queryOrdersByCategoryAndDates(final String category, @NonNull final List<String> orderDatePrefixList, final int maxConcurrency) {
+
+		if (StringUtils.isEmpty(category)) return Flowable.empty();
+
+		return ordersAsyncDbUtils.mergeSubQueries(orderDatePrefixList, 
+				x -> ordersAsyncDbUtils.queryOrdersByCategoryAndOrderDate(category, x), maxConcurrency);
+	}
+
+	/**
+	 * Non-blocking fan-out over the order-date ranges of the query plan
+	 * 
+	 * @param category
+	 * @param plan
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public Flowable<Order> queryOrdersByCategoryAndPlannedDates(final String category, @NonNull final QueryPlan plan, final int maxConcurrency) {
+
+		if (StringUtils.isEmpty(category)) return Flowable.empty();
+
+		return ordersAsyncDbUtils.mergeSubQueries(plan.getRanges(), 
+				x -> ordersAsyncDbUtils.queryOrdersByCategoryAndOrderDateRange(category, x), maxConcurrency);
+	}
+
+	/**
+	 * Non-blocking fan-out over the query slots
+	 * 
+	 * @param category
+	 * @param querySlotValuesList
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public Flowable<Order> queryOrdersByCategoryAndQuerySlots(final String category, @NonNull final List<Integer> querySlotValuesList, final int maxConcurrency) {
+
+		return queryOrdersByCategoryAndQuerySlots(category, querySlotValuesList, 64, maxConcurrency);
+	}
+
+	/**
+	 * Non-blocking fan-out over the query slots
+	 * 
+	 * @param category
+	 * @param querySlotValuesList
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public Flowable<Order> queryOrdersByCategoryAndQuerySlots(final String category, @NonNull final List<Integer> querySlotValuesList, 
+									final int querySlots, final int maxConcurrency) {
+
+		if (StringUtils.isEmpty(category)) return Flowable.empty();
+
+		return ordersAsyncDbUtils.mergeSubQueries(querySlotValuesList, 
+				x -> ordersAsyncDbUtils.queryOrdersByCategoryAndQuerySlot(category, x, querySlots), maxConcurrency);
+	}
+
+	/**
+	 * Count Orders using COUNT-only queries of the order-date prefixes (e.g. 12, 48 or 365), per prefix
+	 * 
+	 * @param category
+	 * @param orderDatePrefixList
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public CompletableFuture<PartitionCounts> countByCategoryAndDates(final String category, @NonNull final List<String> orderDatePrefixList, final int maxConcurrency) {
+
+		if (StringUtils.isEmpty(category)) return CompletableFuture.completedFuture(null);
+
+		return count(orderDatePrefixList, x -> ordersAsyncDbUtils.countByCategoryAndOrderDate(category, x), maxConcurrency);
+	}
+
+	/**
+	 * Count Orders using COUNT-only queries of the query slots, per slot
+	 * 
+	 * @param category
+	 * @param querySlotValuesList
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public CompletableFuture<PartitionCounts> countByCategoryAndQuerySlots(final String category, @NonNull final List<Integer> querySlotValuesList, 
+									final int querySlots, final int maxConcurrency) {
+
+		if (StringUtils.isEmpty(category)) return CompletableFuture.completedFuture(null);
+
+		return count(querySlotValuesList, x -> ordersAsyncDbUtils.countByCategoryAndQuerySlot(category, x, querySlots), maxConcurrency);
+	}
+	
+	/**
+	 * Run COUNT-only sub-queries concurrently (counts are kept in the input order), 
+	 * completing the future when all of them complete
+	 * 
+	 * @param <T>
+	 * @param inputs
+	 * @param subQuery
+	 * @param maxConcurrency
+	 * @return
+	 */
+	private static <T> CompletableFuture<PartitionCounts> count(final List<T> inputs, final Function<T, Single<Long>> subQuery, final int maxConcurrency) {
+		
+		Function<T, Single<Long>> measuredSubQuery = QueryMetrics.propagate(subQuery);
+		ResultsMergedEvent event = ResultsMergedEvent.begin("ParallelStreamQueryV2 count", inputs.size());
+		
+		return toFuture(Flowable.fromIterable(inputs)
+				.concatMapEager(x -> measuredSubQuery.apply(x).toFlowable(), maxConcurrency, 1))
+				.thenApply(counts -> {
+					
+					PartitionCounts partitionCounts = PartitionCounts.of(inputs, counts);
+					
+					event.merged(partitionCounts.getTotal());
+					return partitionCounts;
+				});
+	}
+
+	/**
+	 * Get Orders by Category as the columnar batch, merging 48 order-date range queries concurrently; 
+	 * every sub-query builds its batch straight from the attribute maps, without blocking any thread
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public CompletableFuture<OrderBatch> getOrderBatchByCategoryAndDates48UsingReactiveMerge(final String category) {
+
+		if (StringUtils.isEmpty(category)) return CompletableFuture.completedFuture(null);
+
+		List<SortKeyRange> ranges = QueryUtils.generate48YearMonthDatePrefixes(Order.YEAR).stream()
+				.map(QueryUtils::orderDatePrefixToRange)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+		
+		Function<SortKeyRange, Single<OrderBatch>> subQuery = QueryMetrics.propagate(x -> ordersAsyncDbUtils.queryOrderBatchByCategoryAndOrderDateRange(category, x));
+		
+		ResultsMergedEvent event = ResultsMergedEvent.begin("ParallelStreamQueryV2 batch", ranges.size());
+		
+		return toFuture(Flowable.fromIterable(ranges)
+				.flatMapSingle(subQuery::apply, false, Config.QUERY_MAX_CONCURRENCY))
+				.thenApply(batches -> {
+					
+					OrderBatch batch = OrderBatch.concat(batches);
+					
+					event.merged(batch.size());
+					return batch;
+				});
+	}
+	
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, merging 48 order-date range queries concurrently; 
+	 * every sub-query folds its pages into its own aggregate, and the aggregates are merged as the sub-queries complete
+	 * 
+	 * @param category
+	 * @param groupBy
+	 * @return
+	 */
+	public CompletableFuture<OrderAggregate> aggregateByCategoryAndDates48UsingReactiveMerge(final String category, @NonNull final OrderAggregate.GroupBy groupBy) {
+
+		if (StringUtils.isEmpty(category)) return CompletableFuture.completedFuture(null);
+
+		List<SortKeyRange> ranges = QueryUtils.generate48YearMonthDatePrefixes(Order.YEAR).stream()
+				.map(QueryUtils::orderDatePrefixToRange)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+		
+		Function<SortKeyRange, Single<OrderAggregate>> subQuery = QueryMetrics.propagate(x -> ordersAsyncDbUtils.aggregateByCategoryAndOrderDateRange(category, x, groupBy));
+		
+		return aggregate(Flowable.fromIterable(ranges)
+				.flatMapSingle(subQuery::apply, false, Config.QUERY_MAX_CONCURRENCY), ranges.size(), groupBy);
+	}
+
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, merging the query-slot queries concurrently
+	 * 
+	 * @param category
+	 * @param querySlotValuesList
+	 * @param groupBy
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public CompletableFuture<OrderAggregate> aggregateByCategoryAndQuerySlots(final String category, @NonNull final List<Integer> querySlotValuesList, 
+									@NonNull final OrderAggregate.GroupBy groupBy, final int maxConcurrency) {
+
+		return aggregateByCategoryAndQuerySlots(category, querySlotValuesList, 64, groupBy, maxConcurrency);
+	}
+
+	/**
+	 * Aggregate revenue, quantity and number of Orders per group, merging the query-slot queries concurrently
+	 * 
+	 * @param category
+	 * @param querySlotValuesList
+	 * @param querySlots number of query slots: 64 (query-slot-mod64) or 128 (query-slot-mod128)
+	 * @param groupBy
+	 * @param maxConcurrency
+	 * @return
+	 */
+	public CompletableFuture<OrderAggregate> aggregateByCategoryAndQuerySlots(final String category, @NonNull final List<Integer> querySlotValuesList, 
+									final int querySlots, @NonNull final OrderAggregate.GroupBy groupBy, final int maxConcurrency) {
+
+		if (StringUtils.isEmpty(category)) return CompletableFuture.completedFuture(null);
+
+		Function<Integer, Single<OrderAggregate>> subQuery = QueryMetrics.propagate(x -> ordersAsyncDbUtils.aggregateByCategoryAndQuerySlot(category, x, querySlots, groupBy));
+		
+		return aggregate(Flowable.fromIterable(querySlotValuesList)
+				.flatMapSingle(subQuery::apply, false, maxConcurrency), querySlotValuesList.size(), groupBy);
+	}
+	
+	/**
+	 * Merge the aggregates of the sub-queries into a new aggregate, completing the future when all the sub-queries complete
+	 * 
+	 * @param aggregates
+	 * @param subQueries
+	 * @param groupBy
+	 * @return
+	 */
+	private static CompletableFuture<OrderAggregate> aggregate(final Flowable<OrderAggregate> aggregates, final int subQueries, 
+															final OrderAggregate.GroupBy groupBy) {
+		
+		CompletableFuture<OrderAggregate> future = new CompletableFuture<>();
+		ResultsMergedEvent event = ResultsMergedEvent.begin("ParallelStreamQueryV2 aggregate", subQueries);
+		
+		aggregates.reduceWith(() -> new OrderAggregate(groupBy), OrderAggregate::merge)
+				.subscribe(aggregate -> {
+					
+					event.merged(aggregate.getTotalOrderCount());
+					future.complete(aggregate);
+					
+				}, future::completeExceptionally);
+		
+		return future;
+	}
+	
+	/**
+	 * Get list of orders by Category, merging 48 order-date prefix queries concurrently, 
+	 * without blocking any thread
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public CompletableFuture<List<Order>> getOrdersByCategoryAndDates48UsingReactiveMerge(final String category) {
+
+		return toFuture(queryOrdersByCategoryAndDates(category, 
+				QueryUtils.generate48YearMonthDatePrefixes(Order.YEAR), Config.QUERY_MAX_CONCURRENCY));
+	}
+	
+	/**
+	 * Collect all items of the Flowable into a list, completing the future when the Flowable completes
+	 * 
+	 * @param <T>
+	 * @param flowable
+	 * @return
+	 */
+	public static <T> CompletableFuture<List<T>> toFuture(@NonNull final Flowable<T> flowable) {
+		
+		CompletableFuture<List<T>> future = new CompletableFuture<>();
+		
+		flowable.toList().subscribe(future::complete, future::completeExceptionally);
+		
+		return future;
+	}
+	
+	/**
+	 * Run the SDK v2 strategies (see {@link RunBenchmarks#withSdkV2Strategies}) with the default harness settings, 
+	 * and print the results table
+	 * 
 	 * @param args
 	 */
 	public static void main(String[] args) {
 
-		ParallelStreamQueryV2 query = new ParallelStreamQueryV2();
+		ReadCapacityBudget capacityBudget = new ReadCapacityBudget();
 		
-		long start = System.currentTimeMillis();
-		List<Order> orders = query.getOrdersByCategoryAndDateUsingReactiveStream("SPORT");
-		long duration = System.currentTimeMillis() - start;
-		System.out.printf("| Category/Dates  48 reactive streams           | %8d | %d |%n", orders.size(), duration);
+		try (DynamoDbAsyncClient dynamoDB = createClient()) {
+			
+			BenchmarkHarness harness = RunBenchmarks.withSdkV2Strategies(
+					new BenchmarkHarness().withReadCapacityBudget(capacityBudget), dynamoDB, capacityBudget);
+			
+			harness.write(harness.run(), BenchmarkHarness.Format.TABLE, System.out);
+		}
 	}
-}
\ No newline at end of file
+}
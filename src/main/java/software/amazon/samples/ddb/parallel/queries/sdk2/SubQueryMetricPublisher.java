@@ -0,0 +1,77 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk2;
+
+import java.time.Duration;
+
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.samples.ddb.parallel.queries.SubQueryMetrics;
+
+/**
+ * SDK v2 metric publisher of a single sub-query: set on its page requests, it adds the SDK retries and 
+ * the unmarshalling time reported by the SDK to the sub-query metrics (reported when the page request 
+ * completes, so the last page may be added shortly after the sub-query finished).
+ * 
+ * @author zorani
+ *
+ */
+class SubQueryMetricPublisher implements MetricPublisher {
+
+	private final SubQueryMetrics subQuery;
+
+	/**
+	 * C-tor
+	 * 
+	 * @param subQuery
+	 */
+	SubQueryMetricPublisher(final SubQueryMetrics subQuery) {
+		
+		this.subQuery = subQuery;
+	}
+	
+	@Override
+	public void publish(final MetricCollection metricCollection) {
+		
+		long retries = 0;
+		for (Integer r : metricCollection.metricValues(CoreMetric.RETRY_COUNT)) retries += r;
+		
+		subQuery.retries(retries);
+		subQuery.unmarshal(unmarshallingNanos(metricCollection));
+	}
+	
+	/**
+	 * @param metricCollection
+	 * @return unmarshalling time of the call and its attempts
+	 */
+	private static long unmarshallingNanos(final MetricCollection metricCollection) {
+		
+		long nanos = 0;
+		
+		for (Duration d : metricCollection.metricValues(CoreMetric.UNMARSHALLING_DURATION)) nanos += d.toNanos();
+		for (MetricCollection child : metricCollection.children()) nanos += unmarshallingNanos(child);
+		
+		return nanos;
+	}
+
+	@Override
+	public void close() {
+		// nothing to release
+	}
+}
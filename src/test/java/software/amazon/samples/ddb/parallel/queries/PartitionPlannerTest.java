@@ -0,0 +1,160 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import org.junit.jupiter.api.Test;
+
+import software.amazon.samples.ddb.parallel.queries.QueryPlan.PlannedRange;
+
+/**
+ * Partition planner: the planned ranges cover the whole year without gaps or overlaps, busy months are split, 
+ * quiet months are merged, and the plan never has more than maxSubQueries ranges
+ * 
+ * @author zorani
+ *
+ */
+class PartitionPlannerTest {
+
+	private static final int YEAR = 2020;
+
+	@Test
+	void uniformDaysSplitEveryMonth() {
+		
+		QueryPlan plan = new PartitionPlanner(counter(day -> 100), 2_000, 366).plan("SPORT", YEAR);
+		
+		assertCoversYear(plan);
+		
+		// 2,900 - 3,100 items per month: two ranges each
+		assertEquals(24, plan.size());
+		plan.getPlannedRanges().forEach(x -> assertTrue(x.getEstimatedItems() <= 2_000, x.toString()));
+	}
+
+	@Test
+	void quietYearIsASingleRange() {
+		
+		QueryPlan plan = new PartitionPlanner(counter(day -> 1), 2_000, 366).plan("SPORT", YEAR);
+		
+		assertCoversYear(plan);
+		assertEquals(1, plan.size());
+		assertEquals(366, plan.getEstimatedItems());
+	}
+
+	@Test
+	void busyMonthIsSplitQuietMonthsAreMerged() {
+		
+		QueryPlan plan = new PartitionPlanner(counter(day -> day.getMonthValue() == 3 ? 1_000 : 0), 2_000, 366).plan("SPORT", YEAR);
+		
+		assertCoversYear(plan);
+		
+		// January - February, 16 ranges of March, April - December
+		assertEquals(18, plan.size());
+		assertEquals(SortKeyRange.of("2020-01-01", "2020-02-29"), plan.getRanges().get(0));
+		assertEquals(SortKeyRange.of("2020-04-01", "2020-12-31"), plan.getRanges().get(17));
+		
+		plan.getRanges().subList(1, 17).forEach(x -> assertTrue(x.getFrom().startsWith("2020-03") && x.getTo().startsWith("2020-03"), x.toString()));
+	}
+
+	@Test
+	void planNeverExceedsMaxSubQueries() {
+		
+		for (int maxSubQueries : new int[] {1, 5, 12, 20, 23}) {
+			
+			QueryPlan plan = new PartitionPlanner(counter(day -> 10_000), 2_000, maxSubQueries).plan("SPORT", YEAR);
+			
+			assertCoversYear(plan);
+			assertTrue(plan.size() <= maxSubQueries, maxSubQueries + ": " + plan.size());
+		}
+	}
+
+	@Test
+	void cappedPlanKeepsTheEstimatedTotal() {
+		
+		ToLongFunction<LocalDate> perDay = day -> day.getDayOfMonth() * 10L;
+		long total = counter(perDay).count("SPORT", SortKeyRange.of("2020-01-01", "2020-12-31"));
+		
+		QueryPlan capped = new PartitionPlanner(counter(perDay), 500, 10).plan("SPORT", YEAR);
+		
+		assertCoversYear(capped);
+		assertEquals(10, capped.size());
+		
+		// the estimates of the split day ranges are rounded down
+		assertTrue(capped.getEstimatedItems() <= total && capped.getEstimatedItems() > total - 366, 
+				capped.getEstimatedItems() + " of " + total);
+	}
+
+	@Test
+	void emptyPartitionValueHasNoPlan() {
+		
+		assertNull(new PartitionPlanner(counter(day -> 1)).plan("", YEAR));
+		assertNull(new PartitionPlanner(counter(day -> 1)).plan(null, YEAR));
+	}
+
+	@Test
+	void invalidSettingsAreRejected() {
+		
+		assertThrows(IllegalArgumentException.class, () -> new PartitionPlanner(counter(day -> 1), 0, 10));
+		assertThrows(IllegalArgumentException.class, () -> new PartitionPlanner(counter(day -> 1), 10, 0));
+	}
+
+	/**
+	 * Range counter summing the items per day
+	 * 
+	 * @param itemsPerDay
+	 * @return
+	 */
+	private static PartitionPlanner.RangeCounter counter(final ToLongFunction<LocalDate> itemsPerDay) {
+		
+		return (partitionValue, range) -> LocalDate.parse(range.getFrom())
+				.datesUntil(LocalDate.parse(range.getTo()).plusDays(1))
+				.mapToLong(itemsPerDay)
+				.sum();
+	}
+
+	/**
+	 * The ranges are ordered, contiguous and cover the whole year
+	 * 
+	 * @param plan
+	 */
+	private static void assertCoversYear(final QueryPlan plan) {
+		
+		List<PlannedRange> ranges = plan.getPlannedRanges();
+		LocalDate next = LocalDate.of(YEAR, 1, 1);
+		
+		for (PlannedRange range : ranges) {
+			
+			LocalDate from = LocalDate.parse(range.getRange().getFrom());
+			LocalDate to = LocalDate.parse(range.getRange().getTo());
+			
+			assertEquals(next, from, "gap or overlap before " + range);
+			assertTrue(!to.isBefore(from), "empty range " + range);
+			
+			next = to.plusDays(1);
+		}
+		
+		assertEquals(LocalDate.of(YEAR + 1, 1, 1), next, "the plan does not end on the last day of the year");
+	}
+}
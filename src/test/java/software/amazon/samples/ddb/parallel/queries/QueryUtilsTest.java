@@ -0,0 +1,93 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Order-date prefix to range conversion: year, month, tens of days and single day prefixes
+ * 
+ * @author zorani
+ *
+ */
+class QueryUtilsTest {
+
+	@Test
+	void yearPrefixCoversTheWholeYear() {
+		
+		assertEquals(SortKeyRange.of("2020-01-01", "2020-12-31"), QueryUtils.orderDatePrefixToRange("2020"));
+	}
+
+	@Test
+	void monthPrefixEndsOnTheLastDayOfTheMonth() {
+		
+		assertEquals(SortKeyRange.of("2020-01-01", "2020-01-31"), QueryUtils.orderDatePrefixToRange("2020-01"));
+		assertEquals(SortKeyRange.of("2020-04-01", "2020-04-30"), QueryUtils.orderDatePrefixToRange("2020-04"));
+		assertEquals(SortKeyRange.of("2020-12-01", "2020-12-31"), QueryUtils.orderDatePrefixToRange("2020-12"));
+	}
+
+	@Test
+	void februaryFollowsLeapYears() {
+		
+		assertEquals(SortKeyRange.of("2020-02-01", "2020-02-29"), QueryUtils.orderDatePrefixToRange("2020-02"));
+		assertEquals(SortKeyRange.of("2021-02-01", "2021-02-28"), QueryUtils.orderDatePrefixToRange("2021-02"));
+		assertEquals(SortKeyRange.of("2020-02-20", "2020-02-29"), QueryUtils.orderDatePrefixToRange("2020-02-2"));
+		assertEquals(SortKeyRange.of("2021-02-20", "2021-02-28"), QueryUtils.orderDatePrefixToRange("2021-02-2"));
+	}
+
+	@Test
+	void tensOfDaysPrefixes() {
+		
+		// no day zero
+		assertEquals(SortKeyRange.of("2020-03-01", "2020-03-09"), QueryUtils.orderDatePrefixToRange("2020-03-0"));
+		assertEquals(SortKeyRange.of("2020-03-10", "2020-03-19"), QueryUtils.orderDatePrefixToRange("2020-03-1"));
+		assertEquals(SortKeyRange.of("2020-03-30", "2020-03-31"), QueryUtils.orderDatePrefixToRange("2020-03-3"));
+		assertEquals(SortKeyRange.of("2020-04-30", "2020-04-30"), QueryUtils.orderDatePrefixToRange("2020-04-3"));
+	}
+
+	@Test
+	void dayPrefixIsASingleDay() {
+		
+		assertEquals(SortKeyRange.of("2020-03-15", "2020-03-15"), QueryUtils.orderDatePrefixToRange("2020-03-15"));
+		assertEquals(SortKeyRange.of("2020-02-29", "2020-02-29"), QueryUtils.orderDatePrefixToRange("2020-02-29"));
+		assertEquals(SortKeyRange.of("2020-12-31", "2020-12-31"), QueryUtils.orderDatePrefixToRange(" 2020-12-31 "));
+	}
+
+	@Test
+	void prefixesWithoutValidDates() {
+		
+		assertNull(QueryUtils.orderDatePrefixToRange("2020-02-3"));
+		assertNull(QueryUtils.orderDatePrefixToRange("2021-02-29"));
+		assertNull(QueryUtils.orderDatePrefixToRange("2020-04-31"));
+		assertNull(QueryUtils.orderDatePrefixToRange("2020-03-00"));
+		assertNull(QueryUtils.orderDatePrefixToRange("2020-03-4"));
+		assertNull(QueryUtils.orderDatePrefixToRange("2020-00"));
+		assertNull(QueryUtils.orderDatePrefixToRange("2020-13"));
+	}
+
+	@Test
+	void unsupportedPrefixForms() {
+		
+		assertNull(QueryUtils.orderDatePrefixToRange("202"));
+		assertNull(QueryUtils.orderDatePrefixToRange("2020-"));
+		assertNull(QueryUtils.orderDatePrefixToRange("2020-03-15T10"));
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.local;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import software.amazon.samples.ddb.parallel.queries.local.Expressions.Clause;
+import software.amazon.samples.ddb.parallel.queries.local.Expressions.Operator;
+
+/**
+ * Expressions of the local stand-in: AND of comparisons, BETWEEN and begins_with on key and filter 
+ * attributes, and the projection of top-level attributes
+ * 
+ * @author zorani
+ *
+ */
+class ExpressionsTest {
+
+	private static final JsonNode ITEM = json("{'category': {'S': 'SPORT'}, 'order-date': {'S': '2020-03-15'}, "
+			+ "'qty': {'N': '9'}, 'unit-price': {'N': '19.99'}}");
+
+	@Test
+	void keyConditionWithBeginsWith() {
+		
+		List<Clause> clauses = Expressions.parseConditions("#c = :c AND begins_with(#d, :d)", 
+				json("{'#c': 'category', '#d': 'order-date'}"), 
+				json("{':c': {'S': 'SPORT'}, ':d': {'S': '2020-03'}}"));
+		
+		assertEquals(2, clauses.size());
+		assertEquals("category", clauses.get(0).attributeName);
+		assertEquals(Operator.EQ, clauses.get(0).operator);
+		assertEquals("order-date", clauses.get(1).attributeName);
+		assertEquals(Operator.BEGINS_WITH, clauses.get(1).operator);
+		
+		assertTrue(matches(clauses, ITEM));
+		assertFalse(matches(clauses, json("{'category': {'S': 'SPORT'}, 'order-date': {'S': '2020-04-01'}}")));
+	}
+
+	@Test
+	void betweenIncludesBothBounds() {
+		
+		Clause between = single("#d BETWEEN :from AND :to", "{':from': {'S': '2020-03-01'}, ':to': {'S': '2020-03-31'}}");
+		
+		assertEquals(Operator.BETWEEN, between.operator);
+		assertTrue(between.test(orderDate("2020-03-01")));
+		assertTrue(between.test(orderDate("2020-03-31")));
+		assertFalse(between.test(orderDate("2020-02-29")));
+		assertFalse(between.test(orderDate("2020-04-01")));
+	}
+
+	@Test
+	void numbersCompareNumerically() {
+		
+		assertTrue(single("qty < :v", "{':v': {'N': '10'}}").test(ITEM));
+		assertTrue(single("qty >= :v", "{':v': {'N': '9.0'}}").test(ITEM));
+		assertTrue(single("qty = :v", "{':v': {'N': '9.0'}}").test(ITEM));
+		assertFalse(single("qty > :v", "{':v': {'N': '10'}}").test(ITEM));
+		assertTrue(single("unit-price <= :v", "{':v': {'N': '20'}}").test(ITEM));
+	}
+
+	@Test
+	void stringsCompareLexicographically() {
+		
+		assertTrue(single("category > :v", "{':v': {'S': 'BOOKS'}}").test(ITEM));
+		assertTrue(single("category <> :v", "{':v': {'S': 'BOOKS'}}").test(ITEM));
+		assertFalse(single("category < :v", "{':v': {'S': 'BOOKS'}}").test(ITEM));
+	}
+
+	@Test
+	void valuesOfDifferentTypesDoNotMatch() {
+		
+		assertFalse(single("qty = :v", "{':v': {'S': '9'}}").test(ITEM));
+		assertFalse(single("qty < :v", "{':v': {'S': '10'}}").test(ITEM));
+	}
+
+	@Test
+	void missingAttributeMatchesNotEqualOnly() {
+		
+		assertTrue(single("comment <> :v", "{':v': {'S': 'x'}}").test(ITEM));
+		assertFalse(single("comment = :v", "{':v': {'S': 'x'}}").test(ITEM));
+		assertFalse(single("comment < :v", "{':v': {'S': 'x'}}").test(ITEM));
+		assertFalse(single("begins_with(comment, :v)", "{':v': {'S': 'x'}}").test(ITEM));
+	}
+
+	@Test
+	void keywordsAreCaseInsensitive() {
+		
+		List<Clause> clauses = Expressions.parseConditions("category = :c and #d between :from and :to", 
+				json("{'#d': 'order-date'}"), 
+				json("{':c': {'S': 'SPORT'}, ':from': {'S': '2020-01-01'}, ':to': {'S': '2020-12-31'}}"));
+		
+		assertEquals(2, clauses.size());
+		assertTrue(matches(clauses, ITEM));
+		
+		assertTrue(single("BEGINS_WITH(#d, :v)", "{':v': {'S': '2020'}}").test(ITEM));
+	}
+
+	@Test
+	void unsupportedExpressionsAreRejected() {
+		
+		JsonNode values = json("{':a': {'S': 'SPORT'}, ':b': {'S': 'BOOKS'}}");
+		
+		assertThrows(LocalDynamoDbException.class, () -> Expressions.parseConditions("category = :a OR category = :b", null, values));
+		assertThrows(LocalDynamoDbException.class, () -> Expressions.parseConditions("contains(category, :a)", null, values));
+		assertThrows(LocalDynamoDbException.class, () -> Expressions.parseConditions("category IN (:a, :b)", null, values));
+	}
+
+	@Test
+	void undefinedPlaceholdersAreRejected() {
+		
+		JsonNode values = json("{':a': {'S': 'SPORT'}}");
+		
+		assertThrows(LocalDynamoDbException.class, () -> Expressions.parseConditions("#c = :a", json("{'#x': 'category'}"), values));
+		assertThrows(LocalDynamoDbException.class, () -> Expressions.parseConditions("#c = :a", null, values));
+		assertThrows(LocalDynamoDbException.class, () -> Expressions.parseConditions("category = :b", null, values));
+	}
+
+	@Test
+	void projectionOfTopLevelAttributes() {
+		
+		assertEquals(Arrays.asList("id", "order-date", "qty"), 
+				Expressions.parseProjection("id, #d, qty", json("{'#d': 'order-date'}")));
+		assertEquals(Arrays.asList("address", "items"), 
+				Expressions.parseProjection("address.city, items[0].sku", null));
+		
+		assertNull(Expressions.parseProjection(null, null));
+		assertNull(Expressions.parseProjection("  ", null));
+		
+		assertThrows(LocalDynamoDbException.class, () -> Expressions.parseProjection("#d", null));
+	}
+
+	private static Clause single(final String expression, final String values) {
+		
+		List<Clause> clauses = Expressions.parseConditions(expression, json("{'#d': 'order-date'}"), json(values));
+		assertEquals(1, clauses.size());
+		
+		return clauses.get(0);
+	}
+
+	private static boolean matches(final List<Clause> clauses, final JsonNode item) {
+		
+		return clauses.stream().allMatch(clause -> clause.test(item));
+	}
+
+	private static JsonNode orderDate(final String orderDate) {
+		
+		return json("{'order-date': {'S': '" + orderDate + "'}}");
+	}
+
+	private static JsonNode json(final String singleQuoted) {
+		
+		try {
+			return LocalTable.MAPPER.readTree(singleQuoted.replace('\'', '"'));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package software.amazon.samples.ddb.parallel.queries.sdk1;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Order codec: Orders survive the round trip through the DynamoDB item, with the attribute names 
+ * and types of the DynamoDBMapper annotations
+ * 
+ * @author zorani
+ *
+ */
+class OrderCodecTest {
+
+	@Test
+	void roundTripKeepsAllAttributes() {
+		
+		Order order = order("order-1", 12.34);
+		
+		assertEquals(order, OrderCodec.fromItem(OrderCodec.toItem(order)));
+	}
+
+	@Test
+	void roundTripOfPrices() {
+		
+		for (double price : new double[] {0, 0.1, 19.99, 1e-7, 123456789.125, 1e21}) {
+			
+			Order order = order("order-" + price, price);
+			assertEquals(price, OrderCodec.fromItem(OrderCodec.toItem(order)).getPricePerUnit(), String.valueOf(price));
+		}
+	}
+
+	@Test
+	void itemUsesTheAnnotatedNamesAndTypes() {
+		
+		Map<String, AttributeValue> item = OrderCodec.toItem(order("order-1", 19.99));
+		
+		assertEquals("order-1", item.get(OrderCodec.ID).getS());
+		assertEquals("SPORT", item.get(OrderCodec.CATEGORY).getS());
+		assertEquals("2020-03-15", item.get(OrderCodec.ORDER_DATE).getS());
+		assertEquals("42", item.get(OrderCodec.QUERY_SLOT_MOD64).getN());
+		assertEquals("106", item.get(OrderCodec.QUERY_SLOT_MOD128).getN());
+		assertEquals("3", item.get(OrderCodec.QTY).getN());
+		assertEquals("19.99", item.get(OrderCodec.UNIT_PRICE).getN());
+	}
+
+	@Test
+	void nullAttributesAreNotWrittenAndMissingNumbersAreZero() {
+		
+		Order order = new Order();
+		order.setId("order-2");
+		order.setCategory("BOOKS");
+		
+		Map<String, AttributeValue> item = OrderCodec.toItem(order);
+		
+		assertFalse(item.containsKey(OrderCodec.COMMENT));
+		assertFalse(item.containsKey(OrderCodec.STATE));
+		
+		Map<String, AttributeValue> keysOnly = new HashMap<>();
+		keysOnly.put(OrderCodec.ID, new AttributeValue().withS("order-2"));
+		keysOnly.put(OrderCodec.CATEGORY, new AttributeValue().withS("BOOKS"));
+		
+		Order decoded = OrderCodec.fromItem(keysOnly);
+		
+		assertEquals(order, decoded);
+		assertNull(decoded.getComment());
+		assertEquals(0, decoded.getQty());
+		assertEquals(0, decoded.getPricePerUnit());
+	}
+
+	@Test
+	void missingIdIsGenerated() {
+		
+		Order order = order(null, 1);
+		Map<String, AttributeValue> item = OrderCodec.toItem(order);
+		
+		assertNotNull(order.getId());
+		assertEquals(order.getId(), item.get(OrderCodec.ID).getS());
+	}
+
+	@Test
+	void pageOfItemsKeepsTheOrder() {
+		
+		List<Order> orders = Arrays.asList(order("order-1", 1), order("order-2", 2), order("order-3", 3));
+		
+		List<Map<String, AttributeValue>> items = Arrays.asList(
+				OrderCodec.toItem(orders.get(0)), OrderCodec.toItem(orders.get(1)), OrderCodec.toItem(orders.get(2)));
+		
+		assertEquals(orders, OrderCodec.fromItems(items));
+	}
+
+	private static Order order(final String id, final double pricePerUnit) {
+		
+		Order order = new Order();
+		
+		order.setId(id);
+		order.setCategory("SPORT");
+		order.setCountry("USA");
+		order.setCkCountryState("USA#WA");
+		order.setSku("SKU-0001");
+		order.setOrderDate("2020-03-15");
+		order.setQuerySlotMod64(42);
+		order.setQuerySlotMod128(106);
+		order.setQty(3);
+		order.setPricePerUnit(pricePerUnit);
+		order.setState("WA");
+		order.setPaymentType("CARD");
+		order.setComment("Comment with unicode \u00e9 and \"quotes\"");
+		
+		return order;
+	}
+}